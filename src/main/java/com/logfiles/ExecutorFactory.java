@@ -0,0 +1,204 @@
+package com.logfiles;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.InstrumentedExecutorService;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.lifecycle.ExecutorServiceManager;
+import io.dropwizard.setup.Environment;
+import io.dropwizard.util.Duration;
+
+/**
+ * Configuration of a named executor with a fixed number of threads and a bounded queue,
+ * for the blocking reads of files and requests to other hosts. They are kept out of the
+ * common ForkJoinPool, then a slow disk or host holds up only its own executor.
+ * The executor is managed by dropwizard and its metrics are registered as
+ * executors.{name}.*: submitted, running, completed, duration, queued and rejected.
+ * On JDK 21 or later the executors can run every task on its own virtual thread instead,
+ * without threads nor queue to size.
+ * @author alexdel
+ */
+public class ExecutorFactory {
+	/**
+	 * How the blocking reads are executed.
+	 */
+	public enum ExecutionMode {
+		/** On the executors with a fixed number of threads and a bounded queue */
+		POOLS,
+		/** Every task on its own virtual thread, JDK 21 or later */
+		VIRTUAL_THREADS
+	}
+
+	/**
+	 * What is done with a task when the queue is full.
+	 */
+	public enum RejectionPolicy {
+		/** The task is rejected with a RejectedExecutionException */
+		ABORT,
+		/** The task runs on the thread submitting it, slowing it down */
+		CALLER_RUNS
+	}
+
+	/** Number of threads */
+	@Min(1)
+	private int threads;
+	/** Maximum number of tasks waiting for a thread */
+	@Min(1)
+	private int queueSize;
+	/** What is done with a task when the queue is full */
+	@NotNull
+	private RejectionPolicy rejectionPolicy;
+
+	/**
+	 * Default constructor, one thread and a queue of 100 tasks rejected when it is full.
+	 */
+	public ExecutorFactory()
+	{
+		this(1, 100, RejectionPolicy.ABORT);
+	}
+
+	/**
+	 * Constructor
+	 * @param threads          Number of threads.
+	 * @param queueSize        Maximum number of tasks waiting for a thread.
+	 * @param rejectionPolicy  What is done with a task when the queue is full.
+	 */
+	public ExecutorFactory(int threads, int queueSize, RejectionPolicy rejectionPolicy)
+	{
+		this.threads         = threads;
+		this.queueSize       = queueSize;
+		this.rejectionPolicy = rejectionPolicy;
+	}
+
+	/**
+	 * Build the executor, managed by dropwizard and with its metrics registered.
+	 * @param env   Dropwizard environment.
+	 * @param name  Name of the executor, on its threads and metrics.
+	 * @return executor.
+	 */
+	public ExecutorService build(Environment env, String name)
+	{
+		final MetricRegistry           registry = env.metrics();
+		final BlockingQueue<Runnable>  queue    = new ArrayBlockingQueue<>(queueSize);
+		final Meter                    rejected = registry.meter(MetricRegistry.name("executors", name, "rejected"));
+		final RejectedExecutionHandler policy   = rejectionPolicy == RejectionPolicy.CALLER_RUNS ?
+				                                  new ThreadPoolExecutor.CallerRunsPolicy() :
+				                                  new ThreadPoolExecutor.AbortPolicy();
+
+		ExecutorService executor = env.lifecycle()
+				                      .executorService(name + "-%d")
+				                      .minThreads(threads)
+				                      .maxThreads(threads)
+				                      .workQueue(queue)
+				                      .rejectedExecutionHandler((task, pool) -> {
+				                    	  rejected.mark();
+				                    	  policy.rejectedExecution(task, pool);
+				                      })
+				                      .build();
+		registry.register(MetricRegistry.name("executors", name, "queued"), (Gauge<Integer>)queue::size);
+		return new InstrumentedExecutorService(executor, registry, MetricRegistry.name("executors", name));
+	}
+
+	/**
+	 * Build an executor that runs every task on a new virtual thread, managed by dropwizard
+	 * and with its metrics registered, except queued and rejected as there is not queue.
+	 * The virtual threads are created by reflection, the application is still built for
+	 * JDK 8 and runs on any JDK.
+	 * @param env   Dropwizard environment.
+	 * @param name  Name of the executor, on its threads and metrics.
+	 * @return executor.
+	 * @throws IllegalStateException if the JDK has not virtual threads
+	 */
+	public static ExecutorService buildVirtual(Environment env, String name)
+	{
+		ExecutorService executor;
+		
+		try
+		{
+			/* Thread.ofVirtual().name(name + "-", 0).factory() */
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object   builder      = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+			ThreadFactory factory = (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+			Method        newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			executor = (ExecutorService)newExecutor.invoke(null, factory);
+		}
+		catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException |
+			   InvocationTargetException e)
+		{
+			throw new IllegalStateException("executionMode virtual-threads needs JDK 21 or later, running on " +
+					                        System.getProperty("java.version"), e);
+		}
+		env.lifecycle().manage(new ExecutorServiceManager(executor, Duration.seconds(5), name));
+		return new InstrumentedExecutorService(executor, env.metrics(), MetricRegistry.name("executors", name));
+	}
+
+	/**
+	 * Get the number of threads.
+	 * @return number of threads.
+	 */
+	@JsonProperty
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Set the number of threads.
+	 * @param threads  Number of threads.
+	 */
+	@JsonProperty
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Get the maximum number of tasks waiting for a thread.
+	 * @return queue size.
+	 */
+	@JsonProperty
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	/**
+	 * Set the maximum number of tasks waiting for a thread.
+	 * @param queueSize  Queue size.
+	 */
+	@JsonProperty
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+
+	/**
+	 * Get what is done with a task when the queue is full.
+	 * @return rejection policy.
+	 */
+	@JsonProperty
+	public RejectionPolicy getRejectionPolicy() {
+		return rejectionPolicy;
+	}
+
+	/**
+	 * Set what is done with a task when the queue is full.
+	 * @param rejectionPolicy  abort or caller-runs.
+	 */
+	@JsonProperty
+	public void setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+		this.rejectionPolicy = rejectionPolicy;
+	}
+}
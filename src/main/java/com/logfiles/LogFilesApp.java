@@ -1,11 +1,32 @@
 package com.logfiles;
 
+import java.io.File;
+import java.time.ZoneId;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 import javax.ws.rs.client.Client;
 
+import org.glassfish.jersey.server.ServerProperties;
+
+import com.logfiles.backend.BloomBlockIndex;
+import com.logfiles.backend.FileFollowers;
+import com.logfiles.backend.KeywordIndex;
+import com.logfiles.backend.LineIndex;
+import com.logfiles.backend.LogFileDirectory;
+import com.logfiles.backend.LogFileReader;
+import com.logfiles.backend.ResultCache;
+import com.logfiles.backend.TailCache;
+import com.logfiles.backend.TimestampSearch;
+import com.logfiles.entrypoint.HostHealth;
+import com.logfiles.entrypoint.HostHealthCheck;
 import com.logfiles.entrypoint.LogFileResource;
+import com.logfiles.entrypoint.RemoteHosts;
 
 import io.dropwizard.Application;
 import io.dropwizard.client.JerseyClientBuilder;
+import io.dropwizard.lifecycle.Managed;
 import io.dropwizard.setup.Environment;
 
 /**
@@ -29,14 +50,112 @@ public class LogFilesApp extends Application<LogFilesConf> {
 	public void run(LogFilesConf conf, Environment env)
 			throws Exception {		
 		
+		/* Line indexes are saved only if an index directory is configured */
+		final String indexDirName = conf.getIndexDirectory();
+		final File indexDir = (indexDirName == null || indexDirName.isEmpty()) ? null : new File(indexDirName);
+		final LineIndex lineIndex = new LineIndex(indexDir, conf.getLineIndexInterval());
+		KeywordIndex keywordIndex = null;
+		
+		/* Cold files are indexed in background by a single thread managed by dropwizard */
+		if (conf.isKeywordIndexEnabled())
+		{
+			final KeywordIndex coldIndex = new KeywordIndex(indexDir, conf.getKeywordIndexBlockSize(),
+					                                        conf.getColdFileAge() * 1000);
+			final File logDir = new File(conf.getLogDirectory());
+			final ScheduledExecutorService indexer = env.lifecycle()
+					                                    .scheduledExecutorService("keyword-indexer")
+					                                    .threads(1)
+					                                    .build();
+			indexer.scheduleWithFixedDelay(() -> coldIndex.indexColdFiles(logDir), 0,
+					                       conf.getKeywordIndexPeriod(), TimeUnit.SECONDS);
+			keywordIndex = coldIndex;
+		}
+		
+		/* Blocks of any file learned while they are read, kept only in memory */
+		final BloomBlockIndex bloomIndex = conf.isBloomFilterEnabled() ?
+				new BloomBlockIndex(BloomBlockIndex.DEFAULT_BLOCK_SIZE, conf.getBloomMaxBlocks()) : null;
+		
+		final TimestampSearch timestampSearch = new TimestampSearch(conf.getTimestampPattern(),
+				                                                    ZoneId.of(conf.getTimestampZone()));
+		
+		/* Last lines of the files bounded by bytes, as raw bytes out of the heap by default.
+		 * Its hits and misses on the metrics */
+		final TailCache tailCache = new TailCache(conf.getTailCacheMaxBytes(),
+				                                  conf.getTailCacheMaxTailBytes(),
+				                                  conf.isTailCacheOffHeap());
+		tailCache.registerMetrics(env.metrics());
+		
+		/* Lines passing the filters of the queries repeated, expired after the TTL */
+		final ResultCache resultCache = new ResultCache(conf.getResultCacheMaxBytes(),
+				                                        conf.getResultCacheTtl());
+		resultCache.registerMetrics(env.metrics());
+		
+		final LogFileReader logFileReader = new LogFileReader(conf.getMmapThreshold(), lineIndex,
+				                                              keywordIndex, bloomIndex, timestampSearch,
+				                                              tailCache, resultCache);
+		/* Files followed polled by a single thread, one watcher and one ring of recent
+		 * lines per file. The followers receive a closed event on shutdown */
+		final ScheduledExecutorService poller = env.lifecycle()
+				                                   .scheduledExecutorService("file-followers")
+				                                   .threads(1)
+				                                   .build();
+		final FileFollowers fileFollowers = new FileFollowers(poller, conf.getFollowPollMillis(),
+				                                              conf.getFollowBufferLines());
+		fileFollowers.registerMetrics(env.metrics());
+		env.lifecycle().manage(new Managed() {
+			@Override
+			public void start()
+			{
+			}
+
+			@Override
+			public void stop()
+			{
+				fileFollowers.close();
+			}
+		});
+		
+		/* The files of a directory and the other hosts are read on their own bounded executors,
+		 * out of the common ForkJoinPool, with their metrics as executors.disk and executors.remote.
+		 * With virtual threads every file and every host is read on its own thread */
+		final boolean virtual = conf.getExecutionMode() == ExecutorFactory.ExecutionMode.VIRTUAL_THREADS;
+		final ExecutorService diskExecutor   = virtual ? ExecutorFactory.buildVirtual(env, "disk") :
+			                                             conf.getDiskExecutor().build(env, "disk");
+		final ExecutorService remoteExecutor = virtual ? ExecutorFactory.buildVirtual(env, "remote") :
+			                                             conf.getRemoteExecutor().build(env, "remote");
+		
+		/* The other hosts are requested at once by the asynchronous client, its responses are
+		 * handled on the remote executor. A single timer reports the hosts out of their deadlines */
 		final Client client = new JerseyClientBuilder(env).using(conf.getJerseyClient())
-				              .build(getName());
-		final LogFileResource logFileRes = new LogFileResource(client,
+				                                          .using(remoteExecutor)
+				                                          .build(getName());
+		final ScheduledExecutorService deadlines = env.lifecycle()
+				                                      .scheduledExecutorService("remote-deadlines")
+				                                      .threads(1)
+				                                      .build();
+		/* Hosts failing are skipped while their circuit is open and the slow ones hedged to their
+		 * replicas. Their state on the health check remote-hosts and on the metrics */
+		final HostHealth hostHealth = new HostHealth(conf.getRemoteFailureThreshold(),
+				                                     conf.getRemoteCircuitOpenMillis(),
+				                                     conf.getRemoteMinHedgeMillis());
+		hostHealth.registerMetrics(env.metrics());
+		env.healthChecks().register("remote-hosts", new HostHealthCheck(hostHealth));
+		final RemoteHosts remoteHosts = new RemoteHosts(client, deadlines, conf.getRemoteHostTimeoutMillis(),
+				                                        conf.getRemoteRequestTimeoutMillis(), hostHealth,
+				                                        conf.getRemoteReplicas());
+		
+		final LogFileResource logFileRes = new LogFileResource(logFileReader,
+															   new LogFileDirectory(logFileReader, diskExecutor),
+															   fileFollowers,
+															   remoteHosts,
 															   conf.getLogDirectory(),
 															   Long.valueOf(conf.getStartPos()),
 															   Integer.valueOf(conf.getnEvents()), 
 				                                               Integer.valueOf(conf.getOrderBy()),
 				                                               conf.getDefaultHost());
+		/* The responses are written while the files are read or followed: the output is
+		 * not buffered by Jersey, otherwise the flushes do nothing until 8 KiB are written */
+		env.jersey().property(ServerProperties.OUTBOUND_CONTENT_LENGTH_BUFFER, 0);
 		/* Register log file resource.
 		 * It will response on /logfiles/api/v1/files/
 		 */
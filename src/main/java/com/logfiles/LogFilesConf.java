@@ -1,10 +1,24 @@
 package com.logfiles;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.logfiles.backend.BloomBlockIndex;
+import com.logfiles.backend.FileFollowers;
+import com.logfiles.backend.KeywordIndex;
+import com.logfiles.backend.LineIndex;
+import com.logfiles.backend.ResultCache;
+import com.logfiles.backend.TailCache;
+import com.logfiles.backend.TimestampSearch;
+import com.logfiles.backend.LogFileReader;
+import com.logfiles.entrypoint.HostHealth;
+import com.logfiles.entrypoint.RemoteHosts;
 
 import io.dropwizard.Configuration;
 import io.dropwizard.client.JerseyClientConfiguration;
@@ -15,6 +29,7 @@ import io.dropwizard.client.JerseyClientConfiguration;
  * Here are defined:
  * 1. Default variables for LogFileResource
  * 2. Set jersey client
+ * 3. Tuning for the backend reading the log files
  * @author alexdel
  *
  */
@@ -34,10 +49,89 @@ public class LogFilesConf extends Configuration {
 	/** Order by. Default descendant set on config.yml */
 	@NotEmpty
 	private String orderBy;
+	/** File size in bytes since the files are read with memory mapping */
+	@Min(0)
+	private long mmapThreshold = LogFileReader.DEFAULT_MMAP_THRESHOLD;
+	/** Maximum number of bytes of the last lines of the files kept in memory. 0 to disable */
+	@Min(0)
+	private long tailCacheMaxBytes = TailCache.DEFAULT_MAX_BYTES;
+	/** Maximum number of bytes of the last lines of a single file kept in memory */
+	@Min(0)
+	private long tailCacheMaxTailBytes = TailCache.DEFAULT_MAX_TAIL_BYTES;
+	/** Keep the last lines of the files out of the heap, on direct buffers */
+	private boolean tailCacheOffHeap = true;
+	/** Maximum number of bytes of the lines passing the filters of the queries kept in memory. 0 to disable */
+	@Min(0)
+	private long resultCacheMaxBytes = ResultCache.DEFAULT_MAX_BYTES;
+	/** Seconds the lines passing the filter of a query are kept since they were read */
+	@Min(1)
+	private long resultCacheTtl = ResultCache.DEFAULT_TTL;
+	/** Milliseconds between two polls of a file followed */
+	@Min(10)
+	private long followPollMillis = FileFollowers.DEFAULT_POLL_MILLIS;
+	/** Maximum number of recent lines kept per file followed */
+	@Min(1)
+	private int followBufferLines = FileFollowers.DEFAULT_BUFFER_LINES;
+	/** Directory where the line indexes are saved. Empty to keep them only in memory */
+	private String indexDirectory = "";
+	/** Number of lines between two positions on the line indexes */
+	@Min(1)
+	private int lineIndexInterval = LineIndex.DEFAULT_INTERVAL;
+	/** Pattern of the timestamps at the beginning of the lines, for since and until queries */
+	@NotEmpty
+	private String timestampPattern = TimestampSearch.DEFAULT_PATTERN;
+	/** Zone of the timestamps without offset */
+	@NotEmpty
+	private String timestampZone = "UTC";
+	/** Index the cold files in background to skip blocks on keyword filtering */
+	private boolean keywordIndexEnabled = false;
+	/** Minimum number of bytes of a block on the keyword indexes */
+	@Min(1024)
+	private int keywordIndexBlockSize = KeywordIndex.DEFAULT_BLOCK_SIZE;
+	/** Seconds without modifications since a file is cold and it can be indexed */
+	@Min(0)
+	private long coldFileAge = 600;
+	/** Seconds between two looks for cold files to be indexed */
+	@Min(1)
+	private long keywordIndexPeriod = 300;
+	/** Learn Bloom filters of the blocks read to skip them on next keyword filtering */
+	private boolean bloomFilterEnabled = true;
+	/** Maximum number of blocks with Bloom filters kept in memory, 16 KiB each */
+	@Min(0)
+	private int bloomMaxBlocks = BloomBlockIndex.DEFAULT_MAX_BLOCKS;
 	/** Jersey client to makes REST-API requests */
 	@Valid	
 	@NotNull
 	private JerseyClientConfiguration jerseyClient = new JerseyClientConfiguration();
+	/** How the blocking reads are executed: pools (default) or virtual-threads, JDK 21 or later */
+	@NotNull
+	private ExecutorFactory.ExecutionMode executionMode = ExecutorFactory.ExecutionMode.POOLS;
+	/** Executor of the reads of the files of a directory, sized to the storage */
+	@Valid
+	@NotNull
+	private ExecutorFactory diskExecutor = new ExecutorFactory(4, 1000, ExecutorFactory.RejectionPolicy.CALLER_RUNS);
+	/** Executor of the requests to the other hosts */
+	@Valid
+	@NotNull
+	private ExecutorFactory remoteExecutor = new ExecutorFactory(16, 256, ExecutorFactory.RejectionPolicy.ABORT);
+	/** Milliseconds to wait for the response of another host */
+	@Min(1)
+	private long remoteHostTimeoutMillis = RemoteHosts.DEFAULT_HOST_TIMEOUT_MILLIS;
+	/** Milliseconds to wait for the responses of all the other hosts of a request */
+	@Min(1)
+	private long remoteRequestTimeoutMillis = RemoteHosts.DEFAULT_REQUEST_TIMEOUT_MILLIS;
+	/** Failures in a row of another host that open its circuit */
+	@Min(1)
+	private int remoteFailureThreshold = HostHealth.DEFAULT_FAILURE_THRESHOLD;
+	/** Milliseconds the circuit of another host stays open */
+	@Min(1)
+	private long remoteCircuitOpenMillis = HostHealth.DEFAULT_OPEN_MILLIS;
+	/** Minimum milliseconds before a request to another host is hedged to its replica */
+	@Min(0)
+	private long remoteMinHedgeMillis = HostHealth.DEFAULT_MIN_HEDGE_MILLIS;
+	/** Replica of the other hosts, by host name */
+	@NotNull
+	private Map<String, String> remoteReplicas = new HashMap<>();
 	
 	/** 
 	 * Getter default host
@@ -120,6 +214,296 @@ public class LogFilesConf extends Configuration {
 		this.orderBy = orderBy;
 	}
 
+	/**
+	 * Getter memory mapping threshold. Files with this size or bigger are read with
+	 * memory mapping. By default 512 MiB.
+	 * @return file size in bytes
+	 */
+	public long getMmapThreshold() {
+		return mmapThreshold;
+	}
+
+	/**
+	 * Setter memory mapping threshold
+	 * @param mmapThreshold File size in bytes
+	 */
+	public void setMmapThreshold(long mmapThreshold) {
+		this.mmapThreshold = mmapThreshold;
+	}
+
+	/**
+	 * Getter line index directory. Empty means that the line indexes are kept
+	 * only in memory.
+	 * @return index directory
+	 */
+	public String getIndexDirectory() {
+		return indexDirectory;
+	}
+
+	/**
+	 * Setter line index directory
+	 * @param indexDirectory Directory where the line indexes are saved
+	 */
+	public void setIndexDirectory(String indexDirectory) {
+		this.indexDirectory = indexDirectory;
+	}
+
+	/**
+	 * Getter tail cache max bytes. By default 64 MiB.
+	 * @return maximum number of bytes of the last lines of the files kept in memory
+	 */
+	public long getTailCacheMaxBytes() {
+		return tailCacheMaxBytes;
+	}
+
+	/**
+	 * Setter tail cache max bytes
+	 * @param tailCacheMaxBytes Maximum number of bytes of the last lines of the files kept in memory
+	 */
+	public void setTailCacheMaxBytes(long tailCacheMaxBytes) {
+		this.tailCacheMaxBytes = tailCacheMaxBytes;
+	}
+
+	/**
+	 * Getter tail cache max tail bytes. By default 4 MiB.
+	 * @return maximum number of bytes of the last lines of a single file kept in memory
+	 */
+	public long getTailCacheMaxTailBytes() {
+		return tailCacheMaxTailBytes;
+	}
+
+	/**
+	 * Setter tail cache max tail bytes
+	 * @param tailCacheMaxTailBytes Maximum number of bytes of the last lines of a single file kept in memory
+	 */
+	public void setTailCacheMaxTailBytes(long tailCacheMaxTailBytes) {
+		this.tailCacheMaxTailBytes = tailCacheMaxTailBytes;
+	}
+
+	/**
+	 * Getter tail cache off heap. By default true.
+	 * @return true if the last lines of the files are kept out of the heap
+	 */
+	public boolean isTailCacheOffHeap() {
+		return tailCacheOffHeap;
+	}
+
+	/**
+	 * Setter tail cache off heap
+	 * @param tailCacheOffHeap Keep the last lines of the files out of the heap
+	 */
+	public void setTailCacheOffHeap(boolean tailCacheOffHeap) {
+		this.tailCacheOffHeap = tailCacheOffHeap;
+	}
+
+	/**
+	 * Getter result cache max bytes. By default 16 MiB.
+	 * @return maximum number of bytes of the lines passing the filters of the queries kept in memory
+	 */
+	public long getResultCacheMaxBytes() {
+		return resultCacheMaxBytes;
+	}
+
+	/**
+	 * Setter result cache max bytes
+	 * @param resultCacheMaxBytes Maximum number of bytes of the lines passing the filters of the queries kept in memory
+	 */
+	public void setResultCacheMaxBytes(long resultCacheMaxBytes) {
+		this.resultCacheMaxBytes = resultCacheMaxBytes;
+	}
+
+	/**
+	 * Getter result cache TTL. By default 60 seconds.
+	 * @return seconds the lines passing the filter of a query are kept since they were read
+	 */
+	public long getResultCacheTtl() {
+		return resultCacheTtl;
+	}
+
+	/**
+	 * Setter result cache TTL
+	 * @param resultCacheTtl Seconds the lines passing the filter of a query are kept since they were read
+	 */
+	public void setResultCacheTtl(long resultCacheTtl) {
+		this.resultCacheTtl = resultCacheTtl;
+	}
+
+	/**
+	 * Getter follow poll period. By default 500 milliseconds.
+	 * @return milliseconds between two polls of a file followed
+	 */
+	public long getFollowPollMillis() {
+		return followPollMillis;
+	}
+
+	/**
+	 * Setter follow poll period
+	 * @param followPollMillis Milliseconds between two polls of a file followed
+	 */
+	public void setFollowPollMillis(long followPollMillis) {
+		this.followPollMillis = followPollMillis;
+	}
+
+	/**
+	 * Getter follow buffer lines. By default 10000 lines.
+	 * @return maximum number of recent lines kept per file followed
+	 */
+	public int getFollowBufferLines() {
+		return followBufferLines;
+	}
+
+	/**
+	 * Setter follow buffer lines
+	 * @param followBufferLines Maximum number of recent lines kept per file followed
+	 */
+	public void setFollowBufferLines(int followBufferLines) {
+		this.followBufferLines = followBufferLines;
+	}
+
+	/**
+	 * Getter line index interval. By default 1000 lines.
+	 * @return number of lines between two positions indexed
+	 */
+	public int getLineIndexInterval() {
+		return lineIndexInterval;
+	}
+
+	/**
+	 * Setter line index interval
+	 * @param lineIndexInterval Number of lines between two positions indexed
+	 */
+	public void setLineIndexInterval(int lineIndexInterval) {
+		this.lineIndexInterval = lineIndexInterval;
+	}
+
+	/**
+	 * Getter timestamp pattern. By default yyyy-MM-dd HH:mm:ss.
+	 * @return pattern of the timestamps at the beginning of the lines
+	 */
+	public String getTimestampPattern() {
+		return timestampPattern;
+	}
+
+	/**
+	 * Setter timestamp pattern
+	 * @param timestampPattern Pattern of the timestamps at the beginning of the lines
+	 */
+	public void setTimestampPattern(String timestampPattern) {
+		this.timestampPattern = timestampPattern;
+	}
+
+	/**
+	 * Getter timestamp zone. By default UTC.
+	 * @return zone of the timestamps without offset
+	 */
+	public String getTimestampZone() {
+		return timestampZone;
+	}
+
+	/**
+	 * Setter timestamp zone
+	 * @param timestampZone Zone of the timestamps without offset
+	 */
+	public void setTimestampZone(String timestampZone) {
+		this.timestampZone = timestampZone;
+	}
+
+	/**
+	 * Getter keyword index enabled. By default false.
+	 * @return true if the cold files are indexed in background
+	 */
+	public boolean isKeywordIndexEnabled() {
+		return keywordIndexEnabled;
+	}
+
+	/**
+	 * Setter keyword index enabled
+	 * @param keywordIndexEnabled true to index the cold files in background
+	 */
+	public void setKeywordIndexEnabled(boolean keywordIndexEnabled) {
+		this.keywordIndexEnabled = keywordIndexEnabled;
+	}
+
+	/**
+	 * Getter keyword index block size. By default 1 MiB.
+	 * @return minimum number of bytes of a block
+	 */
+	public int getKeywordIndexBlockSize() {
+		return keywordIndexBlockSize;
+	}
+
+	/**
+	 * Setter keyword index block size
+	 * @param keywordIndexBlockSize Minimum number of bytes of a block
+	 */
+	public void setKeywordIndexBlockSize(int keywordIndexBlockSize) {
+		this.keywordIndexBlockSize = keywordIndexBlockSize;
+	}
+
+	/**
+	 * Getter cold file age. By default 600 seconds.
+	 * @return seconds without modifications since a file is cold
+	 */
+	public long getColdFileAge() {
+		return coldFileAge;
+	}
+
+	/**
+	 * Setter cold file age
+	 * @param coldFileAge Seconds without modifications since a file is cold
+	 */
+	public void setColdFileAge(long coldFileAge) {
+		this.coldFileAge = coldFileAge;
+	}
+
+	/**
+	 * Getter keyword index period. By default 300 seconds.
+	 * @return seconds between two looks for cold files
+	 */
+	public long getKeywordIndexPeriod() {
+		return keywordIndexPeriod;
+	}
+
+	/**
+	 * Setter keyword index period
+	 * @param keywordIndexPeriod Seconds between two looks for cold files
+	 */
+	public void setKeywordIndexPeriod(long keywordIndexPeriod) {
+		this.keywordIndexPeriod = keywordIndexPeriod;
+	}
+
+	/**
+	 * Getter Bloom filter enabled. By default true.
+	 * @return true if the blocks read are learned with Bloom filters
+	 */
+	public boolean isBloomFilterEnabled() {
+		return bloomFilterEnabled;
+	}
+
+	/**
+	 * Setter Bloom filter enabled
+	 * @param bloomFilterEnabled Learn the blocks read with Bloom filters
+	 */
+	public void setBloomFilterEnabled(boolean bloomFilterEnabled) {
+		this.bloomFilterEnabled = bloomFilterEnabled;
+	}
+
+	/**
+	 * Getter Bloom max blocks. By default 2048 blocks, 32 MiB.
+	 * @return maximum number of blocks with Bloom filters kept in memory
+	 */
+	public int getBloomMaxBlocks() {
+		return bloomMaxBlocks;
+	}
+
+	/**
+	 * Setter Bloom max blocks
+	 * @param bloomMaxBlocks Maximum number of blocks with Bloom filters kept in memory
+	 */
+	public void setBloomMaxBlocks(int bloomMaxBlocks) {
+		this.bloomMaxBlocks = bloomMaxBlocks;
+	}
+
 	/**
 	 * Get jersey client for REST-API requests.
 	 * @return jersey client
@@ -137,5 +521,153 @@ public class LogFilesConf extends Configuration {
 	public void setJerseyClient(JerseyClientConfiguration jerseyClient) {
 		this.jerseyClient = jerseyClient;
 	}		
+
+	/**
+	 * Get how the blocking reads are executed.
+	 * @return execution mode
+	 */
+	public ExecutorFactory.ExecutionMode getExecutionMode() {
+		return executionMode;
+	}
+
+	/**
+	 * Set how the blocking reads are executed.
+	 * @param executionMode pools or virtual-threads
+	 */
+	public void setExecutionMode(ExecutorFactory.ExecutionMode executionMode) {
+		this.executionMode = executionMode;
+	}
+
+	/**
+	 * Get the executor of the reads of the files of a directory.
+	 * @return disk executor
+	 */
+	@JsonProperty("diskExecutor")
+	public ExecutorFactory getDiskExecutor() {
+		return diskExecutor;
+	}
+
+	/**
+	 * Set the executor of the reads of the files of a directory.
+	 * @param diskExecutor Disk executor
+	 */
+	@JsonProperty("diskExecutor")
+	public void setDiskExecutor(ExecutorFactory diskExecutor) {
+		this.diskExecutor = diskExecutor;
+	}
+
+	/**
+	 * Get the executor of the requests to the other hosts.
+	 * @return remote executor
+	 */
+	@JsonProperty("remoteExecutor")
+	public ExecutorFactory getRemoteExecutor() {
+		return remoteExecutor;
+	}
+
+	/**
+	 * Set the executor of the requests to the other hosts.
+	 * @param remoteExecutor Remote executor
+	 */
+	@JsonProperty("remoteExecutor")
+	public void setRemoteExecutor(ExecutorFactory remoteExecutor) {
+		this.remoteExecutor = remoteExecutor;
+	}
+
+	/**
+	 * Getter remote host timeout. By default 2000 milliseconds.
+	 * @return milliseconds to wait for the response of another host
+	 */
+	public long getRemoteHostTimeoutMillis() {
+		return remoteHostTimeoutMillis;
+	}
+
+	/**
+	 * Setter remote host timeout
+	 * @param remoteHostTimeoutMillis Milliseconds to wait for the response of another host
+	 */
+	public void setRemoteHostTimeoutMillis(long remoteHostTimeoutMillis) {
+		this.remoteHostTimeoutMillis = remoteHostTimeoutMillis;
+	}
+
+	/**
+	 * Getter remote request timeout. By default 5000 milliseconds.
+	 * @return milliseconds to wait for the responses of all the other hosts of a request
+	 */
+	public long getRemoteRequestTimeoutMillis() {
+		return remoteRequestTimeoutMillis;
+	}
+
+	/**
+	 * Setter remote request timeout
+	 * @param remoteRequestTimeoutMillis Milliseconds to wait for the responses of all the other hosts
+	 */
+	public void setRemoteRequestTimeoutMillis(long remoteRequestTimeoutMillis) {
+		this.remoteRequestTimeoutMillis = remoteRequestTimeoutMillis;
+	}
+
+	/**
+	 * Getter remote failure threshold. By default 5 failures in a row.
+	 * @return failures in a row of another host that open its circuit
+	 */
+	public int getRemoteFailureThreshold() {
+		return remoteFailureThreshold;
+	}
+
+	/**
+	 * Setter remote failure threshold
+	 * @param remoteFailureThreshold Failures in a row of another host that open its circuit
+	 */
+	public void setRemoteFailureThreshold(int remoteFailureThreshold) {
+		this.remoteFailureThreshold = remoteFailureThreshold;
+	}
+
+	/**
+	 * Getter remote circuit open period. By default 30000 milliseconds.
+	 * @return milliseconds the circuit of another host stays open
+	 */
+	public long getRemoteCircuitOpenMillis() {
+		return remoteCircuitOpenMillis;
+	}
+
+	/**
+	 * Setter remote circuit open period
+	 * @param remoteCircuitOpenMillis Milliseconds the circuit of another host stays open
+	 */
+	public void setRemoteCircuitOpenMillis(long remoteCircuitOpenMillis) {
+		this.remoteCircuitOpenMillis = remoteCircuitOpenMillis;
+	}
+
+	/**
+	 * Getter remote minimum hedge delay. By default 50 milliseconds.
+	 * @return minimum milliseconds before a request to another host is hedged
+	 */
+	public long getRemoteMinHedgeMillis() {
+		return remoteMinHedgeMillis;
+	}
+
+	/**
+	 * Setter remote minimum hedge delay
+	 * @param remoteMinHedgeMillis Minimum milliseconds before a request to another host is hedged
+	 */
+	public void setRemoteMinHedgeMillis(long remoteMinHedgeMillis) {
+		this.remoteMinHedgeMillis = remoteMinHedgeMillis;
+	}
+
+	/**
+	 * Getter remote replicas. By default none.
+	 * @return replica of the other hosts, by host name
+	 */
+	public Map<String, String> getRemoteReplicas() {
+		return remoteReplicas;
+	}
+
+	/**
+	 * Setter remote replicas
+	 * @param remoteReplicas Replica of the other hosts, by host name
+	 */
+	public void setRemoteReplicas(Map<String, String> remoteReplicas) {
+		this.remoteReplicas = remoteReplicas;
+	}
 	
 }
@@ -1,5 +1,6 @@
 package com.logfiles.api;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
@@ -20,12 +21,13 @@ public class LogFile {
 	private LogFileBuffer fileBuffered; 
 	
 	/**
-	 * Constructor
+	 * Constructor, also used to read the files returned by other hosts.
 	 * @param host  Host where the file is found.
 	 * @param path  Directory path for the file.
 	 * @param size  File size.
 	 */
-	public LogFile(String host, String path, Long size)
+	@JsonCreator
+	public LogFile(@JsonProperty("host") String host, @JsonProperty("path") String path, @JsonProperty("size") Long size)
 	{
 		this.host = host;
 		this.path = path;
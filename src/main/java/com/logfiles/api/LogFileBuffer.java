@@ -2,6 +2,7 @@ package com.logfiles.api;
 
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
@@ -14,7 +15,13 @@ public class LogFileBuffer {
 	private long lastPosRead;
 	private List<String> lines;
 	
-	public LogFileBuffer(List<String> lines, long lastPos) {
+	/**
+	 * Constructor, also used to read the lines returned by other hosts.
+	 * @param lines    Lines read.
+	 * @param lastPos  File cursor position after read.
+	 */
+	@JsonCreator
+	public LogFileBuffer(@JsonProperty("lines") List<String> lines, @JsonProperty("lastPosRead") long lastPos) {
 		this.lines = lines;
 		this.lastPosRead = lastPos;
 	}
@@ -0,0 +1,19 @@
+package com.logfiles.backend;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Index that splits the files in blocks of lines with a summary of every block. The
+ * blocks are used to skip the ones that can not have lines passing a filter.
+ * @author alexdel
+ */
+public interface BlockIndex {
+	/**
+	 * Get the blocks of a file.
+	 * @param file  File looked.
+	 * @return blocks sorted by position, empty if the file is not indexed or the
+	 *         index does not belong to the current file anymore.
+	 */
+	List<LineBlock> getBlocks(File file);
+}
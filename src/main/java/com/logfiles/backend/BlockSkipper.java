@@ -0,0 +1,119 @@
+package com.logfiles.backend;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Skip the blocks of lines that can not pass a filter while an input stream is read.
+ * The blocks are skipped only when the input stream is just on the block boundary and
+ * the lines of the block do not exceed the number of lines to be read, then the lines
+ * returned and the last position are the same than reading every line.
+ * @author alexdel
+ */
+public class BlockSkipper {
+	/** Order to read the file */
+	private final ReadOrder order;
+	/** Position where the blocks that can be skipped start */
+	private final long starts[];
+	/** Position where the blocks that can be skipped finish */
+	private final long ends[];
+	/** Number of lines of the blocks that can be skipped */
+	private final long lines[];
+	/** Has any block been skipped? */
+	private boolean skipped;
+	/** Number of lines of the blocks skipped */
+	private long    skippedLines;
+
+	/**
+	 * Constructor
+	 * @param starts  Position where the blocks that can be skipped start.
+	 * @param ends    Position where the blocks that can be skipped finish.
+	 * @param lines   Number of lines of the blocks that can be skipped.
+	 * @param order   Order to read the file. ASC, DESC.
+	 */
+	private BlockSkipper(long starts[], long ends[], long lines[], ReadOrder order)
+	{
+		this.starts  = starts;
+		this.ends    = ends;
+		this.lines   = lines;
+		this.order   = order;
+		this.skipped = false;
+	}
+
+	/**
+	 * Create a block skipper with the blocks that can not have lines passing the filter.
+	 * @param blocks  Blocks of the file sorted by position.
+	 * @param filter  Filter applied to the lines.
+	 * @param order   Order to read the file. ASC, DESC.
+	 * @return block skipper, or null if no block can be skipped.
+	 */
+	public static BlockSkipper create(List<LineBlock> blocks, LineFilter filter, ReadOrder order)
+	{
+		long starts[] = new long[blocks.size()];
+		long ends[]   = new long[blocks.size()];
+		long lines[]  = new long[blocks.size()];
+		int  count    = 0;
+
+		for (LineBlock block : blocks)
+		{
+			if (!filter.mayMatch(block.getSummary()))
+			{
+				starts[count] = block.getStart();
+				ends[count]   = block.getEnd();
+				lines[count]  = block.getLines();
+				count++;
+			}
+		}
+
+		if (count == 0)
+		{
+			return null;
+		}
+		return new BlockSkipper(Arrays.copyOf(starts, count), Arrays.copyOf(ends, count),
+				                Arrays.copyOf(lines, count), order);
+	}
+
+	/**
+	 * Skip all the consecutive blocks that can not pass the filter from the current
+	 * position of the input stream.
+	 * @param inputStream  Input stream being read.
+	 */
+	public void skipBlocks(LogInputStream inputStream)
+	{
+		while (true)
+		{
+			long pos = inputStream.getNextLinePos();
+
+			if (pos < 0)
+			{
+				return;
+			}
+
+			/* ASC the block must start on the next line, DESC it must finish on it */
+			int i = Arrays.binarySearch(order == ReadOrder.ASC ? starts : ends, pos);
+
+			if (i < 0 || !inputStream.skipLines(order == ReadOrder.ASC ? ends[i] : starts[i], lines[i]))
+			{
+				return;
+			}
+			skipped       = true;
+			skippedLines += lines[i];
+		}
+	}
+
+	/**
+	 * Has any block been skipped?
+	 * @return true if some lines were skipped.
+	 */
+	public boolean hasSkipped() {
+		return skipped;
+	}
+
+	/**
+	 * Get the number of lines of the blocks skipped. They count as lines read.
+	 * @return number of lines skipped.
+	 */
+	public long getSkippedLines() {
+		return skippedLines;
+	}
+}
@@ -0,0 +1,16 @@
+package com.logfiles.backend;
+
+/**
+ * Summary of the bytes on a block of lines of a file. It can tell that a keyword is
+ * not on the block without reading it. It may give false positives, but never false
+ * negatives.
+ * @author alexdel
+ */
+public interface BlockSummary {
+	/**
+	 * Check if a keyword may be on the block.
+	 * @param keyword  Keyword encoded in UTF-8.
+	 * @return false only if the keyword is not on any line of the block.
+	 */
+	boolean mayContain(byte keyword[]);
+}
@@ -0,0 +1,90 @@
+package com.logfiles.backend;
+
+/**
+ * Bloom filter of the trigrams (3 consecutive bytes) of the lines of a block. A keyword
+ * of 3 or more bytes can not be on the block if some of its trigrams is not on the filter.
+ * The trigrams are taken inside every line, without CR and LF, as the keywords are looked.
+ * @author alexdel
+ */
+public class BloomBlock implements BlockSummary {
+	/**
+	 * Number of bits of the filter.
+	 */
+	public static final int BITS = 1 << 17;
+	/**
+	 * Mask to get a bit position.
+	 */
+	private static final int MASK = BITS - 1;
+	/**
+	 * Bits of the filter.
+	 */
+	private final long bits[];
+
+	/**
+	 * Constructor. Empty filter.
+	 */
+	public BloomBlock()
+	{
+		this.bits = new long[BITS / 64];
+	}
+
+	/**
+	 * Hash of a trigram. Two bit positions are taken from it.
+	 * @param trigram  3 bytes on the lowest bits.
+	 * @return hash.
+	 */
+	private static long hash(int trigram)
+	{
+		return (trigram + 1) * 0x9E3779B97F4A7C15L;
+	}
+
+	/**
+	 * Add the trigrams of a line.
+	 * @param line  Line without CR and LF.
+	 */
+	public void add(ByteSlice line)
+	{
+		byte bytes[] = line.getBytes();
+		int  end     = line.getOffset() + line.getLength();
+		int  trigram = 0;
+
+		for (int i = line.getOffset(); i < end; i++)
+		{
+			trigram = ((trigram << 8) | (bytes[i] & 0xFF)) & 0xFFFFFF;
+			if (i - line.getOffset() >= 2)
+			{
+				long h  = hash(trigram);
+				int  h1 = (int)(h >>> 47) & MASK;
+				int  h2 = (int)(h >>> 13) & MASK;
+				bits[h1 >>> 6] |= 1L << h1;
+				bits[h2 >>> 6] |= 1L << h2;
+			}
+		}
+	}
+
+	/**
+	 * The keyword may be on the block if all its trigrams are on the filter.
+	 * Keywords shorter than a trigram may be on any block.
+	 */
+	@Override
+	public boolean mayContain(byte keyword[])
+	{
+		int trigram = 0;
+
+		for (int i = 0; i < keyword.length; i++)
+		{
+			trigram = ((trigram << 8) | (keyword[i] & 0xFF)) & 0xFFFFFF;
+			if (i >= 2)
+			{
+				long h  = hash(trigram);
+				int  h1 = (int)(h >>> 47) & MASK;
+				int  h2 = (int)(h >>> 13) & MASK;
+				if ((bits[h1 >>> 6] & (1L << h1)) == 0 || (bits[h2 >>> 6] & (1L << h2)) == 0)
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,298 @@
+package com.logfiles.backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bloom filters of the blocks of lines of the files, learned while the files are read.
+ * Every file is split on slots of blockSize bytes, and the block of a slot has the lines
+ * that start on it. A block is only kept when all its lines were read, then the next
+ * filtered readings, in any order, skip the blocks that can not contain the keywords.
+ * The filters are kept in memory, for the most recently used files and up to a maximum
+ * number of blocks. They are dropped when the file is rotated, truncated or its content
+ * sampled when the learning started changes, as a file truncated and written again.
+ * @author alexdel
+ */
+public class BloomBlockIndex implements BlockIndex {
+	/**
+	 * Default number of bytes of a slot.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+	/**
+	 * Default maximum number of blocks kept in memory.
+	 */
+	public static final int DEFAULT_MAX_BLOCKS = 2048;
+	/**
+	 * Maximum number of files with blocks kept in memory.
+	 */
+	private static final int MAX_SIZE = 20;
+	/**
+	 * Number of bytes of a slot.
+	 */
+	private final int blockSize;
+	/**
+	 * Maximum number of blocks kept in memory.
+	 */
+	private final int maxBlocks;
+	/**
+	 * Number of blocks kept in memory.
+	 */
+	private final AtomicInteger numBlocks;
+	/**
+	 * Blocks of the files by canonical path.
+	 */
+	private final Map<String, FileBlooms> files;
+
+	/**
+	 * Default Constructor
+	 */
+	public BloomBlockIndex()
+	{
+		this(DEFAULT_BLOCK_SIZE, DEFAULT_MAX_BLOCKS);
+	}
+
+	/**
+	 * Constructor
+	 * @param blockSize  Number of bytes of a slot.
+	 * @param maxBlocks  Maximum number of blocks kept in memory.
+	 */
+	public BloomBlockIndex(int blockSize, int maxBlocks)
+	{
+		this.blockSize = blockSize;
+		this.maxBlocks = maxBlocks;
+		this.numBlocks = new AtomicInteger();
+		/* Removes the least recently used file with its blocks */
+		this.files = Collections
+				.synchronizedMap(new LinkedHashMap<String, FileBlooms>(MAX_SIZE, 1, true) {
+					protected boolean removeEldestEntry(Map.Entry<String, FileBlooms> eldest)
+					{
+						if (size() > MAX_SIZE)
+						{
+							numBlocks.addAndGet(-eldest.getValue().blocks.size());
+							return true;
+						}
+						return false;
+					}
+				});
+	}
+
+	/**
+	 * Blocks of a single file.
+	 */
+	static class FileBlooms {
+		/** Canonical path of the file */
+		final String path;
+		/** File key of the file */
+		final String fileKey;
+		/** Biggest size seen of the file. A smaller one means that it was truncated */
+		volatile long size;
+		/** Sample of the content of the file when the learning started */
+		final ContentSample sample;
+		/** Blocks by slot */
+		final ConcurrentSkipListMap<Long, LineBlock> blocks;
+
+		/**
+		 * Constructor
+		 * @param path     Canonical path of the file.
+		 * @param fileKey  File key of the file.
+		 * @param size     Current size of the file.
+		 * @param sample   Sample of the content of the file.
+		 */
+		FileBlooms(String path, String fileKey, long size, ContentSample sample)
+		{
+			this.path    = path;
+			this.fileKey = fileKey;
+			this.size    = size;
+			this.sample  = sample;
+			this.blocks  = new ConcurrentSkipListMap<>();
+		}
+	}
+
+	/**
+	 * Get the blocks of a file, dropping them if the file was rotated, truncated or its
+	 * content sampled changed.
+	 * @param file     File looked.
+	 * @param create   Create the blocks of the file if there are not.
+	 * @return blocks of the file, or null if there are not.
+	 * @throws IOException if file not found or forbidden
+	 */
+	private FileBlooms getFileBlooms(File file, boolean create) throws IOException
+	{
+		String path = file.getCanonicalPath();
+		BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		String fileKey      = String.valueOf(attrs.fileKey());
+		long   size         = attrs.size();
+		long   lastModified = attrs.lastModifiedTime().toMillis();
+		FileBlooms fileBlooms = files.get(path);
+
+		/* The content is sampled out of the lock, as the file is read */
+		if (fileBlooms != null && (!fileBlooms.fileKey.equals(fileKey) || size < fileBlooms.size ||
+			!fileBlooms.sample.matches(file, size, lastModified)))
+		{
+			removeFileBlooms(fileBlooms);
+			fileBlooms = null;
+		}
+		if (fileBlooms == null && !create)
+		{
+			return null;
+		}
+		ContentSample sample = fileBlooms == null ? ContentSample.read(file, size) : null;
+
+		synchronized (files)
+		{
+			fileBlooms = files.get(path);
+
+			if (fileBlooms == null)
+			{
+				if (!create)
+				{
+					return null;
+				}
+				fileBlooms = new FileBlooms(path, fileKey, size,
+						                    sample != null ? sample : ContentSample.read(file, size));
+				files.put(path, fileBlooms);
+			}
+			fileBlooms.size = Math.max(fileBlooms.size, size);
+			return fileBlooms;
+		}
+	}
+
+	/**
+	 * Drop the blocks of a file if they are still kept.
+	 * @param fileBlooms  Blocks of the file.
+	 */
+	private void removeFileBlooms(FileBlooms fileBlooms)
+	{
+		synchronized (files)
+		{
+			if (files.get(fileBlooms.path) == fileBlooms)
+			{
+				files.remove(fileBlooms.path);
+				numBlocks.addAndGet(-fileBlooms.blocks.size());
+			}
+		}
+	}
+
+	/**
+	 * Get the blocks of a file learned on previous readings.
+	 */
+	@Override
+	public List<LineBlock> getBlocks(File file)
+	{
+		try {
+			FileBlooms fileBlooms = getFileBlooms(file, false);
+
+			if (fileBlooms != null)
+			{
+				return new ArrayList<>(fileBlooms.blocks.values());
+			}
+		} catch (IOException ioe) {
+			/* Without blocks, the file is read completely */
+		}
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Start to learn the blocks of a file while it is read.
+	 * @param file     File to be read.
+	 * @param lastP    Position on the file where the reading will start.
+	 * @param ascdesc  Order to read the file. ASC, DESC.
+	 * @return recorder to give it the lines read, or null if the file can not be recorded.
+	 */
+	public BloomRecorder startRecording(File file, long lastP, ReadOrder ascdesc)
+	{
+		try {
+			FileBlooms fileBlooms = getFileBlooms(file, true);
+			long size = fileBlooms.size;
+
+			return new BloomRecorder(this, fileBlooms, ascdesc, size,
+					                 isLineBoundary(file, lastP, ascdesc, size));
+		} catch (IOException ioe) {
+			return null;
+		}
+	}
+
+	/**
+	 * Check if the reading starts on a line boundary, then the first line read is
+	 * a complete line.
+	 * @param file     File to be read.
+	 * @param lastP    Position on the file where the reading will start.
+	 * @param ascdesc  Order to read the file. ASC, DESC.
+	 * @param size     Current size of the file.
+	 * @return true if the position is just after a LF or on the file beginning.
+	 * @throws IOException if file not found or forbidden
+	 */
+	private boolean isLineBoundary(File file, long lastP, ReadOrder ascdesc, long size)
+			throws IOException
+	{
+		/* Starting on the beginning, or on the end where the last line is not recorded */
+		if (lastP <= 0 || lastP >= size)
+		{
+			return true;
+		}
+
+		try (RandomAccessFile randFile = new RandomAccessFile(file, "r"))
+		{
+			randFile.seek(lastP - 1);
+			return randFile.read() == '\n';
+		}
+	}
+
+	/**
+	 * Get the slot of a position.
+	 * @param pos  Position on the file.
+	 * @return slot.
+	 */
+	long getSlot(long pos)
+	{
+		return pos / blockSize;
+	}
+
+	/**
+	 * Get the position where a slot starts.
+	 * @param slot  Slot.
+	 * @return position.
+	 */
+	long getSlotStart(long slot)
+	{
+		return slot * blockSize;
+	}
+
+	/**
+	 * Add a block with all its lines read.
+	 * @param fileBlooms  Blocks of the file.
+	 * @param slot        Slot of the block.
+	 * @param block       Block.
+	 */
+	void addBlock(FileBlooms fileBlooms, long slot, LineBlock block)
+	{
+		synchronized (files)
+		{
+			/* The file was removed while it was read */
+			if (files.get(fileBlooms.path) != fileBlooms)
+			{
+				return;
+			}
+			if (fileBlooms.blocks.containsKey(slot))
+			{
+				fileBlooms.blocks.put(slot, block);
+			}
+			else if (numBlocks.get() < maxBlocks)
+			{
+				fileBlooms.blocks.put(slot, block);
+				numBlocks.incrementAndGet();
+			}
+			/* else no more memory for new blocks */
+		}
+	}
+}
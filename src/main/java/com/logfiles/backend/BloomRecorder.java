@@ -0,0 +1,174 @@
+package com.logfiles.backend;
+
+/**
+ * Learn the Bloom filters of the blocks of a file while it is read. The lines must be
+ * given in the reading order. A block is added to the index only when all the lines that
+ * start on its slot were read, without gaps, then every block added has the same lines
+ * no matter the order or the position where the reading started. The lines of the slots
+ * already learned, or of a slot whose first line was not read on ascendant way, are not
+ * hashed as their blocks would not be added.
+ * @author alexdel
+ */
+public class BloomRecorder {
+	/** Index where the blocks are added */
+	private final BloomBlockIndex index;
+	/** Blocks of the file read */
+	private final BloomBlockIndex.FileBlooms fileBlooms;
+	/** Order to read the file */
+	private final ReadOrder order;
+	/** File size when the reading started. Lines finishing on it can still grow */
+	private final long size;
+	/** Is the first line read a complete line? */
+	private boolean firstComplete;
+	/** Is it the first line read? */
+	private boolean firstLine;
+	/** Position where the previous line read starts, -1 if there is not */
+	private long prevStart;
+	/** Position where the previous line read finishes, -1 if there is not */
+	private long prevEnd;
+	/** Filter of the block being learned, null if there is not */
+	private BloomBlock bloom;
+	/** Slot of the block being learned */
+	private long slot;
+	/** Position where the block being learned starts */
+	private long blockStart;
+	/** Position where the block being learned finishes */
+	private long blockEnd;
+	/** Number of lines of the block being learned */
+	private long blockLines;
+	/** Has the first line of the slot been read? */
+	private boolean hasFirst;
+	/** Has the last line of the slot been read? */
+	private boolean hasLast;
+
+	/**
+	 * Constructor
+	 * @param index          Index where the blocks are added.
+	 * @param fileBlooms     Blocks of the file read.
+	 * @param order          Order to read the file.
+	 * @param size           File size when the reading started.
+	 * @param firstComplete  Is the first line read a complete line?
+	 */
+	BloomRecorder(BloomBlockIndex index, BloomBlockIndex.FileBlooms fileBlooms, ReadOrder order,
+			      long size, boolean firstComplete)
+	{
+		this.index         = index;
+		this.fileBlooms    = fileBlooms;
+		this.order         = order;
+		this.size          = size;
+		this.firstComplete = firstComplete;
+		this.firstLine     = true;
+		this.prevStart     = -1;
+		this.prevEnd       = -1;
+		this.bloom         = null;
+	}
+
+	/**
+	 * Record a line read.
+	 * @param pos      Position of the line before reading it, {@link LogInputStream#getNextLinePos()}.
+	 * @param lastPos  Position after reading the line, {@link LogInputStream#getLastPos()}.
+	 * @param line     Line read without CR and LF.
+	 */
+	public void record(long pos, long lastPos, ByteSlice line)
+	{
+		long start = order == ReadOrder.ASC ? pos : lastPos;
+		long end   = order == ReadOrder.ASC ? lastPos : pos;
+		boolean first = firstLine;
+
+		firstLine = false;
+
+		/* A piece of line, or a line that can still grow, is not recorded */
+		if ((first && !firstComplete) || start < 0 || end >= size)
+		{
+			bloom     = null;
+			prevStart = -1;
+			prevEnd   = -1;
+			return;
+		}
+
+		boolean contiguous = prevEnd >= 0 &&
+				             (order == ReadOrder.ASC ? start == prevEnd : end == prevStart);
+		long lineSlot = index.getSlot(start);
+
+		if (bloom != null && (!contiguous || lineSlot != slot))
+		{
+			if (contiguous)
+			{
+				/* On descendant way the line before the block has been read */
+				if (order == ReadOrder.DESC)
+				{
+					hasFirst = true;
+				}
+				commit();
+			}
+			bloom = null;
+		}
+
+		if (bloom == null)
+		{
+			LineBlock prevBlock = fileBlooms.blocks.get(lineSlot - 1);
+			/* On ascendant way the line before has been read, or the previous
+			 * block finishes just on this line */
+			boolean   slotFirst = (order == ReadOrder.ASC && contiguous) ||
+					              (prevBlock != null && prevBlock.getEnd() == start) ||
+					              start == index.getSlotStart(lineSlot);
+
+			/* Nothing to learn, the slot has its block or it can not be completed */
+			if (fileBlooms.blocks.containsKey(lineSlot) || (order == ReadOrder.ASC && !slotFirst))
+			{
+				prevStart = start;
+				prevEnd   = end;
+				return;
+			}
+
+			bloom      = new BloomBlock();
+			slot       = lineSlot;
+			blockStart = start;
+			blockEnd   = end;
+			blockLines = 0;
+			hasFirst   = slotFirst;
+			hasLast    = false;
+		}
+
+		bloom.add(line);
+		blockLines++;
+		blockStart = Math.min(blockStart, start);
+		blockEnd   = Math.max(blockEnd, end);
+
+		if (start == index.getSlotStart(slot))
+		{
+			hasFirst = true;
+		}
+		/* The next line starts on a later slot */
+		if (end >= index.getSlotStart(slot + 1))
+		{
+			hasLast = true;
+		}
+
+		prevStart = start;
+		prevEnd   = end;
+	}
+
+	/**
+	 * Finish the recording. The last block is added if it is complete.
+	 */
+	public void finish()
+	{
+		if (bloom != null)
+		{
+			commit();
+			bloom = null;
+		}
+	}
+
+	/**
+	 * Add the block being learned if all the lines of its slot were read.
+	 */
+	private void commit()
+	{
+		if (hasFirst && hasLast)
+		{
+			index.addBlock(fileBlooms, slot, new LineBlock(blockStart, blockEnd, blockLines, bloom));
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.logfiles.backend;
+
+import java.nio.charset.Charset;
+
+/**
+ * Range of bytes inside a buffer. It is used to hand out the lines read by a
+ * {@link LogInputStream} without copying or decoding them. The slice is only valid
+ * until the next line is read from the input stream.
+ * @author alexdel
+ */
+public class ByteSlice {
+	/**
+	 * Buffer that contains the bytes.
+	 */
+	private byte bytes[];
+	/**
+	 * Position on buffer where the slice start.
+	 */
+	private int  offset;
+	/**
+	 * Number of bytes on the slice.
+	 */
+	private int  length;
+
+	/**
+	 * Default Constructor. Empty slice.
+	 */
+	public ByteSlice()
+	{
+		this.bytes  = new byte[0];
+		this.offset = 0;
+		this.length = 0;
+	}
+
+	/**
+	 * Constructor
+	 * @param bytes   Buffer that contains the bytes.
+	 * @param offset  Position on buffer where the slice start.
+	 * @param length  Number of bytes on the slice.
+	 */
+	public ByteSlice(byte bytes[], int offset, int length)
+	{
+		set(bytes, offset, length);
+	}
+
+	/**
+	 * Point the slice to a new range of bytes.
+	 * @param bytes   Buffer that contains the bytes.
+	 * @param offset  Position on buffer where the slice start.
+	 * @param length  Number of bytes on the slice.
+	 */
+	public void set(byte bytes[], int offset, int length)
+	{
+		this.bytes  = bytes;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * Getter buffer
+	 * @return buffer that contains the bytes.
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Getter offset
+	 * @return position on buffer where the slice start.
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Getter length
+	 * @return number of bytes on the slice.
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Decode the bytes on the slice.
+	 * @param charset Charset used to decode the bytes.
+	 * @return String decoded.
+	 */
+	public String toString(Charset charset) {
+		return new String(bytes, offset, length, charset);
+	}
+}
@@ -0,0 +1,140 @@
+package com.logfiles.backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+/**
+ * Sample of the content of a file up to a position: the CRC32 of its first bytes and of
+ * the last bytes before the position. The blocks learned or indexed over a file keep the
+ * sample of the bytes they cover, then a file truncated and written again, even up to a bigger
+ * size, or rewritten in place, is not taken for the file learned: the bytes sampled
+ * changed. The sample is immutable and it can be shared between threads.
+ * @author alexdel
+ */
+final class ContentSample {
+	/**
+	 * Number of bytes sampled on the beginning and on the end.
+	 */
+	static final int SAMPLE_BYTES = 4096;
+	/**
+	 * Position until the file is sampled.
+	 */
+	private final long length;
+	/**
+	 * CRC32 of the first bytes.
+	 */
+	private final long head;
+	/**
+	 * CRC32 of the last bytes before length.
+	 */
+	private final long tail;
+	/**
+	 * Last version of the file, size and last modification time, that matched the sample.
+	 * The same version is not read again.
+	 */
+	private volatile long matched[];
+
+	/**
+	 * Constructor
+	 * @param length  Position until the file is sampled.
+	 * @param head    CRC32 of the first bytes.
+	 * @param tail    CRC32 of the last bytes before length.
+	 */
+	ContentSample(long length, long head, long tail)
+	{
+		this.length  = length;
+		this.head    = head;
+		this.tail    = tail;
+		this.matched = new long[] {-1, -1};
+	}
+
+	/**
+	 * Read the sample of a file.
+	 * @param file    File sampled.
+	 * @param length  Position until the file is sampled, not beyond its size.
+	 * @return sample.
+	 * @throws IOException if file not found or forbidden
+	 */
+	static ContentSample read(File file, long length) throws IOException
+	{
+		try (RandomAccessFile randFile = new RandomAccessFile(file, "r"))
+		{
+			return new ContentSample(length, crc(randFile, 0, Math.min(length, SAMPLE_BYTES)),
+					                 crc(randFile, Math.max(0, length - SAMPLE_BYTES), length));
+		}
+	}
+
+	/**
+	 * Get the CRC32 of a range of bytes.
+	 * @param randFile  File sampled.
+	 * @param start     Position of the first byte.
+	 * @param end       Position after the last byte.
+	 * @return CRC32, or -1 if the file finishes before end.
+	 * @throws IOException if the file can not be read
+	 */
+	private static long crc(RandomAccessFile randFile, long start, long end) throws IOException
+	{
+		byte  bytes[] = new byte[(int)(end - start)];
+		CRC32 crc     = new CRC32();
+
+		if (randFile.length() < end)
+		{
+			return -1;
+		}
+		randFile.seek(start);
+		randFile.readFully(bytes);
+		crc.update(bytes, 0, bytes.length);
+		return crc.getValue();
+	}
+
+	/**
+	 * Check if a file still has the bytes sampled. A file smaller than the position
+	 * sampled was truncated.
+	 * @param file          File looked.
+	 * @param size          Current size of the file.
+	 * @param lastModified  Current last modification time of the file.
+	 * @return true if the bytes sampled did not change.
+	 * @throws IOException if file not found or forbidden
+	 */
+	boolean matches(File file, long size, long lastModified) throws IOException
+	{
+		long version[] = matched;
+
+		if (size < length)
+		{
+			return false;
+		}
+		if (version[0] == size && version[1] == lastModified)
+		{
+			return true;
+		}
+
+		ContentSample current = read(file, length);
+		if (current.head != head || current.tail != tail)
+		{
+			return false;
+		}
+		matched = new long[] {size, lastModified};
+		return true;
+	}
+
+	/**
+	 * Get the CRC32 of the first bytes.
+	 * @return CRC32.
+	 */
+	long getHead()
+	{
+		return head;
+	}
+
+	/**
+	 * Get the CRC32 of the last bytes before the position sampled.
+	 * @return CRC32.
+	 */
+	long getTail()
+	{
+		return tail;
+	}
+}
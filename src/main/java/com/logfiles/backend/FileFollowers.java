@@ -0,0 +1,219 @@
+package com.logfiles.backend;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Followers of the files, they receive the lines appended to the files while they follow
+ * them. There is a single watcher per file, shared by all its followers: the file is kept
+ * open and polled every period, and the lines appended are read once and written on a ring
+ * of recent lines. Every follower takes the lines from the ring with its own cursor and
+ * filter, then the disk reads do not depend on the number of followers, and a slow follower
+ * skips ahead instead of holding up the others. The watcher is closed with its last follower.
+ * The files are polled instead of being watched with a WatchService because the watch
+ * services are not available on every file system (NFS) and they report the changes of the
+ * directory, not of the file open: a poll is a single stat per file followed, and it sees
+ * the truncations and rotations the same way.
+ * @author alexdel
+ */
+public class FileFollowers implements Closeable {
+	/**
+	 * Default milliseconds between two polls of a file followed.
+	 */
+	public static final long DEFAULT_POLL_MILLIS = 500;
+	/**
+	 * Default maximum number of recent lines kept per file followed.
+	 */
+	public static final int DEFAULT_BUFFER_LINES = 10000;
+	/**
+	 * Scheduler of the polls.
+	 */
+	private final ScheduledExecutorService scheduler;
+	/**
+	 * Milliseconds between two polls of a file followed.
+	 */
+	private final long pollMillis;
+	/**
+	 * Maximum number of recent lines kept per file followed.
+	 */
+	private final int bufferLines;
+	/**
+	 * Watchers of the files followed by canonical path.
+	 */
+	private final Map<String, FileWatcher> watchers = new HashMap<>();
+	/**
+	 * Number of followers.
+	 */
+	private int numFollowers;
+	/**
+	 * Number of lines lost by the followers too slow.
+	 */
+	private final AtomicLong skippedLines = new AtomicLong();
+
+	/**
+	 * Default Constructor. The files are polled by a daemon thread of its own.
+	 */
+	public FileFollowers()
+	{
+		this(Executors.newSingleThreadScheduledExecutor(FileFollowers::newDaemonThread),
+			 DEFAULT_POLL_MILLIS, DEFAULT_BUFFER_LINES);
+	}
+
+	/**
+	 * Constructor
+	 * @param scheduler       Scheduler of the polls.
+	 * @param pollMillis      Milliseconds between two polls of a file followed.
+	 * @param bufferLines  Maximum number of recent lines kept per file followed. A follower
+	 *                     left behind by more lines skips ahead.
+	 */
+	public FileFollowers(ScheduledExecutorService scheduler, long pollMillis, int bufferLines)
+	{
+		this.scheduler   = scheduler;
+		this.pollMillis  = pollMillis;
+		this.bufferLines = bufferLines;
+	}
+
+	/**
+	 * Follow a file. The events start after the last complete line of the file, or after
+	 * the last line read by the watcher if the file was already followed.
+	 * @param file  File followed.
+	 * @param p     Predicate to filter the lines appended.
+	 * @return follower, to be closed when the file is not followed anymore.
+	 * @throws IOException if file not found or forbidden
+	 */
+	public Follower follow(File file, Predicate<String> p) throws IOException
+	{
+		return follow(file, p, -1);
+	}
+
+	/**
+	 * Follow a file from a position. If the lines after the position are still on the
+	 * ring of the watcher the events start on it, otherwise they start after the last
+	 * line read and the lines before must be read from the file.
+	 * @param file      File followed.
+	 * @param p         Predicate to filter the lines appended.
+	 * @param startPos  Position on the file after a line, -1 to start after the last one.
+	 * @return follower, to be closed when the file is not followed anymore.
+	 * @throws IOException if file not found or forbidden
+	 */
+	public synchronized Follower follow(File file, Predicate<String> p, long startPos) throws IOException
+	{
+		String      path    = file.getCanonicalPath();
+		FileWatcher watcher = watchers.get(path);
+
+		if (watcher == null)
+		{
+			final FileWatcher created = new FileWatcher(file, bufferLines);
+			created.setTask(scheduler.scheduleWithFixedDelay(created::poll, pollMillis, pollMillis,
+					                                         TimeUnit.MILLISECONDS));
+			watchers.put(path, created);
+			watcher = created;
+		}
+
+		Follower follower = new Follower(this, watcher, p);
+		watcher.add(follower, startPos);
+		numFollowers++;
+		return follower;
+	}
+
+	/**
+	 * Stop following a file. The watcher is closed if it was the last follower.
+	 * @param follower  Follower.
+	 */
+	synchronized void unfollow(Follower follower)
+	{
+		FileWatcher watcher = follower.getWatcher();
+
+		/* The watcher was already closed */
+		if (!watchers.containsValue(watcher))
+		{
+			return;
+		}
+		numFollowers--;
+		if (watcher.remove() == 0)
+		{
+			watchers.values().remove(watcher);
+			watcher.close();
+		}
+	}
+
+	/**
+	 * Count the lines lost by a follower too slow.
+	 * @param numLines  Number of lines lost.
+	 */
+	void recordSkipped(long numLines)
+	{
+		skippedLines.addAndGet(numLines);
+	}
+
+	/**
+	 * Close all the watchers, the followers receive a closed event.
+	 */
+	@Override
+	public synchronized void close()
+	{
+		for (FileWatcher watcher : watchers.values())
+		{
+			watcher.close();
+		}
+		watchers.clear();
+		numFollowers = 0;
+	}
+
+	/**
+	 * Create the daemon thread polling the files, it does not hold up the shutdown.
+	 * @param r  Task of the thread.
+	 * @return thread.
+	 */
+	private static Thread newDaemonThread(Runnable r)
+	{
+		Thread thread = new Thread(r, "file-followers");
+
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * Register the metrics of the followers: number of followers, files followed and lines
+	 * lost by the followers too slow.
+	 * @param registry  Registry of the metrics.
+	 */
+	public void registerMetrics(MetricRegistry registry)
+	{
+		registry.register(MetricRegistry.name(FileFollowers.class, "followers"),
+				          (Gauge<Integer>)this::getNumFollowers);
+		registry.register(MetricRegistry.name(FileFollowers.class, "files"),
+				          (Gauge<Integer>)this::getNumFiles);
+		registry.register(MetricRegistry.name(FileFollowers.class, "skipped-lines"),
+				          (Gauge<Long>)skippedLines::get);
+	}
+
+	/**
+	 * Get the number of followers.
+	 * @return number of followers.
+	 */
+	public synchronized int getNumFollowers()
+	{
+		return numFollowers;
+	}
+
+	/**
+	 * Get the number of files followed, one watcher each.
+	 * @return number of files.
+	 */
+	public synchronized int getNumFiles()
+	{
+		return watchers.size();
+	}
+}
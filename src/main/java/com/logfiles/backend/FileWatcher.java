@@ -0,0 +1,362 @@
+package com.logfiles.backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watcher of a file followed, shared by all its followers. It keeps the file open and it
+ * is polled to read the lines appended since the last poll, once for all the followers,
+ * and to write them on a ring of recent lines where every follower takes them.
+ * Only complete lines are handed out, a line being written is read when its line
+ * terminator is appended. The watcher follows the path, not the open file:
+ * 1. If the file is truncated, the lines are read again from its beginning.
+ * 2. If the file is rotated, another file on the path, the rest of the previous file is
+ *    read and then the lines are read from the beginning of the new one.
+ * @author alexdel
+ */
+final class FileWatcher {
+	/**
+	 * Logger of the failures polling the file.
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(FileWatcher.class);
+	/**
+	 * Bytes read from the file at once.
+	 */
+	private static final int READ_SIZE = 64 * 1024;
+	/**
+	 * File followed.
+	 */
+	private final File file;
+	/**
+	 * Recent lines and changes of the file, read by the followers.
+	 */
+	private final LineRing ring;
+	/**
+	 * Number of followers.
+	 */
+	private int numFollowers;
+	/**
+	 * File open, the one on the path when it was open.
+	 */
+	private RandomAccessFile raf;
+	/**
+	 * File key (inode) of the file open.
+	 */
+	private String fileKey;
+	/**
+	 * Position on the file after the last complete line read.
+	 */
+	private long pos;
+	/**
+	 * Position on the file after the last byte read.
+	 */
+	private long readPos;
+	/**
+	 * Buffer of the bytes read.
+	 */
+	private final byte buffer[] = new byte[READ_SIZE];
+	/**
+	 * Bytes of the line being read, not finished yet.
+	 */
+	private byte pending[] = new byte[256];
+	/**
+	 * Number of bytes of the line being read.
+	 */
+	private int pendingLength;
+	/**
+	 * Task polling the watcher, null if it is not scheduled.
+	 */
+	private ScheduledFuture<?> task;
+	/**
+	 * The watcher was closed, it is not polled anymore.
+	 */
+	private boolean closed;
+	/**
+	 * The last poll failed, the failure was already logged.
+	 */
+	private boolean failing;
+
+	/**
+	 * Constructor. The file is open at the beginning of its last line.
+	 * @param file         File followed.
+	 * @param bufferLines  Maximum number of recent lines kept for the followers.
+	 * @throws IOException if file not found or forbidden
+	 */
+	FileWatcher(File file, int bufferLines) throws IOException
+	{
+		this.file = file;
+		this.ring = new LineRing(bufferLines);
+		open(Files.readAttributes(file.toPath(), BasicFileAttributes.class));
+		this.pos     = findLastLineStart();
+		this.readPos = pos;
+	}
+
+	/**
+	 * Get the file followed.
+	 * @return file.
+	 */
+	File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Set the task polling the watcher.
+	 * @param task  Task scheduled.
+	 */
+	void setTask(ScheduledFuture<?> task)
+	{
+		this.task = task;
+	}
+
+	/**
+	 * Get the ring of recent lines.
+	 * @return ring.
+	 */
+	LineRing getRing()
+	{
+		return ring;
+	}
+
+	/**
+	 * Add a follower. Its events start on a position if the lines after it are still on
+	 * the ring, otherwise after the last complete line read.
+	 * @param follower  Follower.
+	 * @param startPos  Position on the file after a line, or -1 to start after the last one.
+	 */
+	synchronized void add(Follower follower, long startPos)
+	{
+		long seq = startPos >= 0 && startPos != pos ? ring.find(startPos) : -1;
+
+		if (seq >= 0)
+		{
+			follower.start(seq, startPos);
+		}
+		else
+		{
+			follower.start(ring.getHead(), pos);
+		}
+		numFollowers++;
+	}
+
+	/**
+	 * Remove a follower.
+	 * @return number of followers left.
+	 */
+	synchronized int remove()
+	{
+		return --numFollowers;
+	}
+
+	/**
+	 * Read the lines appended since the last poll and write them on the ring.
+	 * Before, the file is checked for truncation, and after, for rotation.
+	 */
+	synchronized void poll()
+	{
+		if (closed)
+		{
+			return;
+		}
+		try
+		{
+			if (raf.length() < readPos)
+			{
+				/* Truncated, the line being read is lost */
+				pos           = 0;
+				readPos       = 0;
+				pendingLength = 0;
+				fire(FollowEvent.Type.TRUNCATED);
+			}
+			readAppended();
+
+			BasicFileAttributes attrs;
+			try
+			{
+				attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+			}
+			catch (NoSuchFileException nsfe)
+			{
+				/* Rotated, the new file is not created yet */
+				failing = false;
+				return;
+			}
+			if (!String.valueOf(attrs.fileKey()).equals(fileKey))
+			{
+				/* Rotated, the lines appended to the previous file since it was read are
+				 * read before, and the line being read on it is lost. The previous file is
+				 * kept open until the new one can be read */
+				readAppended();
+				RandomAccessFile previous = raf;
+				open(attrs);
+				previous.close();
+				pos           = 0;
+				readPos       = 0;
+				pendingLength = 0;
+				fire(FollowEvent.Type.ROTATED);
+				readAppended();
+			}
+			if (failing)
+			{
+				LOGGER.info("Polling {} again", file);
+				failing = false;
+			}
+		}
+		catch (IOException ioe)
+		{
+			/* The next poll tries again, the failure is logged once until a poll succeeds */
+			if (!failing)
+			{
+				LOGGER.warn("Polling {} failed, it is tried again on the next poll", file, ioe);
+				failing = true;
+			}
+		}
+	}
+
+	/**
+	 * Close the watcher, the followers left receive a closed event after the lines left.
+	 */
+	synchronized void close()
+	{
+		if (task != null)
+		{
+			task.cancel(false);
+		}
+		ring.close();
+		numFollowers = 0;
+		closed = true;
+		try
+		{
+			raf.close();
+		}
+		catch (IOException ioe)
+		{
+			/* Nothing else to release */
+		}
+	}
+
+	/**
+	 * Open the file on the path.
+	 * @param attrs  Attributes of the file.
+	 * @throws IOException if file not found or forbidden
+	 */
+	private void open(BasicFileAttributes attrs) throws IOException
+	{
+		raf     = new RandomAccessFile(file, "r");
+		fileKey = String.valueOf(attrs.fileKey());
+	}
+
+	/**
+	 * Find the beginning of the last line of the file, it can be still being written.
+	 * @return position after the last line terminator, 0 if there is not.
+	 * @throws IOException if the file can not be read
+	 */
+	private long findLastLineStart() throws IOException
+	{
+		long end = raf.length();
+
+		while (end > 0)
+		{
+			int length = (int)Math.min(buffer.length, end);
+
+			raf.seek(end - length);
+			raf.readFully(buffer, 0, length);
+			for (int i = length - 1; i >= 0; i--)
+			{
+				if (buffer[i] == '\n')
+				{
+					return end - length + i + 1;
+				}
+			}
+			end -= length;
+		}
+		return 0;
+	}
+
+	/**
+	 * Read the bytes appended since the last byte read and hand out the complete lines.
+	 * @throws IOException if the file can not be read
+	 */
+	private void readAppended() throws IOException
+	{
+		long size = raf.length();
+
+		raf.seek(readPos);
+		while (readPos < size)
+		{
+			int read = raf.read(buffer, 0, (int)Math.min(buffer.length, size - readPos));
+			if (read <= 0)
+			{
+				break;
+			}
+
+			int lineStart = 0;
+			for (int i = 0; i < read; i++)
+			{
+				if (buffer[i] == '\n')
+				{
+					appendPending(lineStart, i);
+					pos = readPos + i + 1;
+					fireLine();
+					pendingLength = 0;
+					lineStart     = i + 1;
+				}
+			}
+			appendPending(lineStart, read);
+			readPos += read;
+			/* The followers take the lines of every block read */
+			ring.publish();
+		}
+	}
+
+	/**
+	 * Append bytes of the buffer to the line being read.
+	 * @param from  First byte on the buffer.
+	 * @param to    Byte after the last one on the buffer.
+	 */
+	private void appendPending(int from, int to)
+	{
+		int length = to - from;
+
+		if (pendingLength + length > pending.length)
+		{
+			pending = Arrays.copyOf(pending, Math.max(pendingLength + length, 2 * pending.length));
+		}
+		System.arraycopy(buffer, from, pending, pendingLength, length);
+		pendingLength += length;
+	}
+
+	/**
+	 * Write the line read on the ring, as raw bytes. The followers filter it.
+	 */
+	private void fireLine()
+	{
+		int length = pendingLength;
+
+		/* Same line terminators than the input streams, LF or CR LF */
+		if (length > 0 && pending[length - 1] == '\r')
+		{
+			length--;
+		}
+		ring.add(new FollowEvent(FollowEvent.Type.LINE, Arrays.copyOf(pending, length), pos));
+	}
+
+	/**
+	 * Write a change of the file on the ring and wake up the followers.
+	 * @param type  Type of change, TRUNCATED or ROTATED.
+	 */
+	private void fire(FollowEvent.Type type)
+	{
+		ring.add(new FollowEvent(type, null, 0));
+		ring.publish();
+	}
+}
@@ -0,0 +1,91 @@
+package com.logfiles.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Predicate to filter a line with several filters. The line must pass all of them.
+ * The filters are tested in the order given, then the cheapest ones should be first.
+ * @author alexdel
+ *
+ */
+public class FilterAllOf implements LineFilter {
+
+	private List<LineFilter> filters;
+
+	/**
+	 * Constructor
+	 * @param filters filters that the line must pass
+	 */
+	public FilterAllOf(List<LineFilter> filters) {
+		super();
+		this.filters = new ArrayList<>(filters);
+	}
+
+	/**
+	 * Override test method to implements that the line pass all the filters.
+	 * @param line  Line to be filtered.
+	 */
+	@Override
+	public boolean test(String line) {
+		for (LineFilter filter : filters)
+		{
+			if (!filter.test(line))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Test that the raw line pass all the filters.
+	 * @param line  Line to be filtered.
+	 */
+	@Override
+	public boolean test(ByteSlice line) {
+		for (LineFilter filter : filters)
+		{
+			if (!filter.test(line))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check if some line of the block may pass all the filters.
+	 * @param block  Summary of the block.
+	 */
+	@Override
+	public boolean mayMatch(BlockSummary block) {
+		for (LineFilter filter : filters)
+		{
+			if (!filter.mayMatch(block))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get the fingerprint of all the filters, null if any of them can not be identified.
+	 */
+	@Override
+	public String getFingerprint() {
+		StringBuilder fingerprint = new StringBuilder("allOf");
+		for (LineFilter filter : filters)
+		{
+			String part = filter.getFingerprint();
+			if (part == null)
+			{
+				return null;
+			}
+			fingerprint.append(':').append(part.length()).append(':').append(part);
+		}
+		return fingerprint.toString();
+	}
+
+}
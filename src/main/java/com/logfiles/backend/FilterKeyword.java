@@ -1,15 +1,15 @@
 package com.logfiles.backend;
 
-import java.util.function.Predicate;
-
 /**
  * Predicate to filter a line with the keyword specified.
  * @author alexdel
  *
  */
-public class FilterKeyword implements Predicate<String>{
+public class FilterKeyword implements LineFilter {
 
 	private String keyword;
+	/** Matcher to look for the keyword over the raw line */
+	private KeywordMatcher matcher;
 	
 	
 	/**
@@ -19,6 +19,7 @@ public class FilterKeyword implements Predicate<String>{
 	public FilterKeyword(String keyword) {
 		super();
 		this.keyword = keyword;
+		this.matcher = new KeywordMatcher(keyword);
 	}	
 	
 	/**
@@ -31,4 +32,31 @@ public class FilterKeyword implements Predicate<String>{
 		return line.contains(keyword);
 	}
 
+	/**
+	 * Test that the raw line contains the keyword encoded in UTF-8.
+	 * @param line  Line to be filtered.
+	 */
+	@Override
+	public boolean test(ByteSlice line) {
+		return matcher.matches(line);
+	}
+
+	/**
+	 * Check if the keyword may be on the block.
+	 * @param block  Summary of the block.
+	 */
+	@Override
+	public boolean mayMatch(BlockSummary block) {
+		return block.mayContain(matcher.getKeyword());
+	}
+
+	/**
+	 * Get the fingerprint of the keyword. The empty keyword passes all the lines, they
+	 * are the last lines of the file kept on the tail cache.
+	 */
+	@Override
+	public String getFingerprint() {
+		return keyword.isEmpty() ? null : "keyword:" + keyword;
+	}
+
 }
@@ -0,0 +1,90 @@
+package com.logfiles.backend;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Predicate to filter a line with several keywords. All the keywords are looked
+ * in a single pass over the line.
+ * @author alexdel
+ *
+ */
+public class FilterKeywords implements LineFilter {
+
+	private List<String>    keywords;
+	/** Keywords encoded in UTF-8 */
+	private List<byte[]>    encoded;
+	/** ANY or ALL keywords must be on the line */
+	private MatchMode       mode;
+	/** Matcher to look for the keywords over the raw line */
+	private KeywordsMatcher matcher;
+
+	/**
+	 * Constructor
+	 * @param keywords keywords to filter. At most {@link KeywordsMatcher#MAX_KEYWORDS}.
+	 * @param mode     ANY or ALL keywords must be on the line
+	 */
+	public FilterKeywords(List<String> keywords, MatchMode mode) {
+		super();
+		this.keywords = new ArrayList<>(keywords);
+		this.encoded  = new ArrayList<>();
+		for (String keyword : keywords)
+		{
+			this.encoded.add(keyword.getBytes(StandardCharsets.UTF_8));
+		}
+		this.mode     = mode;
+		this.matcher  = new KeywordsMatcher(this.keywords);
+	}
+
+	/**
+	 * Override test method to implements that the line contains
+	 * any or all the keywords.
+	 * @param line  Line to be filtered.
+	 */
+	@Override
+	public boolean test(String line) {
+		if (mode == MatchMode.ANY)
+		{
+			return keywords.stream().anyMatch(line::contains);
+		}
+		return keywords.stream().allMatch(line::contains);
+	}
+
+	/**
+	 * Test that the raw line contains any or all the keywords encoded in UTF-8.
+	 * @param line  Line to be filtered.
+	 */
+	@Override
+	public boolean test(ByteSlice line) {
+		return matcher.matches(line, mode);
+	}
+
+	/**
+	 * Check if any or all the keywords may be on the block.
+	 * @param block  Summary of the block.
+	 */
+	@Override
+	public boolean mayMatch(BlockSummary block) {
+		if (mode == MatchMode.ANY)
+		{
+			return encoded.stream().anyMatch(block::mayContain);
+		}
+		return encoded.stream().allMatch(block::mayContain);
+	}
+
+	/**
+	 * Get the fingerprint of the mode and the keywords. Every keyword goes with its
+	 * length, then keywords with the separator inside are not mistaken.
+	 */
+	@Override
+	public String getFingerprint() {
+		StringBuilder fingerprint = new StringBuilder("keywords:").append(mode);
+		for (String keyword : keywords)
+		{
+			fingerprint.append(':').append(keyword.length()).append(':').append(keyword);
+		}
+		return fingerprint.toString();
+	}
+
+}
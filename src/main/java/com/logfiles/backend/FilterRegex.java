@@ -0,0 +1,78 @@
+package com.logfiles.backend;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Predicate to filter a line with a regular expression. The expression is compiled
+ * once and the compiled patterns are cached to be reused by next requests.
+ * @author alexdel
+ *
+ */
+public class FilterRegex implements LineFilter {
+
+	/** Maximum number of compiled patterns cached */
+	private static final int MAX_SIZE = 100;
+	/** Compiled patterns cached by regular expression, the least recently used is removed */
+	private static final Map<String, Pattern> cachePatterns = Collections
+			.synchronizedMap(new LinkedHashMap<String, Pattern>(MAX_SIZE, 1, true) {
+				protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest)
+				{
+					return size() > MAX_SIZE;
+				}
+			});
+
+	private Pattern pattern;
+
+	/**
+	 * Constructor
+	 * @param regex regular expression to filter
+	 * @throws java.util.regex.PatternSyntaxException if the expression is not valid
+	 */
+	public FilterRegex(String regex) {
+		super();
+		this.pattern = compile(regex);
+	}
+
+	/**
+	 * Compile a regular expression, or get it from the cache if it was already compiled.
+	 * The expressions validated with it are not compiled again by the filter.
+	 * @param regex  Regular expression.
+	 * @return compiled pattern.
+	 * @throws java.util.regex.PatternSyntaxException if the expression is not valid
+	 */
+	public static Pattern compile(String regex) {
+		return cachePatterns.computeIfAbsent(regex, Pattern::compile);
+	}
+
+	/**
+	 * Override test method to implements that some part of the line matches
+	 * the regular expression.
+	 * @param line  Line to be filtered.
+	 */
+	@Override
+	public boolean test(String line) {
+		return pattern.matcher(line).find();
+	}
+
+	/**
+	 * Test the raw line. The line needs to be decoded to apply the regular expression.
+	 * @param line  Line to be filtered.
+	 */
+	@Override
+	public boolean test(ByteSlice line) {
+		return test(line.toString(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Get the fingerprint of the regular expression.
+	 */
+	@Override
+	public String getFingerprint() {
+		return "regex:" + pattern.pattern();
+	}
+
+}
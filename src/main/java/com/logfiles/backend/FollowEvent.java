@@ -0,0 +1,137 @@
+package com.logfiles.backend;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
+
+/**
+ * Event of a file followed: a line appended, a change of the file that breaks the sequence
+ * of lines, or lines lost by a follower too slow.
+ * The lines are kept as raw bytes, they are filtered over them and decoded once, when a
+ * follower takes the first line that passes its filter.
+ * The events are immutable and they can be shared between threads.
+ * @author alexdel
+ */
+public final class FollowEvent {
+	/**
+	 * Type of event.
+	 */
+	public enum Type {
+		/** Line appended to the file */
+		LINE,
+		/** The file was truncated, the next lines are read from its beginning */
+		TRUNCATED,
+		/** The file was replaced by a new one, the next lines are read from its beginning */
+		ROTATED,
+		/** The follower was too slow, some lines were lost and it skipped ahead */
+		SKIPPED,
+		/** The follower was closed, no more events */
+		CLOSED
+	}
+
+	/**
+	 * Type of event.
+	 */
+	private final Type   type;
+	/**
+	 * Line appended encoded in UTF-8, null for the other events.
+	 */
+	private final byte   bytes[];
+	/**
+	 * Line decoded, null until it is taken.
+	 */
+	private volatile String line;
+	/**
+	 * Position on the file after the event: after the line, 0 if the file was truncated
+	 * or rotated, or where the lines lost start.
+	 */
+	private final long   pos;
+	/**
+	 * Number of lines lost, only for skipped events.
+	 */
+	private final long   numSkipped;
+
+	/**
+	 * Constructor
+	 * @param type   Type of event.
+	 * @param bytes  Line appended encoded in UTF-8, null for the other events.
+	 * @param pos    Position on the file after the event.
+	 */
+	FollowEvent(Type type, byte bytes[], long pos)
+	{
+		this(type, bytes, pos, 0);
+	}
+
+	/**
+	 * Constructor
+	 * @param type        Type of event.
+	 * @param bytes       Line appended encoded in UTF-8, null for the other events.
+	 * @param pos         Position on the file after the event.
+	 * @param numSkipped  Number of lines lost, only for skipped events.
+	 */
+	FollowEvent(Type type, byte bytes[], long pos, long numSkipped)
+	{
+		this.type       = type;
+		this.bytes      = bytes;
+		this.pos        = pos;
+		this.numSkipped = numSkipped;
+	}
+
+	/**
+	 * Get the type of event.
+	 * @return type.
+	 */
+	public Type getType()
+	{
+		return type;
+	}
+
+	/**
+	 * Get the line appended.
+	 * @return line, null if the event is not a line.
+	 */
+	public String getLine()
+	{
+		String decoded = line;
+
+		if (decoded == null && bytes != null)
+		{
+			/* Decoded by the first follower, the others share it */
+			decoded = new String(bytes, StandardCharsets.UTF_8);
+			line    = decoded;
+		}
+		return decoded;
+	}
+
+	/**
+	 * Get the position on the file after the event, where a new reading would continue.
+	 * For a skipped event, the position where the lines lost start.
+	 * @return position.
+	 */
+	public long getPos()
+	{
+		return pos;
+	}
+
+	/**
+	 * Get the number of lines lost.
+	 * @return number of lines, 0 if the event is not skipped.
+	 */
+	public long getNumSkipped()
+	{
+		return numSkipped;
+	}
+
+	/**
+	 * Test the line against a filter, over the raw bytes if the filter allows it.
+	 * @param p  Predicate to filter lines.
+	 * @return true if the line passes the filter.
+	 */
+	boolean matches(Predicate<String> p)
+	{
+		if (p instanceof LineFilter)
+		{
+			return ((LineFilter)p).test(new ByteSlice(bytes, 0, bytes.length));
+		}
+		return p.test(getLine());
+	}
+}
@@ -0,0 +1,155 @@
+package com.logfiles.backend;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Follower of a file, it takes the lines appended to the file that pass its filter.
+ * The lines are read once by the watcher of the file, shared by all the followers of the
+ * same file, and written on its ring of recent lines. Every follower has its own cursor on
+ * the ring and filters the lines on its own thread, then the followers do not hold up each
+ * other. A follower left behind by the ring receives a skipped event with the number of
+ * lines lost and goes on with the oldest line kept.
+ * A follower is taken by a single thread.
+ * @author alexdel
+ */
+public class Follower implements Closeable {
+	/**
+	 * Followers of the files, to leave the watcher when the follower is closed.
+	 */
+	private final FileFollowers followers;
+	/**
+	 * Watcher of the file followed.
+	 */
+	private final FileWatcher watcher;
+	/**
+	 * Predicate to filter lines.
+	 */
+	private final Predicate<String> p;
+	/**
+	 * Sequence of the next event on the ring.
+	 */
+	private long cursor;
+	/**
+	 * Position on the file where the events start.
+	 */
+	private long startPos;
+	/**
+	 * Position on the file after the last event looked, filtered or not.
+	 */
+	private long lastPos;
+	/**
+	 * The closed event was taken, no more events.
+	 */
+	private boolean ended;
+	/**
+	 * The follower left the watcher.
+	 */
+	private boolean closed;
+
+	/**
+	 * Constructor
+	 * @param followers  Followers of the files.
+	 * @param watcher    Watcher of the file followed.
+	 * @param p          Predicate to filter lines.
+	 */
+	Follower(FileFollowers followers, FileWatcher watcher, Predicate<String> p)
+	{
+		this.followers = followers;
+		this.watcher   = watcher;
+		this.p         = p;
+	}
+
+	/**
+	 * Get the position on the file where the events start, the beginning of the first line
+	 * not taken yet when the follower started. The lines before it must be read from the file.
+	 * @return position.
+	 */
+	public long getStartPos()
+	{
+		return startPos;
+	}
+
+	/**
+	 * Set where the events start.
+	 * @param cursor    Sequence of the first event on the ring.
+	 * @param startPos  Position on the file where the first event starts.
+	 */
+	void start(long cursor, long startPos)
+	{
+		this.cursor   = cursor;
+		this.startPos = startPos;
+		this.lastPos  = startPos;
+	}
+
+	/**
+	 * Get the watcher of the file followed.
+	 * @return watcher.
+	 */
+	FileWatcher getWatcher()
+	{
+		return watcher;
+	}
+
+	/**
+	 * Take the next event, waiting for it. The lines that do not pass the filter are
+	 * skipped without waiting.
+	 * @param timeout  Maximum time to wait.
+	 * @param unit     Unit of the timeout.
+	 * @return event, or null if there was not any event on time or the follower was closed.
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public FollowEvent take(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		long     deadline = System.nanoTime() + unit.toNanos(timeout);
+		LineRing ring     = watcher.getRing();
+
+		while (!ended)
+		{
+			FollowEvent event = ring.take(cursor, deadline - System.nanoTime());
+
+			if (event == null)
+			{
+				return null;
+			}
+			switch (event.getType())
+			{
+			case SKIPPED:
+				/* The lines lost start after the last one looked */
+				cursor += event.getNumSkipped();
+				followers.recordSkipped(event.getNumSkipped());
+				return new FollowEvent(FollowEvent.Type.SKIPPED, null, lastPos, event.getNumSkipped());
+			case CLOSED:
+				ended = true;
+				return new FollowEvent(FollowEvent.Type.CLOSED, null, lastPos);
+			case LINE:
+				cursor++;
+				lastPos = event.getPos();
+				if (event.matches(p))
+				{
+					return event;
+				}
+				break;
+			default:
+				cursor++;
+				lastPos = event.getPos();
+				return event;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Stop following the file. The watcher is closed when it has not more followers.
+	 */
+	@Override
+	public void close()
+	{
+		if (!closed)
+		{
+			closed = true;
+			followers.unfollow(this);
+		}
+	}
+}
@@ -0,0 +1,263 @@
+package com.logfiles.backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inverted keyword indexes of the cold log files, the ones that are not modified for a
+ * while (rotated files). The files are indexed in background by {@link #indexColdFiles(File)},
+ * then the readings filtered with keywords skip the blocks of the file that can not
+ * contain them. Only the most recently used indexes are kept in memory: if an index
+ * directory is specified the indexes are saved on it and loaded again when needed,
+ * otherwise an index removed from memory is lost and the file is read completely until it
+ * is modified. The indexes of the files removed from the directory are dropped when the
+ * directory is indexed again.
+ * @author alexdel
+ */
+public class KeywordIndex implements BlockIndex {
+	/**
+	 * Logger of the failures indexing the files.
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(KeywordIndex.class);
+	/**
+	 * Default minimum number of bytes of a block.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+	/**
+	 * Maximum number of indexes kept in memory.
+	 */
+	private static final int MAX_SIZE = 20;
+	/**
+	 * Directory where the indexes are saved. null to keep them only in memory.
+	 */
+	private final File indexDir;
+	/**
+	 * Minimum number of bytes of a block.
+	 */
+	private final int  blockSize;
+	/**
+	 * Milliseconds without modifications since a file is cold.
+	 */
+	private final long coldAge;
+	/**
+	 * Indexes loaded by canonical path of the file indexed.
+	 */
+	private final Map<String, TokenBlockIndex> indexes;
+	/**
+	 * Version of the files indexed, file key, size and last modification time, by
+	 * canonical path. It avoids indexing the same file twice.
+	 */
+	private final Map<String, String> versions;
+
+	/**
+	 * Constructor
+	 * @param indexDir   Directory where the indexes are saved. null to keep them only in memory.
+	 * @param blockSize  Minimum number of bytes of a block.
+	 * @param coldAge    Milliseconds without modifications since a file is indexed.
+	 */
+	public KeywordIndex(File indexDir, int blockSize, long coldAge)
+	{
+		this.indexDir  = indexDir;
+		this.blockSize = blockSize;
+		this.coldAge   = coldAge;
+		this.versions  = new ConcurrentHashMap<>();
+		/* Removes the least recently used index, it can be loaded again from disk if saved.
+		 * Its version is kept, then a file without index on memory is not indexed again on
+		 * every pass.
+		 */
+		this.indexes   = Collections
+				.synchronizedMap(new LinkedHashMap<String, TokenBlockIndex>(MAX_SIZE, 1, true) {
+					protected boolean removeEldestEntry(Map.Entry<String, TokenBlockIndex> eldest)
+					{
+						return size() > MAX_SIZE;
+					}
+				});
+	}
+
+	/**
+	 * Get the number of indexes kept in memory.
+	 * @return number of indexes.
+	 */
+	public int size()
+	{
+		return indexes.size();
+	}
+
+	/**
+	 * Get the blocks of a file if it was indexed and the file was not rotated, truncated
+	 * or written again.
+	 */
+	@Override
+	public List<LineBlock> getBlocks(File file)
+	{
+		try {
+			String path = file.getCanonicalPath();
+			BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+			TokenBlockIndex index = getIndex(path);
+
+			if (index != null && index.isValidFor(file, String.valueOf(attrs.fileKey()), attrs.size(),
+					                              attrs.lastModifiedTime().toMillis()))
+			{
+				return index.getBlocks();
+			}
+		} catch (IOException ioe) {
+			/* Without index, the file is read completely */
+		}
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Index the cold files of a directory that are not indexed yet, or that were modified
+	 * since they were indexed. The indexes of the files no longer in the directory are
+	 * dropped first.
+	 * @param dir  Log directory.
+	 */
+	public void indexColdFiles(File dir)
+	{
+		File files[] = dir.listFiles();
+
+		if (files == null)
+		{
+			return;
+		}
+
+		try {
+			removeMissingFiles(dir.getCanonicalFile(), files);
+		} catch (IOException ioe) {
+			/* The indexes are dropped on the next pass */
+			LOGGER.warn("Dropping the keyword indexes of the files removed from {} failed", dir, ioe);
+		}
+
+		for (File file : files)
+		{
+			/* A file that can not be indexed does not stop the rest */
+			try {
+				indexFile(file);
+			} catch (IOException | RuntimeException e) {
+				LOGGER.warn("Indexing {} failed, it is read without keyword index", file, e);
+			}
+		}
+	}
+
+	/**
+	 * Drop the indexes and versions of the files of a directory that are not on it anymore,
+	 * with their index files.
+	 * @param dir    Log directory, canonical.
+	 * @param files  Files on the directory.
+	 * @throws IOException if the path of a file can not be resolved
+	 */
+	private void removeMissingFiles(File dir, File files[]) throws IOException
+	{
+		Set<String> paths = new HashSet<>();
+
+		for (File file : files)
+		{
+			paths.add(file.getCanonicalPath());
+		}
+
+		Predicate<String> missing = path -> dir.equals(new File(path).getParentFile()) && !paths.contains(path);
+
+		for (String path : versions.keySet())
+		{
+			if (missing.test(path))
+			{
+				versions.remove(path);
+				if (indexDir != null)
+				{
+					getIndexFile(path).delete();
+				}
+			}
+		}
+		synchronized (indexes)
+		{
+			indexes.keySet().removeIf(missing);
+		}
+	}
+
+	/**
+	 * Index a file if it is cold and it is not indexed yet.
+	 * @param file  File to be indexed.
+	 * @return true if the file was indexed.
+	 * @throws IOException if file not found or forbidden
+	 */
+	public boolean indexFile(File file) throws IOException
+	{
+		BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		String path         = file.getCanonicalPath();
+		String fileKey      = String.valueOf(attrs.fileKey());
+		long   size         = attrs.size();
+		long   lastModified = attrs.lastModifiedTime().toMillis();
+		String version      = fileKey + ":" + size + ":" + lastModified;
+
+		if (!attrs.isRegularFile() || System.currentTimeMillis() - lastModified < coldAge ||
+			version.equals(versions.get(path)))
+		{
+			return false;
+		}
+
+		/* Maybe it was indexed before a restart */
+		TokenBlockIndex index = getIndex(path);
+
+		if (index == null || !index.isUpToDate(fileKey, size, lastModified))
+		{
+			index = TokenBlockIndex.build(file, fileKey, size, lastModified, blockSize);
+			if (indexDir != null)
+			{
+				indexDir.mkdirs();
+				index.save(getIndexFile(path));
+			}
+			indexes.put(path, index);
+		}
+		versions.put(path, version);
+		return true;
+	}
+
+	/**
+	 * Get the index of a file from memory or from the index directory.
+	 * @param path  Canonical path of the file indexed.
+	 * @return index, or null if the file is not indexed.
+	 */
+	private TokenBlockIndex getIndex(String path)
+	{
+		TokenBlockIndex index = indexes.get(path);
+
+		if (index == null && indexDir != null)
+		{
+			try {
+				index = TokenBlockIndex.load(getIndexFile(path));
+			} catch (IOException ioe) {
+				/* Corrupted index, it will be built again */
+				index = null;
+			}
+			if (index != null)
+			{
+				indexes.put(path, index);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Get the file where the index of a file is saved.
+	 * @param path  Canonical path of the file indexed.
+	 * @return index file.
+	 */
+	private File getIndexFile(String path)
+	{
+		String name = new File(path).getName();
+		return new File(indexDir, name + "." + Integer.toHexString(path.hashCode()) + ".tidx");
+	}
+}
@@ -0,0 +1,131 @@
+package com.logfiles.backend;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Look for a keyword over raw bytes with the Boyer-Moore-Horspool algorithm.
+ * The keyword is encoded in UTF-8 once, when the matcher is created, then any line
+ * can be searched without decoding it. The matcher is immutable and it can be shared
+ * between threads.
+ * @author alexdel
+ */
+public class KeywordMatcher {
+	/**
+	 * Keyword encoded in UTF-8.
+	 */
+	private final byte keyword[];
+	/**
+	 * Number of positions to shift the search window for every byte value,
+	 * when the window does not match.
+	 */
+	private final int  shifts[];
+
+	/**
+	 * Constructor
+	 * @param keyword Keyword to look for.
+	 */
+	public KeywordMatcher(String keyword)
+	{
+		this(keyword.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Constructor
+	 * @param keyword Keyword to look for, already encoded.
+	 */
+	public KeywordMatcher(byte keyword[])
+	{
+		int last = keyword.length - 1;
+
+		this.keyword = keyword.clone();
+		this.shifts  = new int[256];
+
+		/* By default the window is shifted the complete keyword */
+		for (int i = 0; i < shifts.length; i++)
+		{
+			shifts[i] = keyword.length;
+		}
+		/* The bytes on the keyword, but the last one, shift the window to align
+		 * with its last occurrence */
+		for (int i = 0; i < last; i++)
+		{
+			shifts[keyword[i] & 0xFF] = last - i;
+		}
+	}
+
+	/**
+	 * Getter keyword
+	 * @return keyword encoded in UTF-8.
+	 */
+	public byte[] getKeyword() {
+		return keyword.clone();
+	}
+
+	/**
+	 * Find the first occurrence of the keyword on the bytes.
+	 * @param bytes  Bytes where the keyword is looked.
+	 * @param from   Position where the search start.
+	 * @param to     Position where the search finish, not included.
+	 * @return position where the keyword start, or -1 if not found.
+	 */
+	public int indexOf(byte bytes[], int from, int to)
+	{
+		int length = keyword.length;
+
+		if (length == 0)
+		{
+			return from <= to ? from : -1;
+		}
+
+		int  last     = length - 1;
+		byte lastByte = keyword[last];
+
+		/* Single byte keyword, a plain scan is faster than the shifts */
+		if (length == 1)
+		{
+			for (int i = from; i < to; i++)
+			{
+				if (bytes[i] == lastByte)
+				{
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		int end = to - length;
+		int i   = from;
+
+		while (i <= end)
+		{
+			byte b = bytes[i + last];
+
+			/* Compare the rest of the window only if last byte matches */
+			if (b == lastByte)
+			{
+				int j = last - 1;
+				while (j >= 0 && bytes[i + j] == keyword[j])
+				{
+					j--;
+				}
+				if (j < 0)
+				{
+					return i;
+				}
+			}
+			i += shifts[b & 0xFF];
+		}
+		return -1;
+	}
+
+	/**
+	 * Check if the keyword is on the slice.
+	 * @param line  Slice where the keyword is looked.
+	 * @return true if the keyword is found.
+	 */
+	public boolean matches(ByteSlice line)
+	{
+		int from = line.getOffset();
+		return indexOf(line.getBytes(), from, from + line.getLength()) >= 0;
+	}
+}
@@ -0,0 +1,180 @@
+package com.logfiles.backend;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Look for several keywords at the same time over raw bytes with an Aho-Corasick
+ * automaton. Every line is traversed only once no matter how many keywords are looked.
+ * The keywords are encoded in UTF-8 once, when the matcher is created. The matcher is
+ * immutable and it can be shared between threads.
+ * @author alexdel
+ */
+public class KeywordsMatcher {
+	/**
+	 * Maximum number of keywords allowed, one bit for each keyword in the outputs.
+	 */
+	public static final int MAX_KEYWORDS = 64;
+	/**
+	 * Maximum number of bytes of all the keywords together, in UTF-8. Every byte can be a
+	 * state with a transition for each byte value, then the automaton is at most 1 MiB.
+	 */
+	public static final int MAX_KEYWORD_BYTES = 1024;
+	/**
+	 * Number of transitions for every state, one for each byte value.
+	 */
+	private static final int ALPHABET_SIZE = 256;
+	/**
+	 * Transitions of the automaton. Next state for state s and byte b is on
+	 * s * ALPHABET_SIZE + b. The failure transitions are already resolved.
+	 */
+	private final int  transitions[];
+	/**
+	 * Keywords found when a state is reached. One bit for each keyword.
+	 */
+	private final long outputs[];
+	/**
+	 * Bits of all keywords.
+	 */
+	private final long allKeywords;
+
+	/**
+	 * Get the number of bytes of the keywords together, in UTF-8.
+	 * @param keywords  Keywords.
+	 * @return number of bytes.
+	 */
+	public static int getKeywordBytes(List<String> keywords)
+	{
+		int bytes = 0;
+
+		for (String keyword : keywords)
+		{
+			bytes += keyword.getBytes(StandardCharsets.UTF_8).length;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Constructor
+	 * @param keywords  Keywords to look for. At most {@link #MAX_KEYWORDS}, with at most
+	 *                  {@link #MAX_KEYWORD_BYTES} bytes together.
+	 */
+	public KeywordsMatcher(List<String> keywords)
+	{
+		if (keywords.size() > MAX_KEYWORDS)
+		{
+			throw new IllegalArgumentException("At most " + MAX_KEYWORDS + " keywords allowed");
+		}
+
+		byte encoded[][] = new byte[keywords.size()][];
+		int  maxStates   = 1;
+
+		for (int i = 0; i < encoded.length; i++)
+		{
+			encoded[i] = keywords.get(i).getBytes(StandardCharsets.UTF_8);
+			maxStates += encoded[i].length;
+		}
+		if (maxStates - 1 > MAX_KEYWORD_BYTES)
+		{
+			throw new IllegalArgumentException("At most " + MAX_KEYWORD_BYTES + " bytes of keywords allowed");
+		}
+
+		int  next[]   = new int[maxStates * ALPHABET_SIZE];
+		long output[] = new long[maxStates];
+		int  states   = 1;
+
+		Arrays.fill(next, -1);
+
+		/* 1. Build the trie with all the keywords */
+		for (int i = 0; i < encoded.length; i++)
+		{
+			int state = 0;
+			for (byte b : encoded[i])
+			{
+				int pos = state * ALPHABET_SIZE + (b & 0xFF);
+				if (next[pos] == -1)
+				{
+					next[pos] = states++;
+				}
+				state = next[pos];
+			}
+			output[state] |= 1L << i;
+		}
+
+		/* 2. Resolve failure transitions in breadth first order, then every state has
+		 *    a transition for every byte and the outputs include the ones of its failure
+		 *    state */
+		int fail[]  = new int[states];
+		int queue[] = new int[states];
+		int head = 0;
+		int tail = 0;
+
+		for (int b = 0; b < ALPHABET_SIZE; b++)
+		{
+			if (next[b] == -1)
+			{
+				next[b] = 0;
+			}
+			else
+			{
+				fail[next[b]] = 0;
+				queue[tail++] = next[b];
+			}
+		}
+
+		while (head < tail)
+		{
+			int state = queue[head++];
+
+			for (int b = 0; b < ALPHABET_SIZE; b++)
+			{
+				int pos     = state * ALPHABET_SIZE + b;
+				int failPos = fail[state] * ALPHABET_SIZE + b;
+
+				if (next[pos] == -1)
+				{
+					next[pos] = next[failPos];
+				}
+				else
+				{
+					int child = next[pos];
+					fail[child]    = next[failPos];
+					output[child] |= output[fail[child]];
+					queue[tail++]  = child;
+				}
+			}
+		}
+
+		this.transitions = Arrays.copyOf(next, states * ALPHABET_SIZE);
+		this.outputs     = Arrays.copyOf(output, states);
+		this.allKeywords = keywords.size() == MAX_KEYWORDS ? -1L : (1L << keywords.size()) - 1;
+	}
+
+	/**
+	 * Check if the keywords are on the slice.
+	 * @param line  Slice where the keywords are looked.
+	 * @param mode  ANY, at least one keyword is found. ALL, every keyword is found.
+	 * @return true if the keywords are found.
+	 */
+	public boolean matches(ByteSlice line, MatchMode mode)
+	{
+		byte bytes[] = line.getBytes();
+		int  end     = line.getOffset() + line.getLength();
+		int  state   = 0;
+		long found   = outputs[0];
+		long wanted  = mode == MatchMode.ALL ? allKeywords : 0;
+
+		for (int i = line.getOffset(); i < end; i++)
+		{
+			if (mode == MatchMode.ANY ? found != 0 : found == wanted)
+			{
+				break;
+			}
+			state  = transitions[state * ALPHABET_SIZE + (bytes[i] & 0xFF)];
+			found |= outputs[state];
+		}
+
+		return mode == MatchMode.ANY ? found != 0 : found == wanted;
+	}
+}
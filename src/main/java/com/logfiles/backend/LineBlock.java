@@ -0,0 +1,64 @@
+package com.logfiles.backend;
+
+/**
+ * Block of complete lines of a file with the summary of its bytes. The block starts
+ * at the beginning of a line and finishes after a LF.
+ * @author alexdel
+ */
+public class LineBlock {
+	/** Position where the block starts */
+	private final long start;
+	/** Position after the last LF of the block */
+	private final long end;
+	/** Number of lines on the block */
+	private final long lines;
+	/** Summary of the bytes of the block */
+	private final BlockSummary summary;
+
+	/**
+	 * Constructor
+	 * @param start    Position where the block starts.
+	 * @param end      Position after the last LF of the block.
+	 * @param lines    Number of lines on the block.
+	 * @param summary  Summary of the bytes of the block.
+	 */
+	public LineBlock(long start, long end, long lines, BlockSummary summary)
+	{
+		this.start   = start;
+		this.end     = end;
+		this.lines   = lines;
+		this.summary = summary;
+	}
+
+	/**
+	 * Getter start
+	 * @return position where the block starts.
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * Getter end
+	 * @return position after the last LF of the block.
+	 */
+	public long getEnd() {
+		return end;
+	}
+
+	/**
+	 * Getter lines
+	 * @return number of lines on the block.
+	 */
+	public long getLines() {
+		return lines;
+	}
+
+	/**
+	 * Getter summary
+	 * @return summary of the bytes of the block.
+	 */
+	public BlockSummary getSummary() {
+		return summary;
+	}
+}
@@ -0,0 +1,38 @@
+package com.logfiles.backend;
+
+import java.util.function.Predicate;
+
+/**
+ * Predicate to filter lines that can also be tested over the raw bytes of the line,
+ * before the line is decoded to a String. It lets the backend decode only the lines
+ * that pass the filter.
+ * @author alexdel
+ */
+public interface LineFilter extends Predicate<String> {
+	/**
+	 * Test the raw bytes of a line.
+	 * @param line  Line to be filtered, encoded in UTF-8 without the line terminator.
+	 * @return true if the line pass the filter.
+	 */
+	boolean test(ByteSlice line);
+
+	/**
+	 * Check if some line of a block may pass the filter, only with the block summary.
+	 * By default any block may have lines that pass the filter.
+	 * @param block  Summary of the block.
+	 * @return false only if no line of the block can pass the filter.
+	 */
+	default boolean mayMatch(BlockSummary block) {
+		return true;
+	}
+
+	/**
+	 * Get a text that identifies the lines passing the filter: two filters with the same
+	 * fingerprint pass the same lines, then their results can be shared. By default the
+	 * filter can not be identified.
+	 * @return fingerprint, or null if the results of the filter are not cached.
+	 */
+	default String getFingerprint() {
+		return null;
+	}
+}
@@ -0,0 +1,219 @@
+package com.logfiles.backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sparse line indexes of the log files. It finds where a line starts without reading
+ * the file from the beginning. The index of every file is:
+ * 1. Built the first time a line of the file is looked, scanning the complete file.
+ * 2. Extended with the new lines when the file grows.
+ * 3. Rebuilt when the file is rotated (other file key) or truncated (smaller size).
+ * If an index directory is specified the indexes are saved on it, then they survive
+ * to restarts. Only the most recently used indexes are kept in memory, and the indexes
+ * of the files removed are dropped when a file is indexed.
+ * @author alexdel
+ */
+public class LineIndex {
+	/**
+	 * Logger of the failures saving the indexes.
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(LineIndex.class);
+	/**
+	 * Default number of lines between two positions indexed.
+	 */
+	public static final int DEFAULT_INTERVAL = 1000;
+	/**
+	 * Maximum number of indexes kept in memory.
+	 */
+	private static final int MAX_SIZE = 100;
+	/**
+	 * Directory where the indexes are saved. null to keep them only in memory.
+	 */
+	private final File indexDir;
+	/**
+	 * Number of lines between two positions indexed.
+	 */
+	private final int  interval;
+	/**
+	 * Indexes loaded by canonical path of the file indexed.
+	 */
+	private final Map<String, LineOffsetIndex> indexes;
+
+	/**
+	 * Default Constructor. Indexes only in memory.
+	 */
+	public LineIndex()
+	{
+		this(null, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * Constructor
+	 * @param indexDir  Directory where the indexes are saved. null to keep them only in memory.
+	 * @param interval  Number of lines between two positions indexed.
+	 */
+	public LineIndex(File indexDir, int interval)
+	{
+		this.indexDir = indexDir;
+		this.interval = interval;
+		/* Removes the least recently used index, it can be loaded again from disk if saved */
+		this.indexes  = Collections
+				.synchronizedMap(new LinkedHashMap<String, LineOffsetIndex>(MAX_SIZE, 1, true) {
+					protected boolean removeEldestEntry(Map.Entry<String, LineOffsetIndex> eldest)
+					{
+						return size() > MAX_SIZE;
+					}
+				});
+	}
+
+	/**
+	 * Get the number of indexes kept in memory.
+	 * @return number of indexes.
+	 */
+	public int size()
+	{
+		return indexes.size();
+	}
+
+	/**
+	 * Find the position where a line starts.
+	 * @param file  File looked.
+	 * @param line  Line looked, starting at 1.
+	 * @return position where the line starts. The file size if the line is just after the
+	 *         last line, and -1 if the line is further.
+	 * @throws IOException if file not found or forbidden
+	 */
+	public long getLineOffset(File file, long line) throws IOException
+	{
+		String path = file.getCanonicalPath();
+		BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		String fileKey = String.valueOf(attrs.fileKey());
+		long   size    = attrs.size();
+
+		if (!indexes.containsKey(path))
+		{
+			removeMissingFiles();
+		}
+		LineOffsetIndex index = indexes.computeIfAbsent(path, p -> loadIndex(p, fileKey));
+
+		synchronized (index)
+		{
+			/* Rotated or truncated, the index is built again */
+			if (!index.isValidFor(fileKey, size))
+			{
+				LineOffsetIndex newIndex = new LineOffsetIndex(fileKey, interval);
+				indexes.replace(path, index, newIndex);
+				return getLineOffset(file, line);
+			}
+			/* Only scan the file when the line is not indexed yet */
+			if (line > index.getLineCount() + 1 && size > index.getIndexedSize() &&
+				index.extend(file, size))
+			{
+				saveIndex(path, index);
+			}
+
+			if (line <= index.getLineCount() + 1)
+			{
+				return index.findLine(file, line);
+			}
+			/* Last line of the file without LF */
+			if (line == index.getLineCount() + 2 && size > index.getIndexedSize())
+			{
+				return size;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Drop the indexes of the files that do not exist anymore, with their index files.
+	 */
+	private void removeMissingFiles()
+	{
+		List<String> missing = new ArrayList<>();
+
+		synchronized (indexes)
+		{
+			for (String path : indexes.keySet())
+			{
+				if (!new File(path).exists())
+				{
+					missing.add(path);
+				}
+			}
+			indexes.keySet().removeAll(missing);
+		}
+		if (indexDir != null)
+		{
+			for (String path : missing)
+			{
+				getIndexFile(path).delete();
+			}
+		}
+	}
+
+	/**
+	 * Get the file where the index of a file is saved.
+	 * @param path  Canonical path of the file indexed.
+	 * @return index file.
+	 */
+	private File getIndexFile(String path)
+	{
+		String name = new File(path).getName();
+		return new File(indexDir, name + "." + Integer.toHexString(path.hashCode()) + ".idx");
+	}
+
+	/**
+	 * Load the index of a file if it was saved before, or an empty index.
+	 * @param path     Canonical path of the file indexed.
+	 * @param fileKey  Current file key of the file.
+	 * @return index.
+	 */
+	private LineOffsetIndex loadIndex(String path, String fileKey)
+	{
+		LineOffsetIndex index = null;
+
+		if (indexDir != null)
+		{
+			try {
+				index = LineOffsetIndex.load(getIndexFile(path), interval);
+			} catch (IOException ioe) {
+				/* Corrupted index, it is built again */
+				index = null;
+			}
+		}
+		return index != null ? index : new LineOffsetIndex(fileKey, interval);
+	}
+
+	/**
+	 * Save the index of a file if an index directory was specified.
+	 * @param path   Canonical path of the file indexed.
+	 * @param index  Index to be saved.
+	 */
+	private void saveIndex(String path, LineOffsetIndex index)
+	{
+		if (indexDir == null)
+		{
+			return;
+		}
+
+		try {
+			indexDir.mkdirs();
+			index.save(getIndexFile(path));
+		} catch (IOException ioe) {
+			/* The index is still valid in memory */
+			LOGGER.warn("Saving the line index of {} failed, it is kept only in memory", path, ioe);
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package com.logfiles.backend;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.logfiles.api.LogFile;
+
+/**
+ * Merge of the lines of several files, read on the same order, into a single stream in
+ * time order. Every file is a source already in order, then a heap with the next line of
+ * every source hands out the lines one by one: k files cost log2(k) per line and the merge
+ * stops as soon as the limit of lines is written, without looking at the rest.
+ * The time of a line is its timestamp; the lines without timestamp (stack traces,
+ * multi-line messages) take the time of their entry, then they stay next to it: the line
+ * before them on ASC, and on DESC the line after them, as the lines of an entry are read
+ * before its first line. On DESC, the lines at the end of a file without a line with
+ * timestamp after them keep the time of the line before them. The lines before any
+ * timestamp go first. Lines with the same time keep the order of the files given.
+ * @author alexdel
+ */
+public class LineMerger {
+
+	/**
+	 * Receiver of the lines merged, one by one.
+	 */
+	@FunctionalInterface
+	public interface MergedLineSink {
+		/**
+		 * Receive the next line of the merge.
+		 * @param file  File of the line.
+		 * @param line  Line.
+		 * @throws IOException if the line can not be written
+		 */
+		void write(LogFile file, String line) throws IOException;
+	}
+
+	/** Parser of the timestamps of the lines */
+	private final TimestampSearch timestampSearch;
+	/** Order of the files and the merge */
+	private final ReadOrder       order;
+
+	/**
+	 * Constructor
+	 * @param timestampSearch  Parser of the timestamps of the lines.
+	 * @param order            Order of the lines on the files, and of the merge: oldest
+	 *                         first (ASC) or newest first (DESC).
+	 */
+	public LineMerger(TimestampSearch timestampSearch, ReadOrder order)
+	{
+		this.timestampSearch = timestampSearch;
+		this.order           = order;
+	}
+
+	/**
+	 * Merge the lines of the files.
+	 * @param files  Files read, null files are skipped.
+	 * @param limit  Maximum number of lines merged, 0 or less for all the lines.
+	 * @param sink   Receiver of the lines merged.
+	 * @return number of lines merged.
+	 * @throws IOException if the lines can not be written
+	 */
+	public long merge(List<LogFile> files, long limit, MergedLineSink sink) throws IOException
+	{
+		Comparator<Instant>     byTime  = order == ReadOrder.ASC ? Comparator.naturalOrder() :
+			                                                       Comparator.reverseOrder();
+		PriorityQueue<Cursor>   heap    = new PriorityQueue<>(Math.max(1, files.size()),
+				Comparator.comparing((Cursor cursor) -> cursor.time, Comparator.nullsFirst(byTime))
+				          .thenComparingInt(cursor -> cursor.source));
+		long                    written = 0;
+
+		for (int i = 0; i < files.size(); i++)
+		{
+			LogFile file = files.get(i);
+			if (file != null && file.getFileBuffered() != null && file.getFileBuffered().getLines() != null)
+			{
+				Cursor cursor = new Cursor(i, file);
+				if (cursor.advance())
+				{
+					heap.add(cursor);
+				}
+			}
+		}
+
+		while (!heap.isEmpty() && (limit <= 0 || written < limit))
+		{
+			Cursor cursor = heap.poll();
+			sink.write(cursor.file, cursor.line);
+			written++;
+			if (cursor.advance())
+			{
+				heap.add(cursor);
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * Next line of a file on the merge.
+	 */
+	private final class Cursor {
+		/** Position of the file on the files given */
+		private final int          source;
+		/** File of the lines */
+		private final LogFile      file;
+		/** Lines of the file */
+		private final List<String> lines;
+		/** Position of the next line */
+		private int                next;
+		/** Current line */
+		private String             line;
+		/** Time of the current line, null before the first timestamp */
+		private Instant            time;
+		/** Position of the last line with the current time already known */
+		private int                groupEnd = -1;
+
+		Cursor(int source, LogFile file)
+		{
+			this.source = source;
+			this.file   = file;
+			this.lines  = file.getFileBuffered().getLines();
+		}
+
+		/**
+		 * Move to the next line of the file.
+		 * @return false if there are not more lines.
+		 */
+		boolean advance()
+		{
+			if (next >= lines.size())
+			{
+				return false;
+			}
+			line = lines.get(next);
+
+			/* The time of the lines up to groupEnd was taken looking ahead */
+			if (next > groupEnd)
+			{
+				Instant timestamp = timestampSearch.parseTimestamp(line);
+				groupEnd = next;
+				if (timestamp != null)
+				{
+					time = timestamp;
+				}
+				else if (order == ReadOrder.DESC)
+				{
+					/* The entry of the line is the next line with timestamp */
+					while (timestamp == null && ++groupEnd < lines.size())
+					{
+						timestamp = timestampSearch.parseTimestamp(lines.get(groupEnd));
+					}
+					if (timestamp != null)
+					{
+						time = timestamp;
+					}
+				}
+			}
+			next++;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,282 @@
+package com.logfiles.backend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Sparse index of a single log file. It keeps the position where every interval-th
+ * line starts, 1, interval + 1, 2 * interval + 1, ... Only the complete lines, finished
+ * by LF, are indexed, then the index can be extended when the file grows. The index is
+ * identified by the file key (inode) of the file indexed.
+ * @author alexdel
+ */
+public class LineOffsetIndex {
+	/**
+	 * Header of the index files.
+	 */
+	private static final int MAGIC   = 0x4C494458;
+	/**
+	 * Version of the index file format.
+	 */
+	private static final int VERSION = 1;
+	/**
+	 * Number of bytes read from the file on every scan.
+	 */
+	private static final int SCAN_SIZE = 64 * 1024;
+	/**
+	 * Number of lines between two positions indexed.
+	 */
+	private final int    interval;
+	/**
+	 * File key of the file indexed.
+	 */
+	private final String fileKey;
+	/**
+	 * Position after the last complete line indexed.
+	 */
+	private long   indexedSize;
+	/**
+	 * Number of complete lines indexed.
+	 */
+	private long   lineCount;
+	/**
+	 * Position where the lines 1, interval + 1, 2 * interval + 1, ... start.
+	 */
+	private long   offsets[];
+	/**
+	 * Number of positions on offsets.
+	 */
+	private int    numOffsets;
+
+	/**
+	 * Constructor. Empty index.
+	 * @param fileKey   File key of the file indexed.
+	 * @param interval  Number of lines between two positions indexed.
+	 */
+	public LineOffsetIndex(String fileKey, int interval)
+	{
+		this.fileKey     = fileKey;
+		this.interval    = interval;
+		this.indexedSize = 0;
+		this.lineCount   = 0;
+		this.offsets     = new long[16];
+		/* First line always start at 0 */
+		this.numOffsets  = 1;
+	}
+
+	/**
+	 * Getter file key
+	 * @return file key of the file indexed.
+	 */
+	public String getFileKey() {
+		return fileKey;
+	}
+
+	/**
+	 * Getter interval
+	 * @return number of lines between two positions indexed.
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Getter indexed size
+	 * @return position after the last complete line indexed.
+	 */
+	public long getIndexedSize() {
+		return indexedSize;
+	}
+
+	/**
+	 * Getter line count
+	 * @return number of complete lines indexed.
+	 */
+	public long getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * Check if the index still belongs to the file. A different file key means that the
+	 * file was rotated, and a file smaller than the lines indexed means that it was truncated.
+	 * @param fileKey  Current file key of the file.
+	 * @param size     Current size of the file.
+	 * @return true if the index can be used and extended.
+	 */
+	public boolean isValidFor(String fileKey, long size)
+	{
+		return this.fileKey.equals(fileKey) && size >= indexedSize;
+	}
+
+	/**
+	 * Index the complete lines from the last line indexed until size.
+	 * @param file  File indexed.
+	 * @param size  Position until the file is indexed.
+	 * @return true if new lines were indexed.
+	 * @throws IOException if file not found or forbidden
+	 */
+	public boolean extend(File file, long size) throws IOException
+	{
+		long linesBefore = lineCount;
+		byte buffer[]    = new byte[SCAN_SIZE];
+		long pos         = indexedSize;
+
+		try (RandomAccessFile randFile = new RandomAccessFile(file, "r"))
+		{
+			randFile.seek(pos);
+			while (pos < size)
+			{
+				int read = randFile.read(buffer, 0, (int)Math.min(buffer.length, size - pos));
+				if (read <= 0)
+				{
+					break;
+				}
+				for (int i = 0; i < read; i++)
+				{
+					if (buffer[i] == '\n')
+					{
+						lineCount++;
+						indexedSize = pos + i + 1;
+						/* Next line is the first one of a new interval */
+						if (lineCount % interval == 0)
+						{
+							addOffset(indexedSize);
+						}
+					}
+				}
+				pos += read;
+			}
+		}
+		return lineCount > linesBefore;
+	}
+
+	/**
+	 * Find the position where a line starts. The closest position indexed is taken,
+	 * then at most interval - 1 lines are scanned from there.
+	 * @param file  File indexed.
+	 * @param line  Line looked, starting at 1. At most lineCount + 1.
+	 * @return position where the line starts.
+	 * @throws IOException if file not found or forbidden
+	 */
+	public long findLine(File file, long line) throws IOException
+	{
+		int  idx       = (int)((line - 1) / interval);
+		long pos       = offsets[idx];
+		long linesLeft = (line - 1) % interval;
+		byte buffer[]  = new byte[SCAN_SIZE];
+
+		if (linesLeft == 0)
+		{
+			return pos;
+		}
+
+		try (RandomAccessFile randFile = new RandomAccessFile(file, "r"))
+		{
+			randFile.seek(pos);
+			while (pos < indexedSize)
+			{
+				int read = randFile.read(buffer, 0, (int)Math.min(buffer.length, indexedSize - pos));
+				if (read <= 0)
+				{
+					break;
+				}
+				for (int i = 0; i < read; i++)
+				{
+					if (buffer[i] == '\n' && --linesLeft == 0)
+					{
+						return pos + i + 1;
+					}
+				}
+				pos += read;
+			}
+		}
+		throw new IOException("Line " + line + " not found on " + file.getName());
+	}
+
+	/**
+	 * Add a new position indexed.
+	 * @param offset  Position where the line starts.
+	 */
+	private void addOffset(long offset)
+	{
+		if (numOffsets == offsets.length)
+		{
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		}
+		offsets[numOffsets++] = offset;
+	}
+
+	/**
+	 * Save the index. The index is written on a temporary file that replaces the index file
+	 * when it is complete, then a reader never sees an index half written.
+	 * @param indexFile  File where the index is saved.
+	 * @throws IOException if the index can not be written
+	 */
+	public void save(File indexFile) throws IOException
+	{
+		File tmpFile = new File(indexFile.getPath() + ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmpFile))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(interval);
+			out.writeUTF(fileKey);
+			out.writeLong(indexedSize);
+			out.writeLong(lineCount);
+			out.writeInt(numOffsets);
+			for (int i = 0; i < numOffsets; i++)
+			{
+				out.writeLong(offsets[i]);
+			}
+		}
+		Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Load an index saved.
+	 * @param indexFile  File where the index was saved.
+	 * @param interval   Number of lines between two positions indexed expected.
+	 * @return index loaded, or null if it does not exist or it was saved with
+	 *         a different format or interval.
+	 * @throws IOException if the index can not be read
+	 */
+	public static LineOffsetIndex load(File indexFile, int interval) throws IOException
+	{
+		if (!indexFile.exists())
+		{
+			return null;
+		}
+
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(indexFile))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != interval)
+			{
+				return null;
+			}
+
+			LineOffsetIndex index = new LineOffsetIndex(in.readUTF(), interval);
+			index.indexedSize = in.readLong();
+			index.lineCount   = in.readLong();
+			index.numOffsets  = in.readInt();
+			index.offsets     = new long[Math.max(index.numOffsets, 16)];
+			for (int i = 0; i < index.numOffsets; i++)
+			{
+				index.offsets[i] = in.readLong();
+			}
+			return index;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package com.logfiles.backend;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ring buffer of the recent events of a file followed, written by its watcher and read by
+ * all its followers. Every event has a sequence number and every follower keeps its own
+ * cursor on them, then the followers read at their own pace without copies of the lines.
+ * The ring keeps a maximum number of events: a new event overwrites the oldest one, then
+ * the writer is never held up by a slow follower, and the follower left behind skips ahead
+ * to the oldest event kept.
+ * @author alexdel
+ */
+final class LineRing {
+	/**
+	 * Events kept, the event of a sequence is on sequence modulo the capacity.
+	 */
+	private final FollowEvent events[];
+	/**
+	 * Sequence of the next event.
+	 */
+	private long head;
+	/**
+	 * No more events are written.
+	 */
+	private boolean closed;
+
+	/**
+	 * Constructor
+	 * @param capacity  Maximum number of events kept.
+	 */
+	LineRing(int capacity)
+	{
+		this.events = new FollowEvent[capacity];
+	}
+
+	/**
+	 * Write an event, overwriting the oldest one if the ring is full. The followers are
+	 * not woken up until the events written are published.
+	 * @param event  Event.
+	 */
+	synchronized void add(FollowEvent event)
+	{
+		events[(int)(head % events.length)] = event;
+		head++;
+	}
+
+	/**
+	 * Wake up the followers waiting for events.
+	 */
+	synchronized void publish()
+	{
+		notifyAll();
+	}
+
+	/**
+	 * Close the ring, the followers receive a closed event after the events left.
+	 */
+	synchronized void close()
+	{
+		closed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Get the sequence of the next event.
+	 * @return sequence.
+	 */
+	synchronized long getHead()
+	{
+		return head;
+	}
+
+	/**
+	 * Get the sequence of the oldest event kept.
+	 * @return sequence.
+	 */
+	private long getTail()
+	{
+		return Math.max(0, head - events.length);
+	}
+
+	/**
+	 * Find the sequence of the event after a position on the current version of the file,
+	 * the events before a truncation or rotation are not looked.
+	 * @param pos  Position on the file after a line, or 0 for the beginning of the file.
+	 * @return sequence of the next event, or -1 if the position is not on the ring.
+	 */
+	synchronized long find(long pos)
+	{
+		for (long seq = head - 1; seq >= getTail(); seq--)
+		{
+			FollowEvent event = events[(int)(seq % events.length)];
+
+			if (event.getPos() == pos)
+			{
+				return seq + 1;
+			}
+			if (event.getType() != FollowEvent.Type.LINE)
+			{
+				break;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Take the event of a sequence, waiting for it.
+	 * @param seq           Sequence of the event.
+	 * @param timeoutNanos  Maximum time to wait, in nanoseconds.
+	 * @return event, a skipped event with the number of events overwritten if the sequence
+	 *         is not kept anymore, a closed event if the ring is closed and the sequence is
+	 *         the next one, or null if there was not any event on time.
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	synchronized FollowEvent take(long seq, long timeoutNanos) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + timeoutNanos;
+
+		while (seq >= head && !closed)
+		{
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0)
+			{
+				return null;
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		if (seq < getTail())
+		{
+			return new FollowEvent(FollowEvent.Type.SKIPPED, null, -1, getTail() - seq);
+		}
+		if (seq >= head)
+		{
+			return new FollowEvent(FollowEvent.Type.CLOSED, null, -1);
+		}
+		return events[(int)(seq % events.length)];
+	}
+}
@@ -0,0 +1,18 @@
+package com.logfiles.backend;
+
+import java.io.IOException;
+
+/**
+ * Receiver of the lines read, one by one while the file is read. It lets the lines be
+ * written to the response as soon as they are read, instead of collecting all of them.
+ * @author alexdel
+ */
+@FunctionalInterface
+public interface LineSink {
+	/**
+	 * Receive the next line read that passes the filter.
+	 * @param line  Line read.
+	 * @throws IOException if the line can not be written
+	 */
+	void write(String line) throws IOException;
+}
@@ -0,0 +1,364 @@
+package com.logfiles.backend;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Lines kept as their raw UTF-8 bytes in a single buffer with a table of offsets, instead
+ * of a String per line. The bytes take about a quarter of the Strings and the object
+ * headers, and with a direct buffer they are out of the heap, then they do not add work to
+ * the garbage collector. The lines are filtered over the raw bytes and they are decoded
+ * only when they are taken.
+ * The store is immutable and it can be shared between threads. Its users count on it with
+ * {@link #retain()} and {@link #release()}: the direct buffer is freed as soon as the last
+ * one releases it, without waiting for the garbage collector, then the store must not be
+ * used once released.
+ * @author alexdel
+ */
+public class LineStore {
+	/**
+	 * Free the memory of a direct buffer: Unsafe.invokeCleaner since JDK 9, the cleaner of
+	 * the buffer on JDK 8. null if none of them is reachable, the buffer is freed by the
+	 * garbage collector then.
+	 */
+	private static final BufferFreer FREER = newFreer();
+	/**
+	 * Bytes of the lines, one after the other.
+	 */
+	private final ByteBuffer data;
+	/**
+	 * Buffer allocated for the bytes, data is a read-only view of it.
+	 */
+	private final ByteBuffer buffer;
+	/**
+	 * Position on data where every line starts, and where the last one finishes.
+	 */
+	private final int offsets[];
+	/**
+	 * Number of users of the store, 0 once it is released.
+	 */
+	private final AtomicInteger refs;
+
+	/**
+	 * Freer of direct buffers.
+	 */
+	@FunctionalInterface
+	private interface BufferFreer {
+		void free(ByteBuffer buffer) throws Exception;
+	}
+
+	/**
+	 * Constructor. The store has a single user, the one that builds it.
+	 * @param buffer   Bytes of the lines.
+	 * @param offsets  Position on data where every line starts, and where the last one finishes.
+	 */
+	private LineStore(ByteBuffer buffer, int offsets[])
+	{
+		this.buffer  = buffer;
+		this.data    = buffer.asReadOnlyBuffer();
+		this.offsets = offsets;
+		this.refs    = new AtomicInteger(1);
+	}
+
+	/**
+	 * Look for the way to free direct buffers on the running JDK.
+	 * @return freer, or null if there is not.
+	 */
+	private static BufferFreer newFreer()
+	{
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method   invoke      = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field    field       = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			Object   unsafe      = field.get(null);
+			return buffer -> invoke.invoke(unsafe, buffer);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			/* Before JDK 9 */
+		}
+		try {
+			Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+			Method clean   = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			return buffer -> clean.invoke(cleaner.invoke(buffer));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Count a new user of the store.
+	 * @return false if the store was already released, it can not be used then.
+	 */
+	public boolean retain()
+	{
+		int count = refs.get();
+
+		while (count > 0)
+		{
+			if (refs.compareAndSet(count, count + 1))
+			{
+				return true;
+			}
+			count = refs.get();
+		}
+		return false;
+	}
+
+	/**
+	 * Release the store for a user. The last one frees the direct buffer.
+	 */
+	public void release()
+	{
+		if (refs.decrementAndGet() == 0 && buffer.isDirect() && FREER != null)
+		{
+			try {
+				FREER.free(buffer);
+			} catch (Exception e) {
+				/* Freed by the garbage collector */
+			}
+		}
+	}
+
+	/**
+	 * Get the number of lines.
+	 * @return number of lines.
+	 */
+	public int size()
+	{
+		return offsets.length - 1;
+	}
+
+	/**
+	 * Get the number of bytes of a line.
+	 * @param i  Line.
+	 * @return number of bytes.
+	 */
+	public int getLength(int i)
+	{
+		return offsets[i + 1] - offsets[i];
+	}
+
+	/**
+	 * Get the number of bytes of all the lines.
+	 * @return number of bytes.
+	 */
+	public int getByteSize()
+	{
+		return offsets[offsets.length - 1];
+	}
+
+	/**
+	 * Copy the bytes of a line into a slice. The buffer of the slice is reused when the
+	 * line fits on it, then it must not belong to an input stream.
+	 * @param view   Duplicate of the data, owned by the caller.
+	 * @param i      Line.
+	 * @param slice  Slice pointed to the bytes of the line.
+	 */
+	private void getLine(ByteBuffer view, int i, ByteSlice slice)
+	{
+		int  length  = getLength(i);
+		byte bytes[] = slice.getBytes();
+
+		if (bytes.length < length)
+		{
+			bytes = new byte[Math.max(length, 2 * bytes.length)];
+		}
+		/* Called through Buffer, ByteBuffer.position(int) does not exist on JDK 8 */
+		((Buffer)view).position(offsets[i]);
+		view.get(bytes, 0, length);
+		slice.set(bytes, 0, length);
+	}
+
+	/**
+	 * Decode a line.
+	 * @param i  Line.
+	 * @return line.
+	 */
+	public String getString(int i)
+	{
+		ByteSlice slice = new ByteSlice();
+
+		getLine(data.duplicate(), i, slice);
+		return slice.toString(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Select the first lines passing a filter. A {@link LineFilter} is tested over the raw
+	 * bytes, any other predicate over the line decoded.
+	 * @param numLines  Number of lines looked, from the first one.
+	 * @param p         Predicate to filter lines.
+	 * @return lines passing the filter.
+	 */
+	public int[] select(int numLines, Predicate<String> p)
+	{
+		ByteBuffer view       = data.duplicate();
+		ByteSlice  slice      = new ByteSlice();
+		int        selected[] = new int[numLines];
+		int        count      = 0;
+
+		for (int i = 0; i < numLines; i++)
+		{
+			boolean match;
+
+			getLine(view, i, slice);
+			if (p instanceof LineFilter)
+			{
+				match = ((LineFilter)p).test(slice);
+			}
+			else
+			{
+				match = p.test(slice.toString(StandardCharsets.UTF_8));
+			}
+			if (match)
+			{
+				selected[count++] = i;
+			}
+		}
+		return count == numLines ? selected : Arrays.copyOf(selected, count);
+	}
+
+	/**
+	 * Get some lines as a list. The lines are decoded every time they are taken from the
+	 * list, then the list can only be read while the store is retained.
+	 * @param selected  Lines of the list.
+	 * @return unmodifiable list of lines.
+	 */
+	public List<String> getLines(int selected[])
+	{
+		return new AbstractList<String>() {
+			@Override
+			public String get(int index)
+			{
+				return getString(selected[index]);
+			}
+
+			@Override
+			public int size()
+			{
+				return selected.length;
+			}
+		};
+	}
+
+	/**
+	 * Builder of a line store, the lines are kept on the heap until the store is built.
+	 */
+	public static final class Builder {
+		/** Bytes of the lines */
+		private byte data[];
+		/** Position on data where every line starts, and where the last one finishes */
+		private int  offsets[];
+		/** Number of lines added */
+		private int  numLines;
+
+		/**
+		 * Constructor
+		 */
+		public Builder()
+		{
+			this.data     = new byte[4096];
+			this.offsets  = new int[17];
+			this.numLines = 0;
+		}
+
+		/**
+		 * Add a line.
+		 * @param line  Line encoded in UTF-8 without the line terminator.
+		 */
+		public void add(ByteSlice line)
+		{
+			add(line.getBytes(), line.getOffset(), line.getLength());
+		}
+
+		/**
+		 * Add a line of another store.
+		 * @param store  Store with the line.
+		 * @param i      Line.
+		 */
+		public void add(LineStore store, int i)
+		{
+			int length = store.getLength(i);
+
+			reserve(length);
+			ByteBuffer view = store.data.duplicate();
+			((Buffer)view).position(store.offsets[i]);
+			view.get(data, offsets[numLines], length);
+			offsets[numLines + 1] = offsets[numLines] + length;
+			numLines++;
+		}
+
+		/**
+		 * Add the bytes of a line.
+		 * @param bytes   Buffer that contains the bytes.
+		 * @param offset  Position on buffer where the line start.
+		 * @param length  Number of bytes of the line.
+		 */
+		private void add(byte bytes[], int offset, int length)
+		{
+			reserve(length);
+			System.arraycopy(bytes, offset, data, offsets[numLines], length);
+			offsets[numLines + 1] = offsets[numLines] + length;
+			numLines++;
+		}
+
+		/**
+		 * Grow the buffers to add a line.
+		 * @param length  Number of bytes of the line.
+		 */
+		private void reserve(int length)
+		{
+			if (numLines + 1 == offsets.length)
+			{
+				offsets = Arrays.copyOf(offsets, offsets.length * 2);
+			}
+			long needed = (long)offsets[numLines] + length;
+			if (needed > data.length)
+			{
+				data = Arrays.copyOf(data, (int)Math.min(Integer.MAX_VALUE - 8, Math.max(needed, 2L * data.length)));
+			}
+		}
+
+		/**
+		 * Get the number of lines added.
+		 * @return number of lines.
+		 */
+		public int size()
+		{
+			return numLines;
+		}
+
+		/**
+		 * Get the number of bytes of a line added.
+		 * @param i  Line.
+		 * @return number of bytes.
+		 */
+		public int getLength(int i)
+		{
+			return offsets[i + 1] - offsets[i];
+		}
+
+		/**
+		 * Build the store with the first lines added. The builder is its single user.
+		 * @param numLines  Number of lines kept.
+		 * @param direct    Keep the bytes out of the heap, on a direct buffer.
+		 * @return line store.
+		 */
+		public LineStore build(int numLines, boolean direct)
+		{
+			int        size   = offsets[numLines];
+			ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+
+			buffer.put(data, 0, size);
+			((Buffer)buffer).flip();
+			return new LineStore(buffer, Arrays.copyOf(offsets, numLines + 1));
+		}
+	}
+}
@@ -8,17 +8,23 @@ import java.io.RandomAccessFile;
 /**
  * Input stream to traverse a file with random access in ascendant way.
  * This input stream can read n lines in ascendant way from a particular position on the file.
+ * The file is read ahead in a window of {@link #WINDOW_SIZE} bytes over a single reusable
+ * buffer, the line boundaries are looked inside the window instead of reading byte by byte.
  * @author alexdel
  */
 public class LogAscRandInputStream extends LogInputStream {
 	/**
-	 * Random access file reference.
+	 * Number of bytes read ahead from the file.
 	 */
-	private RandomAccessFile randFile;
+	public static final int WINDOW_SIZE = 64 * 1024;
 	/**
-	 * Last position of cursor after do the reading.
+	 * Maximum size allowed for the window buffer. Lines longer than this can not be buffered.
 	 */
-	private long lastBufPos;
+	private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+	/**
+	 * Random access file reference.
+	 */
+	private RandomAccessFile randFile;
 	/**
 	 * Current number of lines read.
 	 */
@@ -44,19 +50,31 @@ public class LogAscRandInputStream extends LogInputStream {
 	 */
 	private long currLineStart;
 	/**
-	 * Buffer used to buffer current line avoiding the reading byte by byte
+	 * Window buffer. It caches the file bytes from winStart to winEnd.
 	 */
 	private byte buffer[];
+	/**
+	 * File position of the first byte cached in the buffer.
+	 */
+	private long winStart;
+	/**
+	 * File position after the last byte cached in the buffer.
+	 */
+	private long winEnd;
 	/**
 	 * Current position on buffer
 	 */
 	private int  posBuffer;
 	/**
-	 * Buffer size.
+	 * Position on buffer where current line finish.
 	 */
-	private int  bufferSize;
+	private int  endBuffer;
 	/**
-	 * Is it the last line read on the file? 
+	 * Is there a line buffered pending to be read?
+	 */
+	private boolean lineBuffered;
+	/**
+	 * Is it the last line on the file without LF? The LF is added on reading.
 	 */
 	private boolean lastLine;
 	
@@ -70,18 +88,19 @@ public class LogAscRandInputStream extends LogInputStream {
 	public LogAscRandInputStream(File file, long lastPos, long numLines) 
 		   throws FileNotFoundException {
 		super();		
-		this.lastBufPos = lastPos;
 		this.readLines  = 0;
 		this.numLines   = numLines;
 		this.finishRead = false;
 		
-		
 		this.currLineStart = lastPos;
 		this.currLineEnd   = lastPos;
 		
-		this.buffer = null;
+		this.buffer    = new byte[WINDOW_SIZE];
+		this.winStart  = lastPos;
+		this.winEnd    = lastPos;
 		this.posBuffer = 0;
-		this.bufferSize = 0;
+		this.endBuffer = 0;
+		this.lineBuffered = false;
 		
 		this.lastLine = false;
 		
@@ -90,112 +109,135 @@ public class LogAscRandInputStream extends LogInputStream {
 	}
 	
 	/**
-	 * Find the start and end of next line to be read and after, buffer the line to avoid
-	 * reading byte by byte during read input stream operation.
+	 * Find the start and end of next line to be read. The line is looked in the window
+	 * buffer, and only when the window does not contain the line end, the window slides
+	 * forward keeping the part of the line already scanned.
 	 * @throws IOException
 	 */
 	private void bufferNextLine() 
 			throws IOException {
 		long tempCurPos;
-		int  readByte;				
 		
 		currLineStart = currLineEnd;			
 		
 		/* If reach the file EOF. No more lines to read */
 		if (currLineStart == fileSize)
 		{
-			lastBufPos = -1;
 			currLineEnd   = -1;
 			currLineStart = -1;
-			lastLine = true;
+			finishRead = true;
 			return;
 		}
 		
-		/* @todo:
-		 * Find out a way to avoid read byte by byte to find out where start 
-		 * the line. This is slow. Maybe we could buffer this reading and work
-		 * with the buffer.
-		 */
 		tempCurPos = currLineStart;
 		
-		do
+		while (tempCurPos < fileSize)
 		{
-			/* During first iteration. Avoid Line Feed(LF) byte,
-			 * after skip one byte read.
-			 */
-			tempCurPos++;
+			allocateAndCacheBuffer(currLineStart, tempCurPos + 1);
 			
-			if (tempCurPos >= fileSize)
+			int i = (int)(tempCurPos - winStart);
+			int end = (int)(winEnd - winStart);
+
+			while (i < end && buffer[i] != 0xA)
+			{
+				i++;
+			}
+
+			tempCurPos = winStart + i;
+
+			if (i < end)
 				break;
+		}
 			
-			randFile.seek(tempCurPos);
-			readByte = randFile.readByte();
-		} while(readByte != 0xA);
-		
 		/* if not EOF. Then reach the next byte to buffer the line,
-		 * else then this position is ok, we will allocate one more byte 
-		 * to save CR character */
+		 * else then this position is ok, the last line has not LF
+		 * and we will add it */
 		if (tempCurPos < fileSize)
 			currLineEnd = tempCurPos + 1;
 		else
+		{
 			currLineEnd = tempCurPos;
-	
-		if (currLineEnd == fileSize)
-		{			
 			lastLine = true;
 		}
 		
-		/* 1. Creates a buffer to avoid read byte by byte again with size of 
-		 *    the current line if possible, if not then creates a buffer with
-		 *    maximum size (Integer.MAX_VALUE).
-		 * 2. Cache the line.
-		 */
 		allocateAndCacheBuffer(currLineStart, currLineEnd);			
+
+		posBuffer    = (int)(currLineStart - winStart);
+		endBuffer    = (int)(currLineEnd - winStart);
+		lineBuffered = true;
 	}
 	
 	/**
-	 * Allocate the buffer for each line
-	 * @param start  Position where the line start.
-	 * @param end    Position where the line end.
+	 * Cache in the window buffer the file bytes from start to, at least, end. The window is
+	 * filled ahead as much as the buffer allows. The bytes already cached from start are
+	 * compacted to the buffer beginning, and only the next ones are read from the file.
+	 * The buffer is reused, it only grows when a single line does not fit on it.
+	 * @param start  Position where the window start.
+	 * @param end    Position until the window must be cached.
 	 * @throws IOException
 	 */
 	@Override
 	protected void allocateAndCacheBuffer(long start, long end) 
 		   throws IOException {		
-		/* The buffer can be created from start to end size */
-		if (end - start < Integer.MAX_VALUE)
+		/* The window requested is already cached */
+		if (start >= winStart && end <= winEnd)
 		{
-			/* update last position buffered */
-			lastBufPos = end;
-			/* Avoid buffer CR and LF */
-			bufferSize = (int)(end - start);
+			return;
+		}
 			
-			if (lastLine)
+		if (end - start > MAX_BUFFER_SIZE)
+		{
+			throw new IOException("Line too long to be buffered at position " + start);
+		}
+
+		int kept = 0;
+
+		/* Compact the bytes already cached from start */
+		if (start >= winStart && start < winEnd)
+		{
+			kept = (int)(winEnd - start);
+
+			if (end - start > buffer.length)
+			{
+				byte newBuffer[] = new byte[(int)Math.min(MAX_BUFFER_SIZE,
+						                                  Math.max(end - start, 2L * buffer.length))];
+				System.arraycopy(buffer, (int)(start - winStart), newBuffer, 0, kept);
+				buffer = newBuffer;
+			}
+			else
 			{
-				/* One byte more to save CR */
-				bufferSize++;
+				System.arraycopy(buffer, (int)(start - winStart), buffer, 0, kept);
 			}
 		}
-		else
+
+		/* Read ahead the rest of the window */
+		int toRead = (int)Math.min(buffer.length - kept, fileSize - start - kept);
+
+		randFile.seek(start + kept);
+		randFile.readFully(buffer, kept, toRead);
+
+		winStart = start;
+		winEnd   = start + kept + toRead;
+	}
+
+	/**
+	 * Mark current line as read and check if the number of lines or EOF has been reached.
+	 */
+	private void finishLine()
+	{
+		readLines++;
+		if (readLines == numLines)
 		{
-			/* Update last position buffered */
-			lastBufPos = start + Integer.MAX_VALUE;
-			/* Buffer with maximum size allowed */
-			bufferSize = Integer.MAX_VALUE;
+			finishRead = true;
 		}
-				
-		/* Allocate buffer */
-		buffer = new byte[bufferSize];
-		posBuffer = 0;
-	
-		/* Cache line or buffer with maximum size to avoid repeat */
-		randFile.seek(start);
-		randFile.read(buffer);
-		
-		if (lastLine)
+
+		/* If EOF has been reached, then we finished to read */
+		if (currLineEnd == fileSize)
 		{
-			buffer[bufferSize - 1] = '\n';
+			finishRead = true;
 		}
+
+		lineBuffered = false;
 	}
 	
 	/**
@@ -209,61 +251,132 @@ public class LogAscRandInputStream extends LogInputStream {
 		if (finishRead)
 			return readByte;
 		
-		/* If file beginning has not been reached */
-		if (currLineEnd <= fileSize)
+		if (!lineBuffered)
+		{
+			/* Buffer next line and after read a byte from that buffer
+			 * In this way we can read line by line
+			 */
+			bufferNextLine();
+
+			/* EOF has been reached */
+			if (finishRead)
+				return readByte;
+		}
+
+		if (posBuffer < endBuffer)
 		{
-			/* If new start line has been found */
-			if (buffer != null)
+			/* Read line from start line to end line */
+			readByte = buffer[posBuffer++];
+			if (posBuffer == endBuffer && !lastLine)
 			{
-				/* Read line from start line to end line */
-				readByte = buffer[posBuffer++];
-				if (posBuffer >= bufferSize)
-				{
-					if (lastBufPos < currLineEnd)
-					{
-						/* This code is reached, if the complete line
-						 * has not been possible to be cached in the buffer.
-						 * Then again.
-						 * 1. Create a buffer to cache the rest of line
-						 *    if possible, if not then creates a buffer with
-						 *    maximum size possible (Integer.MAX_VALUE).
-						 * 2. Cache the rest of line.
-						 */
-						allocateAndCacheBuffer(lastBufPos, currLineEnd);
-					}
-					else
-					{						
-						readLines++;
-						if (readLines == numLines)
-						{
-							finishRead = true;
-						}
-						
-						/* If EOF has been reached, then we finished to read */
-						if (currLineEnd == fileSize)
-						{
-							finishRead = true;
-						}
-						
-						buffer = null;
-						bufferSize = 0;
-						posBuffer = 0;						
-					}
-				}
-			}
-			else
-			{								
-				/* Buffer next line and after read a byte from that buffer 
-				 * In this way we can read line by line
-				 */				
-				bufferNextLine();
-				readByte = read();
+				finishLine();
 			}
 		}
-			
+		else
+		{
+			/* The last line on the file, add LF */
+			readByte = '\n';
+			finishLine();
+		}
+				
 		return readByte;
 	}
 	
+	/**
+	 * Read next line from the buffer.
+	 */
+	@Override
+	public boolean nextLine(ByteSlice line)
+		   throws IOException {		
+		if (finishRead)
+			return false;
+		
+		if (!lineBuffered)
+		{
+			bufferNextLine();
+						
+			/* EOF has been reached */
+			if (finishRead)
+				return false;
+		}
+			
+		int end = endBuffer;
+
+		/* Avoid LF and CR */
+		if (end > posBuffer && buffer[end - 1] == '\n')
+			end--;
+		if (end > posBuffer && buffer[end - 1] == '\r')
+			end--;
+
+		line.set(buffer, posBuffer, end - posBuffer);
+		posBuffer = endBuffer;
+		finishLine();
+
+		return true;
+	}
+	
+	/**
+	 * Read bytes from the buffer. At most the rest of the current line is copied.
+	 */
+	@Override
+	public int read(byte b[], int off, int len)
+		   throws IOException {
+		if (len == 0)
+			return 0;
+
+		int readByte = read();
+
+		if (readByte == -1)
+			return -1;
+
+		b[off] = (byte)readByte;
+
+		if (!lineBuffered)
+			return 1;
+
+		int count = Math.min(len - 1, endBuffer - posBuffer);
+		System.arraycopy(buffer, posBuffer, b, off + 1, count);
+		posBuffer += count;
+
+		if (posBuffer == endBuffer && !lastLine)
+		{
+			finishLine();
+		}
+
+		return count + 1;
+	}
+
+	/**
+	 * Get the position where the next line starts.
+	 */
+	@Override
+	public long getNextLinePos()
+	{
+		if (finishRead || lineBuffered)
+			return -1;
+
+		return currLineEnd;
+	}
+
+	/**
+	 * Skip lines forward, the next line will start on pos.
+	 */
+	@Override
+	public boolean skipLines(long pos, long lines)
+	{
+		if (finishRead || lineBuffered || pos < currLineEnd || pos > fileSize ||
+			readLines + lines > numLines)
+			return false;
+
+		currLineEnd = pos;
+		readLines  += lines;
+		if (readLines == numLines || currLineEnd == fileSize)
+		{
+			finishRead = true;
+		}
+		return true;
+	}
+
 	/**
 	 * Close RandomAccessFile file resource
 	 */
@@ -8,17 +8,23 @@ import java.io.RandomAccessFile;
 /**
  * Input stream to traverse a file with random access in descendant way. 
  * This input stream can read n lines in descendant way from a particular position on the file.
+ * The file is read backward in blocks of {@link #BLOCK_SIZE} bytes into a single reusable
+ * buffer, the line boundaries are looked inside the block instead of reading byte by byte.
  * @author alexdel
  */
 public class LogDescRandInputStream extends LogInputStream {
 	/**
-	 * Random access file reference.
+	 * Number of bytes read from the file on every backward step.
 	 */
-	private RandomAccessFile randFile;
+	public static final int BLOCK_SIZE = 64 * 1024;
 	/**
-	 * Last position of cursor after do the reading.
+	 * Maximum size allowed for the block buffer. Lines longer than this can not be buffered.
 	 */
-	private long lastBufPos;
+	private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+	/**
+	 * Random access file reference.
+	 */
+	private RandomAccessFile randFile;
 	/**
 	 * Current number of lines read.
 	 */
@@ -40,17 +46,29 @@ public class LogDescRandInputStream extends LogInputStream {
 	 */
 	private long currLineStart;
 	/**
-	 * Buffer used to buffer current line avoiding the reading byte by byte
+	 * Block buffer. It caches the file bytes from blockStart to blockEnd.
 	 */
 	private byte buffer[];
+	/**
+	 * File position of the first byte cached in the buffer.
+	 */
+	private long blockStart;
+	/**
+	 * File position after the last byte cached in the buffer.
+	 */
+	private long blockEnd;
 	/**
 	 * Current position on buffer
 	 */
 	private int  posBuffer;
 	/**
-	 * Buffer size
+	 * Position on buffer where current line finish.
 	 */
-	private int  bufferSize;
+	private int  endBuffer;
+	/**
+	 * Is there a line buffered pending to be read?
+	 */
+	private boolean lineBuffered;
 	/**
 	 * Is it the first line read on the file? It means, is it the last line? Because this
 	 * an inverse reading file.
@@ -67,7 +85,6 @@ public class LogDescRandInputStream extends LogInputStream {
 	public LogDescRandInputStream(File file, long lastPos, long numLines) 
 		   throws FileNotFoundException {
 		super();		
-		this.lastBufPos = lastPos;
 		this.readLines  = 0;
 		this.numLines   = numLines;
 		this.finishRead = false;
@@ -75,9 +92,12 @@ public class LogDescRandInputStream extends LogInputStream {
 		this.currLineStart = lastPos;
 		this.currLineEnd   = lastPos;
 		
-		this.buffer = null;
+		this.buffer     = new byte[BLOCK_SIZE];
+		this.blockStart = lastPos;
+		this.blockEnd   = lastPos;
 		this.posBuffer = 0;
-		this.bufferSize = 0;
+		this.endBuffer  = 0;
+		this.lineBuffered = false;
 		
 		this.firstLine = false;
 		
@@ -85,108 +105,135 @@ public class LogDescRandInputStream extends LogInputStream {
 	}
 	
 	/**
-	 * Find the start and end of previous line to be read and after, buffer the line to avoid
-	 * reading byte by byte during read input stream operation.
+	 * Find the start and end of previous line to be read. The line is looked in the block
+	 * buffer, and only when the block does not contain the line start, a previous block is
+	 * read from the file.
 	 * @throws IOException
 	 */
 	private void bufferPrevLine() 
 			throws IOException {
 		long tempCurPos;
-		int  readByte;				
 		
 		currLineEnd = currLineStart;			
 		
 		/* If reach the file beginning. No more lines to read */
-		if (currLineEnd == 0)
+		if (currLineEnd <= 0)
 		{
-			lastBufPos = -1;
 			currLineEnd   = -1;
 			currLineStart = -1;
 			return;
 		}
 		
-		/* @todo:
-		 * Find out a way to avoid read byte by byte to find out where start 
-		 * the line. This could be slow
-		 */
-		
 		tempCurPos = currLineEnd - 1;
-		randFile.seek(tempCurPos);	
+		allocateAndCacheBuffer(tempCurPos, currLineEnd);
 		
 		/* Avoid Line Feed (LF) byte */
-		if (randFile.readByte() != 0XA)
+		if (buffer[(int)(tempCurPos - blockStart)] != 0XA)
 		{
 			firstLine = true;		
 		}		
 		
-		do
+		/* Look for the previous LF inside the block, if the block beginning is reached
+		 * then cache the previous block keeping the part of the line already scanned. */
+		while (true)
 		{
-			/* During first iteration. Avoid Carry Return (CR) byte,
-			 * after skip one byte read.
-			 */
-			tempCurPos--;
+			int i = (int)(tempCurPos - blockStart) - 1;
 			
-			if (tempCurPos < 0)
+			while (i >= 0 && buffer[i] != 0xA)
+			{
+				i--;
+			}
+
+			if (i >= 0 || blockStart == 0)
+			{
+				tempCurPos = blockStart + i;
 				break;
+			}
 			
-			randFile.seek(tempCurPos);
-			readByte = randFile.readByte();
-		} while(readByte != 0xA);
+			tempCurPos = blockStart;
+			allocateAndCacheBuffer(Math.max(0, blockStart - BLOCK_SIZE), currLineEnd);
+		}
 		
 		/* Return one byte after LF was found or beginning file has been 
 		 * reached */
 		currLineStart = tempCurPos + 1;
 							
-		/* 1. Creates a buffer to avoid read byte by byte again with size of 
-		 *    the current line if possible, if not then creates a buffer with
-		 *    maximum size (Integer.MAX_VALUE).
-		 * 2. Cache the line.
-		 */
-		allocateAndCacheBuffer(currLineStart, currLineEnd);			
+		posBuffer    = (int)(currLineStart - blockStart);
+		endBuffer    = (int)(currLineEnd - blockStart);
+		lineBuffered = true;
 	}
 	
 	/**
-	 * Allocate the buffer for each line
-	 * @param start    Position where the line start.
-	 * @param end	   Position where the line finish.
+	 * Cache in the block buffer the file bytes from start to end. The bytes already cached
+	 * between start and end are kept, moving them to its new place in the buffer, and only
+	 * the missing ones are read from the file. The buffer is reused, it only grows when a
+	 * single line does not fit on it.
+	 * @param start    Position where the block start.
+	 * @param end	   Position where the block finish.
 	 * @throws IOException
 	 */
 	protected void allocateAndCacheBuffer(long start, long end) 
 		   throws IOException {		
-		/* The buffer can be created from start to end size */
-		if (end - start < Integer.MAX_VALUE)
+		/* The block requested is already cached */
+		if (start >= blockStart && end <= blockEnd)
 		{
-			/* update last position buffered */
-			lastBufPos = end;
-			/* Avoid buffer CR and LF */
-			bufferSize = (int)(end - start);
+			return;
+		}
 			
-			if (firstLine)
-			{
-				/* One byte more to save CR */
-				bufferSize++;
-			}
+		long size = end - start;
+
+		if (size > MAX_BUFFER_SIZE)
+		{
+			throw new IOException("Line too long to be buffered at position " + start);
+		}
+
+		/* Reading from a new position, cache a complete block behind end */
+		if (end > blockEnd || end <= blockStart)
+		{
+			start = Math.max(0, Math.min(start, end - buffer.length));
+			size  = end - start;
+			randFile.seek(start);
+			randFile.readFully(buffer, 0, (int)size);
 		}
 		else
 		{
-			/* Update last position buffered */
-			lastBufPos = start + Integer.MAX_VALUE;
-			/* Buffer with maximum size allowed */
-			bufferSize = Integer.MAX_VALUE;
+			/* Keep the bytes already cached and read the previous ones */
+			int kept = (int)(end - blockStart);
+			int missing = (int)(blockStart - start);
+
+			if (size > buffer.length)
+			{
+				byte newBuffer[] = new byte[(int)Math.min(MAX_BUFFER_SIZE,
+						                                  Math.max(size, 2L * buffer.length))];
+				System.arraycopy(buffer, 0, newBuffer, missing, kept);
+				buffer = newBuffer;
+			}
+			else
+			{
+				System.arraycopy(buffer, 0, buffer, missing, kept);
+			}
+
+			randFile.seek(start);
+			randFile.readFully(buffer, 0, missing);
 		}
-				
-		/* Allocate buffer */
-		buffer = new byte[bufferSize];
-		posBuffer = 0;
-	
-		/* Cache line or buffer with maximum size to avoid repeat */
-		randFile.seek(start);
-		randFile.read(buffer);
-		
-		if (firstLine)
+
+		blockStart = start;
+		blockEnd   = end;
+	}
+
+	/**
+	 * Mark current line as read and check if the number of lines has been reached.
+	 */
+	private void finishLine()
+	{
+		readLines++;
+		if (readLines == numLines)
 		{
-			buffer[bufferSize - 1] = '\n';
+			finishRead = true;
 		}
+
+		lineBuffered = false;
+		firstLine = false;
 	}
 	
 	/**
@@ -200,56 +247,132 @@ public class LogDescRandInputStream extends LogInputStream {
 		if (finishRead)
 			return readByte;
 		
-		/* If file beginning has not been reached */
-		if (currLineStart >= 0)
+		if (!lineBuffered)
 		{
-			/* If new start line has been found */
-			if (buffer != null)
+			/* Buffer previous line and after read a byte from that buffer
+			 * In this way we can read line by line but in reverse order
+			 */
+			bufferPrevLine();
+
+			/* File beginning has been reached */
+			if (currLineStart < 0)
+				return readByte;
+		}
+
+		if (posBuffer < endBuffer)
+		{
+			/* Read line from start line to end line */
+			readByte = buffer[posBuffer++];
+			if (posBuffer == endBuffer && !firstLine)
 			{
-				/* Read line from start line to end line */
-				readByte = buffer[posBuffer++];
-				if (posBuffer >= bufferSize)
-				{
-					if (lastBufPos < currLineEnd)
-					{
-						/* This code is reached, if the complete line
-						 * has not been possible to be cached in the buffer.
-						 * Then again.
-						 * 1. Create a buffer to cache the rest of line
-						 *    if possible, if not then creates a buffer with
-						 *    maximum size possible (Integer.MAX_VALUE).
-						 * 2. Cache the rest of line.
-						 */
-						allocateAndCacheBuffer(lastBufPos, currLineEnd);
-					}
-					else
-					{						
-						readLines++;
-						if (readLines == numLines)
-						{
-							finishRead = true;
-						}
-						
-						buffer = null;
-						bufferSize = 0;
-						posBuffer = 0;
-						firstLine = false;
-					}
-				}
-			}
-			else
-			{								
-				/* Buffer previous line and after read a byte from that buffer 
-				 * In this way we can read line by line but in reverse order
-				 */				
-				bufferPrevLine();
-				readByte = read();
+				finishLine();
 			}
 		}
-			
+		else
+		{
+			/* The last line on the file has not LF, add it */
+			readByte = '\n';
+			finishLine();
+		}
+				
 		return readByte;
 	}
 	
+	/**
+	 * Read previous line from the buffer.
+	 */
+	@Override
+	public boolean nextLine(ByteSlice line)
+		   throws IOException {		
+		if (finishRead)
+			return false;
+		
+		if (!lineBuffered)
+		{
+			bufferPrevLine();
+						
+			/* File beginning has been reached */
+			if (currLineStart < 0)
+				return false;
+		}
+			
+		int end = endBuffer;
+
+		/* Avoid LF and CR */
+		if (end > posBuffer && buffer[end - 1] == '\n')
+			end--;
+		if (end > posBuffer && buffer[end - 1] == '\r')
+			end--;
+
+		line.set(buffer, posBuffer, end - posBuffer);
+		posBuffer = endBuffer;
+		finishLine();
+
+		return true;
+	}
+	
+	/**
+	 * Read bytes from the buffer. At most the rest of the current line is copied.
+	 */
+	@Override
+	public int read(byte b[], int off, int len)
+		   throws IOException {
+		if (len == 0)
+			return 0;
+
+		int readByte = read();
+
+		if (readByte == -1)
+			return -1;
+
+		b[off] = (byte)readByte;
+
+		if (!lineBuffered)
+			return 1;
+
+		int count = Math.min(len - 1, endBuffer - posBuffer);
+		System.arraycopy(buffer, posBuffer, b, off + 1, count);
+		posBuffer += count;
+
+		if (posBuffer == endBuffer && !firstLine)
+		{
+			finishLine();
+		}
+
+		return count + 1;
+	}
+
+	/**
+	 * Get the position where the previous line finishes.
+	 */
+	@Override
+	public long getNextLinePos()
+	{
+		if (finishRead || lineBuffered)
+			return -1;
+
+		return currLineStart;
+	}
+
+	/**
+	 * Skip lines backward, the previous line will finish on pos.
+	 */
+	@Override
+	public boolean skipLines(long pos, long lines)
+	{
+		if (finishRead || lineBuffered || pos < 0 || pos > currLineStart ||
+			readLines + lines > numLines)
+			return false;
+
+		currLineStart = pos;
+		readLines    += lines;
+		if (readLines == numLines)
+		{
+			finishRead = true;
+		}
+		return true;
+	}
+
 	/**
 	 * Close RandomAccessFile file resource
 	 */
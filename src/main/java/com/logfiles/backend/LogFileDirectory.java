@@ -2,40 +2,169 @@ package com.logfiles.backend;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import com.logfiles.api.LogFile;
 
 /**
- * This class read all the files on a directory
+ * This class read all the files on a directory.
+ * The files are read at the same time on an executor, usually bounded and sized to the
+ * storage, instead of the common ForkJoinPool shared by the whole JVM. With a global limit
+ * of lines the files are read one by one instead, newest first, until the limit is met.
  * @author alexdel
  *
  */
 public class LogFileDirectory {
 	
 	private LogFileReader logFileReader;
+	/** Executor of the reads of the files */
+	private Executor      executor;
 	
 	/**
 	 * Constructor
 	 */
 	public LogFileDirectory()	
 	{
-		this.logFileReader = new LogFileReader();
+		this(new LogFileReader());
 	}
 	
 	/** 
-	 * Constructor
+	 * Constructor, the files are read on the common ForkJoinPool
 	 * @param logFileReader log file controller backend used to read every particular 
 	 *                      file in the log directory
 	 */
 	public LogFileDirectory(LogFileReader logFileReader)
+	{
+		this(logFileReader, ForkJoinPool.commonPool());
+	}
+	
+	/** 
+	 * Constructor
+	 * @param logFileReader log file controller backend used to read every particular 
+	 *                      file in the log directory
+	 * @param executor      executor of the reads of the files
+	 */
+	public LogFileDirectory(LogFileReader logFileReader, Executor executor)
 	{
 		this.logFileReader = logFileReader;
+		this.executor      = executor;
 	}
 	
+	/**
+	 * Get the files of a directory, to read them one by one.
+	 * @param path  Directory path
+	 * @return files of the directory, empty if the directory can not be listed.
+	 */
+	public List<File> listFiles(File path)
+	{
+		File files[] = path.listFiles();
+		
+		return files == null ? Collections.emptyList() : Arrays.asList(files);
+	}
+
+	/**
+	 * Get the files of a directory ranked by modification time: the newest first to read the
+	 * last lines (DESC), the oldest first to read the first lines (ASC).
+	 * @param path   Directory path
+	 * @param order  Order of the reading.
+	 * @return files of the directory ranked, empty if the directory can not be listed.
+	 */
+	public List<File> rankFiles(File path, ReadOrder order)
+	{
+		List<File> files = new ArrayList<>(listFiles(path));
+		
+		/* The modification time is read once per file */
+		Map<File, Long> modified = new HashMap<>();
+		for (File file : files)
+		{
+			modified.put(file, file.lastModified());
+		}
+		Comparator<File> byModified = Comparator.comparing(modified::get);
+		files.sort(order == ReadOrder.DESC ? byModified.reversed() : byModified);
+		return files;
+	}
+
+	/**
+	 * Read the files of a directory with a global limit of lines: the files are read one by
+	 * one ranked by modification time and no file is opened once the limit is met. The files
+	 * not read are returned with their details only, without lines.
+	 * Every file is read as the query says and its reading stops once the lines left pass
+	 * the filter, then its lastPosRead is after the last line kept.
+	 * @param path   Directory path
+	 * @param query  Query with the start, number of lines, order and filter of the reading.
+	 * @param limit  Maximum number of lines of all the files.
+	 * @return files of the directory ranked, null for the files that can not be read.
+	 */
+	public List<LogFile> getAllFiles(File path, LogQuery query, long limit)
+	{
+		List<LogFile> logFiles  = new ArrayList<>();
+		long          linesLeft = limit;
+		
+		for (File file : rankFiles(path, query.getOrder()))
+		{
+			if (!file.isFile())
+			{
+				logFiles.add(null);
+				continue;
+			}
+			if (linesLeft <= 0)
+			{
+				logFiles.add(logFileReader.getFileDetails(file));
+				continue;
+			}
+			
+			LogFile logFile = readFile(file, query.limitTo(linesLeft));
+			if (logFile != null)
+			{
+				linesLeft -= logFile.getFileBuffered().getLines().size();
+			}
+			logFiles.add(logFile);
+		}
+		return logFiles;
+	}
+
+	/**
+	 * Read every file of a directory on the executor, all of them at the same time.
+	 * @param path  Directory path
+	 * @param read  Reading of a file.
+	 * @return files of the directory in the order listed.
+	 * @throws java.util.concurrent.RejectedExecutionException if the executor does not accept
+	 *         more reads
+	 */
+	private List<LogFile> readAll(File path, Function<File, LogFile> read)
+	{
+		List<CompletableFuture<LogFile>> reads = listFiles(path).stream()
+				.map(file -> CompletableFuture.supplyAsync(() -> read.apply(file), executor))
+				.collect(Collectors.toList());
+		
+		return reads.stream().map(CompletableFuture::join).collect(Collectors.toList());
+	}
+
+	/**
+	 * Read all the files from a directory with the lines of a query.
+	 * @param path   Directory path
+	 * @param query  Query with the start, number of lines, order and filter of the reading.
+	 * @return files of the directory, null for the files that can not be read.
+	 */
+	public List<LogFile> getAllFiles(File path, LogQuery query)
+	{
+		/* The query is shared by the reads as it is immutable */
+		return readAll(path, file -> readFile(file, query));
+	}
+
 	/**
 	 * Read all the files from a directory considering path, ordering and keyword if were specified.
 	 * with specified query params
@@ -48,12 +177,7 @@ public class LogFileDirectory {
             ReadOrder         ascdesc, 			                       
             Predicate<String> p)
 	{
-		File files[] = path.listFiles();
-		List<File> filesList = Arrays.asList(files);
-		
-		/* Executes reading file in parallel way for every file specified */
-		List <LogFile> logFiles = filesList.parallelStream().map(file -> readFile(file, ascdesc, p)).collect(Collectors.toList());			
-		return logFiles;
+		return readAll(path, file -> readFile(file, ascdesc, p));
 	}
 
 	/**
@@ -69,12 +193,46 @@ public class LogFileDirectory {
 			                         ReadOrder         ascdesc, 			                       
 			                         Predicate<String> p)
 	{
-		File files[] = path.listFiles();
-		List<File> filesList = Arrays.asList(files);		
-		
-        /* Executes reading file in parallel way for every file specified */
-		List <LogFile> logFiles = filesList.parallelStream().map(file -> readFile(file, numLines, ascdesc, p)).collect(Collectors.toList());			
-		return logFiles;
+		return readAll(path, file -> readFile(file, numLines, ascdesc, p));
+	}
+	
+	/**
+	 * Read all the files from a directory considering a time range, numLines, path, ordering
+	 * and keyword if were specified.
+	 * @param path       Log directory path
+	 * @param since      Time of the first lines to be read, or null from the file start
+	 * @param until      Time of the last lines to be read, or null until the file end
+	 * @param numLines   Number of lines to be query, 0 or less for all the lines on the range
+	 * @param ascdesc    Ordering
+	 * @param p          keyword predicate to filter lines read.
+	 * @return
+	 */
+	public List<LogFile> getAllFiles(File              path,
+									 Instant           since,
+									 Instant           until,
+									 long              numLines, 
+			                         ReadOrder         ascdesc, 			                       
+			                         Predicate<String> p)
+	{
+		return readAll(path, file -> readFile(file, since, until, numLines, ascdesc, p));
+	}
+	
+	/**
+	 * Read a particular file with the lines of a query
+	 * @param file   File to be read
+	 * @param query  Query of the reading
+	 * @return file read, null if it can not be read.
+	 */
+	private LogFile readFile(File file, LogQuery query)
+	{
+		LogFile logFile = null;
+		try 
+		{
+			logFile = logFileReader.read(file, query); 
+		} catch(IOException ioe)
+		{
+		}
+		return logFile;			
 	}
 	
 	/**
@@ -115,4 +273,28 @@ public class LogFileDirectory {
 		}
 		return logFile;			
 	}
+	
+	/**
+	 * Read a particular file considering a time range, numLines, ordering, keyword
+	 * @param file       File to be read.
+	 * @param since      Time of the first lines to be read, or null from the file start
+	 * @param until      Time of the last lines to be read, or null until the file end
+	 * @param numLines   Number of lines to be read, 0 or less for all the lines on the range
+	 * @param ascdesc    Ordering reading: ascendant(0), descendant(1)
+	 * @param p          Keyword predicate
+	 * @return
+	 */
+	private LogFile readFile(File file, Instant since, Instant until, long numLines, ReadOrder ascdesc,
+			                 Predicate<String> p)
+	{
+		LogFile logFile = null;
+		try 
+		{
+			logFile = logFileReader.readLinesByTime(file, since, until,
+					                                numLines > 0 ? numLines : file.length(), ascdesc, p); 
+		} catch(IOException ioe)
+		{
+		}
+		return logFile;			
+	}
 }
@@ -1,51 +1,165 @@
 package com.logfiles.backend;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 import com.logfiles.api.LogFile;
 import com.logfiles.api.LogFileBuffer;
 
 /**
  * This class reads any file in the order specify.
+ * It keeps no state of the readings, then a single reader serves all the requests at the
+ * same time: the position after a reading is returned on its LogFileBuffer.
  * 
  * @author alexdel
  */
 public class LogFileReader {
 	/**
-	 * Last position in the file after the reading.
+	 * Default file size since the files are read with memory mapping.
 	 */
-	private long lastPos;
-	private final int MAX_SIZE = 20;
-	private Map<String, LogFileBuffer> cacheFiles;
+	public static final long DEFAULT_MMAP_THRESHOLD = 512L * 1024 * 1024;
+	/**
+	 * Last lines of the files read in descendant order from the end. null if there is not.
+	 */
+	private TailCache tailCache;
+	/**
+	 * Lines passing the filters of the queries already read. null if there is not.
+	 */
+	private ResultCache resultCache;
+	/**
+	 * File size since the files are read with memory mapping instead of
+	 * RandomAccessFile reads.
+	 */
+	private long mmapThreshold;
+	/**
+	 * Sparse line indexes to start reading from a line number.
+	 */
+	private LineIndex lineIndex;
+	/**
+	 * Block index to skip the blocks that can not pass the filter. null if there is not.
+	 */
+	private BlockIndex blockIndex;
+	/**
+	 * Bloom filters of the blocks learned while the files are read. null if there is not.
+	 */
+	private BloomBlockIndex bloomIndex;
+	/**
+	 * Search of the time ranges over the timestamps of the lines.
+	 */
+	private TimestampSearch timestampSearch;
 	
 	/**
     * Default Constructor
     */
 	public LogFileReader()
 	{
-		/*
-		 * Creates a hash map which will be modifying keeping in top recent used
-		 * Removes the last entry if the linked hash map reach the maximum size.
-		 */
-		cacheFiles = Collections
-				.synchronizedMap(new LinkedHashMap<String, LogFileBuffer>(MAX_SIZE, 1, true) {
-					protected boolean removeEldestEntry(Map.Entry<String, LogFileBuffer> eldest)
-					{
-						return size() > MAX_SIZE;
-					}
-				});
+		this(DEFAULT_MMAP_THRESHOLD);
+	}
+
+	/**
+	 * Constructor
+	 * @param mmapThreshold File size since the files are read with memory mapping.
+	 */
+	public LogFileReader(long mmapThreshold)
+	{
+		this(mmapThreshold, new LineIndex());
+	}
+
+	/**
+	 * Constructor
+	 * @param mmapThreshold File size since the files are read with memory mapping.
+	 * @param lineIndex     Sparse line indexes to start reading from a line number.
+	 */
+	public LogFileReader(long mmapThreshold, LineIndex lineIndex)
+	{
+		this(mmapThreshold, lineIndex, null);
+	}
+
+	/**
+	 * Constructor
+	 * @param mmapThreshold File size since the files are read with memory mapping.
+	 * @param lineIndex     Sparse line indexes to start reading from a line number.
+	 * @param blockIndex    Block index to skip the blocks that can not pass the filter, or null.
+	 */
+	public LogFileReader(long mmapThreshold, LineIndex lineIndex, BlockIndex blockIndex)
+	{
+		this(mmapThreshold, lineIndex, blockIndex, null);
+	}
+
+	/**
+	 * Constructor
+	 * @param mmapThreshold File size since the files are read with memory mapping.
+	 * @param lineIndex     Sparse line indexes to start reading from a line number.
+	 * @param blockIndex    Block index to skip the blocks that can not pass the filter, or null.
+	 * @param bloomIndex    Bloom filters of the blocks learned while the files are read, or null.
+	 */
+	public LogFileReader(long mmapThreshold, LineIndex lineIndex, BlockIndex blockIndex,
+			             BloomBlockIndex bloomIndex)
+	{
+		this(mmapThreshold, lineIndex, blockIndex, bloomIndex, new TimestampSearch());
+	}
+
+	/**
+	 * Constructor
+	 * @param mmapThreshold   File size since the files are read with memory mapping.
+	 * @param lineIndex       Sparse line indexes to start reading from a line number.
+	 * @param blockIndex      Block index to skip the blocks that can not pass the filter, or null.
+	 * @param bloomIndex      Bloom filters of the blocks learned while the files are read, or null.
+	 * @param timestampSearch Search of the time ranges over the timestamps of the lines.
+	 */
+	public LogFileReader(long mmapThreshold, LineIndex lineIndex, BlockIndex blockIndex,
+			             BloomBlockIndex bloomIndex, TimestampSearch timestampSearch)
+	{
+		this(mmapThreshold, lineIndex, blockIndex, bloomIndex, timestampSearch, new TailCache());
+	}
+
+	/**
+	 * Constructor
+	 * @param mmapThreshold   File size since the files are read with memory mapping.
+	 * @param lineIndex       Sparse line indexes to start reading from a line number.
+	 * @param blockIndex      Block index to skip the blocks that can not pass the filter, or null.
+	 * @param bloomIndex      Bloom filters of the blocks learned while the files are read, or null.
+	 * @param timestampSearch Search of the time ranges over the timestamps of the lines.
+	 * @param tailCache       Last lines of the files read in descendant order, or null.
+	 */
+	public LogFileReader(long mmapThreshold, LineIndex lineIndex, BlockIndex blockIndex,
+			             BloomBlockIndex bloomIndex, TimestampSearch timestampSearch,
+			             TailCache tailCache)
+	{
+		this(mmapThreshold, lineIndex, blockIndex, bloomIndex, timestampSearch, tailCache,
+			 new ResultCache());
+	}
+
+	/**
+	 * Constructor
+	 * @param mmapThreshold   File size since the files are read with memory mapping.
+	 * @param lineIndex       Sparse line indexes to start reading from a line number.
+	 * @param blockIndex      Block index to skip the blocks that can not pass the filter, or null.
+	 * @param bloomIndex      Bloom filters of the blocks learned while the files are read, or null.
+	 * @param timestampSearch Search of the time ranges over the timestamps of the lines.
+	 * @param tailCache       Last lines of the files read in descendant order, or null.
+	 * @param resultCache     Lines passing the filters of the queries already read, or null.
+	 */
+	public LogFileReader(long mmapThreshold, LineIndex lineIndex, BlockIndex blockIndex,
+			             BloomBlockIndex bloomIndex, TimestampSearch timestampSearch,
+			             TailCache tailCache, ResultCache resultCache)
+	{
+		this.mmapThreshold   = mmapThreshold;
+		this.lineIndex       = lineIndex;
+		this.blockIndex      = blockIndex;
+		this.bloomIndex      = bloomIndex;
+		this.timestampSearch = timestampSearch;
+		this.tailCache       = tailCache;
+		this.resultCache     = resultCache;
 	}
 
 	/**
@@ -53,7 +167,7 @@ public class LogFileReader {
 	 * @param  file    File reference 
 	 * @return LogFile POJO with file details.
 	 */
-	private LogFile getFileDetails(File file) {
+	public LogFile getFileDetails(File file) {
 		String path = file.getAbsolutePath();		
 		Long size = file.length();
 		String ipStr;
@@ -67,6 +181,62 @@ public class LogFileReader {
 		return new LogFile(ipStr, path, size);
 	}
 
+	/**
+	 * Get the input stream to read the file in the order specified. Files bigger than
+	 * the memory mapping threshold are read with a memory mapped input stream.
+	 * @param file     File to be read.
+	 * @param lastP    Position on the file where the reading will start.
+	 * @param numLines Number of lines to be read.
+	 * @param ascdesc  Order to read the file. ASC, DESC.
+	 * @return input stream to read the file.
+	 * @throws IOException if file not found or forbidden
+	 */
+	private LogInputStream openInputStream(File file, long lastP, long numLines, ReadOrder ascdesc)
+			throws IOException {
+		if (file.length() >= mmapThreshold)
+		{
+			return new LogMappedInputStream(file, lastP, numLines, ascdesc);
+		}
+		else if (ascdesc == ReadOrder.ASC) 
+		{
+			return new LogAscRandInputStream(file, lastP, numLines);
+		} 
+		return new LogDescRandInputStream(file, lastP, numLines);
+	}
+
+	/**
+	 * Get the block skipper for the file and the filter, if the file has blocks indexed
+	 * and the filter can be checked over the block summaries. The keyword index of the
+	 * cold files is used first, and the Bloom filters learned on previous readings after.
+	 * @param file     File to be read.
+	 * @param p        Predicate to filter lines.
+	 * @param ascdesc  Order to read the file. ASC, DESC.
+	 * @return block skipper, or null if no block can be skipped.
+	 */
+	private BlockSkipper getBlockSkipper(File file, Predicate<String> p, ReadOrder ascdesc)
+	{
+		if (!(p instanceof LineFilter))
+		{
+			return null;
+		}
+
+		List<LineBlock> blocks = Collections.emptyList();
+
+		if (blockIndex != null)
+		{
+			blocks = blockIndex.getBlocks(file);
+		}
+		if (blocks.isEmpty() && bloomIndex != null)
+		{
+			blocks = bloomIndex.getBlocks(file);
+		}
+		if (blocks.isEmpty())
+		{
+			return null;
+		}
+		return BlockSkipper.create(blocks, (LineFilter)p, ascdesc);
+	}
+
 	/**
 	 * Read the file in order specified.
 	 * 
@@ -80,13 +250,29 @@ public class LogFileReader {
 	 */
 	public LogFile readLines(File file, ReadOrder ascdesc, Predicate<String> p)
 			throws IOException {
+		return readLines(file, ascdesc, p, null);
+	}
+
+	/**
+	 * Read the file in order specified, handing out the lines while they are read.
+	 * 
+	 * @param file    File reference to be looked
+	 * @param ascdesc Order to read the file. ASC, DESC.
+	 * @param p       Predicate to filter lines.
+	 * @param sink    Receiver of the lines read, or null to keep them on the LogFileBuffer.
+	 * @return LogFileBuffer POJO LogFileBuffer which contains lines read, if there is not
+	 *         sink, and last position in the file after reading.
+	 * @throws IOException if file not found or forbidden, or the sink fails
+	 */
+	public LogFile readLines(File file, ReadOrder ascdesc, Predicate<String> p, LineSink sink)
+			throws IOException {
 		long iniValue;
 		if (ascdesc == ReadOrder.ASC) {
 			iniValue = 0;
 		} else {
 			iniValue = file.length();
 		}
-		return readLines(file, iniValue, file.length(), ascdesc, p);
+		return readLines(file, iniValue, -1, file.length(), ascdesc, p, sink);
 	}
 
 	/**
@@ -102,13 +288,214 @@ public class LogFileReader {
 	 */
 	public LogFile readLines(File file, long numLines, ReadOrder ascdesc,
 			Predicate<String> p) throws IOException {
+		return readLines(file, numLines, ascdesc, p, null);
+	}
+
+	/**
+	 * Read numLines lines in order specified, handing out the lines while they are read.
+	 * 
+	 * @param file     File reference to be looked
+	 * @param numLines Number of lines to be read.
+	 * @param ascdesc  Order to read the file. ASC, DESC.
+	 * @param p        Predicate to filter lines.
+	 * @param sink     Receiver of the lines read, or null to keep them on the LogFileBuffer.
+	 * @return LogFileBuffer POJO LogFileBuffer which contains lines read, if there is not
+	 *         sink, and last position in the file after reading.
+	 * @throws IOException if file not found or forbidden, or the sink fails
+	 */
+	public LogFile readLines(File file, long numLines, ReadOrder ascdesc,
+			Predicate<String> p, LineSink sink) throws IOException {
 		long iniValue;
 		if (ascdesc == ReadOrder.ASC) {
 			iniValue = 0;
 		} else {
 			iniValue = file.length();
 		}
-		return readLines(file, iniValue, numLines, ascdesc, p);
+		return readLines(file, iniValue, -1, numLines, ascdesc, p, sink);
+	}
+
+	/**
+	 * Read numLines lines in order specified from line number fromLine in the file.
+	 * The position where the line starts is taken from the sparse line index.
+	 * ASC reads fromLine and the next ones, DESC reads fromLine and the previous ones.
+	 * 
+	 * @param file     File reference to be looked
+	 * @param fromLine Line number where the reading will start, starting at 1.
+	 * @param numLines Number of lines to be read.
+	 * @param ascdesc  Order to read the file. ASC, DESC.
+	 * @param p        Predicate to filter lines.
+	 * @return LogFileBuffer POJO LogFileBuffer which contains lines read and
+	 *         last position in the file after reading.
+	 * @throws IOException if file not found or forbidden
+	 */
+	public LogFile readLinesFromLine(File file, long fromLine, long numLines, ReadOrder ascdesc,
+			Predicate<String> p) throws IOException {
+		return readLinesFromLine(file, fromLine, numLines, ascdesc, p, null);
+	}
+
+	/**
+	 * Read numLines lines in order specified from line number fromLine in the file,
+	 * handing out the lines while they are read.
+	 * 
+	 * @param file     File reference to be looked
+	 * @param fromLine Line number where the reading will start, starting at 1.
+	 * @param numLines Number of lines to be read.
+	 * @param ascdesc  Order to read the file. ASC, DESC.
+	 * @param p        Predicate to filter lines.
+	 * @param sink     Receiver of the lines read, or null to keep them on the LogFileBuffer.
+	 * @return LogFileBuffer POJO LogFileBuffer which contains lines read, if there is not
+	 *         sink, and last position in the file after reading.
+	 * @throws IOException if file not found or forbidden, or the sink fails
+	 */
+	public LogFile readLinesFromLine(File file, long fromLine, long numLines, ReadOrder ascdesc,
+			Predicate<String> p, LineSink sink) throws IOException {
+		return readLines(file, getLinePos(file, fromLine, ascdesc), -1, numLines, ascdesc, p, sink);
+	}
+
+	/**
+	 * Get the position where a reading from a line number starts.
+	 * @param file     File reference to be looked
+	 * @param fromLine Line number where the reading will start, starting at 1.
+	 * @param ascdesc  Order to read the file. ASC, DESC.
+	 * @return start of the line on ASC, end of the line on DESC.
+	 * @throws IOException if file not found or forbidden
+	 */
+	private long getLinePos(File file, long fromLine, ReadOrder ascdesc) throws IOException {
+		long iniValue;
+		if (ascdesc == ReadOrder.ASC) {
+			iniValue = lineIndex.getLineOffset(file, fromLine);
+		} else {
+			/* The reading goes backward from the end of fromLine */
+			iniValue = lineIndex.getLineOffset(file, fromLine + 1);
+		}
+		/* Line after the end of the file. Nothing to read on ASC, the last lines on DESC */
+		if (iniValue < 0) {
+			iniValue = file.length();
+		}
+		return iniValue;
+	}
+
+	/**
+	 * Read numLines lines in order specified logged between since and until, both included.
+	 * The positions where the time range starts and finishes are found by binary search
+	 * over the timestamps of the lines, and only the lines between them are read.
+	 * ASC reads from since, DESC reads from until.
+	 * 
+	 * @param file     File reference to be looked
+	 * @param since    Time of the first lines to be read, or null from the file start.
+	 * @param until    Time of the last lines to be read, or null until the file end.
+	 * @param numLines Number of lines to be read.
+	 * @param ascdesc  Order to read the file. ASC, DESC.
+	 * @param p        Predicate to filter lines.
+	 * @return LogFileBuffer POJO LogFileBuffer which contains lines read and
+	 *         last position in the file after reading.
+	 * @throws IOException if file not found or forbidden
+	 */
+	public LogFile readLinesByTime(File file, Instant since, Instant until, long numLines,
+			ReadOrder ascdesc, Predicate<String> p) throws IOException {
+		return readLinesByTime(file, since, until, numLines, ascdesc, p, null);
+	}
+
+	/**
+	 * Read numLines lines in order specified logged between since and until, both included,
+	 * handing out the lines while they are read.
+	 * 
+	 * @param file     File reference to be looked
+	 * @param since    Time of the first lines to be read, or null from the file start.
+	 * @param until    Time of the last lines to be read, or null until the file end.
+	 * @param numLines Number of lines to be read.
+	 * @param ascdesc  Order to read the file. ASC, DESC.
+	 * @param p        Predicate to filter lines.
+	 * @param sink     Receiver of the lines read, or null to keep them on the LogFileBuffer.
+	 * @return LogFileBuffer POJO LogFileBuffer which contains lines read, if there is not
+	 *         sink, and last position in the file after reading.
+	 * @throws IOException if file not found or forbidden, or the sink fails
+	 */
+	public LogFile readLinesByTime(File file, Instant since, Instant until, long numLines,
+			ReadOrder ascdesc, Predicate<String> p, LineSink sink) throws IOException {
+		long range[] = getTimeRange(file, since, until, ascdesc);
+		
+		return readLines(file, range[0], range[1], numLines, ascdesc, p, sink);
+	}
+
+	/**
+	 * Get the positions where a reading of a time range starts and stops.
+	 * @param file     File reference to be looked
+	 * @param since    Time of the first lines to be read, or null from the file start.
+	 * @param until    Time of the last lines to be read, or null until the file end.
+	 * @param ascdesc  Order to read the file. ASC, DESC.
+	 * @return position where the reading starts and its limit.
+	 * @throws IOException if file not found or forbidden
+	 */
+	private long[] getTimeRange(File file, Instant since, Instant until, ReadOrder ascdesc)
+			throws IOException {
+		long startP = since == null ? 0 : timestampSearch.findSince(file, since);
+		long endP   = until == null ? file.length() : timestampSearch.findUntil(file, until);
+		
+		/* Empty range, or entries out of time order */
+		endP = Math.max(startP, endP);
+		if (ascdesc == ReadOrder.ASC) {
+			return new long[] {startP, endP};
+		}
+		return new long[] {endP, startP};
+	}
+
+	/**
+	 * Read the lines of a query. Without start position, line number or time range the
+	 * reading starts on the beginning (ASC) or the end (DESC) of the file.
+	 * 
+	 * @param file  File reference to be looked
+	 * @param query Query with the start, number of lines, order and filter of the reading.
+	 * @return LogFileBuffer POJO LogFileBuffer which contains lines read and
+	 *         last position in the file after reading.
+	 * @throws IOException if file not found or forbidden
+	 */
+	public LogFile read(File file, LogQuery query) throws IOException {
+		return read(file, query, null);
+	}
+
+	/**
+	 * Read the lines of a query, handing out the lines while they are read. The reading
+	 * stops once the maximum of lines passing the filter of the query is met.
+	 * 
+	 * @param file  File reference to be looked
+	 * @param query Query with the start, number of lines, order and filter of the reading.
+	 * @param sink  Receiver of the lines read, or null to keep them on the LogFileBuffer.
+	 * @return LogFileBuffer POJO LogFileBuffer which contains lines read, if there is not
+	 *         sink, and last position in the file after reading.
+	 * @throws IOException if file not found or forbidden, or the sink fails
+	 */
+	public LogFile read(File file, LogQuery query, LineSink sink) throws IOException {
+		ReadOrder  order      = query.getOrder();
+		LineFilter p          = query.getFilter();
+		long       numLines   = query.getNumLines();
+		long       maxMatches = query.getMaxMatches();
+
+		if (query.getStartPos() >= 0) {
+			return readLines(file, query.getStartPos(), -1, numLines, maxMatches, order, p, sink);
+		}
+		else if (query.getFromLine() > 0) {
+			/* Without number of lines, all the lines since fromLine */
+			return readLines(file, getLinePos(file, query.getFromLine(), order), -1,
+					         numLines > 0 ? numLines : file.length(), maxMatches, order, p, sink);
+		}
+		else if (query.getSince() != null || query.getUntil() != null) {
+			/* Without number of lines, all the lines on the time range */
+			long range[] = getTimeRange(file, query.getSince(), query.getUntil(), order);
+			return readLines(file, range[0], range[1], numLines > 0 ? numLines : file.length(),
+					         maxMatches, order, p, sink);
+		}
+		/* Without number of lines, all the lines of the file */
+		return readLines(file, order == ReadOrder.ASC ? 0 : file.length(), -1,
+				         numLines > 0 ? numLines : file.length(), maxMatches, order, p, sink);
+	}
+
+	/**
+	 * Get the search of the time ranges over the timestamps of the lines.
+	 * @return timestamp search.
+	 */
+	public TimestampSearch getTimestampSearch() {
+		return timestampSearch;
 	}
 
 	/**
@@ -125,54 +512,207 @@ public class LogFileReader {
 	 */
 	public LogFile readLines(File file, long lastP, long numLines, ReadOrder ascdesc,
 			Predicate<String> p) throws IOException {
+		return readLines(file, lastP, numLines, ascdesc, p, null);
+	}
+
+	/**
+	 * Read numLines lines in order specified from position lastP in the file, handing out
+	 * the lines while they are read.
+	 * 
+	 * @param file     File reference to be looked
+	 * @param lastP    Position on the file where the reading will start.
+	 * @param numLines Number of lines to be read.
+	 * @param ascdesc  Order to read the file. ASC, DESC.
+	 * @param p        Predicate to filter lines.
+	 * @param sink     Receiver of the lines read, or null to keep them on the LogFileBuffer.
+	 * @return LogFileBuffer POJO LogFileBuffer which contains lines read, if there is not
+	 *         sink, and last position in the file after reading.
+	 * @throws IOException if file not found or forbidden, or the sink fails
+	 */
+	public LogFile readLines(File file, long lastP, long numLines, ReadOrder ascdesc,
+			Predicate<String> p, LineSink sink) throws IOException {
+		return readLines(file, lastP, -1, numLines, ascdesc, p, sink);
+	}
+
+	/**
+	 * Read numLines lines in order specified from position lastP in the file, without
+	 * going beyond position limitP. The readings with limit are not cached.
+	 * 
+	 * @param file     File reference to be looked
+	 * @param lastP    Position on the file where the reading will start.
+	 * @param limitP   Line boundary where the reading stops. ASC reads the lines starting
+	 *                 before it, DESC the lines finishing after it. -1 without limit.
+	 * @param numLines Number of lines to be read.
+	 * @param ascdesc  Order to read the file. ASC, DESC.
+	 * @param p        Predicate to filter lines.
+	 * @param sink     Receiver of the lines read, or null to keep them on the LogFileBuffer.
+	 * @return LogFileBuffer POJO LogFileBuffer which contains lines read, if there is not
+	 *         sink, and last position in the file after reading.
+	 * @throws IOException if file not found or forbidden, or the sink fails
+	 */
+	public LogFile readLines(File file, long lastP, long limitP, long numLines, ReadOrder ascdesc,
+			Predicate<String> p, LineSink sink) throws IOException {
+		return readLines(file, lastP, limitP, numLines, -1, ascdesc, p, sink);
+	}
+
+	/**
+	 * Read numLines lines in order specified from position lastP in the file, without
+	 * going beyond position limitP, stopping once maxMatches lines pass the filter. The
+	 * readings stopped by maxMatches end on any line, they are not cached.
+	 * 
+	 * @param file       File reference to be looked
+	 * @param lastP      Position on the file where the reading will start.
+	 * @param limitP     Line boundary where the reading stops. ASC reads the lines starting
+	 *                   before it, DESC the lines finishing after it. -1 without limit.
+	 * @param numLines   Number of lines to be read.
+	 * @param maxMatches Number of lines passing the filter where the reading stops, -1
+	 *                   without maximum.
+	 * @param ascdesc    Order to read the file. ASC, DESC.
+	 * @param p          Predicate to filter lines.
+	 * @param sink       Receiver of the lines read, or null to keep them on the LogFileBuffer.
+	 * @return LogFileBuffer POJO LogFileBuffer which contains lines read, if there is not
+	 *         sink, and last position in the file after reading.
+	 * @throws IOException if file not found or forbidden, or the sink fails
+	 */
+	private LogFile readLines(File file, long lastP, long limitP, long numLines, long maxMatches,
+			ReadOrder ascdesc, Predicate<String> p, LineSink sink) throws IOException {
 		LogFile       logFile;
 		LogFileBuffer fileBuffer;		
+		/* Last position in the file after the reading, local to every reading */
+		long          lastPos = lastP;
 		List<String> lines = new LinkedList<>();
+		/* The lines go to the sink as soon as they are read, or they are kept */
+		final List<String> linesRead = lines;
+		LineSink out = sink != null ? sink : linesRead::add;
 		LogInputStream inputStream;
 		boolean linesToBeReadFromFile = true;
-		int numLinesCached = 0;
-		long lastPtemp = lastP;
+		boolean linesFiltered = false;
+		long rawLines = 0;
+		TailCache.Key             fileKey       = null;
+		TailCache.Key             tailKey       = null;
+		TailCache.TailBuilder     tailBuilder   = null;
+		ResultCache.Key           resultKey     = null;
+		ResultCache.ResultBuilder resultBuilder = null;
 		
 		logFile = getFileDetails(file);
 
+		/* The readings from the end (DESC) or the beginning (ASC) of the file can be cached */
+		if (limitP < 0 && numLines > 0 && maxMatches < 0 && (tailCache != null || resultCache != null))
+		{
+			fileKey = TailCache.getKey(file);
+			if (lastP != (ascdesc == ReadOrder.ASC ? 0 : fileKey.getSize()))
+			{
+				fileKey = null;
+			}
+		}
+
 		/*
-		 * For now, if the customer needs the reading file by DESC, and it is reading
-		 * from the end of the file then let's look if some or all lines are cached, and 
-		 * after read and cache the rest of lines.
+		 * If the same filter was read before on the file, with the same order and number
+		 * of lines, the lines passing it are cached for the current version of the file,
+		 * or they are extended with the lines appended since then.
 		 */
-		 /** @todo: 
-		 * 1. Do a general cache idea to make it work with ASC and DESC order and 
-		 * from any line not only from the end or start file.
-		 * 2. Makes rules to have a better caching, maybe based on the
-		 * number of lines for each file.
+		String fingerprint = p instanceof LineFilter ? ((LineFilter)p).getFingerprint() : null;
+		if (fileKey != null && resultCache != null && fingerprint != null)
+		{
+			resultKey = new ResultCache.Key(fileKey, fingerprint, ascdesc, numLines);
+			ResultCache.Result result = resultCache.get(resultKey);
+			
+			if (result != null && !result.isUpToDate(fileKey))
+			{
+				result = resultCache.isWorthExtending(resultKey, result) ?
+						 extendResult(file, resultKey, result, (LineFilter)p) : null;
+			}
+			if (result != null)
+			{
+				for (String cached : result.getLines())
+				{
+					out.write(cached);
+				}
+				lastPos = result.getLastPos();
+				linesToBeReadFromFile = false;
+			}
+			else
+			{
+				resultBuilder = new ResultCache.ResultBuilder();
+			}
+		}
+
+		/*
+		 * If the customer needs the reading file by DESC, and it is reading from the end
+		 * of the file then let's look if some or all lines are cached for the current
+		 * version of the file, and after read and cache the rest of lines.
 		 */
-		if (ascdesc == ReadOrder.DESC && lastPtemp == file.length()) 
-		{		
-			LogFileBuffer fileCached = cacheFiles.getOrDefault(file.getName(),
-					null);
-			if (fileCached != null) 
+		if (linesToBeReadFromFile && ascdesc == ReadOrder.DESC && tailCache != null) 
+		{
+			tailKey = fileKey;
+		}
+		if (tailKey != null)
+		{
+			TailCache.Tail tail = tailCache.get(tailKey);
+			
+			/* The tail is released when its lines are taken, then its buffer can be freed */
+			try
 			{
-				List<String> linesCached = fileCached.getLines();
-				numLinesCached = linesCached.size();
-				if (numLines > numLinesCached) 
+				/* The file grew since the tail was read, only the lines appended are read */
+				if (tail != null && !tail.isUpToDate(tailKey))
 				{
-					lines.addAll(linesCached);
-					numLines -= numLinesCached;
-					lastP = fileCached.getLastPosRead();
-				} 
-				else 
+					TailCache.Tail stale = tail;
+					tail = null;
+					try
+					{
+						if (tailCache.isWorthExtending(tailKey, stale))
+						{
+							tail = extendTail(file, tailKey, stale);
+						}
+					}
+					finally
+					{
+						stale.release();
+					}
+				}
+				if (tail != null && (numLines <= tail.getNumLines() || tail.isComplete()))
 				{
-					lines = linesCached.stream().limit(numLines)
-							.collect(Collectors.toList());
+					/* All the lines are cached, they are decoded before the tail is released */
+					int numLinesCached = (int)Math.min(numLines, tail.getNumLines());
+					List<String> linesCached = tail.getLines(numLinesCached, p);
+					if (sink == null)
+					{
+						lines = new ArrayList<>(linesCached);
+					}
+					else
+					{
+						for (String cached : linesCached)
+						{
+							sink.write(cached);
+						}
+					}
+					lastPos = numLines <= numLinesCached ? tail.getLastPos(numLinesCached) : tail.getLastPos();
 					linesToBeReadFromFile = false;
-					
-					lastPos = lastP;
-					for (String line : lines)
+				}
+				else if (tail != null && resultBuilder == null)
+				{
+					/* Are we filtering something from the cache? */
+					List<String> linesCachedFiltered = tail.getLines(tail.getNumLines(), p);
+					linesFiltered = linesCachedFiltered.size() < tail.getNumLines();
+					for (String cached : linesCachedFiltered)
 					{
-						lastPos -= line.length();
-					}		
-					/* Less CR and LF */
-					lastPos -= numLines * 2;							
+						out.write(cached);
+					}
+					numLines -= tail.getNumLines();
+					lastP = tail.getLastPos();
+				}
+				/* The lines read are cached only if there is not filtering. The results cached
+				 * are read from the end, the tail is not taken */
+				if (linesToBeReadFromFile && !linesFiltered)
+				{
+					tailBuilder = tailCache.newBuilder(resultBuilder == null ? tail : null);
+				}
+			}
+			finally
+			{
+				if (tail != null)
+				{
+					tail.release();
 				}
 			}
 		}
@@ -180,41 +720,122 @@ public class LogFileReader {
 		/* If needs to read the file */
 		if (linesToBeReadFromFile) 
 		{
-			/* Get input reader based on the order */
-			if (ascdesc == ReadOrder.ASC) 
-			{
-				inputStream = new LogAscRandInputStream(file, lastP, numLines);
-			} else 
+			/* Get input reader based on the order and file size */
+			inputStream = openInputStream(file, lastP, numLines, ascdesc);
+
+			/* The input stream is closed even if the sink fails */
+			try
 			{
-				inputStream = new LogDescRandInputStream(file, lastP, numLines);
-			}
+				ByteSlice line = new ByteSlice();
+				long currLine = 0;
+				BlockSkipper blockSkipper = getBlockSkipper(file, p, ascdesc);
+				BloomRecorder bloomRecorder = null;
+			
+				/* The Bloom filters of the blocks are learned with the lines read by the
+				 * filtered readings, the ones that can skip blocks later. The tails and
+				 * the complete readings without filter do not hash their lines */
+				if (bloomIndex != null && p instanceof LineFilter && ((LineFilter)p).getFingerprint() != null)
+				{
+					bloomRecorder = bloomIndex.startRecording(file, lastP, ascdesc);
+				}
 
-			BufferedReader br = new BufferedReader(
-					new InputStreamReader(inputStream));
-			long currLine = 0;
+				/* The lines are filtered over its raw bytes if the predicate allows it,
+				 * then only the lines that pass the filter are decoded */
+				while (currLine < numLines) 
+				{
+					/* The blocks without lines passing the filter are not read */
+					if (blockSkipper != null)
+					{
+						blockSkipper.skipBlocks(inputStream);
+					}
+					long linePos = inputStream.getNextLinePos();
+					/* The next line is out of the limit */
+					if (limitP >= 0 && linePos >= 0 &&
+						(ascdesc == ReadOrder.ASC ? linePos >= limitP : linePos <= limitP))
+					{
+						break;
+					}
+					if (!inputStream.nextLine(line))
+					{
+						break;
+					}
+					rawLines++;
+					if (bloomRecorder != null)
+					{
+						bloomRecorder.record(linePos, inputStream.getLastPos(), line);
+					}
+				
+					String  strLine = null;
+					boolean match;
+				
+					if (p instanceof LineFilter)
+					{
+						match = ((LineFilter)p).test(line);
+					}
+					else
+					{
+						strLine = line.toString(StandardCharsets.UTF_8);
+						match   = p.test(strLine);
+					}
+				
+					if (match) 
+					{
+						if (strLine == null)
+						{
+							strLine = line.toString(StandardCharsets.UTF_8);
+						}
+						out.write(strLine);
+						currLine++;
+						if (tailBuilder != null)
+						{
+							tailBuilder.add(line, inputStream.getLastPos());
+						}
+						if (resultBuilder != null)
+						{
+							resultBuilder.add(strLine, ascdesc == ReadOrder.ASC ? linePos : inputStream.getLastPos());
+							if (!resultCache.fits(resultBuilder))
+							{
+								resultBuilder = null;
+							}
+						}
+						if (currLine == maxMatches)
+						{
+							break;
+						}
+					}
+					else
+					{
+						linesFiltered = true;
+					}
+				}
 
-			String line = br.readLine();
+				if (blockSkipper != null && blockSkipper.hasSkipped())
+				{
+					linesFiltered = true;
+					rawLines     += blockSkipper.getSkippedLines();
+				}
+				if (bloomRecorder != null)
+				{
+					bloomRecorder.finish();
+				}
 
-			while (line != null && currLine < numLines) 
-			{
-				if (p.test(line)) 
+				lastPos = inputStream.getLastPos();
+				/* The blocks skipped can go beyond the limit */
+				if (limitP >= 0)
 				{
-					lines.add(line);
-					currLine++;
+					lastPos = ascdesc == ReadOrder.ASC ? Math.min(lastPos, limitP) : Math.max(lastPos, limitP);
 				}
-				line = br.readLine();
 			}
-
-			lastPos = inputStream.getLastPos();
-
-			inputStream.close();
-			br.close();
+			finally
+			{
+				inputStream.close();
+			}
+			
+			if (resultBuilder != null)
+			{
+				resultCache.put(resultKey, resultBuilder, lastPos, rawLines);
+			}
 		}
-		
-		/* Are we filtering something from the cache? */
-		int linesBefore = lines.size();
-		lines = lines.stream().filter(p).collect(Collectors.toList());
-		int linesAfter = lines.size();
 
 		fileBuffer = new LogFileBuffer(lines, lastPos);
 		logFile.setFileBuffered(fileBuffer);
@@ -222,26 +843,15 @@ public class LogFileReader {
 		/* If it is a descendant ordering and
 		 * read from disk  and
 		 * reading started from the end and
-		 * there wasn't filtering buffer cache.
+		 * there wasn't filtering lines.
 		 */
-		if (ascdesc == ReadOrder.DESC && linesToBeReadFromFile && lastPtemp == file.length() &&
-			linesBefore == linesAfter) 
+		if (tailBuilder != null && !linesFiltered) 
 		{
-			/* The file is already cached */
-			if (numLinesCached > 0)
-			{
-				List<String> newLines = lines.subList(numLinesCached, lines.size());
-				LogFileBuffer fileCached = cacheFiles.get(file.getName());
-				/* Add the new lines and update last position */
-				fileCached.getLines().addAll(newLines);
-				fileCached.setLastPosRead(lastPos);
-			}
-			else
+			/* The cached lines and the new ones replace the previous tail */
+			TailCache.Tail tail = tailCache.put(tailKey, tailBuilder, lastPos);
+			if (tail != null)
 			{
-				/* The files was not cached */
-				/* If we already have the maximum number of files cached,
-				 * then remove the last file cached (LRU) */
-				cacheFiles.put(file.getName(), fileBuffer);
+				tail.release();
 			}
 		}
 		
@@ -250,13 +860,114 @@ public class LogFileReader {
 	}
 
 	/**
-	 * Get the position on where the cursor in the read file is after do the
-	 * reading.
-	 * 
-	 * @return Position on file.
+	 * Extend the tail of a file with the lines appended since it was read. The last line
+	 * of the file when the tail was read is read again, because it could be incomplete.
+	 * @param file     File read.
+	 * @param tailKey  File with its current size.
+	 * @param tail     Tail read on a previous version of the file, retained.
+	 * @return tail extended, retained for the caller.
+	 * @throws IOException if file not found or forbidden
 	 */
-	public long getLastPos() {
-		return lastPos;
+	private TailCache.Tail extendTail(File file, TailCache.Key tailKey, TailCache.Tail tail)
+			throws IOException {
+		TailCache.TailBuilder tailBuilder = tailCache.newBuilder(null);
+		long limitP = tail.getFirstLineStart();
+		
+		try (LogInputStream inputStream = openInputStream(file, tailKey.getSize(), Long.MAX_VALUE,
+				                                          ReadOrder.DESC))
+		{
+			ByteSlice line = new ByteSlice();
+			
+			while (true)
+			{
+				long linePos = inputStream.getNextLinePos();
+				if ((linePos >= 0 && linePos <= limitP) || !inputStream.nextLine(line))
+				{
+					break;
+				}
+				tailBuilder.add(line, inputStream.getLastPos());
+			}
+		}
+		tailBuilder.addAll(tail, 1);
+		return tailCache.put(tailKey, tailBuilder, tail.getLastPos());
+	}
+
+	/**
+	 * Extend the result of a query read in descendant order from the end with the lines
+	 * appended since it was read. The last line of the file when the result was read is
+	 * read again, because it could be incomplete. The lines appended take the place of
+	 * the first lines read before, then the lines out of the reading are found reading
+	 * forward from the beginning of the previous reading.
+	 * @param file    File read.
+	 * @param key     Query with the current size of the file.
+	 * @param result  Result read on a previous version of the file.
+	 * @param filter  Filter of the query.
+	 * @return result extended.
+	 * @throws IOException if file not found or forbidden
+	 */
+	private ResultCache.Result extendResult(File file, ResultCache.Key key, ResultCache.Result result,
+			LineFilter filter) throws IOException {
+		ResultCache.ResultBuilder builder = new ResultCache.ResultBuilder();
+		long numLines  = key.getNumLines();
+		long oldSize   = result.getSize();
+		long newLines  = 0;
+		long lastStart;
+		
+		try (LogInputStream inputStream = openInputStream(file, key.getFile().getSize(), numLines,
+				                                          ReadOrder.DESC))
+		{
+			ByteSlice line = new ByteSlice();
+			
+			while (true)
+			{
+				long linePos = inputStream.getNextLinePos();
+				if ((linePos >= 0 && linePos < oldSize) || !inputStream.nextLine(line))
+				{
+					break;
+				}
+				newLines++;
+				if (filter.test(line))
+				{
+					builder.add(line.toString(StandardCharsets.UTF_8), inputStream.getLastPos());
+				}
+			}
+			lastStart = inputStream.getLastPos();
+		}
+		
+		/* Only lines appended are read, or the file was empty */
+		if (newLines >= numLines || result.getRawLines() == 0)
+		{
+			return resultCache.put(key, builder, lastStart, newLines);
+		}
+		
+		/* The last line read before is counted once */
+		long totalLines = newLines + result.getRawLines() - 1;
+		builder.addBefore(result, lastStart);
+		if (totalLines <= numLines)
+		{
+			long newLastPos = result.getLastPos();
+			/* The reading finishes just on the file beginning now */
+			if (result.isComplete() && totalLines == numLines)
+			{
+				newLastPos = 0;
+			}
+			return resultCache.put(key, builder, newLastPos, totalLines);
+		}
+		
+		long windowStart;
+		try (LogInputStream inputStream = openInputStream(file, Math.max(0, result.getLastPos()),
+				                                          totalLines - numLines, ReadOrder.ASC))
+		{
+			ByteSlice line = new ByteSlice();
+			
+			while (inputStream.nextLine(line))
+			{
+				/* The first lines read before are out of the reading */
+			}
+			windowStart = inputStream.getLastPos();
+		}
+		builder.dropBefore(windowStart);
+		return resultCache.put(key, builder, windowStart, numLines);
 	}
 
 }
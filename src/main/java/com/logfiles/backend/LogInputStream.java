@@ -5,6 +5,8 @@ import java.io.InputStream;
 
 /**
  * Abstract class to save the reference on where the cursor is after reading.
+ * The lines can be read byte by byte as an input stream, or line by line with
+ * {@link #nextLine(ByteSlice)} without copying the line.
  * @author alexdel
  *
  */
@@ -13,4 +15,28 @@ public abstract class LogInputStream extends InputStream {
 	abstract public int read() throws IOException;
 	abstract public long getLastPos();
 	abstract protected void allocateAndCacheBuffer(long start, long end) throws IOException;
+	/**
+	 * Read next line. The slice points to the line bytes, without CR and LF, inside the
+	 * input stream buffer, and it is valid until the next reading.
+	 * @param line  Slice to point to the line read.
+	 * @return false if there are no more lines to be read.
+	 * @throws IOException
+	 */
+	abstract public boolean nextLine(ByteSlice line) throws IOException;
+	/**
+	 * Get the position of the next line to be read. On ascendant way where the line
+	 * starts, on descendant way where the line finishes.
+	 * @return position of the next line, or -1 if there are no more lines to be read or
+	 *         a line is being read.
+	 */
+	abstract public long getNextLinePos();
+	/**
+	 * Skip lines without reading them. The lines skipped count as read lines.
+	 * @param pos    Position of the next line after the lines skipped. On ascendant way
+	 *               where the line starts, on descendant way where the line finishes.
+	 * @param lines  Number of lines skipped.
+	 * @return false if the lines can not be skipped, because a line is being read or
+	 *         the number of lines to be read would be exceeded.
+	 */
+	abstract public boolean skipLines(long pos, long lines);
 }
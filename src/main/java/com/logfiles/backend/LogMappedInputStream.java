@@ -0,0 +1,533 @@
+package com.logfiles.backend;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Input stream to traverse a large file with memory mapping, in ascendant or descendant way.
+ * This input stream can read n lines from a particular position on the file with the same
+ * behavior than {@link LogAscRandInputStream} and {@link LogDescRandInputStream}, but the
+ * line boundaries are looked over a region of the file mapped in memory, so no read system
+ * call is done. Files bigger than the region size are traversed mapping a rolling series of
+ * regions.
+ * NOTE: the JDK has no way to unmap a region. The regions left behind by the rolling and the
+ * last one on close are unmapped when the garbage collector reclaims them; close only drops
+ * the reference and closes the file, then the address space of a reading can be held a
+ * while after it finished.
+ * @author alexdel
+ */
+public class LogMappedInputStream extends LogInputStream {
+	/**
+	 * Size of every region mapped in memory.
+	 */
+	public static final int REGION_SIZE = 1024 * 1024 * 1024;
+	/**
+	 * Size of every region mapped by this stream.
+	 */
+	private final int regionSize;
+	/**
+	 * Random access file reference.
+	 */
+	private RandomAccessFile randFile;
+	/**
+	 * File channel used to map the regions.
+	 */
+	private FileChannel channel;
+	/**
+	 * Order on which the file is read.
+	 */
+	private ReadOrder order;
+	/**
+	 * Current number of lines read.
+	 */
+	private long readLines;
+	/**
+	 * Number of lines to be read.
+	 */
+	private long numLines;
+	/**
+	 * File size.
+	 */
+	private long fileSize;
+	/**
+	 * Has input stream finished to read?
+	 */
+	private boolean finishRead;
+	/**
+	 * Position where current line finish.
+	 */
+	private long currLineEnd;
+	/**
+	 * Position where current line start.
+	 */
+	private long currLineStart;
+	/**
+	 * Region of the file mapped in memory.
+	 */
+	private MappedByteBuffer region;
+	/**
+	 * File position of the first byte mapped.
+	 */
+	private long regionStart;
+	/**
+	 * File position after the last byte mapped.
+	 */
+	private long regionEnd;
+	/**
+	 * Current position on region
+	 */
+	private int  posRegion;
+	/**
+	 * Position on region where current line finish.
+	 */
+	private int  endRegion;
+	/**
+	 * Buffer to copy the line read by {@link #nextLine(ByteSlice)}.
+	 */
+	private byte lineBuffer[];
+	/**
+	 * Is there a line buffered pending to be read?
+	 */
+	private boolean lineBuffered;
+	/**
+	 * Is it the last line on the file without LF? It is the first one read on descendant
+	 * way. This line is finished with an added LF.
+	 */
+	private boolean lastLine;
+
+	/**
+	 * Constructor
+	 * @param file      File to be read.
+	 * @param lastPos   Cursor position on where the reading will start.
+	 * @param numLines  Number of lines to be read.
+	 * @param order     Order to read the file. ASC, DESC.
+	 * @throws FileNotFoundException
+	 */
+	public LogMappedInputStream(File file, long lastPos, long numLines, ReadOrder order)
+		   throws FileNotFoundException {
+		this(file, lastPos, numLines, order, REGION_SIZE);
+	}
+
+	/**
+	 * Constructor with the size of the regions. Smaller regions roll over them sooner, the
+	 * longest line allowed is smaller too.
+	 * @param file        File to be read.
+	 * @param lastPos     Cursor position on where the reading will start.
+	 * @param numLines    Number of lines to be read.
+	 * @param order       Order to read the file. ASC, DESC.
+	 * @param regionSize  Size of every region mapped, the longest line allowed.
+	 * @throws FileNotFoundException
+	 */
+	public LogMappedInputStream(File file, long lastPos, long numLines, ReadOrder order, int regionSize)
+		   throws FileNotFoundException {
+		super();
+		this.regionSize = regionSize;
+		this.order      = order;
+		this.readLines  = 0;
+		this.numLines   = numLines;
+		this.finishRead = false;
+
+		this.currLineStart = lastPos;
+		this.currLineEnd   = lastPos;
+
+		this.region      = null;
+		this.regionStart = lastPos;
+		this.regionEnd   = lastPos;
+		this.posRegion   = 0;
+		this.endRegion   = 0;
+		this.lineBuffer   = new byte[1024];
+		this.lineBuffered = false;
+
+		this.lastLine = false;
+
+		randFile = new RandomAccessFile(file, "r");
+		channel  = randFile.getChannel();
+		this.fileSize = file.length();
+	}
+
+	/**
+	 * Find the start and end of next line to be read looking forward on the mapped region.
+	 * @throws IOException
+	 */
+	private void bufferNextLine()
+			throws IOException {
+		long tempCurPos;
+
+		currLineStart = currLineEnd;
+
+		/* If reach the file EOF. No more lines to read */
+		if (currLineStart == fileSize)
+		{
+			currLineEnd   = -1;
+			currLineStart = -1;
+			finishRead = true;
+			return;
+		}
+
+		tempCurPos = currLineStart;
+
+		while (tempCurPos < fileSize)
+		{
+			allocateAndCacheBuffer(currLineStart, tempCurPos + 1);
+
+			int i = (int)(tempCurPos - regionStart);
+			int end = (int)(regionEnd - regionStart);
+
+			while (i < end && region.get(i) != 0xA)
+			{
+				i++;
+			}
+
+			tempCurPos = regionStart + i;
+
+			if (i < end)
+				break;
+		}
+
+		/* if not EOF. Then reach the next byte, else the last line has not LF */
+		if (tempCurPos < fileSize)
+			currLineEnd = tempCurPos + 1;
+		else
+		{
+			currLineEnd = tempCurPos;
+			lastLine = true;
+		}
+
+		allocateAndCacheBuffer(currLineStart, currLineEnd);
+	}
+
+	/**
+	 * Find the start and end of previous line to be read looking backward on the mapped region.
+	 * @throws IOException
+	 */
+	private void bufferPrevLine()
+			throws IOException {
+		long tempCurPos;
+
+		currLineEnd = currLineStart;
+
+		/* If reach the file beginning. No more lines to read */
+		if (currLineEnd <= 0)
+		{
+			currLineEnd   = -1;
+			currLineStart = -1;
+			finishRead = true;
+			return;
+		}
+
+		tempCurPos = currLineEnd - 1;
+		allocateAndCacheBuffer(tempCurPos, currLineEnd);
+
+		/* Avoid Line Feed (LF) byte */
+		if (region.get((int)(tempCurPos - regionStart)) != 0XA)
+		{
+			lastLine = true;
+		}
+
+		while (true)
+		{
+			int i = (int)(tempCurPos - regionStart) - 1;
+
+			while (i >= 0 && region.get(i) != 0xA)
+			{
+				i--;
+			}
+
+			if (i >= 0 || regionStart == 0)
+			{
+				tempCurPos = regionStart + i;
+				break;
+			}
+
+			tempCurPos = regionStart;
+			allocateAndCacheBuffer(regionStart - 1, currLineEnd);
+		}
+
+		/* Return one byte after LF was found or beginning file has been
+		 * reached */
+		currLineStart = tempCurPos + 1;
+	}
+
+	/**
+	 * Map the region of the file from start to end. The region is mapped as big as
+	 * the region size allows, ahead of start on ascendant way and behind end on
+	 * descendant way.
+	 * @param start  Position where the region must start.
+	 * @param end    Position until the region must be mapped.
+	 * @throws IOException
+	 */
+	@Override
+	protected void allocateAndCacheBuffer(long start, long end)
+		   throws IOException {
+		/* The region requested is already mapped */
+		if (region != null && start >= regionStart && end <= regionEnd)
+		{
+			return;
+		}
+
+		if (end - start > regionSize)
+		{
+			throw new IOException("Line too long to be mapped at position " + start);
+		}
+
+		if (order == ReadOrder.ASC)
+		{
+			end = Math.min(fileSize, start + regionSize);
+		}
+		else
+		{
+			start = Math.max(0, end - regionSize);
+		}
+
+		region      = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		regionStart = start;
+		regionEnd   = end;
+	}
+
+	/**
+	 * Buffer the next line in the reading order.
+	 * @throws IOException
+	 */
+	private void bufferLine()
+			throws IOException {
+		if (order == ReadOrder.ASC)
+		{
+			bufferNextLine();
+		}
+		else
+		{
+			bufferPrevLine();
+		}
+
+		if (!finishRead)
+		{
+			posRegion    = (int)(currLineStart - regionStart);
+			endRegion    = (int)(currLineEnd - regionStart);
+			lineBuffered = true;
+		}
+	}
+
+	/**
+	 * Mark current line as read and check if the number of lines or end of reading has
+	 * been reached.
+	 */
+	private void finishLine()
+	{
+		readLines++;
+		if (readLines == numLines)
+		{
+			finishRead = true;
+		}
+
+		/* If EOF has been reached, then we finished to read */
+		if (order == ReadOrder.ASC && currLineEnd == fileSize)
+		{
+			finishRead = true;
+		}
+
+		lineBuffered = false;
+		if (order == ReadOrder.DESC)
+		{
+			lastLine = false;
+		}
+	}
+
+	/**
+	 * Read byte from the mapped region.
+	 */
+	@Override
+	public int read()
+		   throws IOException {
+		int readByte = -1;
+
+		if (finishRead)
+			return readByte;
+
+		if (!lineBuffered)
+		{
+			bufferLine();
+
+			/* EOF or file beginning has been reached */
+			if (finishRead)
+				return readByte;
+		}
+
+		if (posRegion < endRegion)
+		{
+			/* Read line from start line to end line */
+			readByte = region.get(posRegion++);
+			if (posRegion == endRegion && !lastLine)
+			{
+				finishLine();
+			}
+		}
+		else
+		{
+			/* The last line on the file, add LF */
+			readByte = '\n';
+			finishLine();
+		}
+
+		return readByte;
+	}
+
+	/**
+	 * Read next line in the reading order. The line is copied from the mapped region to
+	 * a buffer reused for all the lines.
+	 */
+	@Override
+	public boolean nextLine(ByteSlice line)
+		   throws IOException {
+		if (finishRead)
+			return false;
+
+		if (!lineBuffered)
+		{
+			bufferLine();
+
+			/* EOF or file beginning has been reached */
+			if (finishRead)
+				return false;
+		}
+
+		int end = endRegion;
+
+		/* Avoid LF and CR */
+		if (end > posRegion && region.get(end - 1) == '\n')
+			end--;
+		if (end > posRegion && region.get(end - 1) == '\r')
+			end--;
+
+		int length = end - posRegion;
+		if (lineBuffer.length < length)
+		{
+			lineBuffer = new byte[Math.max(length, 2 * lineBuffer.length)];
+		}
+
+		/* Called through Buffer, MappedByteBuffer.position(int) does not exist on JDK 8 */
+		((Buffer)region).position(posRegion);
+		region.get(lineBuffer, 0, length);
+		line.set(lineBuffer, 0, length);
+		posRegion = endRegion;
+		finishLine();
+
+		return true;
+	}
+
+	/**
+	 * Read bytes from the mapped region. At most the rest of the current line is copied.
+	 */
+	@Override
+	public int read(byte b[], int off, int len)
+		   throws IOException {
+		if (len == 0)
+			return 0;
+
+		int readByte = read();
+
+		if (readByte == -1)
+			return -1;
+
+		b[off] = (byte)readByte;
+
+		if (!lineBuffered)
+			return 1;
+
+		int count = Math.min(len - 1, endRegion - posRegion);
+		((Buffer)region).position(posRegion);
+		region.get(b, off + 1, count);
+		posRegion += count;
+
+		if (posRegion == endRegion && !lastLine)
+		{
+			finishLine();
+		}
+
+		return count + 1;
+	}
+
+	/**
+	 * Get the position where the next line starts on ascendant way, or where the
+	 * previous line finishes on descendant way.
+	 */
+	@Override
+	public long getNextLinePos()
+	{
+		if (finishRead || lineBuffered)
+			return -1;
+
+		if (order == ReadOrder.ASC)
+		{
+			return currLineEnd;
+		}
+		return currLineStart;
+	}
+
+	/**
+	 * Skip lines in the reading order.
+	 */
+	@Override
+	public boolean skipLines(long pos, long lines)
+	{
+		if (finishRead || lineBuffered || readLines + lines > numLines)
+			return false;
+
+		if (order == ReadOrder.ASC)
+		{
+			if (pos < currLineEnd || pos > fileSize)
+				return false;
+			currLineEnd = pos;
+		}
+		else
+		{
+			if (pos < 0 || pos > currLineStart)
+				return false;
+			currLineStart = pos;
+		}
+
+		readLines += lines;
+		if (readLines == numLines || (order == ReadOrder.ASC && currLineEnd == fileSize))
+		{
+			finishRead = true;
+		}
+		return true;
+	}
+
+	/**
+	 * Close file channel and RandomAccessFile file resource. The region mapped is released
+	 * by the garbage collector.
+	 */
+	@Override
+	public void close()
+		   throws IOException {
+		region = null;
+		if (channel != null)
+		{
+			channel.close();
+			channel = null;
+		}
+		if (randFile != null)
+		{
+			randFile.close();
+			randFile = null;
+		}
+		super.close();
+	}
+
+	/**
+	 * Get cursor position on the file after reading.
+	 */
+	public long getLastPos()
+	{
+		if (order == ReadOrder.ASC)
+		{
+			return currLineEnd;
+		}
+		return currLineStart;
+	}
+}
@@ -0,0 +1,246 @@
+package com.logfiles.backend;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Query over the lines of a file: where the reading starts, how many lines are read, in
+ * which order and which lines pass the filter. A query is built for every request and it
+ * is immutable, then the requests served at the same time never see the parameters of
+ * each other. The filter is composed once when the query is built.
+ * @author alexdel
+ */
+public final class LogQuery {
+	/** File cursor position since the reading will start, -1 if not specified */
+	private final long startPos;
+	/** Line number since the reading will start, -1 if not specified */
+	private final long fromLine;
+	/** Time since the lines are read, null if not specified */
+	private final Instant since;
+	/** Time until the lines are read, null if not specified */
+	private final Instant until;
+	/** Number of lines to be read, -1 if not specified */
+	private final long numLines;
+	/** Number of lines passing the filter where the reading stops, -1 if not specified */
+	private final long maxMatches;
+	/** File read on ascendant or descendant way */
+	private final ReadOrder order;
+	/** Filter keywords to be apply over the lines selected */
+	private final List<String> keywords;
+	/** Any or all the keywords must be on the lines selected */
+	private final MatchMode match;
+	/** Regular expression to be apply over the lines selected, empty if not specified */
+	private final String regex;
+	/** Filter composed from keywords, match and regex */
+	private final LineFilter filter;
+
+	/**
+	 * Constructor
+	 * @param startPos  File cursor position since the reading will start, -1 if not specified.
+	 * @param fromLine  Line number since the reading will start, -1 if not specified.
+	 * @param since     Time since the lines are read, null if not specified.
+	 * @param until     Time until the lines are read, null if not specified.
+	 * @param numLines  Number of lines to be read, -1 if not specified.
+	 * @param order     File read on ascendant or descendant way.
+	 * @param keywords  Filter keywords, empty if not specified.
+	 * @param match     Any or all the keywords must be on the lines.
+	 * @param regex     Regular expression filter, empty if not specified.
+	 * @throws java.util.regex.PatternSyntaxException if the regular expression is not valid
+	 */
+	public LogQuery(long         startPos,
+			        long         fromLine,
+			        Instant      since,
+			        Instant      until,
+			        long         numLines,
+			        ReadOrder    order,
+			        List<String> keywords,
+			        MatchMode    match,
+			        String       regex)
+	{
+		this.startPos = startPos;
+		this.fromLine = fromLine;
+		this.since    = since;
+		this.until    = until;
+		this.numLines   = numLines;
+		this.maxMatches = -1;
+		this.order      = order;
+		this.keywords   = Collections.unmodifiableList(new ArrayList<>(keywords));
+		this.match      = match;
+		this.regex      = regex;
+		this.filter     = newFilter();
+	}
+
+	/**
+	 * Constructor of a query bounded, sharing the filter of the query.
+	 * @param query       Query bounded.
+	 * @param numLines    Number of lines to be read, -1 if not specified.
+	 * @param maxMatches  Number of lines passing the filter where the reading stops, -1 if
+	 *                    not specified.
+	 */
+	private LogQuery(LogQuery query, long numLines, long maxMatches)
+	{
+		this.startPos   = query.startPos;
+		this.fromLine   = query.fromLine;
+		this.since      = query.since;
+		this.until      = query.until;
+		this.numLines   = numLines;
+		this.maxMatches = maxMatches;
+		this.order      = query.order;
+		this.keywords   = query.keywords;
+		this.match      = query.match;
+		this.regex      = query.regex;
+		this.filter     = query.filter;
+	}
+
+	/**
+	 * Compose the filter for the lines read from keywords, match and regex.
+	 * 1. One keyword, the keyword is looked alone.
+	 * 2. Several keywords, all of them are looked in a single pass.
+	 * 3. Regex, the lines must also match the regular expression.
+	 * The filter composed can be identified by its fingerprint to cache its results.
+	 * @return filter for the lines read.
+	 */
+	private LineFilter newFilter()
+	{
+		List<LineFilter> filters = new LinkedList<>();
+
+		if (keywords.size() > 1)
+		{
+			filters.add(new FilterKeywords(keywords, match));
+		}
+		else if (!keywords.isEmpty() || regex.isEmpty())
+		{
+			/* Without keywords the empty keyword passes every line, not needed with a regex */
+			filters.add(new FilterKeyword(keywords.isEmpty() ? "" : keywords.get(0)));
+		}
+
+		/* The regular expression is compiled once for the query */
+		if (!regex.isEmpty())
+		{
+			filters.add(new FilterRegex(regex));
+		}
+
+		return filters.size() == 1 ? filters.get(0) : new FilterAllOf(filters);
+	}
+
+	/**
+	 * Get the query bounded to a number of lines passing the filter. Without keywords nor
+	 * regex every line read passes the filter, then the number of lines read is bounded.
+	 * With a filter the number of lines read is kept, as it bounds the lines read and not
+	 * the lines passing it, and the reading stops once maxLines lines pass the filter.
+	 * @param maxLines  Maximum number of lines passing the filter.
+	 * @return query bounded, or this query if it is already bounded.
+	 */
+	public LogQuery limitTo(long maxLines)
+	{
+		if (keywords.isEmpty() && regex.isEmpty())
+		{
+			long bounded = numLines > 0 ? Math.min(numLines, maxLines) : maxLines;
+			return bounded == numLines ? this : new LogQuery(this, bounded, maxMatches);
+		}
+		long bounded = maxMatches > 0 ? Math.min(maxMatches, maxLines) : maxLines;
+		return bounded == maxMatches ? this : new LogQuery(this, numLines, bounded);
+	}
+
+	/**
+	 * Get the file cursor position since the reading will start.
+	 * @return position, -1 if not specified.
+	 */
+	public long getStartPos()
+	{
+		return startPos;
+	}
+
+	/**
+	 * Get the line number since the reading will start.
+	 * @return line number starting at 1, -1 if not specified.
+	 */
+	public long getFromLine()
+	{
+		return fromLine;
+	}
+
+	/**
+	 * Get the time since the lines are read.
+	 * @return time, null if not specified.
+	 */
+	public Instant getSince()
+	{
+		return since;
+	}
+
+	/**
+	 * Get the time until the lines are read.
+	 * @return time, null if not specified.
+	 */
+	public Instant getUntil()
+	{
+		return until;
+	}
+
+	/**
+	 * Get the number of lines to be read.
+	 * @return number of lines, -1 if not specified.
+	 */
+	public long getNumLines()
+	{
+		return numLines;
+	}
+
+	/**
+	 * Get the number of lines passing the filter where the reading stops.
+	 * @return number of lines, -1 if not specified.
+	 */
+	public long getMaxMatches()
+	{
+		return maxMatches;
+	}
+
+	/**
+	 * Get the order of the reading.
+	 * @return order.
+	 */
+	public ReadOrder getOrder()
+	{
+		return order;
+	}
+
+	/**
+	 * Get the filter keywords.
+	 * @return keywords, empty if not specified.
+	 */
+	public List<String> getKeywords()
+	{
+		return keywords;
+	}
+
+	/**
+	 * Get if any or all the keywords must be on the lines.
+	 * @return match mode.
+	 */
+	public MatchMode getMatch()
+	{
+		return match;
+	}
+
+	/**
+	 * Get the regular expression filter.
+	 * @return regular expression, empty if not specified.
+	 */
+	public String getRegex()
+	{
+		return regex;
+	}
+
+	/**
+	 * Get the filter composed from keywords, match and regex.
+	 * @return filter for the lines read.
+	 */
+	public LineFilter getFilter()
+	{
+		return filter;
+	}
+}
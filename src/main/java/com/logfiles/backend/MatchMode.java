@@ -0,0 +1,13 @@
+package com.logfiles.backend;
+
+/**
+ * Specify how several keywords filter a line.
+ * ANY - The line contains at least one keyword
+ * ALL - The line contains every keyword
+ * @author alexdel
+ *
+ */
+public enum MatchMode {
+  ANY,
+  ALL
+}
@@ -0,0 +1,427 @@
+package com.logfiles.backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Cache of the lines passing a filter, the second level after the tail cache. The same
+ * filtered query repeated over a file (a dashboard or an alert polling the errors of a
+ * log) is answered without reading the file again. Every result belongs to a file, a
+ * filter fingerprint, an order and the number of lines read, and it knows the size and
+ * last modification time of the file when it was read: when the file grows the results
+ * read in descendant order from the end are extended with the lines appended, and the
+ * results read in ascendant order from the beginning stay valid while they do not reach
+ * the old end of the file. The cache is bounded by the bytes kept and every result
+ * expires some time after it was written.
+ * The results are immutable and they can be shared between threads.
+ * @author alexdel
+ */
+public class ResultCache {
+	/**
+	 * Default maximum number of bytes kept.
+	 */
+	public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+	/**
+	 * Default seconds a result is kept since it was written.
+	 */
+	public static final long DEFAULT_TTL = 60;
+	/**
+	 * Bytes of a result without lines.
+	 */
+	private static final int RESULT_WEIGHT = 96;
+	/**
+	 * Bytes of a line without its characters: String, array header, start position and
+	 * list reference.
+	 */
+	private static final int LINE_WEIGHT = 64;
+	/**
+	 * Results by query.
+	 */
+	private final Cache<Key, Result> cache;
+	/**
+	 * Maximum number of bytes kept.
+	 */
+	private final long maxBytes;
+
+	/**
+	 * Default Constructor
+	 */
+	public ResultCache()
+	{
+		this(DEFAULT_MAX_BYTES, DEFAULT_TTL);
+	}
+
+	/**
+	 * Constructor
+	 * @param maxBytes  Maximum number of bytes kept. 0 to keep nothing.
+	 * @param ttl       Seconds a result is kept since it was written.
+	 */
+	public ResultCache(long maxBytes, long ttl)
+	{
+		this.maxBytes = maxBytes;
+		this.cache    = Caffeine.newBuilder()
+				             .maximumWeight(maxBytes)
+				             .weigher((Key key, Result result) -> result.weight)
+				             .expireAfterWrite(ttl, TimeUnit.SECONDS)
+				             .recordStats()
+				             .build();
+	}
+
+	/**
+	 * Query of a result: file, filter, order and number of lines read. The size and last
+	 * modification time of the file are not part of the identity of the query.
+	 */
+	static final class Key {
+		/** File read */
+		private final TailCache.Key file;
+		/** Fingerprint of the filter */
+		private final String        fingerprint;
+		/** Order of the reading */
+		private final ReadOrder     order;
+		/** Number of lines read */
+		private final long          numLines;
+
+		/**
+		 * Constructor
+		 * @param file         File read, with its current size.
+		 * @param fingerprint  Fingerprint of the filter.
+		 * @param order        Order of the reading. ASC from the beginning, DESC from the end.
+		 * @param numLines     Number of lines read.
+		 */
+		Key(TailCache.Key file, String fingerprint, ReadOrder order, long numLines)
+		{
+			this.file        = file;
+			this.fingerprint = fingerprint;
+			this.order       = order;
+			this.numLines    = numLines;
+		}
+
+		/**
+		 * Get the file read, with its current size.
+		 * @return file.
+		 */
+		TailCache.Key getFile()
+		{
+			return file;
+		}
+
+		/**
+		 * Get the number of lines read.
+		 * @return number of lines.
+		 */
+		long getNumLines()
+		{
+			return numLines;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof Key))
+			{
+				return false;
+			}
+			Key other = (Key)obj;
+			return file.equals(other.file) && fingerprint.equals(other.fingerprint) &&
+				   order == other.order && numLines == other.numLines;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash(file, fingerprint, order, numLines);
+		}
+	}
+
+	/**
+	 * Lines passing the filter on the lines read, in the order of the reading.
+	 */
+	static final class Result {
+		/** Lines passing the filter */
+		private final List<String> lines;
+		/** Position where every line starts */
+		private final long starts[];
+		/** Position after reading all the lines, as the reading left it */
+		private final long lastPos;
+		/** Number of lines read, passing the filter or not */
+		private final long rawLines;
+		/** Order of the reading */
+		private final ReadOrder order;
+		/** Size of the file when the lines were read */
+		private final long size;
+		/** Last modification time of the file when the lines were read */
+		private final long lastModified;
+		/** Approximate number of bytes kept */
+		private final int  weight;
+
+		/**
+		 * Constructor
+		 * @param lines         Lines passing the filter.
+		 * @param starts        Position where every line starts.
+		 * @param lastPos       Position after reading all the lines.
+		 * @param rawLines      Number of lines read, passing the filter or not.
+		 * @param order         Order of the reading.
+		 * @param size          Size of the file when the lines were read.
+		 * @param lastModified  Last modification time of the file when the lines were read.
+		 * @param weight        Approximate number of bytes kept.
+		 */
+		private Result(List<String> lines, long starts[], long lastPos, long rawLines, ReadOrder order,
+				       long size, long lastModified, int weight)
+		{
+			this.lines        = lines;
+			this.starts       = starts;
+			this.lastPos      = lastPos;
+			this.rawLines     = rawLines;
+			this.order        = order;
+			this.size         = size;
+			this.lastModified = lastModified;
+			this.weight       = weight;
+		}
+
+		/**
+		 * Check if the result is the one of the current version of the file. The results
+		 * read in ascendant order are still valid if the file grew after the last line read.
+		 * @param file  Current file.
+		 * @return true if reading the file again gives the same result.
+		 */
+		boolean isUpToDate(TailCache.Key file)
+		{
+			if (size == file.getSize() && lastModified == file.getLastModified())
+			{
+				return true;
+			}
+			return order == ReadOrder.ASC && isExtensibleTo(file) && lastPos >= 0 && lastPos < size;
+		}
+
+		/**
+		 * Check if the result can be extended with the lines appended to the file.
+		 * @param file  Current file.
+		 * @return true if the file only grew since the lines were read.
+		 */
+		boolean isExtensibleTo(TailCache.Key file)
+		{
+			return file.getSize() > size && file.getLastModified() >= lastModified;
+		}
+
+		/**
+		 * Get the size of the file when the lines were read.
+		 * @return size.
+		 */
+		long getSize()
+		{
+			return size;
+		}
+
+		/**
+		 * Get the lines passing the filter.
+		 * @return unmodifiable list of lines.
+		 */
+		List<String> getLines()
+		{
+			return lines;
+		}
+
+		/**
+		 * Get the position after reading all the lines.
+		 * @return position.
+		 */
+		long getLastPos()
+		{
+			return lastPos;
+		}
+
+		/**
+		 * Get the number of lines read, passing the filter or not.
+		 * @return number of lines.
+		 */
+		long getRawLines()
+		{
+			return rawLines;
+		}
+
+		/**
+		 * Check if all the lines of the file were read in descendant order.
+		 * @return true if the file beginning was reached.
+		 */
+		boolean isComplete()
+		{
+			return lastPos < 0;
+		}
+	}
+
+	/**
+	 * Builder of a result while the lines are read.
+	 */
+	static final class ResultBuilder {
+		/** Lines passing the filter */
+		private final List<String> lines;
+		/** Position where every line starts */
+		private long starts[];
+		/** Approximate number of bytes of the lines added */
+		private long weight;
+
+		/**
+		 * Constructor
+		 */
+		ResultBuilder()
+		{
+			this.lines  = new ArrayList<>();
+			this.starts = new long[16];
+			this.weight = RESULT_WEIGHT;
+		}
+
+		/**
+		 * Add the next line passing the filter.
+		 * @param line   Line read.
+		 * @param start  Position where the line starts.
+		 */
+		void add(String line, long start)
+		{
+			if (lines.size() == starts.length)
+			{
+				starts = Arrays.copyOf(starts, starts.length * 2);
+			}
+			starts[lines.size()] = start;
+			lines.add(line);
+			weight += LINE_WEIGHT + 2L * line.length();
+		}
+
+		/**
+		 * Add the lines of a result, read in descendant order, starting before a position.
+		 * @param result  Result with the previous lines of the file.
+		 * @param before  Position where the lines added finish.
+		 */
+		void addBefore(Result result, long before)
+		{
+			for (int i = 0; i < result.lines.size(); i++)
+			{
+				if (result.starts[i] < before)
+				{
+					add(result.lines.get(i), result.starts[i]);
+				}
+			}
+		}
+
+		/**
+		 * Drop the last lines added, read in descendant order, starting before a position.
+		 * @param pos  Position where the lines kept start.
+		 */
+		void dropBefore(long pos)
+		{
+			int numLines = lines.size();
+
+			while (numLines > 0 && starts[numLines - 1] < pos)
+			{
+				weight -= LINE_WEIGHT + 2L * lines.remove(--numLines).length();
+			}
+		}
+
+		/**
+		 * Build the result.
+		 * @param key       Query read.
+		 * @param lastPos   Position after reading all the lines.
+		 * @param rawLines  Number of lines read, passing the filter or not.
+		 * @return result.
+		 */
+		private Result build(Key key, long lastPos, long rawLines)
+		{
+			return new Result(Collections.unmodifiableList(new ArrayList<>(lines)),
+					          Arrays.copyOf(starts, lines.size()), lastPos, rawLines, key.order,
+					          key.file.getSize(), key.file.getLastModified(),
+					          (int)Math.min(Integer.MAX_VALUE, weight));
+		}
+	}
+
+	/**
+	 * Get the result of a query, read on the current version of the file or on a previous
+	 * one if the file only grew since then. The results of files truncated or modified
+	 * are dropped.
+	 * @param key  Query.
+	 * @return result, or null if it is not cached.
+	 */
+	Result get(Key key)
+	{
+		Result result = cache.getIfPresent(key);
+
+		if (result != null && !result.isUpToDate(key.file) && !result.isExtensibleTo(key.file))
+		{
+			cache.asMap().remove(key, result);
+			return null;
+		}
+		return result;
+	}
+
+	/**
+	 * Check if the result of a query read in descendant order can be extended with the
+	 * lines appended to the file, reading less than the lines of the result.
+	 * @param key     Query.
+	 * @param result  Result read on a previous version of the file.
+	 * @return true if the result can be extended.
+	 */
+	boolean isWorthExtending(Key key, Result result)
+	{
+		long appended = key.file.getSize() - result.getSize();
+
+		return key.order == ReadOrder.DESC && result.isExtensibleTo(key.file) &&
+			   appended < result.getSize() - Math.max(0, result.getLastPos());
+	}
+
+	/**
+	 * Check if the lines added to a builder can still be kept on the cache. The lines of
+	 * the results bigger than the cache are not collected while they are read.
+	 * @param builder  Lines passing the filter.
+	 * @return true if the result fits on the cache.
+	 */
+	boolean fits(ResultBuilder builder)
+	{
+		return builder.weight <= maxBytes;
+	}
+
+	/**
+	 * Keep the result of a query.
+	 * @param key       Query read.
+	 * @param builder   Lines passing the filter.
+	 * @param lastPos   Position after reading all the lines.
+	 * @param rawLines  Number of lines read, passing the filter or not.
+	 * @return result kept.
+	 */
+	Result put(Key key, ResultBuilder builder, long lastPos, long rawLines)
+	{
+		Result result = builder.build(key, lastPos, rawLines);
+
+		cache.put(key, result);
+		return result;
+	}
+
+	/**
+	 * Register the metrics of the cache: hits, misses, evictions, hit ratio, number of
+	 * results and bytes kept.
+	 * @param registry  Registry of the metrics.
+	 */
+	public void registerMetrics(MetricRegistry registry)
+	{
+		registry.register(MetricRegistry.name(ResultCache.class, "hits"),
+				          (Gauge<Long>)() -> cache.stats().hitCount());
+		registry.register(MetricRegistry.name(ResultCache.class, "misses"),
+				          (Gauge<Long>)() -> cache.stats().missCount());
+		registry.register(MetricRegistry.name(ResultCache.class, "evictions"),
+				          (Gauge<Long>)() -> cache.stats().evictionCount());
+		registry.register(MetricRegistry.name(ResultCache.class, "hit-ratio"),
+				          (Gauge<Double>)() -> cache.stats().hitRate());
+		registry.register(MetricRegistry.name(ResultCache.class, "size"),
+				          (Gauge<Long>)() -> cache.estimatedSize());
+		registry.register(MetricRegistry.name(ResultCache.class, "bytes"),
+				          (Gauge<Long>)() -> cache.policy().eviction()
+				                                  .map(eviction -> eviction.weightedSize().orElse(0))
+				                                  .orElse(0L));
+	}
+}
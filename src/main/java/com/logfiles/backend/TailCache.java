@@ -0,0 +1,527 @@
+package com.logfiles.backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+/**
+ * Cache of the last lines of the files, read in descendant order from the end. The cache
+ * is bounded by the bytes kept, not by the number of files, and it decides which tails are
+ * kept by their frequency of use (W-TinyLFU), then a big file read once does not evict the
+ * tails used often. Every tail belongs to a file, path and file key (inode), and it knows
+ * the size and last modification time of the file when it was read: when the file grows
+ * only the lines appended are read and added to the tail, and when the file is truncated
+ * or modified the tail is dropped. Every tail is trimmed to a maximum number of bytes.
+ * The lines are kept as raw bytes on a {@link LineStore}, by default out of the heap, then
+ * the cache can be big without longer garbage collections. The direct buffer of a tail is
+ * freed once it is removed from the cache and the readings using it finish, then the
+ * direct memory used stays close to the bytes kept.
+ * The tails are immutable and they can be shared between threads. Every tail taken from
+ * the cache must be released by the reading when it does not use it anymore.
+ * @author alexdel
+ */
+public class TailCache {
+	/**
+	 * Default maximum number of bytes kept.
+	 */
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+	/**
+	 * Default maximum number of bytes of a single tail.
+	 */
+	public static final long DEFAULT_MAX_TAIL_BYTES = 4L * 1024 * 1024;
+	/**
+	 * Bytes of a tail without lines.
+	 */
+	private static final int TAIL_WEIGHT = 64;
+	/**
+	 * Bytes of a line without its bytes: offset and start position.
+	 */
+	private static final int LINE_WEIGHT = 12;
+	/**
+	 * Tails by version of the file.
+	 */
+	private final Cache<Key, Tail> cache;
+	/**
+	 * Maximum number of bytes of a single tail.
+	 */
+	private final long maxTailBytes;
+	/**
+	 * The lines are kept out of the heap.
+	 */
+	private final boolean offHeap;
+
+	/**
+	 * Default Constructor
+	 */
+	public TailCache()
+	{
+		this(DEFAULT_MAX_BYTES, DEFAULT_MAX_TAIL_BYTES);
+	}
+
+	/**
+	 * Constructor. The lines are kept out of the heap.
+	 * @param maxBytes      Maximum number of bytes kept. 0 to keep nothing.
+	 * @param maxTailBytes  Maximum number of bytes of a single tail. The first lines of the
+	 *                      tail are dropped to fit on it.
+	 */
+	public TailCache(long maxBytes, long maxTailBytes)
+	{
+		this(maxBytes, maxTailBytes, true);
+	}
+
+	/**
+	 * Constructor
+	 * @param maxBytes      Maximum number of bytes kept. 0 to keep nothing.
+	 * @param maxTailBytes  Maximum number of bytes of a single tail. The first lines of the
+	 *                      tail are dropped to fit on it.
+	 * @param offHeap       Keep the lines out of the heap, on direct buffers.
+	 */
+	public TailCache(long maxBytes, long maxTailBytes, boolean offHeap)
+	{
+		this.maxTailBytes = maxTailBytes;
+		this.offHeap      = offHeap;
+		this.cache = Caffeine.newBuilder()
+				             .maximumWeight(maxBytes)
+				             .weigher((Key key, Tail tail) -> tail.weight)
+				             /* The cache does not use the tails evicted or replaced anymore */
+				             .removalListener((Key key, Tail tail, RemovalCause cause) -> tail.release())
+				             .recordStats()
+				             .build();
+	}
+
+	/**
+	 * File of a tail. The size and last modification time are the ones when the key
+	 * was taken, they are not part of the identity of the file.
+	 */
+	static final class Key {
+		/** Canonical path of the file */
+		private final String path;
+		/** File key of the file */
+		private final String fileKey;
+		/** Size of the file */
+		private final long   size;
+		/** Last modification time of the file */
+		private final long   lastModified;
+
+		/**
+		 * Constructor
+		 * @param path          Canonical path of the file.
+		 * @param fileKey       File key of the file.
+		 * @param size          Size of the file.
+		 * @param lastModified  Last modification time of the file.
+		 */
+		Key(String path, String fileKey, long size, long lastModified)
+		{
+			this.path         = path;
+			this.fileKey      = fileKey;
+			this.size         = size;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * Get the size of the file.
+		 * @return size.
+		 */
+		long getSize()
+		{
+			return size;
+		}
+
+		/**
+		 * Get the last modification time of the file.
+		 * @return last modification time in milliseconds.
+		 */
+		long getLastModified()
+		{
+			return lastModified;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof Key))
+			{
+				return false;
+			}
+			Key other = (Key)obj;
+			return path.equals(other.path) && fileKey.equals(other.fileKey);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash(path, fileKey);
+		}
+	}
+
+	/**
+	 * Last lines of a file, from the last one to the first one.
+	 */
+	static final class Tail {
+		/** Lines in descendant order */
+		private final LineStore lines;
+		/** Position where every line starts */
+		private final long starts[];
+		/** Position after reading all the lines, -1 if the file beginning was reached */
+		private final long lastPos;
+		/** Size of the file when the lines were read */
+		private final long size;
+		/** Last modification time of the file when the lines were read */
+		private final long lastModified;
+		/** Approximate number of bytes kept */
+		private final int  weight;
+
+		/**
+		 * Constructor
+		 * @param lines         Lines in descendant order.
+		 * @param starts        Position where every line starts.
+		 * @param lastPos       Position after reading all the lines.
+		 * @param size          Size of the file when the lines were read.
+		 * @param lastModified  Last modification time of the file when the lines were read.
+		 * @param weight        Approximate number of bytes kept.
+		 */
+		private Tail(LineStore lines, long starts[], long lastPos, long size, long lastModified,
+				     int weight)
+		{
+			this.lines        = lines;
+			this.starts       = starts;
+			this.lastPos      = lastPos;
+			this.size         = size;
+			this.lastModified = lastModified;
+			this.weight       = weight;
+		}
+
+		/**
+		 * Count a new reading using the tail.
+		 * @return false if the tail was already released, it can not be used then.
+		 */
+		boolean retain()
+		{
+			return lines.retain();
+		}
+
+		/**
+		 * Release the tail for a reading, or for the cache. The last one frees its lines.
+		 */
+		void release()
+		{
+			lines.release();
+		}
+
+		/**
+		 * Check if the tail was read on the current version of the file.
+		 * @param key  Current file.
+		 * @return true if the file has not changed since the lines were read.
+		 */
+		boolean isUpToDate(Key key)
+		{
+			return size == key.size && lastModified == key.lastModified;
+		}
+
+		/**
+		 * Check if the tail can be extended with the lines appended to the file.
+		 * @param key  Current file.
+		 * @return true if the file only grew since the lines were read.
+		 */
+		boolean isExtensibleTo(Key key)
+		{
+			return key.size > size && key.lastModified >= lastModified;
+		}
+
+		/**
+		 * Get the size of the file when the lines were read.
+		 * @return size.
+		 */
+		long getSize()
+		{
+			return size;
+		}
+
+		/**
+		 * Get the position where the last line of the file, first one on the tail, starts.
+		 * It can have grown when the file grows.
+		 * @return position.
+		 */
+		long getFirstLineStart()
+		{
+			return starts[0];
+		}
+
+		/**
+		 * Get the number of lines.
+		 * @return number of lines.
+		 */
+		int getNumLines()
+		{
+			return lines.size();
+		}
+
+		/**
+		 * Get the first lines passing a filter. They are filtered over the raw bytes when
+		 * the filter allows it, and they are decoded when they are taken from the list,
+		 * while the tail is retained.
+		 * @param numLines  Number of lines looked, at most the lines of the tail.
+		 * @param p         Predicate to filter lines.
+		 * @return unmodifiable list of lines in descendant order.
+		 */
+		List<String> getLines(int numLines, Predicate<String> p)
+		{
+			return lines.getLines(lines.select(numLines, p));
+		}
+
+		/**
+		 * Check if all the lines of the file are on the tail.
+		 * @return true if the file beginning was reached.
+		 */
+		boolean isComplete()
+		{
+			return lastPos < 0;
+		}
+
+		/**
+		 * Get the position after reading a number of lines of the tail, as it would be
+		 * after reading them from the file.
+		 * @param numLines  Number of lines read, at most the lines of the tail.
+		 * @return position where the last line read starts.
+		 */
+		long getLastPos(int numLines)
+		{
+			return numLines == 0 ? lastPos : starts[numLines - 1];
+		}
+
+		/**
+		 * Get the position after reading all the lines of the tail.
+		 * @return position, -1 if the file beginning was reached.
+		 */
+		long getLastPos()
+		{
+			return lastPos;
+		}
+	}
+
+	/**
+	 * Builder of a tail while the lines are read. The lines beyond the maximum number of
+	 * bytes of a tail are not kept, they would be dropped when the tail is built.
+	 */
+	static final class TailBuilder {
+		/** Lines in descendant order */
+		private final LineStore.Builder lines;
+		/** Position where every line starts */
+		private long starts[];
+		/** Approximate number of bytes kept */
+		private long weight;
+		/** Maximum number of bytes of the tail */
+		private final long maxBytes;
+
+		/**
+		 * Constructor
+		 * @param tail      Tail whose lines are the first ones, or null to start empty.
+		 * @param maxBytes  Maximum number of bytes of the tail.
+		 */
+		private TailBuilder(Tail tail, long maxBytes)
+		{
+			this.lines    = new LineStore.Builder();
+			this.starts   = new long[16];
+			this.weight   = TAIL_WEIGHT;
+			this.maxBytes = maxBytes;
+			if (tail != null)
+			{
+				addAll(tail, 0);
+			}
+		}
+
+		/**
+		 * Add the lines of a tail after the lines already added.
+		 * @param tail  Tail with the previous lines of the file.
+		 * @param from  First line of the tail added.
+		 */
+		void addAll(Tail tail, int from)
+		{
+			for (int i = from; i < tail.lines.size() && !isFull(); i++)
+			{
+				addStart(tail.starts[i]);
+				lines.add(tail.lines, i);
+				weight += LINE_WEIGHT + tail.lines.getLength(i);
+			}
+		}
+
+		/**
+		 * Add the next line read.
+		 * @param line   Line read, encoded in UTF-8.
+		 * @param start  Position where the line starts.
+		 */
+		void add(ByteSlice line, long start)
+		{
+			if (isFull())
+			{
+				return;
+			}
+			addStart(start);
+			lines.add(line);
+			weight += LINE_WEIGHT + line.getLength();
+		}
+
+		/**
+		 * Check if the lines added already exceed the tail. One line more is kept over
+		 * the maximum, then the tail built is trimmed and it finishes on a line kept.
+		 * @return true if no more lines are kept.
+		 */
+		private boolean isFull()
+		{
+			return weight > maxBytes && lines.size() > 1;
+		}
+
+		/**
+		 * Keep the position where the next line starts.
+		 * @param start  Position where the line starts.
+		 */
+		private void addStart(long start)
+		{
+			if (lines.size() == starts.length)
+			{
+				starts = Arrays.copyOf(starts, starts.length * 2);
+			}
+			starts[lines.size()] = start;
+		}
+
+		/**
+		 * Build the tail, dropping the first lines of the file if the tail is bigger than
+		 * maxBytes.
+		 * @param key       File read.
+		 * @param lastPos   Position after reading all the lines, -1 if the file beginning
+		 *                  was reached.
+		 * @param maxBytes  Maximum number of bytes of the tail.
+		 * @param offHeap   Keep the lines out of the heap.
+		 * @return tail, or null if there are no lines.
+		 */
+		private Tail build(Key key, long lastPos, long maxBytes, boolean offHeap)
+		{
+			int numLines = lines.size();
+
+			while (numLines > 1 && weight > maxBytes)
+			{
+				numLines--;
+				weight  -= LINE_WEIGHT + lines.getLength(numLines);
+				/* The lines kept finish on the line dropped */
+				lastPos  = starts[numLines - 1];
+			}
+			if (numLines == 0)
+			{
+				return null;
+			}
+			return new Tail(lines.build(numLines, offHeap),
+					        Arrays.copyOf(starts, numLines), lastPos, key.size, key.lastModified,
+					        (int)Math.min(Integer.MAX_VALUE, weight));
+		}
+	}
+
+	/**
+	 * Get the key of a file with its current size and last modification time.
+	 * @param file  File.
+	 * @return key of the file.
+	 * @throws IOException if file not found or forbidden
+	 */
+	static Key getKey(File file) throws IOException
+	{
+		BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+
+		return new Key(file.getCanonicalPath(), String.valueOf(attrs.fileKey()), attrs.size(),
+				       attrs.lastModifiedTime().toMillis());
+	}
+
+	/**
+	 * Create the builder of a tail while the lines are read.
+	 * @param tail  Tail whose lines are the first ones, or null to start empty.
+	 * @return builder.
+	 */
+	TailBuilder newBuilder(Tail tail)
+	{
+		return new TailBuilder(tail, maxTailBytes);
+	}
+
+	/**
+	 * Get the tail of a file, read on the current version of the file or on a previous
+	 * one if the file only grew since then. The tails of files truncated or modified are
+	 * dropped.
+	 * @param key  File.
+	 * @return tail retained for the caller, or null if it is not cached.
+	 */
+	Tail get(Key key)
+	{
+		Tail tail = cache.getIfPresent(key);
+
+		if (tail != null && !tail.isUpToDate(key) && !tail.isExtensibleTo(key))
+		{
+			cache.asMap().remove(key, tail);
+			return null;
+		}
+		/* It can be released by the cache just after it was taken */
+		return tail != null && tail.retain() ? tail : null;
+	}
+
+	/**
+	 * Check if the lines appended to a file since its tail was read fit on a tail, then
+	 * it is worth to read them and extend the tail instead of reading the tail again.
+	 * @param key   File.
+	 * @param tail  Tail read on a previous version of the file.
+	 * @return true if the tail can be extended.
+	 */
+	boolean isWorthExtending(Key key, Tail tail)
+	{
+		return tail.isExtensibleTo(key) && key.size - tail.getFirstLineStart() <= maxTailBytes;
+	}
+
+	/**
+	 * Keep the tail of a file.
+	 * @param key      File read.
+	 * @param builder  Lines read.
+	 * @param lastPos  Position after reading all the lines, -1 if the file beginning was reached.
+	 * @return tail kept retained for the caller, or null if there are no lines.
+	 */
+	Tail put(Key key, TailBuilder builder, long lastPos)
+	{
+		Tail tail = builder.build(key, lastPos, maxTailBytes, offHeap);
+
+		if (tail != null)
+		{
+			/* The builder's count goes to the caller, the cache has its own */
+			tail.retain();
+			cache.put(key, tail);
+		}
+		return tail;
+	}
+
+	/**
+	 * Register the metrics of the cache: hits, misses, evictions, hit ratio, number of
+	 * tails and bytes kept.
+	 * @param registry  Registry of the metrics.
+	 */
+	public void registerMetrics(MetricRegistry registry)
+	{
+		registry.register(MetricRegistry.name(TailCache.class, "hits"),
+				          (Gauge<Long>)() -> cache.stats().hitCount());
+		registry.register(MetricRegistry.name(TailCache.class, "misses"),
+				          (Gauge<Long>)() -> cache.stats().missCount());
+		registry.register(MetricRegistry.name(TailCache.class, "evictions"),
+				          (Gauge<Long>)() -> cache.stats().evictionCount());
+		registry.register(MetricRegistry.name(TailCache.class, "hit-ratio"),
+				          (Gauge<Double>)() -> cache.stats().hitRate());
+		registry.register(MetricRegistry.name(TailCache.class, "size"),
+				          (Gauge<Long>)() -> cache.estimatedSize());
+		registry.register(MetricRegistry.name(TailCache.class, "bytes"),
+				          (Gauge<Long>)() -> cache.policy().eviction()
+				                                  .map(eviction -> eviction.weightedSize().orElse(0))
+				                                  .orElse(0L));
+	}
+}
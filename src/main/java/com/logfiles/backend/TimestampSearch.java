@@ -0,0 +1,237 @@
+package com.logfiles.backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.Locale;
+
+/**
+ * Find where a time range starts and finishes on a log file written in time order. Every
+ * line starting with a timestamp, parsed with the configured pattern, starts a new log
+ * entry; the lines without timestamp (stack traces, multi-line messages) belong to the
+ * previous entry. The position is found by binary search over the file positions: every
+ * probe reads forward from a position until the first line with timestamp, then a time
+ * range on a file of n bytes costs about log2(n) short reads instead of a full scan.
+ * @author alexdel
+ */
+public class TimestampSearch {
+	/**
+	 * Default pattern of the timestamps at the beginning of the lines.
+	 */
+	public static final String DEFAULT_PATTERN = "yyyy-MM-dd HH:mm:ss";
+	/**
+	 * Maximum number of bytes of a line decoded to look for the timestamp.
+	 */
+	private static final int MAX_TIMESTAMP_LENGTH = 64;
+	/**
+	 * Parser of the timestamps of the lines.
+	 */
+	private final DateTimeFormatter formatter;
+	/**
+	 * Zone of the timestamps without offset.
+	 */
+	private final ZoneId zone;
+
+	/**
+	 * Default Constructor. Default pattern on UTC.
+	 */
+	public TimestampSearch()
+	{
+		this(DEFAULT_PATTERN, ZoneOffset.UTC);
+	}
+
+	/**
+	 * Constructor
+	 * @param pattern  Pattern of the timestamps at the beginning of the lines, as
+	 *                 {@link DateTimeFormatter#ofPattern(String)}.
+	 * @param zone     Zone of the timestamps without offset.
+	 * @throws IllegalArgumentException if the pattern is not valid
+	 */
+	public TimestampSearch(String pattern, ZoneId zone)
+	{
+		this.formatter = DateTimeFormatter.ofPattern(pattern, Locale.ROOT).withZone(zone);
+		this.zone      = zone;
+	}
+
+	/**
+	 * Get the timestamp at the beginning of a line.
+	 * @param line  Line without CR and LF.
+	 * @return timestamp, or null if the line does not start with a timestamp.
+	 */
+	public Instant parseTimestamp(ByteSlice line)
+	{
+		return parsePrefix(new String(line.getBytes(), line.getOffset(),
+				                      Math.min(line.getLength(), MAX_TIMESTAMP_LENGTH),
+				                      StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Get the timestamp at the beginning of a line already decoded.
+	 * @param line  Line without CR and LF.
+	 * @return timestamp, or null if the line does not start with a timestamp.
+	 */
+	public Instant parseTimestamp(String line)
+	{
+		return parsePrefix(line.length() > MAX_TIMESTAMP_LENGTH ? line.substring(0, MAX_TIMESTAMP_LENGTH) : line);
+	}
+
+	/**
+	 * Parse the timestamp at the beginning of a prefix of a line.
+	 * @param prefix  First characters of the line.
+	 * @return timestamp, or null if the prefix does not start with a timestamp.
+	 */
+	private Instant parsePrefix(String prefix)
+	{
+		try {
+			return Instant.from(formatter.parse(prefix, new ParsePosition(0)));
+		} catch (DateTimeException dte) {
+			return null;
+		}
+	}
+
+	/**
+	 * Parse a time given on a query. It can be:
+	 * 1. An ISO-8601 duration, the time is that duration before now. PT5M, last 5 minutes.
+	 * 2. An ISO-8601 date-time, with offset or on the zone of the timestamps.
+	 * 3. A date-time with the pattern of the timestamps.
+	 * @param value  Time given.
+	 * @return time.
+	 * @throws DateTimeException if the time is not valid
+	 */
+	public Instant parseTime(String value)
+	{
+		if (value.startsWith("P"))
+		{
+			Duration duration = Duration.parse(value);
+			if (duration.isNegative())
+			{
+				throw new DateTimeException("Negative duration " + value);
+			}
+			return Instant.now().minus(duration);
+		}
+
+		try {
+			TemporalAccessor time = DateTimeFormatter.ISO_DATE_TIME.parseBest(value,
+					                ZonedDateTime::from, LocalDateTime::from);
+			if (time instanceof ZonedDateTime)
+			{
+				return ((ZonedDateTime)time).toInstant();
+			}
+			return ((LocalDateTime)time).atZone(zone).toInstant();
+		} catch (DateTimeException dte) {
+			/* Not ISO-8601, the pattern of the timestamps is tried */
+			return Instant.from(formatter.parse(value));
+		}
+	}
+
+	/**
+	 * Find where the first entry logged at or after a time starts.
+	 * @param file   File looked.
+	 * @param since  Time looked.
+	 * @return position where the entry starts, or the file size if there is not.
+	 * @throws IOException if file not found or forbidden
+	 */
+	public long findSince(File file, Instant since) throws IOException
+	{
+		return findOffset(file, since, true);
+	}
+
+	/**
+	 * Find where the first entry logged after a time starts, then the entries logged
+	 * at that time finish just before it.
+	 * @param file   File looked.
+	 * @param until  Time looked.
+	 * @return position where the entry starts, or the file size if there is not.
+	 * @throws IOException if file not found or forbidden
+	 */
+	public long findUntil(File file, Instant until) throws IOException
+	{
+		return findOffset(file, until, false);
+	}
+
+	/**
+	 * Binary search of the first entry logged at (if inclusive) or after a time. Being
+	 * the entries in time order, the entries found from a position are at or after the
+	 * time since some position, and the search looks for the smallest one.
+	 * @param file       File looked.
+	 * @param time       Time looked.
+	 * @param inclusive  Entries logged just at time are looked too.
+	 * @return position where the entry starts, or the file size if there is not.
+	 * @throws IOException if file not found or forbidden
+	 */
+	private long findOffset(File file, Instant time, boolean inclusive) throws IOException
+	{
+		long size  = file.length();
+		long lo    = 0;
+		long hi    = size;
+		long found = size;
+
+		while (lo < hi)
+		{
+			long    mid     = lo + (hi - lo) / 2;
+			long    start[] = new long[1];
+			Instant probe   = probe(file, mid, size, start);
+
+			if (probe == null || (inclusive ? !probe.isBefore(time) : probe.isAfter(time)))
+			{
+				hi    = mid;
+				found = probe == null ? size : start[0];
+			}
+			else
+			{
+				/* Any position until the entry found leads to the same entry */
+				lo = start[0] + 1;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Read forward from a position until the first line with timestamp. The reading
+	 * starts on the line boundary at or after the position.
+	 * @param file   File looked.
+	 * @param pos    Position where the probe starts.
+	 * @param size   File size when the search started.
+	 * @param start  Output, position where the line found starts.
+	 * @return timestamp of the line found, or null if there is not until the file end.
+	 * @throws IOException if file not found or forbidden
+	 */
+	private Instant probe(File file, long pos, long size, long start[]) throws IOException
+	{
+		/* Starting one byte before, the first line read is empty if pos is a line start,
+		 * or the rest of the line pos belongs to. It is never taken */
+		long lineStart = Math.max(0, pos - 1);
+
+		try (LogInputStream inputStream = new LogAscRandInputStream(file, lineStart, Long.MAX_VALUE))
+		{
+			ByteSlice line  = new ByteSlice();
+			boolean   first = pos > 0;
+
+			while (lineStart < size && inputStream.nextLine(line))
+			{
+				if (!first)
+				{
+					Instant timestamp = parseTimestamp(line);
+					if (timestamp != null)
+					{
+						start[0] = lineStart;
+						return timestamp;
+					}
+				}
+				first     = false;
+				lineStart = inputStream.getLastPos();
+			}
+		}
+		return null;
+	}
+}
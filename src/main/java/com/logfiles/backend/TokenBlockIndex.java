@@ -0,0 +1,405 @@
+package com.logfiles.backend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Inverted index of a single log file. The file is split in blocks of complete lines of
+ * about blockSize bytes, and every token keeps the blocks where it appears. The tokens
+ * are the trigrams (3 consecutive bytes) of the lines hashed on {@link #TOKEN_SLOTS}
+ * values, then any keyword of 3 or more bytes, not only whole words, can be looked:
+ * a block without some trigram of the keyword can not contain the keyword.
+ * The index is immutable once built and it can be shared between threads.
+ * @author alexdel
+ */
+public class TokenBlockIndex {
+	/**
+	 * Number of different tokens.
+	 */
+	public static final int TOKEN_SLOTS = 1 << 16;
+	/**
+	 * Header of the index files.
+	 */
+	private static final int MAGIC   = 0x54424958;
+	/**
+	 * Version of the index file format.
+	 */
+	private static final int VERSION = 2;
+	/**
+	 * Number of bytes read from the file on every scan.
+	 */
+	private static final int SCAN_SIZE = 64 * 1024;
+	/**
+	 * File key of the file indexed.
+	 */
+	private final String fileKey;
+	/**
+	 * File size when it was indexed.
+	 */
+	private final long   size;
+	/**
+	 * Last modification time of the file when it was indexed.
+	 */
+	private final long   lastModified;
+	/**
+	 * Sample of the content of the file when it was indexed.
+	 */
+	private final ContentSample sample;
+	/**
+	 * Number of blocks.
+	 */
+	private int    numBlocks;
+	/**
+	 * Position where every block starts.
+	 */
+	private long   starts[];
+	/**
+	 * Position after the last LF of every block.
+	 */
+	private long   ends[];
+	/**
+	 * Number of lines of every block.
+	 */
+	private long   lines[];
+	/**
+	 * Blocks where every token appears. null if the token is not on any block.
+	 */
+	private BitSet tokens[];
+	/**
+	 * Blocks with its summary, built once.
+	 */
+	private List<LineBlock> blocks;
+
+	/**
+	 * Constructor. Empty index.
+	 * @param fileKey       File key of the file indexed.
+	 * @param size          File size when it was indexed.
+	 * @param lastModified  Last modification time of the file when it was indexed.
+	 * @param sample        Sample of the content of the file when it was indexed.
+	 */
+	private TokenBlockIndex(String fileKey, long size, long lastModified, ContentSample sample)
+	{
+		this.fileKey      = fileKey;
+		this.size         = size;
+		this.lastModified = lastModified;
+		this.sample       = sample;
+		this.numBlocks    = 0;
+		this.starts       = new long[16];
+		this.ends         = new long[16];
+		this.lines        = new long[16];
+		this.tokens       = new BitSet[TOKEN_SLOTS];
+	}
+
+	/**
+	 * Get the token of a trigram.
+	 * @param trigram  3 bytes on the lowest bits.
+	 * @return token, from 0 to TOKEN_SLOTS - 1.
+	 */
+	private static int token(int trigram)
+	{
+		return (trigram * 0x9E3779B1) >>> 16;
+	}
+
+	/**
+	 * Build the index of a file.
+	 * @param file          File to be indexed.
+	 * @param fileKey       File key of the file.
+	 * @param size          Position until the file is indexed.
+	 * @param lastModified  Last modification time of the file.
+	 * @param blockSize     Minimum number of bytes of a block. The block finishes on the next LF.
+	 * @return index of the file.
+	 * @throws IOException if file not found or forbidden
+	 */
+	public static TokenBlockIndex build(File file, String fileKey, long size, long lastModified,
+			                            int blockSize) throws IOException
+	{
+		TokenBlockIndex index = new TokenBlockIndex(fileKey, size, lastModified,
+				                                    ContentSample.read(file, size));
+		BitSet blockTokens = new BitSet(TOKEN_SLOTS);
+		byte   buffer[]    = new byte[SCAN_SIZE];
+		long   pos         = 0;
+		long   blockStart  = 0;
+		long   blockLines  = 0;
+		long   lastLF      = -1;
+		int    trigram     = 0;
+		int    gramLength  = 0;
+
+		try (RandomAccessFile randFile = new RandomAccessFile(file, "r"))
+		{
+			while (pos < size)
+			{
+				int read = randFile.read(buffer, 0, (int)Math.min(buffer.length, size - pos));
+				if (read <= 0)
+				{
+					break;
+				}
+				for (int i = 0; i < read; i++)
+				{
+					trigram = ((trigram << 8) | (buffer[i] & 0xFF)) & 0xFFFFFF;
+					if (++gramLength >= 3)
+					{
+						blockTokens.set(token(trigram));
+					}
+
+					if (buffer[i] == '\n')
+					{
+						lastLF = pos + i;
+						blockLines++;
+						/* The block finishes after the LF once it reaches its size */
+						if (lastLF + 1 - blockStart >= blockSize)
+						{
+							index.addBlock(blockStart, lastLF + 1, blockLines, blockTokens);
+							blockStart = lastLF + 1;
+							blockLines = 0;
+							gramLength = 0;
+							blockTokens.clear();
+						}
+					}
+				}
+				pos += read;
+			}
+		}
+
+		/* Last block with the rest of complete lines, the last line without LF is not indexed */
+		if (blockLines > 0)
+		{
+			index.addBlock(blockStart, lastLF + 1, blockLines, blockTokens);
+		}
+		return index;
+	}
+
+	/**
+	 * Add a new block.
+	 * @param start        Position where the block starts.
+	 * @param end          Position after the last LF of the block.
+	 * @param blockLines   Number of lines of the block.
+	 * @param blockTokens  Tokens that appear on the block.
+	 */
+	private void addBlock(long start, long end, long blockLines, BitSet blockTokens)
+	{
+		if (numBlocks == starts.length)
+		{
+			starts = Arrays.copyOf(starts, numBlocks * 2);
+			ends   = Arrays.copyOf(ends, numBlocks * 2);
+			lines  = Arrays.copyOf(lines, numBlocks * 2);
+		}
+		starts[numBlocks] = start;
+		ends[numBlocks]   = end;
+		lines[numBlocks]  = blockLines;
+
+		for (int t = blockTokens.nextSetBit(0); t >= 0; t = blockTokens.nextSetBit(t + 1))
+		{
+			if (tokens[t] == null)
+			{
+				tokens[t] = new BitSet();
+			}
+			tokens[t].set(numBlocks);
+		}
+		numBlocks++;
+	}
+
+	/**
+	 * Check if the blocks still belong to the file. The blocks are valid while the file
+	 * is not rotated (other file key), truncated (smaller size) nor its content indexed
+	 * changed, as a file truncated and written again up to a bigger size. The content is
+	 * only sampled again when the file was modified since it was indexed.
+	 * @param file          File indexed.
+	 * @param fileKey       Current file key of the file.
+	 * @param size          Current size of the file.
+	 * @param lastModified  Current last modification time of the file.
+	 * @return true if the blocks can be used.
+	 * @throws IOException if file not found or forbidden
+	 */
+	public boolean isValidFor(File file, String fileKey, long size, long lastModified)
+			throws IOException
+	{
+		if (isUpToDate(fileKey, size, lastModified))
+		{
+			return true;
+		}
+		return this.fileKey.equals(fileKey) && size >= this.size &&
+			   sample.matches(file, size, lastModified);
+	}
+
+	/**
+	 * Check if the index was built with the current version of the file.
+	 * @param fileKey       Current file key of the file.
+	 * @param size          Current size of the file.
+	 * @param lastModified  Current last modification time of the file.
+	 * @return true if the file has not changed since it was indexed.
+	 */
+	public boolean isUpToDate(String fileKey, long size, long lastModified)
+	{
+		return this.fileKey.equals(fileKey) && size == this.size &&
+			   lastModified == this.lastModified;
+	}
+
+	/**
+	 * Get the blocks of the file with its summary.
+	 * @return blocks sorted by position.
+	 */
+	public synchronized List<LineBlock> getBlocks()
+	{
+		if (blocks == null)
+		{
+			List<LineBlock> list = new ArrayList<>(numBlocks);
+			for (int i = 0; i < numBlocks; i++)
+			{
+				list.add(new LineBlock(starts[i], ends[i], lines[i], new TokenBlock(i)));
+			}
+			blocks = Collections.unmodifiableList(list);
+		}
+		return blocks;
+	}
+
+	/**
+	 * Summary of a block on the index.
+	 */
+	private class TokenBlock implements BlockSummary {
+		/** Block number */
+		private final int block;
+
+		/**
+		 * Constructor
+		 * @param block  Block number.
+		 */
+		TokenBlock(int block)
+		{
+			this.block = block;
+		}
+
+		/**
+		 * The keyword may be on the block if all its trigrams are on the block.
+		 * Keywords shorter than a trigram may be on any block.
+		 */
+		@Override
+		public boolean mayContain(byte keyword[])
+		{
+			int trigram = 0;
+
+			for (int i = 0; i < keyword.length; i++)
+			{
+				trigram = ((trigram << 8) | (keyword[i] & 0xFF)) & 0xFFFFFF;
+				if (i >= 2)
+				{
+					BitSet tokenBlocks = tokens[token(trigram)];
+					if (tokenBlocks == null || !tokenBlocks.get(block))
+					{
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Save the index. The index is written on a temporary file that replaces the index file
+	 * when it is complete, then a reader never sees an index half written.
+	 * @param indexFile  File where the index is saved.
+	 * @throws IOException if the index can not be written
+	 */
+	public void save(File indexFile) throws IOException
+	{
+		File tmpFile = new File(indexFile.getPath() + ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmpFile))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(TOKEN_SLOTS);
+			out.writeUTF(fileKey);
+			out.writeLong(size);
+			out.writeLong(lastModified);
+			out.writeLong(sample.getHead());
+			out.writeLong(sample.getTail());
+			out.writeInt(numBlocks);
+			for (int i = 0; i < numBlocks; i++)
+			{
+				out.writeLong(starts[i]);
+				out.writeLong(ends[i]);
+				out.writeLong(lines[i]);
+			}
+			for (int t = 0; t < TOKEN_SLOTS; t++)
+			{
+				long words[] = tokens[t] == null ? new long[0] : tokens[t].toLongArray();
+				out.writeInt(words.length);
+				for (long word : words)
+				{
+					out.writeLong(word);
+				}
+			}
+		}
+		Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Load an index saved.
+	 * @param indexFile  File where the index was saved.
+	 * @return index loaded, or null if it does not exist or it was saved with
+	 *         a different format.
+	 * @throws IOException if the index can not be read
+	 */
+	public static TokenBlockIndex load(File indexFile) throws IOException
+	{
+		if (!indexFile.exists())
+		{
+			return null;
+		}
+
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(indexFile))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != TOKEN_SLOTS)
+			{
+				return null;
+			}
+
+			String fileKey      = in.readUTF();
+			long   size         = in.readLong();
+			long   lastModified = in.readLong();
+			ContentSample sample = new ContentSample(size, in.readLong(), in.readLong());
+
+			TokenBlockIndex index = new TokenBlockIndex(fileKey, size, lastModified, sample);
+			index.numBlocks = in.readInt();
+			index.starts    = new long[Math.max(index.numBlocks, 1)];
+			index.ends      = new long[index.starts.length];
+			index.lines     = new long[index.starts.length];
+			for (int i = 0; i < index.numBlocks; i++)
+			{
+				index.starts[i] = in.readLong();
+				index.ends[i]   = in.readLong();
+				index.lines[i]  = in.readLong();
+			}
+			for (int t = 0; t < TOKEN_SLOTS; t++)
+			{
+				int length = in.readInt();
+				if (length > 0)
+				{
+					long words[] = new long[length];
+					for (int i = 0; i < length; i++)
+					{
+						words[i] = in.readLong();
+					}
+					index.tokens[t] = BitSet.valueOf(words);
+				}
+			}
+			return index;
+		}
+	}
+}
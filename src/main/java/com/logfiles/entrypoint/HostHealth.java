@@ -0,0 +1,329 @@
+package com.logfiles.entrypoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SlidingWindowReservoir;
+
+/**
+ * Health of the other hosts, learned from the requests sent to them.
+ * For every host it keeps the latency and the error rate as exponentially weighted moving
+ * averages, the 95th percentile of the latency of its last responses and a circuit breaker:
+ * after several failures in a row the circuit opens and the host is skipped, once the open
+ * period passes a single trial request is let through and its result closes or opens the
+ * circuit again. A failure is a host not reachable, without response or answering 5xx.
+ * Up to MAX_HOSTS hosts are tracked, the others are always requested.
+ * @author alexdel
+ */
+public class HostHealth {
+	/**
+	 * Default number of failures in a row that opens the circuit of a host.
+	 */
+	public static final int  DEFAULT_FAILURE_THRESHOLD = 5;
+	/**
+	 * Default milliseconds the circuit of a host stays open.
+	 */
+	public static final long DEFAULT_OPEN_MILLIS       = 30000;
+	/**
+	 * Default minimum milliseconds before a request is hedged.
+	 */
+	public static final long DEFAULT_MIN_HEDGE_MILLIS  = 50;
+	/**
+	 * Maximum number of hosts tracked.
+	 */
+	public static final int  MAX_HOSTS                 = 1024;
+	/** Weight of the last sample on the moving averages */
+	private static final double ALPHA       = 0.2;
+	/** Number of last latencies of a host for its percentiles */
+	private static final int    WINDOW      = 100;
+	/** Minimum number of latencies of a host before its requests are hedged */
+	private static final int    MIN_SAMPLES = 20;
+
+	/**
+	 * State of the circuit breaker of a host.
+	 */
+	public enum Circuit {
+		/** The host is requested */
+		CLOSED,
+		/** The host is skipped */
+		OPEN,
+		/** A single trial request is sent to the host */
+		HALF_OPEN
+	}
+
+	/** State of every host tracked */
+	private final ConcurrentMap<String, HostState> hosts = new ConcurrentHashMap<>();
+	/** Failures in a row that open the circuit of a host */
+	private final int  failureThreshold;
+	/** Nanoseconds the circuit of a host stays open */
+	private final long openNanos;
+	/** Minimum milliseconds before a request is hedged */
+	private final long minHedgeMillis;
+	/** Requests hedged to a replica */
+	private final AtomicLong hedged  = new AtomicLong();
+	/** Requests not sent as the circuit of the host was open */
+	private final AtomicLong skipped = new AtomicLong();
+
+	/**
+	 * Default constructor
+	 */
+	public HostHealth()
+	{
+		this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS, DEFAULT_MIN_HEDGE_MILLIS);
+	}
+
+	/**
+	 * Constructor
+	 * @param failureThreshold  Failures in a row that open the circuit of a host.
+	 * @param openMillis        Milliseconds the circuit of a host stays open.
+	 * @param minHedgeMillis    Minimum milliseconds before a request is hedged.
+	 */
+	public HostHealth(int failureThreshold, long openMillis, long minHedgeMillis)
+	{
+		this.failureThreshold = failureThreshold;
+		this.openNanos        = TimeUnit.MILLISECONDS.toNanos(openMillis);
+		this.minHedgeMillis   = minHedgeMillis;
+	}
+
+	/**
+	 * Get the state of a host, created the first time.
+	 * @param hostName  Host name.
+	 * @return state, null if there are too many hosts tracked.
+	 */
+	private HostState getState(String hostName)
+	{
+		HostState state = hosts.get(hostName);
+
+		if (state == null && hosts.size() < MAX_HOSTS)
+		{
+			state = hosts.computeIfAbsent(hostName, name -> new HostState());
+		}
+		return state;
+	}
+
+	/**
+	 * Check if a host can be requested now, its circuit is not open.
+	 * When the open period passed, the caller is the trial request.
+	 * @param hostName  Host name.
+	 * @return true if the host can be requested.
+	 */
+	public boolean allowRequest(String hostName)
+	{
+		HostState state = getState(hostName);
+
+		return state == null || state.allowRequest(System.nanoTime());
+	}
+
+	/**
+	 * Record a response of a host.
+	 * @param hostName     Host name.
+	 * @param latencyNanos Nanoseconds since the request was sent.
+	 */
+	public void recordSuccess(String hostName, long latencyNanos)
+	{
+		HostState state = getState(hostName);
+
+		if (state != null)
+		{
+			state.recordSuccess(TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+		}
+	}
+
+	/**
+	 * Record a failure of a host.
+	 * @param hostName  Host name.
+	 */
+	public void recordFailure(String hostName)
+	{
+		HostState state = getState(hostName);
+
+		if (state != null)
+		{
+			state.recordFailure(System.nanoTime());
+		}
+	}
+
+	/**
+	 * Get the milliseconds to wait for a host before its request is hedged: the 95th
+	 * percentile of its latency, not less than the minimum.
+	 * @param hostName  Host name.
+	 * @return milliseconds, -1 if the host has not enough responses yet.
+	 */
+	public long getHedgeDelayMillis(String hostName)
+	{
+		HostState state = hosts.get(hostName);
+
+		return state == null ? -1 : state.getHedgeDelayMillis();
+	}
+
+	/**
+	 * Count a request hedged to a replica.
+	 */
+	public void markHedged()
+	{
+		hedged.incrementAndGet();
+	}
+
+	/**
+	 * Count a request not sent as the circuit of the host was open.
+	 */
+	public void markSkipped()
+	{
+		skipped.incrementAndGet();
+	}
+
+	/**
+	 * Get the state of the circuit of a host.
+	 * @param hostName  Host name.
+	 * @return circuit, closed if the host is not tracked.
+	 */
+	public Circuit getCircuit(String hostName)
+	{
+		HostState state = hosts.get(hostName);
+
+		return state == null ? Circuit.CLOSED : state.getCircuit();
+	}
+
+	/**
+	 * Get the hosts tracked.
+	 * @return host names, sorted.
+	 */
+	public List<String> getHostNames()
+	{
+		List<String> names = new ArrayList<>(hosts.keySet());
+
+		Collections.sort(names);
+		return names;
+	}
+
+	/**
+	 * Get the hosts with the circuit open or half open.
+	 * @return host names, sorted.
+	 */
+	public List<String> getOpenHosts()
+	{
+		List<String> names = getHostNames();
+
+		names.removeIf(name -> getCircuit(name) == Circuit.CLOSED);
+		return names;
+	}
+
+	/**
+	 * Get the state of a host, for the health check.
+	 * @param hostName  Host name.
+	 * @return circuit, latency and errorRate of the host, empty if it is not tracked.
+	 */
+	public Map<String, Object> getDetails(String hostName)
+	{
+		HostState state = hosts.get(hostName);
+
+		return state == null ? Collections.emptyMap() : state.getDetails();
+	}
+
+	/**
+	 * Register the metrics: number of hosts tracked, with the circuit open, requests hedged
+	 * and requests skipped.
+	 * @param registry  Registry of the metrics.
+	 */
+	public void registerMetrics(MetricRegistry registry)
+	{
+		registry.register(MetricRegistry.name(HostHealth.class, "hosts"),
+				          (Gauge<Integer>)hosts::size);
+		registry.register(MetricRegistry.name(HostHealth.class, "open-circuits"),
+				          (Gauge<Integer>)() -> getOpenHosts().size());
+		registry.register(MetricRegistry.name(HostHealth.class, "hedged"),
+				          (Gauge<Long>)hedged::get);
+		registry.register(MetricRegistry.name(HostHealth.class, "skipped"),
+				          (Gauge<Long>)skipped::get);
+	}
+
+	/**
+	 * Health of a single host.
+	 */
+	private final class HostState {
+		/** Last latencies, for the percentiles */
+		private final Histogram latencies = new Histogram(new SlidingWindowReservoir(WINDOW));
+		/** Moving average of the latency in milliseconds, -1 without responses */
+		private double  latency   = -1;
+		/** Moving average of the failures, from 0 to 1 */
+		private double  errorRate = 0;
+		/** Failures in a row */
+		private int     failures  = 0;
+		/** State of the circuit */
+		private Circuit circuit   = Circuit.CLOSED;
+		/** When the circuit was opened */
+		private long    openedAt  = 0;
+		/** The trial request of a half open circuit was sent */
+		private boolean trialSent = false;
+
+		synchronized boolean allowRequest(long now)
+		{
+			if (circuit == Circuit.OPEN && now - openedAt >= openNanos)
+			{
+				circuit   = Circuit.HALF_OPEN;
+				trialSent = false;
+			}
+			if (circuit == Circuit.HALF_OPEN && !trialSent)
+			{
+				trialSent = true;
+				return true;
+			}
+			return circuit == Circuit.CLOSED;
+		}
+
+		synchronized void recordSuccess(long latencyMillis)
+		{
+			latencies.update(latencyMillis);
+			latency   = latency < 0 ? latencyMillis : ALPHA * latencyMillis + (1 - ALPHA) * latency;
+			errorRate = (1 - ALPHA) * errorRate;
+			failures  = 0;
+			circuit   = Circuit.CLOSED;
+		}
+
+		synchronized void recordFailure(long now)
+		{
+			errorRate = ALPHA + (1 - ALPHA) * errorRate;
+			failures++;
+			/* The trial request failed too, or too many failures in a row */
+			if (circuit == Circuit.HALF_OPEN || failures >= failureThreshold)
+			{
+				circuit  = Circuit.OPEN;
+				openedAt = now;
+			}
+		}
+
+		synchronized long getHedgeDelayMillis()
+		{
+			if (latencies.getCount() < MIN_SAMPLES)
+			{
+				return -1;
+			}
+			return Math.max(minHedgeMillis, (long)Math.ceil(latencies.getSnapshot().get95thPercentile()));
+		}
+
+		synchronized Circuit getCircuit()
+		{
+			return circuit;
+		}
+
+		synchronized Map<String, Object> getDetails()
+		{
+			Map<String, Object> details = new LinkedHashMap<>();
+
+			details.put("circuit", circuit);
+			details.put("latency", Math.round(latency));
+			details.put("errorRate", Math.round(errorRate * 1000) / 1000.0);
+			return details;
+		}
+	}
+}
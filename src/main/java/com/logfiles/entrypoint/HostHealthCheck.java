@@ -0,0 +1,42 @@
+package com.logfiles.entrypoint;
+
+import java.util.List;
+
+import com.codahale.metrics.health.HealthCheck;
+
+/**
+ * Health check of the other hosts, with the circuit, latency and error rate of every host
+ * on its details. It is unhealthy only when all the hosts have the circuit open, the requests
+ * with other hosts can not be answered then, as a single host down is handled by its circuit.
+ * @author alexdel
+ */
+public class HostHealthCheck extends HealthCheck {
+	/** Health of the other hosts */
+	private final HostHealth health;
+
+	/**
+	 * Constructor
+	 * @param health  Health of the other hosts.
+	 */
+	public HostHealthCheck(HostHealth health)
+	{
+		this.health = health;
+	}
+
+	@Override
+	protected Result check()
+	{
+		List<String>  hostNames = health.getHostNames();
+		List<String>  openHosts = health.getOpenHosts();
+		ResultBuilder result    = !hostNames.isEmpty() && openHosts.size() == hostNames.size() ?
+				                  Result.builder().unhealthy() : Result.builder().healthy();
+
+		for (String hostName : hostNames)
+		{
+			result.withDetail(hostName, health.getDetails(hostName));
+		}
+		return result.withMessage(openHosts.size() + " of " + hostNames.size() + " hosts with the circuit open" +
+				                  (openHosts.isEmpty() ? "" : ": " + String.join(", ", openHosts)))
+				     .build();
+	}
+}
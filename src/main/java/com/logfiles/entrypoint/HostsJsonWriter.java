@@ -0,0 +1,172 @@
+package com.logfiles.entrypoint;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logfiles.api.Host;
+import com.logfiles.api.LogFile;
+import com.logfiles.backend.LineSink;
+
+/**
+ * Writer of the REST-API response, the list of hosts with their log files, while the
+ * files are read. The JSON has the same shape than serializing a List of {@link Host},
+ * but the lines are written as soon as they are read and the output is flushed every
+ * chunk of lines, then the memory used and the time to the first byte do not depend on
+ * the number of lines. The fields of a log file buffer are written as lines and after
+ * lastPosRead, because the last position is known at the end of the reading.
+ * If a reading fails the JSON is left unfinished, then the client can not mistake a
+ * broken response for a complete one.
+ * @author alexdel
+ */
+public class HostsJsonWriter {
+	/**
+	 * Number of lines written between two flushes of the output.
+	 */
+	public static final int FLUSH_LINES = 1000;
+
+	/**
+	 * Reading of a file handing out its lines.
+	 */
+	@FunctionalInterface
+	public interface FileReading {
+		/**
+		 * Read the file.
+		 * @param sink  Receiver of the lines read.
+		 * @return file read, with the last position after the reading.
+		 * @throws IOException if the file can not be read or the lines can not be written
+		 */
+		LogFile read(LineSink sink) throws IOException;
+	}
+
+	/**
+	 * Generator of the JSON over the response output.
+	 */
+	private final JsonGenerator generator;
+	/**
+	 * Lines written since the last flush.
+	 */
+	private int pendingLines;
+
+	/**
+	 * Constructor. The list of hosts is started.
+	 * @param mapper  Mapper to write the hosts already read.
+	 * @param out     Output of the response.
+	 * @throws IOException if the output fails
+	 */
+	public HostsJsonWriter(ObjectMapper mapper, OutputStream out) throws IOException
+	{
+		this.generator = mapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+		/* The arrays and objects open are not closed on a failure */
+		this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+		this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		this.generator.writeStartArray();
+	}
+
+	/**
+	 * Write a host already read, as the response of a remote host.
+	 * @param host  Host with its log files.
+	 * @throws IOException if the output fails
+	 */
+	public void writeHost(Host host) throws IOException
+	{
+		generator.writeObject(host);
+		generator.flush();
+	}
+
+	/**
+	 * Start a host whose log files are written next.
+	 * @param host     Host ip.
+	 * @param code     Response code of the host.
+	 * @param message  Response message of the host.
+	 * @throws IOException if the output fails
+	 */
+	public void startHost(String host, int code, String message) throws IOException
+	{
+		generator.writeStartObject();
+		generator.writeStringField("host", host);
+		generator.writeNumberField("code", code);
+		generator.writeStringField("message", message);
+		generator.writeArrayFieldStart("logfiles");
+	}
+
+	/**
+	 * Write a log file while it is read.
+	 * @param details  Host, path and size of the file.
+	 * @param reading  Reading of the file.
+	 * @throws IOException if the file can not be read or the output fails
+	 */
+	public void writeFile(LogFile details, FileReading reading) throws IOException
+	{
+		generator.writeStartObject();
+		generator.writeStringField("host", details.getHost());
+		generator.writeStringField("path", details.getPath());
+		generator.writeNumberField("size", details.getSize());
+		generator.writeObjectFieldStart("fileBuffered");
+		generator.writeArrayFieldStart("lines");
+
+		LogFile logFile = reading.read(this::writeLine);
+
+		generator.writeEndArray();
+		generator.writeNumberField("lastPosRead", logFile.getFileBuffered().getLastPosRead());
+		generator.writeEndObject();
+		generator.writeEndObject();
+	}
+
+	/**
+	 * Write a log file not read, with its details only.
+	 * @param details  Host, path and size of the file.
+	 * @throws IOException if the output fails
+	 */
+	public void writeFileDetails(LogFile details) throws IOException
+	{
+		generator.writeObject(details);
+	}
+
+	/**
+	 * Write a log file that could not be read.
+	 * @throws IOException if the output fails
+	 */
+	public void writeNoFile() throws IOException
+	{
+		generator.writeNull();
+	}
+
+	/**
+	 * Finish the host started.
+	 * @throws IOException if the output fails
+	 */
+	public void endHost() throws IOException
+	{
+		generator.writeEndArray();
+		generator.writeEndObject();
+		generator.flush();
+	}
+
+	/**
+	 * Finish the list of hosts.
+	 * @throws IOException if the output fails
+	 */
+	public void finish() throws IOException
+	{
+		generator.writeEndArray();
+		generator.close();
+	}
+
+	/**
+	 * Write a line read, flushing the output every chunk of lines.
+	 * @param line  Line read.
+	 * @throws IOException if the output fails
+	 */
+	private void writeLine(String line) throws IOException
+	{
+		generator.writeString(line);
+		if (++pendingLines == FLUSH_LINES)
+		{
+			generator.flush();
+			pendingLines = 0;
+		}
+	}
+}
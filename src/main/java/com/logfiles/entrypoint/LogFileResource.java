@@ -6,9 +6,14 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
 
 import javax.validation.constraints.NotNull;
@@ -16,26 +21,34 @@ import javax.ws.rs.GET;
 import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
-import javax.ws.rs.ProcessingException;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.client.Client;
-import javax.ws.rs.client.Invocation;
-import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
 import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Optional;
 import com.logfiles.api.Host;
 import com.logfiles.api.LogFile;
-import com.logfiles.backend.FilterKeyword;
+import com.logfiles.backend.FileFollowers;
+import com.logfiles.backend.FilterRegex;
+import com.logfiles.backend.Follower;
+import com.logfiles.backend.KeywordsMatcher;
+import com.logfiles.backend.LineFilter;
+import com.logfiles.backend.LineMerger;
 import com.logfiles.backend.LogFileDirectory;
 import com.logfiles.backend.LogFileReader;
+import com.logfiles.backend.LogQuery;
+import com.logfiles.backend.MatchMode;
 import com.logfiles.backend.ReadOrder;
 
+import io.dropwizard.jackson.Jackson;
+
 /**
  * Class that is the entry point to handle REST-API request over
  * 1. http://[domain]/logfiles/api/v1/files/
@@ -46,25 +59,29 @@ import com.logfiles.backend.ReadOrder;
 @Path("logfiles/api/v1/files")
 @Produces(MediaType.APPLICATION_JSON)
 public class LogFileResource {
+	/* The resource is a singleton serving all the requests at the same time, then it keeps
+	 * only the configuration. The parameters of every request go on its own LogQuery */
 	/** Default log directory */	
-	private String   defaultDir;
-	/** File cursor position since the reading will start */
-	private Long     startPos;
-	/** Number of lines to be read */
-	private Integer  nLines;
-	/** Filter keyword to be apply over the lines selected */
-	private String   keyword;
-	/** File read on ascendant or descendant way */
-	private Integer  orderBy;
-	/** Hosts list separate by commas to be reached by a REST-API request
+	private final String defaultDir;
+	/** Default file cursor position since the reading will start */
+	private final long   defaultStartPos;
+	/** Default number of lines to be read */
+	private final int    defaultNLines;
+	/** Default file read on ascendant or descendant way */
+	private final int    defaultOrderBy;
+	/** Default hosts list separate by commas to be reached by a REST-API request
 	 *  to query a single file or all files in its local log directory */
-	private String   hosts;
+	private final String defaultHosts;
 	/** Controller reference to backend for a single file */
 	LogFileReader    logFileReader;
 	/** Controller reference to backend for a directory */
 	LogFileDirectory logFileDirectory;
-	/** Jersey client to makes REST-API requests */
-	Client           jerseyClient;
+	/** Followers of the files, one watcher per file shared by its followers */
+	FileFollowers    fileFollowers;
+	/** Requests to the other hosts, with their deadlines */
+	RemoteHosts      remoteHosts;
+	/** Mapper to write the responses of the remote hosts */
+	private final ObjectMapper mapper = Jackson.newObjectMapper();
 
 	/**
 	 * Constructor
@@ -81,14 +98,85 @@ public class LogFileResource {
 			               Integer nLines, 
 			               Integer orderBy,
 			               String hosts) {
-		this.jerseyClient = jerseyClient;
-		this.defaultDir = defaultDir;
-		this.startPos   = startPos;
-		this.nLines     = nLines;
-		this.orderBy    = orderBy;
-		this.hosts      = hosts;
-		this.logFileReader    = new LogFileReader();
-		this.logFileDirectory = new LogFileDirectory(logFileReader);
+		this(jerseyClient, new LogFileReader(), defaultDir, startPos, nLines, orderBy, hosts);
+	}
+
+	/**
+	 * Constructor
+	 * @param jerseyClient  Jersey client 
+	 * @param logFileReader Log file controller backend used to read the files
+	 * @param defaultDir    Default log directory
+	 * @param startPos      Files read from cursor position
+	 * @param nLines        Number of lines to be read
+	 * @param orderBy       File read on ascendant(0) or descendant way(1). Default descendant
+	 * @param hosts         Host list separated by commas to be query.
+	 */
+	public LogFileResource(Client jerseyClient,
+						   LogFileReader logFileReader,
+						   String defaultDir, 
+			               Long startPos,
+			               Integer nLines, 
+			               Integer orderBy,
+			               String hosts) {
+		this(jerseyClient, logFileReader, new FileFollowers(), defaultDir, startPos, nLines, orderBy, hosts);
+	}
+
+	/**
+	 * Constructor, the files of a directory are read on the common ForkJoinPool and the other
+	 * hosts without deadlines, as long as the timeouts of the client say
+	 * @param jerseyClient  Jersey client 
+	 * @param logFileReader Log file controller backend used to read the files
+	 * @param fileFollowers Followers of the files, for follow=true
+	 * @param defaultDir    Default log directory
+	 * @param startPos      Files read from cursor position
+	 * @param nLines        Number of lines to be read
+	 * @param orderBy       File read on ascendant(0) or descendant way(1). Default descendant
+	 * @param hosts         Host list separated by commas to be query.
+	 */
+	public LogFileResource(Client jerseyClient,
+						   LogFileReader logFileReader,
+						   FileFollowers fileFollowers,
+						   String defaultDir, 
+			               Long startPos,
+			               Integer nLines, 
+			               Integer orderBy,
+			               String hosts) {
+		this(logFileReader, new LogFileDirectory(logFileReader), fileFollowers,
+			 new RemoteHosts(jerseyClient, null, RemoteHosts.DEFAULT_HOST_TIMEOUT_MILLIS,
+					         RemoteHosts.DEFAULT_REQUEST_TIMEOUT_MILLIS),
+			 defaultDir, startPos, nLines, orderBy, hosts);
+	}
+
+	/**
+	 * Constructor
+	 * @param logFileReader    Log file controller backend used to read the files
+	 * @param logFileDirectory Log directory controller backend used to read the directories
+	 * @param fileFollowers    Followers of the files, for follow=true
+	 * @param remoteHosts      Requests to the other hosts
+	 * @param defaultDir       Default log directory
+	 * @param startPos         Files read from cursor position
+	 * @param nLines           Number of lines to be read
+	 * @param orderBy          File read on ascendant(0) or descendant way(1). Default descendant
+	 * @param hosts            Host list separated by commas to be query.
+	 */
+	public LogFileResource(LogFileReader logFileReader,
+						   LogFileDirectory logFileDirectory,
+						   FileFollowers fileFollowers,
+						   RemoteHosts remoteHosts,
+						   String defaultDir, 
+			               Long startPos,
+			               Integer nLines, 
+			               Integer orderBy,
+			               String hosts) {
+		this.defaultDir      = defaultDir;
+		this.defaultStartPos = startPos;
+		this.defaultNLines   = nLines;
+		this.defaultOrderBy  = orderBy;
+		this.defaultHosts    = hosts;
+		this.logFileReader    = logFileReader;
+		this.logFileDirectory = logFileDirectory;
+		this.fileFollowers    = fileFollowers;
+		this.remoteHosts      = remoteHosts;
 	}
 
 	/**
@@ -97,32 +185,66 @@ public class LogFileResource {
 	 * 1. Header host parameter to specify another host to be query.
 	 * 2. http://[domain]/logfiles/api/v1/files/
 	 * 3. http://[domain]/logfiles/api/v1/files[?n_lines={#lines}[{@literal &}keyword={keyword}[{@literal &}orderBy={0|1}]]]
+	 * 4. keyword can be repeated to filter with several keywords, match={any|all} and regex={regex} 
+	 *    can be added to any previous usage.
+	 * 5. since={time} and until={time} to read only the lines logged on that time range.
+	 * 6. merge=true to get the lines of all the hosts and files in a single list in time order,
+	 *    newest first with order_by=1. n_lines is then also the number of lines of the list.
+	 *    n_lines or limit is required.
+	 * 7. limit={#lines} to read at most that number of lines of all the files of a host: the files
+	 *    are read newest first (oldest first with order_by=0) and the rest are returned without lines.
+	 *    With merge=true it is the number of lines of the list.
+	 * @param merge     Merge the lines of all the hosts and files in time order.
+	 * @param limit     Number of lines of all the files of a host.
 	 * @param nLines    Number of lines to be read
-	 * @param keyword   keyword filter over the lines read.
+	 * @param keywords  keywords filter over the lines read.
+	 * @param match     Lines must contain any (default) or all the keywords.
+	 * @param regex     Regular expression filter over the lines read.
+	 * @param since     Time since the lines are read: ISO-8601 date-time or duration before now.
+	 * @param until     Time until the lines are read: ISO-8601 date-time or duration before now.
 	 * @param orderBy   Reading on ascendant (0) and descendant(1)
 	 * @param hosts     Host list separate by comma to be query by REST-API request
-	 * @return
+	 * @return list of hosts with their files, written while the files are read.
 	 */
 	@GET
 	@Timed
-	public List<Host> getAllLogFiles(@QueryParam("n_lines") Optional<Integer> nLines,
-										@QueryParam("keyword") Optional<String>  keyword,
+	public Response getAllLogFiles(@QueryParam("merge")   Optional<Boolean> merge,
+										@QueryParam("limit")   Optional<Integer> limit,
+										@QueryParam("n_lines") Optional<Integer> nLines,
+										@QueryParam("keyword") List<String>      keywords,
+										@QueryParam("match")   Optional<String>  match,
+										@QueryParam("regex")   Optional<String>  regex,
+										@QueryParam("since")   Optional<String>  since,
+										@QueryParam("until")   Optional<String>  until,
 										@QueryParam("order_by") Optional<Integer> orderBy,
 									    @HeaderParam("X-hosts") Optional<String> hosts) {
-		this.nLines = nLines.or(-1);   /* By default number of lines not specified */
-		this.keyword = keyword.or(""); /* By default no keyword specified */
-		this.orderBy = orderBy.or(1);  /* By default desc ordering */
-		this.startPos = -1L;
-		this.hosts   = hosts.or("localhost");   /* By default no hosts specified */
-		
-		validParameters();
+		final LogQuery query = newQuery(-1L,                      /* All the files from the start or the end */
+				                        -1L,
+				                        since.or(""),             /* By default no time range specified */
+				                        until.or(""),
+				                        nLines.or(defaultNLines), /* By default number of lines not specified */
+				                        orderBy.or(defaultOrderBy), /* By default desc ordering */
+				                        keywords,                 /* By default no keyword specified */
+				                        match.or("any"),          /* By default any keyword */
+				                        regex.or(""));            /* By default no regex specified */
+		/* By default without global limit */
+		final long maxLines = limit.or(-1);
+		if (maxLines <= 0 && maxLines != -1)
+		{
+			throw new WebApplicationException("limit must be as minimum 1", Status.BAD_REQUEST);
+		}
+		/* The merge keeps the lines of every file until they are merged, they must be bounded */
+		if (merge.or(false) && query.getNumLines() <= 0 && maxLines == -1)
+		{
+			throw new WebApplicationException("merge=true needs n_lines or limit", Status.BAD_REQUEST);
+		}
 		
-		String[]     hostsArr  = this.hosts.split(",");
+		String[]     hostsArr  = hosts.or(defaultHosts).split(",");
 		List<String> hostsList = Arrays.asList(hostsArr);
 		String       myIpAux;
 		final String myIp;
-		List<LogFile> myLocalFiles = null;
-		List<Host> logFilesAllServers = new LinkedList<>();
+		final boolean readLocalFiles;
+		CompletableFuture<List<Host>> logFilesAllServers = CompletableFuture.completedFuture(Collections.emptyList());
 		
 		/* Get current host ip */
 		try {
@@ -137,46 +259,58 @@ public class LogFileResource {
 		/* If current host is specified in host header param,
 		 * then look for all files in current machine
 		 */
-		if (hostsList.contains("localhost") || 
-			hostsList.contains("127.0.0.1") ||
-			hostsList.contains(myIp))
-		{
-			myLocalFiles = getAllFilesInDirectory(logFileDirectory, new File(defaultDir));
-		}
+		readLocalFiles = hostsList.contains("localhost") || 
+				         hostsList.contains("127.0.0.1") ||
+				         hostsList.contains(myIp);
 		
 		/* Execute in parallel way a filter to remove current host from host list */
-		hostsList = hostsList.parallelStream().filter(str -> {return !str.equals("localhost") &&
-                                                             !str.equals("127.0.0.1") &&
+		hostsList = hostsList.stream().filter(str -> {return !str.equals("localhost") &&
+                                                     !str.equals("127.0.0.1") &&
                                                              !str.equals(myIp);})
 				                      .collect(Collectors.toList());
 		
 		/* If after remove current host, there are more host to query */
 		if (hostsList.size() > 0)
 		{
-     		/* Execute on a parallel way a REST-API call for each host specified in hosts header param.
-     		 * The function requestFileToOtherServers handle and parse the response and create a representation for 
-     		 * each host with the files queried in case of status code 200.
+     		/* Execute at the same time a REST-API call for each host specified in hosts header param.
+     		 * RemoteHosts handle and parse the responses and create a representation for 
+     		 * each host with the files queried in case of status code 200, or the error.
      		 * 
      		 * NOTE: For remote request only params: n_lines, order_by and keyword are enable, 
      		 * start_pos is unable */
-			logFilesAllServers = hostsList.parallelStream().map(host -> requestFileToOtherServers(host, ""))
-	                                                	   .collect(Collectors.toList()); 
+			logFilesAllServers = remoteHosts.request(hostsList, "", query, maxLines);
 		}
 		
-		/* If local files were queried */
-		if(myLocalFiles != null)
+		final CompletableFuture<List<Host>> remoteResponses = logFilesAllServers;
+		if (merge.or(false))
 		{
-			/* Set a representation for current host */
-			Host host = new Host();			
-			host.setHost(myIp);
-			host.setCode(Status.OK.getStatusCode());
-			host.setMessage(Status.OK.getReasonPhrase());			
-			host.setLogfiles(myLocalFiles);
-			/* Add host to the response */
-			logFilesAllServers.add(host);
+			return Response.ok(mergeAllFiles(remoteResponses, readLocalFiles, myIp, query, maxLines)).build();
 		}
+		/* The local files are read while the response is written, one by one, after the
+		 * other hosts answered or their deadlines passed */
+		StreamingOutput output = out -> {
+			HostsJsonWriter writer = new HostsJsonWriter(mapper, out);
+			for (Host host : remoteResponses.join())
+			{
+				writer.writeHost(host);
+			}
+			if (readLocalFiles)
+			{
+				writer.startHost(myIp, Status.OK.getStatusCode(), Status.OK.getReasonPhrase());
+				if (maxLines > 0)
+				{
+					writeRankedFilesInDirectory(writer, new File(defaultDir), query, maxLines);
+				}
+				else
+				{
+					writeAllFilesInDirectory(writer, new File(defaultDir), query);
+				}
+				writer.endHost();
+			}
+			writer.finish();
+		};
 		
-		return logFilesAllServers;
+		return Response.ok(output).build();
 	}
 
 	/**
@@ -185,40 +319,61 @@ public class LogFileResource {
 	 * 1. Header host parameter to specify another host to be query.
 	 * 2. http://[domain]/logfiles/api/v1/files/{filename}
 	 * 3. http://[domain]/logfiles/api/v1/files[?n_lines={#lines}[{@literal &}keyword={keyword}[{@literal &}orderBy={0|1}[{@literal &}start_pos={long_number}]]]]
+	 * 4. keyword can be repeated to filter with several keywords, match={any|all} and regex={regex} 
+	 *    can be added to any previous usage.
+	 * 5. from_line={line_number} instead of start_pos to start reading on a line number.
+	 * 6. since={time} and until={time} instead of start_pos to read only the lines logged on
+	 *    that time range.
+	 * 7. follow=true is served only as text/event-stream.
 	 * @param fileName   Filename looked
+	 * @param follow     Follow the file, not allowed on this response.
 	 * @param startPos   File cursor reference since the reading will start
+	 * @param fromLine   Line number since the reading will start, starting at 1
+	 * @param since      Time since the lines are read: ISO-8601 date-time or duration before now.
+	 * @param until      Time until the lines are read: ISO-8601 date-time or duration before now.
 	 * @param nLines     Number of lines to be read
-	 * @param keyword    Keyword filter to filter lines read.
+	 * @param keywords   Keywords filter to filter lines read.
+	 * @param match      Lines must contain any (default) or all the keywords.
+	 * @param regex      Regular expression filter to filter lines read.
 	 * @param orderBy    Reading on ascendant(0) or descendant(1)
 	 * @param hosts      Hosts list header parameter separated by comma to look the file through a REST-API request
-	 * @return
+	 * @return list of hosts with the file, written while the file is read.
 	 */
 	@GET	
 	@Path("/{fileName}")
 	@Timed
-	public List<Host> getLogFile(@NotNull @PathParam("fileName") String      fileName,
+	public Response getLogFile(@NotNull @PathParam("fileName") String      fileName,
+							   @QueryParam("follow")    Optional<Boolean> follow,
 							   @QueryParam("start_pos") Optional<Long>    startPos,
+							   @QueryParam("from_line") Optional<Long>    fromLine,
+							   @QueryParam("since")     Optional<String>  since,
+							   @QueryParam("until")     Optional<String>  until,
 			                   @QueryParam("n_lines") Optional<Integer>   nLines,
-			                   @QueryParam("keyword")  Optional<String>   keyword,
+			                   @QueryParam("keyword")  List<String>       keywords,
+			                   @QueryParam("match")    Optional<String>   match,
+			                   @QueryParam("regex")    Optional<String>   regex,
 			                   @QueryParam("order_by") Optional<Integer>  orderBy,
 			                   @HeaderParam("X-hosts")   Optional<String> hosts)
 	{
-		this.nLines   = nLines.or(-1);  /* By default number of lines not specified */
-		this.keyword  = keyword.or(""); /* By default no keyword specified */
-		this.orderBy  = orderBy.or(1);  /* By default desc ordering */
-		this.startPos = startPos.or(-1L); /* By default no startPos specified */
-		this.hosts    = hosts.or("localhost");   /* By default no hosts specified */
-		
-		validParameters();
+		final LogQuery query = newQuery(startPos.or(defaultStartPos), /* By default no startPos specified */
+				                        fromLine.or(-1L),         /* By default no fromLine specified */
+				                        since.or(""),             /* By default no time range specified */
+				                        until.or(""),
+				                        nLines.or(defaultNLines), /* By default number of lines not specified */
+				                        orderBy.or(defaultOrderBy), /* By default desc ordering */
+				                        keywords,                 /* By default no keyword specified */
+				                        match.or("any"),          /* By default any keyword */
+				                        regex.or(""));            /* By default no regex specified */
+		checkNotFollowing(follow.or(false));
 						
-		String[]     hostsArr  = this.hosts.split(",");
+		String[]     hostsArr  = hosts.or(defaultHosts).split(",");
 		List<String> hostsList = Arrays.asList(hostsArr);
 		File         file      = new File(defaultDir + fileName);
-		LogFile      myLogFile = null;
+		boolean      readLocalFile = false;
 		String       myIpAux;
 		final String myIp;
-		List<Host> logFilesAllServers = new LinkedList<>();
-				
+		CompletableFuture<List<Host>> logFilesAllServers = CompletableFuture.completedFuture(Collections.emptyList());
+		
 		/* Get current host ip */
 		try {
 			InetAddress ip = InetAddress.getLocalHost();
@@ -236,11 +391,13 @@ public class LogFileResource {
 			hostsList.contains("127.0.0.1") ||
 			hostsList.contains(myIp))
 		{
-			myLogFile = getFile(logFileReader, file);
+			/* The status is sent before the file is read */
+			checkFile(file);
+			readLocalFile = true;
 		}
 		
 		/* Execute in parallel way a filter to remove current host from host list */
-		hostsList = hostsList.parallelStream().filter(str -> {return !str.equals("localhost") &&
+		hostsList = hostsList.stream().filter(str -> {return !str.equals("localhost") &&
 				                                !str.equals("127.0.0.1")  &&
 				                                !str.equals(myIp);})
 		                              .collect(Collectors.toList());
@@ -248,173 +405,387 @@ public class LogFileResource {
 		/* If after remove current host, there are more host to query */
 		if (hostsList.size() > 0)
 		{
-     		/* Execute on a parallel way a REST-API call for each host specified in hosts header param.
-     		 * The function requestFileToOtherServers handle and parse the response and create a representation for 
-     		 * each host with the files queried in case of status code 200.
+     		/* Execute at the same time a REST-API call for each host specified in hosts header param.
+     		 * RemoteHosts handle and parse the responses and create a representation for 
+     		 * each host with the file queried in case of status code 200, or the error.
      		 * 
-     		 * NOTE: For remote request only params: n_lines, order_by and keyword are enable, 
+     		 * NOTE: For remote request only params: n_lines, order_by, keyword, from_line, since and until are enable, 
      		 * start_pos is unable */
-			logFilesAllServers = hostsList.parallelStream().map(host -> requestFileToOtherServers(host, fileName))
-			.collect(Collectors.toList()); 
+			logFilesAllServers = remoteHosts.request(hostsList, fileName, query);
 		}
 		
-		/* If local file were queried */
-		if(myLogFile != null)
-		{
-			/* Set a representation for current host */
-			Host host = new Host();
-			List<LogFile> logFileList = new LinkedList<>();
-			host.setHost(myIp);
-			host.setCode(Status.OK.getStatusCode());
-			host.setMessage(Status.OK.getReasonPhrase());
-			logFileList.add(myLogFile);
-			host.setLogfiles(logFileList);
-			/* Add host to the response */
-			logFilesAllServers.add(host);
-		}
+		final CompletableFuture<List<Host>> remoteResponses = logFilesAllServers;
+		final boolean                       readLocal       = readLocalFile;
+		/* The local file is read while the response is written, after the other hosts
+		 * answered or their deadlines passed */
+		StreamingOutput output = out -> {
+			HostsJsonWriter writer = new HostsJsonWriter(mapper, out);
+			for (Host host : remoteResponses.join())
+			{
+				writer.writeHost(host);
+			}
+			if (readLocal)
+			{
+				writer.startHost(myIp, Status.OK.getStatusCode(), Status.OK.getReasonPhrase());
+				writer.writeFile(logFileReader.getFileDetails(file), sink -> logFileReader.read(file, query, sink));
+				writer.endHost();
+			}
+			writer.finish();
+		};
 		
-		return logFilesAllServers;		
+		return Response.ok(output).build();
 	}
 	
 	/**
-	 * Look for all the files in log directory for current host.
-	 * @param logFileDir   Log file directory controller backend reference
-	 * @param path         Log file directory
-	 * @return
+	 * Entry point for http://[domain]/logfiles/api/v1/files/{filename} with the header
+	 * Accept: application/x-ndjson. Same query params than the JSON response, but the lines
+	 * of the local file are written as newline delimited JSON, one record per line as soon as
+	 * it is read, and a trailer record with lastPosRead at the end. The clients can process
+	 * the lines while they arrive, and a slow client slows down the reading through TCP.
+	 * Only the local host is read, X-hosts with other hosts is not allowed.
+	 * follow=true is served only as text/event-stream.
+	 * @param fileName   Filename looked
+	 * @param follow     Follow the file, not allowed on this response.
+	 * @param startPos   File cursor reference since the reading will start
+	 * @param fromLine   Line number since the reading will start, starting at 1
+	 * @param since      Time since the lines are read: ISO-8601 date-time or duration before now.
+	 * @param until      Time until the lines are read: ISO-8601 date-time or duration before now.
+	 * @param nLines     Number of lines to be read
+	 * @param keywords   Keywords filter to filter lines read.
+	 * @param match      Lines must contain any (default) or all the keywords.
+	 * @param regex      Regular expression filter to filter lines read.
+	 * @param orderBy    Reading on ascendant(0) or descendant(1)
+	 * @param hosts      Hosts list header parameter, only the local host
+	 * @return lines of the file and trailer, written while the file is read.
 	 */
-	private List<LogFile> getAllFilesInDirectory(LogFileDirectory logFileDir, File path)
+	@GET	
+	@Path("/{fileName}")
+	@Produces(NdjsonLinesWriter.APPLICATION_NDJSON + "; qs=0.5")
+	@Timed
+	public Response getLogFileLines(@NotNull @PathParam("fileName") String      fileName,
+							   @QueryParam("follow")    Optional<Boolean> follow,
+							   @QueryParam("start_pos") Optional<Long>    startPos,
+							   @QueryParam("from_line") Optional<Long>    fromLine,
+							   @QueryParam("since")     Optional<String>  since,
+							   @QueryParam("until")     Optional<String>  until,
+			                   @QueryParam("n_lines") Optional<Integer>   nLines,
+			                   @QueryParam("keyword")  List<String>       keywords,
+			                   @QueryParam("match")    Optional<String>   match,
+			                   @QueryParam("regex")    Optional<String>   regex,
+			                   @QueryParam("order_by") Optional<Integer>  orderBy,
+			                   @HeaderParam("X-hosts")   Optional<String> hosts)
 	{
-		ReadOrder order = ReadOrder.DESC;
-		FilterKeyword filterKeyword = new FilterKeyword(keyword);
-		List<LogFile> logFileList;
+		final LogQuery query = newQuery(startPos.or(defaultStartPos), /* By default no startPos specified */
+				                        fromLine.or(-1L),         /* By default no fromLine specified */
+				                        since.or(""),             /* By default no time range specified */
+				                        until.or(""),
+				                        nLines.or(defaultNLines), /* By default number of lines not specified */
+				                        orderBy.or(defaultOrderBy), /* By default desc ordering */
+				                        keywords,                 /* By default no keyword specified */
+				                        match.or("any"),          /* By default any keyword */
+				                        regex.or(""));            /* By default no regex specified */
+		checkNotFollowing(follow.or(false));
+		checkOnlyLocalHost(hosts.or(defaultHosts), NdjsonLinesWriter.APPLICATION_NDJSON);
 		
-		if (orderBy == 0)
-		{
-			order = ReadOrder.ASC;
-		}
+		File file = new File(defaultDir + fileName);
 		
-		/* If number of lines specified */
-		if (nLines > 0)
+		/* The status is sent before the file is read */
+		checkFile(file);
+		StreamingOutput output = out -> new NdjsonLinesWriter(mapper, out).writeFile(sink -> logFileReader.read(file, query, sink));
+		
+		return Response.ok(output, NdjsonLinesWriter.APPLICATION_NDJSON).build();
+	}
+	
+	/**
+	 * Entry point for http://[domain]/logfiles/api/v1/files/{filename}?follow=true with the
+	 * header Accept: text/event-stream. The lines appended to the local file are sent as
+	 * Server-Sent Events while the connection is open, instead of polling the file with
+	 * start_pos. All the followers of a file share a single watcher that keeps it open.
+	 * Allows the following usage:
+	 * 1. http://[domain]/logfiles/api/v1/files/{filename}?follow=true, the lines appended
+	 *    after the request.
+	 * 2. start_pos={long_number}, usually lastPosRead of a previous request, to read first
+	 *    the lines since that position. The header Last-Event-ID of a client reconnecting
+	 *    takes its place.
+	 * 3. keyword can be repeated to filter with several keywords, match={any|all} and 
+	 *    regex={regex} can be added to any previous usage.
+	 * Only the local host is followed, X-hosts with other hosts is not allowed.
+	 * @param fileName     Filename looked
+	 * @param follow       Follow the file, it must be true.
+	 * @param startPos     File cursor reference since the lines are sent
+	 * @param lastEventId  Id of the last event received by a client reconnecting, the
+	 *                     position after the last line received.
+	 * @param keywords     Keywords filter to filter lines appended.
+	 * @param match        Lines must contain any (default) or all the keywords.
+	 * @param regex        Regular expression filter to filter lines appended.
+	 * @param hosts        Hosts list header parameter, only the local host
+	 * @return events of the lines appended, written while the connection is open.
+	 */
+	@GET	
+	@Path("/{fileName}")
+	@Produces(MediaType.SERVER_SENT_EVENTS + "; qs=0.4")
+	@Timed
+	public Response followLogFile(@NotNull @PathParam("fileName") String        fileName,
+								  @QueryParam("follow")        Optional<Boolean> follow,
+								  @QueryParam("start_pos")     Optional<Long>    startPos,
+								  @HeaderParam("Last-Event-ID") Optional<Long>   lastEventId,
+								  @QueryParam("keyword")       List<String>      keywords,
+								  @QueryParam("match")         Optional<String>  match,
+								  @QueryParam("regex")         Optional<String>  regex,
+								  @HeaderParam("X-hosts")      Optional<String>  hosts)
+	{
+		final LogQuery query = newQuery(lastEventId.or(startPos.or(-1L)), /* By default from the end */
+				                        -1L,
+				                        "",
+				                        "",
+				                        -1,               /* The lines appended while the connection is open */
+				                        0,                /* The lines are sent in ascendant order */
+				                        keywords,         /* By default no keyword specified */
+				                        match.or("any"),  /* By default any keyword */
+				                        regex.or(""));    /* By default no regex specified */
+		if (!follow.or(false))
 		{
-			/* Filter all files by number of lines, ordering and keyword if were specified */
-			logFileList = logFileDir.getAllFiles(path, nLines, order, filterKeyword);
+			throw new WebApplicationException(MediaType.SERVER_SENT_EVENTS + " is only served with follow=true",
+					                          Status.BAD_REQUEST);
 		}
-		else
+		checkOnlyLocalHost(hosts.or(defaultHosts), MediaType.SERVER_SENT_EVENTS);
+		
+		final File       file   = new File(defaultDir + fileName);
+		final LineFilter filter = query.getFilter();
+		final long       from   = query.getStartPos();
+		
+		/* The status is sent before the file is followed */
+		checkFile(file);
+		StreamingOutput output = out -> {
+			ServerSentEventsWriter writer = new ServerSentEventsWriter(out);
+			try (Follower follower = fileFollowers.follow(file, filter, from))
+			{
+				/* The lines before the follower started, not kept on the ring of recent lines,
+				 * are read from the file */
+				if (from >= 0 && from < follower.getStartPos())
+				{
+					logFileReader.readLines(file, from, follower.getStartPos(), file.length(),
+							                ReadOrder.ASC, filter, writer::writeLine);
+					writer.writeId(follower.getStartPos());
+				}
+				writer.writeEvents(follower);
+			}
+		};
+		
+		return Response.ok(output, MediaType.SERVER_SENT_EVENTS)
+				       .header("Cache-Control", "no-cache")
+				       .build();
+	}
+	
+	/**
+	 * Write all the files in log directory for current host, one by one while they are read.
+	 * The files that can not be read are written as null.
+	 * @param writer  Writer of the response.
+	 * @param path    Log file directory
+	 * @param query   Query of the request
+	 * @throws IOException if the response can not be written
+	 */
+	private void writeAllFilesInDirectory(HostsJsonWriter writer, File path, LogQuery query) throws IOException
+	{
+		for (File file : logFileDirectory.listFiles(path))
 		{
-			/* Filter all files by order (default descendant) and keyword if were specified */
-			logFileList = logFileDir.getAllFiles(path, order, filterKeyword);
+			if (!file.isFile() || !file.canRead())
+			{
+				writer.writeNoFile();
+				continue;
+			}
+			writer.writeFile(logFileReader.getFileDetails(file), sink -> logFileReader.read(file, query, sink));
 		}
-		
-		return logFileList;
 	}
 	
 	/**
-	 * Look for a specific file in current host.
-	 * @param logFileReader   Log file controller backend reference
-	 * @param file            File looked in log directory
-	 * @return
+	 * Merge the lines of the other hosts and the local files in time order, written while
+	 * they are merged. Every file gives at most the lines of the query, already in its order,
+	 * and the merge stops when the number of lines of the query is written.
+	 * @param remoteResponses  Responses of the other hosts.
+	 * @param readLocalFiles   The local files are read too.
+	 * @param myIp             Current host ip.
+	 * @param query            Query of the request.
+	 * @param limit            Number of lines of the list, instead of the number of lines of the
+	 *                         query, and of all the local files; -1 without limit.
+	 * @return response output.
 	 */
-	private LogFile getFile(LogFileReader logFileReader, File file) {
-		LogFile logFile = null;
-		ReadOrder order = ReadOrder.DESC;
-		String msg = "";
-		FilterKeyword filterKeyword = new FilterKeyword(keyword);
-		
-		/* Processing query params and header params */
-		if (orderBy == 0) {
-			order = ReadOrder.ASC;
-		} 
+	private StreamingOutput mergeAllFiles(CompletableFuture<List<Host>> remoteResponses,
+			                              boolean                       readLocalFiles,
+			                              String                        myIp,
+			                              LogQuery                      query,
+			                              long                          limit)
+	{
+		return out -> {
+			List<Host>    hosts = new ArrayList<>(remoteResponses.join());
+			List<LogFile> files = new ArrayList<>();
 
-		try {
-			if (startPos >= 0) {
-				logFile = logFileReader.readLines(file, startPos, nLines, order, filterKeyword);
+			for (Host host : hosts)
+			{
+				if (host.getLogfiles() != null)
+				{
+					files.addAll(host.getLogfiles());
+				}
 			}
-			else if (nLines > 0) {
-				logFile = logFileReader.readLines(file, nLines, order, filterKeyword);
-			} else {
-				logFile = logFileReader.readLines(file, order, filterKeyword);
+			if (readLocalFiles)
+			{
+				Host localHost = new Host();
+				localHost.setHost(myIp);
+				localHost.setCode(Status.OK.getStatusCode());
+				localHost.setMessage(Status.OK.getReasonPhrase());
+				files.addAll(limit > 0 ? logFileDirectory.getAllFiles(new File(defaultDir), query, limit) :
+					                     logFileDirectory.getAllFiles(new File(defaultDir), query));
+				hosts.add(localHost);
 			}
-		} catch (IOException ioe) {
-			ioe.printStackTrace();
-			if (!Files.isReadable((Paths.get(defaultDir))))
+
+			MergedLinesWriter writer = new MergedLinesWriter(mapper, out);
+			new LineMerger(logFileReader.getTimestampSearch(), query.getOrder())
+					.merge(files, limit > 0 ? limit : query.getNumLines(), writer::writeLine);
+			writer.finish(hosts);
+		};
+	}
+	
+	/**
+	 * Write the files of a directory with a global limit of lines, while they are read one by one
+	 * ranked by modification time. Once the limit is met the rest of the files are written with
+	 * their details only, without being opened.
+	 * The files that can not be read are written as null.
+	 * @param writer  Writer of the response.
+	 * @param path    Log file directory
+	 * @param query   Query of the request
+	 * @param limit   Maximum number of lines of all the files.
+	 * @throws IOException if the response can not be written
+	 */
+	private void writeRankedFilesInDirectory(HostsJsonWriter writer, File path, LogQuery query, long limit)
+			throws IOException
+	{
+		long linesLeft = limit;
+
+		for (File file : logFileDirectory.rankFiles(path, query.getOrder()))
+		{
+			if (!file.isFile() || !file.canRead())
 			{
-				msg = "Path " + defaultDir + " permission denied";
-				throw new WebApplicationException(msg, Status.FORBIDDEN);
+				writer.writeNoFile();
+				continue;
 			}
-			else
+			if (linesLeft <= 0)
 			{
-				msg = "File " + defaultDir + file.getName() + " not found";
-				throw new WebApplicationException(msg, Status.NOT_FOUND);
+				writer.writeFileDetails(logFileReader.getFileDetails(file));
+				continue;
 			}
-		} catch (Exception e)
+
+			/* The reading stops once the lines left pass the filter */
+			final LogQuery fileQuery = query.limitTo(linesLeft);
+			final long[]   written   = {0};
+			writer.writeFile(logFileReader.getFileDetails(file), sink -> logFileReader.read(file, fileQuery, line -> {
+				sink.write(line);
+				written[0]++;
+			}));
+			linesLeft -= written[0];
+		}
+	}
+	
+	/**
+	 * Check that follow=true is not requested on a response that can not follow the file.
+	 * @param follow  Follow the file.
+	 */
+	private void checkNotFollowing(boolean follow) {
+		if (follow)
 		{
-			e.printStackTrace();
-			throw new WebApplicationException(Status.INTERNAL_SERVER_ERROR);
+			throw new WebApplicationException("follow=true is only served as " + MediaType.SERVER_SENT_EVENTS,
+					                          Status.BAD_REQUEST);
 		}
-
-		return logFile;
 	}
 	
 	/**
-	 * Handles REST-API request for every host name
-	 * @param hostName   host name 
-	 * @param fileName   file looked if apply
-	 * @return
+	 * Check that X-hosts has only the current host, on the responses that can not merge
+	 * the responses of other hosts.
+	 * @param hosts      Hosts list separated by commas.
+	 * @param mediaType  Media type of the response.
 	 */
-	private Host requestFileToOtherServers(String  hostName, 
-			                               String  fileName)
-	{
-		String  url  = "http://" + hostName + "/";					
-		Host    host = new Host();
+	private void checkOnlyLocalHost(String hosts, String mediaType) {
+		String myIp;
 		
-		try
+		/* Get current host ip */
+		try {
+			myIp = InetAddress.getLocalHost().getHostAddress();
+		} catch (UnknownHostException ue) {
+			myIp = "localhost";
+		}
+		for (String host : hosts.split(","))
 		{
-			/* Target http server and set query params */
-			WebTarget target = jerseyClient.target(url).path("logfiles/api/v1/files")
-                                         			   .queryParam("n_lines", this.nLines)
-                                                       .queryParam("keyword", this.keyword)
-                                                       .queryParam("order_by", this.orderBy);
-			
-			/* If an specific file were specified */
-			if (!fileName.equals(""))
+			if (!host.equals("localhost") && !host.equals("127.0.0.1") && !host.equals(myIp))
 			{
-				target.path("/"+fileName);
+				throw new WebApplicationException("X-hosts with other hosts is not allowed on " + mediaType,
+						                          Status.BAD_REQUEST);
 			}
-			
-			/* Execute REST-API request for host */		
-			Invocation.Builder invBuilder = target.request(MediaType.APPLICATION_JSON);
-			Response response = invBuilder.get(Response.class);
-			
-			/* Handle and manage REST-API response */
-			List<Host> hostsWithLogFile = response.readEntity(List.class);
-			
-			/* We are expecting a single response with the file or error reporting */
-			host = hostsWithLogFile.get(0);			
-		} catch(ProcessingException e)
-		{
-			/* In case the host can not be reachable */
-			host.setHost(hostName);
-			host.setCode(Status.GATEWAY_TIMEOUT.getStatusCode());
-			host.setMessage(Status.GATEWAY_TIMEOUT.getReasonPhrase());
-			host.setLogfiles(new LinkedList<>());
-			System.out.print(e.getMessage());
 		}
+	}
+	
+	/**
+	 * Check that a specific file in current host can be read, before the response starts.
+	 * @param file  File looked in log directory
+	 */
+	private void checkFile(File file) {
+		String msg = "";
 		
-		return host;
+		if (!file.isFile() || !Files.isReadable(file.toPath()))
+		{
+			if (!Files.isReadable((Paths.get(defaultDir))))
+			{
+				msg = "Path " + defaultDir + " permission denied";
+				throw new WebApplicationException(msg, Status.FORBIDDEN);
+			}
+			else
+			{
+				msg = "File " + defaultDir + file.getName() + " not found";
+				throw new WebApplicationException(msg, Status.NOT_FOUND);
+			}
+		}
 	}
-
+	
 	/** 
-	 * Validate REST-API parameters 
+	 * Validate REST-API parameters and build the query of the request
+	 * @param startPos  File cursor reference since the reading will start, -1 if not specified
+	 * @param fromLine  Line number since the reading will start, -1 if not specified
+	 * @param since     Time since the lines are read, empty if not specified
+	 * @param until     Time until the lines are read, empty if not specified
+	 * @param nLines    Number of lines to be read, -1 if not specified
+	 * @param orderBy   Reading on ascendant(0) or descendant(1)
+	 * @param keywords  Keywords filter
+	 * @param match     Lines must contain any or all the keywords
+	 * @param regex     Regular expression filter, empty if not specified
+	 * @return query of the request
 	 */
-	private void validParameters() {
+	private LogQuery newQuery(long         startPos,
+			                  long         fromLine,
+			                  String       since,
+			                  String       until,
+			                  int          nLines,
+			                  int          orderBy,
+			                  List<String> keywords,
+			                  String       match,
+			                  String       regex) {
 		boolean valid = true;
 		String msg = "";
+		Instant sinceTime = null;
+		Instant untilTime = null;
 
 		if (startPos < 0 && startPos != -1)
 		{
 			msg   = "start_pos must be as minimum 0";
 			valid = false;
 		}
+		if (fromLine <= 0 && fromLine != -1)
+		{
+			msg   = "from_line must be as minimum 1";
+			valid = false;
+		}
+		if (startPos >= 0 && fromLine > 0)
+		{
+			msg   = "start_pos and from_line can not be used together";
+			valid = false;
+		}
 		if (nLines <= 0 && nLines != -1) {
 			msg   = "n_lines must be as minimum 1";
 			valid = false;
@@ -423,9 +794,52 @@ public class LogFileResource {
 			msg   = "order_by allowed values are 0 to ASC and 1 to DESC";
 			valid = false;
 		}
+		if (keywords.size() > KeywordsMatcher.MAX_KEYWORDS) {
+			msg   = "keyword allowed at most " + KeywordsMatcher.MAX_KEYWORDS + " times";
+			valid = false;
+		}
+		if (KeywordsMatcher.getKeywordBytes(keywords) > KeywordsMatcher.MAX_KEYWORD_BYTES) {
+			msg   = "keyword allowed at most " + KeywordsMatcher.MAX_KEYWORD_BYTES + " bytes together";
+			valid = false;
+		}
+		if (!match.equals("any") && !match.equals("all")) {
+			msg   = "match allowed values are any and all";
+			valid = false;
+		}
+		if (!regex.isEmpty()) {
+			try {
+				/* Compiled on the cache of the filter, not compiled again by the query */
+				FilterRegex.compile(regex);
+			} catch (PatternSyntaxException pse) {
+				msg   = "regex is not valid: " + pse.getDescription();
+				valid = false;
+			}
+		}
+		try {
+			if (!since.isEmpty()) {
+				sinceTime = logFileReader.getTimestampSearch().parseTime(since);
+			}
+			if (!until.isEmpty()) {
+				untilTime = logFileReader.getTimestampSearch().parseTime(until);
+			}
+		} catch (DateTimeException dte) {
+			msg   = "since and until must be ISO-8601 date-times or durations: " + dte.getMessage();
+			valid = false;
+		}
+		if (sinceTime != null && untilTime != null && sinceTime.isAfter(untilTime)) {
+			msg   = "since must be before until";
+			valid = false;
+		}
+		if ((sinceTime != null || untilTime != null) && (startPos >= 0 || fromLine > 0)) {
+			msg   = "since and until can not be used with start_pos or from_line";
+			valid = false;
+		}
 
 		if (!valid) {
 			throw new WebApplicationException(msg, Status.BAD_REQUEST);
 		}
+		return new LogQuery(startPos, fromLine, sinceTime, untilTime, nLines,
+				            orderBy == 0 ? ReadOrder.ASC : ReadOrder.DESC, keywords,
+				            match.equals("all") ? MatchMode.ALL : MatchMode.ANY, regex);
 	}
 }
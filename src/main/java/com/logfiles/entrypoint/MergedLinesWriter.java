@@ -0,0 +1,93 @@
+package com.logfiles.entrypoint;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logfiles.api.Host;
+import com.logfiles.api.LogFile;
+
+/**
+ * Writer of the REST-API response with the lines of all the hosts and files merged in time
+ * order (merge=true). Every line is written with its host and file as soon as it is merged,
+ * and the hosts queried are written at the end with their response code, then the hosts
+ * that failed are still known:
+ * {"lines":[{"host":"...","path":"...","line":"..."},...],
+ *  "hosts":[{"host":"...","code":n,"message":"..."},...]}
+ * If the merge fails the JSON is left unfinished, as on {@link HostsJsonWriter}.
+ * @author alexdel
+ */
+public class MergedLinesWriter {
+	/**
+	 * Generator of the JSON over the response output.
+	 */
+	private final JsonGenerator generator;
+	/**
+	 * Lines written since the last flush.
+	 */
+	private int pendingLines;
+
+	/**
+	 * Constructor. The list of lines is started.
+	 * @param mapper  Mapper whose factory creates the generator.
+	 * @param out     Output of the response.
+	 * @throws IOException if the output fails
+	 */
+	public MergedLinesWriter(ObjectMapper mapper, OutputStream out) throws IOException
+	{
+		this.generator = mapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+		/* The arrays and objects open are not closed on a failure */
+		this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+		this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		this.generator.writeStartObject();
+		this.generator.writeArrayFieldStart("lines");
+	}
+
+	/**
+	 * Write a line merged, flushing the output every chunk of lines.
+	 * @param file  File of the line.
+	 * @param line  Line.
+	 * @throws IOException if the output fails
+	 */
+	public void writeLine(LogFile file, String line) throws IOException
+	{
+		generator.writeStartObject();
+		generator.writeStringField("host", file.getHost());
+		generator.writeStringField("path", file.getPath());
+		generator.writeStringField("line", line);
+		generator.writeEndObject();
+		if (++pendingLines == HostsJsonWriter.FLUSH_LINES)
+		{
+			generator.flush();
+			pendingLines = 0;
+		}
+	}
+
+	/**
+	 * Finish the lines and write the hosts queried, without their files.
+	 * @param hosts  Hosts queried.
+	 * @throws IOException if the output fails
+	 */
+	public void finish(List<Host> hosts) throws IOException
+	{
+		generator.writeEndArray();
+		generator.writeArrayFieldStart("hosts");
+		for (Host host : hosts)
+		{
+			generator.writeStartObject();
+			generator.writeStringField("host", host.getHost());
+			if (host.getCode() != null)
+			{
+				generator.writeNumberField("code", host.getCode());
+			}
+			generator.writeStringField("message", host.getMessage());
+			generator.writeEndObject();
+		}
+		generator.writeEndArray();
+		generator.writeEndObject();
+		generator.close();
+	}
+}
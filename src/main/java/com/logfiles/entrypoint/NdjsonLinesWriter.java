@@ -0,0 +1,76 @@
+package com.logfiles.entrypoint;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logfiles.api.LogFile;
+
+/**
+ * Writer of the lines of a file as newline delimited JSON (application/x-ndjson), one
+ * record per line as soon as it is read: {"line":"..."}. The last record is a trailer with
+ * the file read and the position after the reading:
+ * {"host":"...","path":"...","size":n,"lastPosRead":n}. A response without trailer was
+ * broken before the reading finished.
+ * @author alexdel
+ */
+public class NdjsonLinesWriter {
+	/**
+	 * Media type of the newline delimited JSON.
+	 */
+	public static final String APPLICATION_NDJSON = "application/x-ndjson";
+	/**
+	 * Generator of the records over the response output.
+	 */
+	private final JsonGenerator generator;
+
+	/**
+	 * Constructor
+	 * @param mapper  Mapper whose factory creates the generator.
+	 * @param out     Output of the response.
+	 * @throws IOException if the output fails
+	 */
+	public NdjsonLinesWriter(ObjectMapper mapper, OutputStream out) throws IOException
+	{
+		this.generator = mapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+		this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		/* Every record finishes on its own newline, nothing between them */
+		this.generator.setRootValueSeparator(null);
+	}
+
+	/**
+	 * Write a file while it is read, and its trailer at the end.
+	 * @param reading  Reading of the file.
+	 * @throws IOException if the file can not be read or the output fails
+	 */
+	public void writeFile(HostsJsonWriter.FileReading reading) throws IOException
+	{
+		LogFile logFile = reading.read(this::writeLine);
+
+		generator.writeStartObject();
+		generator.writeStringField("host", logFile.getHost());
+		generator.writeStringField("path", logFile.getPath());
+		generator.writeNumberField("size", logFile.getSize());
+		generator.writeNumberField("lastPosRead", logFile.getFileBuffered().getLastPosRead());
+		generator.writeEndObject();
+		generator.writeRaw('\n');
+		generator.close();
+	}
+
+	/**
+	 * Write a line read as a record, and flush it: the client gets every record as soon as
+	 * the line is read, even if the next line passing the filter is far away.
+	 * @param line  Line read.
+	 * @throws IOException if the output fails
+	 */
+	private void writeLine(String line) throws IOException
+	{
+		generator.writeStartObject();
+		generator.writeStringField("line", line);
+		generator.writeEndObject();
+		generator.writeRaw('\n');
+		generator.flush();
+	}
+}
@@ -0,0 +1,447 @@
+package com.logfiles.entrypoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import com.logfiles.api.Host;
+import com.logfiles.backend.LogQuery;
+import com.logfiles.backend.ReadOrder;
+
+import io.dropwizard.jersey.errors.ErrorMessage;
+
+/**
+ * Requests to the other hosts of a query, all of them at the same time without blocking:
+ * every request goes through the asynchronous client (rx) and its response is handled when
+ * it arrives, on the executor of the client.
+ * Every host has its own deadline and the whole fan-out has a global one. A host without
+ * response on time is reported with code 504 while the others are returned, then a sick
+ * host delays the response only until the deadline. A host that can not be reached is
+ * reported with code 504 too, a host not accepted by the executor with code 503 and a
+ * response that can not be read with code 502. The errors of the hosts are kept.
+ * The health of every host is learned from its responses: a host that keeps failing is
+ * skipped while its circuit is open, and a host slower than the 95th percentile of its
+ * latency is hedged, the same request is sent to its replica and the first response wins.
+ * @author alexdel
+ */
+public class RemoteHosts {
+	/**
+	 * Default milliseconds to wait for the response of a host.
+	 */
+	public static final long DEFAULT_HOST_TIMEOUT_MILLIS    = 2000;
+	/**
+	 * Default milliseconds to wait for the responses of all the hosts of a query.
+	 */
+	public static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = 5000;
+	/**
+	 * Type of the responses of the hosts.
+	 */
+	private static final GenericType<List<Host>> HOSTS_TYPE = new GenericType<List<Host>>() {};
+
+	/** Jersey client to makes REST-API requests */
+	private final Client                   jerseyClient;
+	/** Timer of the deadlines */
+	private final ScheduledExecutorService timer;
+	/** Milliseconds to wait for the response of a host */
+	private final long                     hostTimeoutMillis;
+	/** Milliseconds to wait for the responses of all the hosts */
+	private final long                     requestTimeoutMillis;
+	/** Health of the hosts */
+	private final HostHealth               health;
+	/** Replica of every host, requested when the host is slow or its circuit is open */
+	private final Map<String, String>      replicas;
+
+	/**
+	 * Constructor without replicas
+	 * @param jerseyClient          Jersey client, its executor runs the requests.
+	 * @param timer                 Timer of the deadlines, managed by the caller. null
+	 *                              without deadlines.
+	 * @param hostTimeoutMillis     Milliseconds to wait for the response of a host.
+	 * @param requestTimeoutMillis  Milliseconds to wait for the responses of all the hosts.
+	 */
+	public RemoteHosts(Client                   jerseyClient,
+			           ScheduledExecutorService timer,
+			           long                     hostTimeoutMillis,
+			           long                     requestTimeoutMillis)
+	{
+		this(jerseyClient, timer, hostTimeoutMillis, requestTimeoutMillis, new HostHealth(), Collections.emptyMap());
+	}
+
+	/**
+	 * Constructor
+	 * @param jerseyClient          Jersey client, its executor runs the requests.
+	 * @param timer                 Timer of the deadlines and the hedged requests, managed
+	 *                              by the caller. null without deadlines nor hedging.
+	 * @param hostTimeoutMillis     Milliseconds to wait for the response of a host.
+	 * @param requestTimeoutMillis  Milliseconds to wait for the responses of all the hosts.
+	 * @param health                Health of the hosts.
+	 * @param replicas              Replica of every host, by host name.
+	 */
+	public RemoteHosts(Client                   jerseyClient,
+			           ScheduledExecutorService timer,
+			           long                     hostTimeoutMillis,
+			           long                     requestTimeoutMillis,
+			           HostHealth               health,
+			           Map<String, String>      replicas)
+	{
+		this.jerseyClient         = jerseyClient;
+		this.timer                = timer;
+		this.hostTimeoutMillis    = hostTimeoutMillis;
+		this.requestTimeoutMillis = requestTimeoutMillis;
+		this.health               = health;
+		this.replicas             = new HashMap<>(replicas);
+	}
+
+	/**
+	 * Get the health of the hosts.
+	 * @return health.
+	 */
+	public HostHealth getHealth()
+	{
+		return health;
+	}
+
+	/**
+	 * Request a file, or all the files, to the hosts. The requests start at once.
+	 * @param hostNames  Host names, with port if it is not 80.
+	 * @param fileName   File looked, empty for all the files of the log directory.
+	 * @param query      Query of the request, sent to the hosts.
+	 * @return hosts in the same order, when all of them answered or were reported as errors.
+	 */
+	public CompletableFuture<List<Host>> request(List<String> hostNames, String fileName, LogQuery query)
+	{
+		return request(hostNames, fileName, query, -1);
+	}
+
+	/**
+	 * Request all the files to the hosts with a global limit of lines on every host.
+	 * The requests start at once.
+	 * @param hostNames  Host names, with port if it is not 80.
+	 * @param fileName   File looked, empty for all the files of the log directory.
+	 * @param query      Query of the request, sent to the hosts.
+	 * @param limit      Maximum number of lines of all the files of a host, -1 without limit.
+	 * @return hosts in the same order, when all of them answered or were reported as errors.
+	 */
+	public CompletableFuture<List<Host>> request(List<String> hostNames, String fileName, LogQuery query,
+			                                     long limit)
+	{
+		final List<CompletableFuture<Host>> requests = new ArrayList<>(hostNames.size());
+
+		for (String hostName : hostNames)
+		{
+			requests.add(requestHost(hostName, fileName, query, limit));
+		}
+
+		CompletableFuture<List<Host>> all = CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[0]))
+				.thenApply(done -> requests.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+
+		/* The hosts still pending at the global deadline are reported as timed out */
+		if (timer != null && !all.isDone())
+		{
+			ScheduledFuture<?> deadline = timer.schedule(() -> {
+				for (int i = 0; i < requests.size(); i++)
+				{
+					requests.get(i).complete(newHostError(hostNames.get(i), Status.GATEWAY_TIMEOUT));
+				}
+			}, requestTimeoutMillis, TimeUnit.MILLISECONDS);
+			all.whenComplete((hosts, e) -> deadline.cancel(false));
+		}
+		return all;
+	}
+
+	/**
+	 * Request a file, or all the files, to a host, with its own deadline.
+	 * If the circuit of the host is open, its replica is requested instead, or the host is
+	 * skipped with code 503. If the host does not answer before the 95th percentile of its
+	 * latency, the request is hedged to its replica.
+	 * @param hostName  Host name.
+	 * @param fileName  File looked, empty for all the files of the log directory.
+	 * @param query     Query of the request.
+	 * @param limit     Maximum number of lines of all the files, -1 without limit.
+	 * @return host, completed with the response or the error.
+	 */
+	private CompletableFuture<Host> requestHost(String hostName, String fileName, LogQuery query, long limit)
+	{
+		final CompletableFuture<Host> result  = new CompletableFuture<>();
+		final String                  replica = replicas.get(hostName);
+
+		if (!health.allowRequest(hostName))
+		{
+			health.markSkipped();
+			if (replica != null && health.allowRequest(replica))
+			{
+				send(replica, fileName, query, limit).thenAccept(result::complete);
+			}
+			else
+			{
+				Host host = newHostError(hostName, Status.SERVICE_UNAVAILABLE);
+				host.setMessage("Circuit open");
+				result.complete(host);
+			}
+		}
+		else
+		{
+			final CompletableFuture<Host>                  primary   = send(hostName, fileName, query, limit);
+			final AtomicReference<CompletableFuture<Host>> hedge     = new AtomicReference<>();
+			final long                                     hedgeWait = replica == null ? -1 :
+				                                                       health.getHedgeDelayMillis(hostName);
+
+			/* The first response that succeeds wins, else the error of the host */
+			primary.thenAccept(host -> {
+				CompletableFuture<Host> other = hedge.get();
+				if (isOk(host) || other == null)
+				{
+					result.complete(host);
+				}
+				else
+				{
+					other.thenAccept(otherHost -> result.complete(isOk(otherHost) ? otherHost : host));
+				}
+			});
+			if (timer != null && hedgeWait >= 0 && !primary.isDone())
+			{
+				ScheduledFuture<?> hedging = timer.schedule(() -> {
+					if (!primary.isDone() && health.allowRequest(replica))
+					{
+						health.markHedged();
+						CompletableFuture<Host> other = send(replica, fileName, query, limit);
+						hedge.set(other);
+						other.thenAccept(otherHost -> {
+							if (isOk(otherHost))
+							{
+								result.complete(otherHost);
+							}
+						});
+					}
+				}, hedgeWait, TimeUnit.MILLISECONDS);
+				result.whenComplete((host, e) -> hedging.cancel(false));
+			}
+		}
+
+		if (timer != null && !result.isDone())
+		{
+			ScheduledFuture<?> deadline = timer.schedule(() -> result.complete(newHostError(hostName, Status.GATEWAY_TIMEOUT)),
+					                                     hostTimeoutMillis, TimeUnit.MILLISECONDS);
+			result.whenComplete((host, e) -> deadline.cancel(false));
+		}
+		return result;
+	}
+
+	/**
+	 * Send a request to a host and learn its health from the response.
+	 * @param hostName  Host name.
+	 * @param fileName  File looked, empty for all the files of the log directory.
+	 * @param query     Query of the request.
+	 * @param limit     Maximum number of lines of all the files, -1 without limit.
+	 * @return host, completed with the response or the error, never exceptionally.
+	 */
+	private CompletableFuture<Host> send(String hostName, String fileName, LogQuery query, long limit)
+	{
+		final CompletableFuture<Host> sent  = new CompletableFuture<>();
+		final long                    start = System.nanoTime();
+
+		try
+		{
+			newTarget(hostName, fileName, query, limit).request(MediaType.APPLICATION_JSON)
+			                                    .rx()
+			                                    .get()
+			                                    .whenComplete((response, e) -> {
+			                                    	Host host = e == null ? readHost(hostName, response) :
+			                                    		                    newHostError(hostName, e);
+			                                    	/* A request rejected here says nothing of the host */
+			                                    	if (!isRejected(e))
+			                                    	{
+			                                    		record(hostName, host, System.nanoTime() - start);
+			                                    	}
+			                                    	sent.complete(host);
+			                                    });
+		} catch (RejectedExecutionException | ProcessingException e)
+		{
+			sent.complete(newHostError(hostName, e));
+		}
+		return sent;
+	}
+
+	/**
+	 * Record the response of a host on its health: an error 5xx is a failure.
+	 * @param hostName      Host name.
+	 * @param host          Host answered.
+	 * @param latencyNanos  Nanoseconds since the request was sent.
+	 */
+	private void record(String hostName, Host host, long latencyNanos)
+	{
+		if (host.getCode() != null && host.getCode() >= Status.INTERNAL_SERVER_ERROR.getStatusCode())
+		{
+			health.recordFailure(hostName);
+		}
+		else
+		{
+			health.recordSuccess(hostName, latencyNanos);
+		}
+	}
+
+	/**
+	 * Check if a host answered with its files.
+	 * @param host  Host answered.
+	 * @return true if its code is 200.
+	 */
+	private static boolean isOk(Host host)
+	{
+		return host.getCode() != null && host.getCode() == Status.OK.getStatusCode();
+	}
+
+	/**
+	 * Check if a request was rejected by the executor of the client.
+	 * @param e  Error of the request, null if it succeeded.
+	 * @return true if it was rejected.
+	 */
+	private static boolean isRejected(Throwable e)
+	{
+		Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+
+		return cause instanceof RejectedExecutionException;
+	}
+
+	/**
+	 * Build the target of a host with the query params.
+	 * NOTE: start_pos is not sent, the positions are different on every host.
+	 * @param hostName  Host name.
+	 * @param fileName  File looked, empty for all the files of the log directory.
+	 * @param query     Query of the request.
+	 * @param limit     Maximum number of lines of all the files, -1 without limit.
+	 * @return target.
+	 */
+	private WebTarget newTarget(String hostName, String fileName, LogQuery query, long limit)
+	{
+		String    url    = "http://" + hostName + "/";
+		WebTarget target = jerseyClient.target(url).path("logfiles/api/v1/files")
+		                                           .queryParam("n_lines", query.getNumLines())
+		                                           .queryParam("keyword", query.getKeywords().toArray())
+		                                           .queryParam("match", query.getMatch().name().toLowerCase(Locale.ROOT))
+		                                           .queryParam("order_by", query.getOrder() == ReadOrder.ASC ? 0 : 1);
+
+		if (!query.getRegex().isEmpty())
+		{
+			target = target.queryParam("regex", query.getRegex());
+		}
+		if (limit > 0)
+		{
+			target = target.queryParam("limit", limit);
+		}
+		if (query.getFromLine() > 0)
+		{
+			target = target.queryParam("from_line", query.getFromLine());
+		}
+		/* The time range already resolved, same range on all the hosts */
+		if (query.getSince() != null)
+		{
+			target = target.queryParam("since", query.getSince().toString());
+		}
+		if (query.getUntil() != null)
+		{
+			target = target.queryParam("until", query.getUntil().toString());
+		}
+		/* If an specific file were specified. The targets are immutable */
+		if (!fileName.isEmpty())
+		{
+			target = target.path(fileName);
+		}
+		return target;
+	}
+
+	/**
+	 * Read the response of a host: the host with its files, or the error reported by the host.
+	 * @param hostName  Host name.
+	 * @param response  Response of the host.
+	 * @return host.
+	 */
+	private Host readHost(String hostName, Response response)
+	{
+		try
+		{
+			if (response.getStatus() != Status.OK.getStatusCode())
+			{
+				Host host = newHostError(hostName, Status.fromStatusCode(response.getStatus()));
+				host.setCode(response.getStatus());
+				try
+				{
+					/* The message of the error, as 'File ... not found' */
+					host.setMessage(response.readEntity(ErrorMessage.class).getMessage());
+				} catch (ProcessingException e)
+				{
+					/* Not a JSON error, the reason of the status is kept */
+				}
+				return host;
+			}
+			/* We are expecting a single host with the file or files */
+			List<Host> hosts = response.readEntity(HOSTS_TYPE);
+			if (hosts == null || hosts.isEmpty())
+			{
+				return newHostError(hostName, Status.BAD_GATEWAY);
+			}
+			return hosts.get(0);
+		} catch (ProcessingException e)
+		{
+			/* The response can not be read */
+			return newHostError(hostName, Status.BAD_GATEWAY);
+		}
+		finally
+		{
+			response.close();
+		}
+	}
+
+	/**
+	 * Create the representation of a host that failed.
+	 * @param hostName  Host name.
+	 * @param e         Error of the request.
+	 * @return host without files.
+	 */
+	private Host newHostError(String hostName, Throwable e)
+	{
+		/* The executor of the client was full */
+		if (isRejected(e))
+		{
+			return newHostError(hostName, Status.SERVICE_UNAVAILABLE);
+		}
+		/* In case the host can not be reachable */
+		return newHostError(hostName, Status.GATEWAY_TIMEOUT);
+	}
+
+	/**
+	 * Create the representation of a host that could not be queried.
+	 * @param hostName  Host name.
+	 * @param status    Status reported for the host, or null if it is not a known one.
+	 * @return host without files.
+	 */
+	static Host newHostError(String hostName, Status status)
+	{
+		Host host = new Host();
+
+		host.setHost(hostName);
+		host.setCode(status == null ? Status.BAD_GATEWAY.getStatusCode() : status.getStatusCode());
+		host.setMessage(status == null ? Status.BAD_GATEWAY.getReasonPhrase() : status.getReasonPhrase());
+		host.setLogfiles(new LinkedList<>());
+		return host;
+	}
+}
@@ -0,0 +1,159 @@
+package com.logfiles.entrypoint;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import com.logfiles.backend.FollowEvent;
+import com.logfiles.backend.Follower;
+
+/**
+ * Writer of the lines appended to a file followed as Server-Sent Events (text/event-stream).
+ * Every line is an event whose data is the line and whose id is the position on the file
+ * after the line, then a client reconnecting with the header Last-Event-ID continues on the
+ * next line. The changes of the file are named events with the position where the reading
+ * continues:
+ * 1. truncated: the file was truncated, the next lines are read from its beginning.
+ * 2. rotated: the file was replaced by a new one, the next lines are read from its beginning.
+ * 3. skipped: the client was too slow and it skipped ahead, the data is the number of lines
+ *    lost and the id the position where they start.
+ * 4. closed: the server is shutting down and the stream finishes.
+ * A comment is written when there are no events for a while, then the connection is kept
+ * alive and a client gone is detected.
+ * @author alexdel
+ */
+public class ServerSentEventsWriter {
+	/**
+	 * Seconds without events until a comment is written.
+	 */
+	public static final long HEARTBEAT_SECONDS = 15;
+	/**
+	 * Writer over the response output.
+	 */
+	private final Writer writer;
+
+	/**
+	 * Constructor
+	 * @param out  Output of the response.
+	 */
+	public ServerSentEventsWriter(OutputStream out)
+	{
+		this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Write a line as an event without id, as the lines read from the file before
+	 * following it.
+	 * @param line  Line.
+	 * @throws IOException if the output fails
+	 */
+	public void writeLine(String line) throws IOException
+	{
+		writeData(line);
+		writer.write('\n');
+	}
+
+	/**
+	 * Write the id of the last event, without data, to set the position where a client
+	 * reconnecting continues.
+	 * @param pos  Position on the file.
+	 * @throws IOException if the output fails
+	 */
+	public void writeId(long pos) throws IOException
+	{
+		writer.write("id: " + pos + "\n\n");
+	}
+
+	/**
+	 * Write the events of a follower while they arrive, flushing the output when there are
+	 * not more events queued. It finishes on a closed event.
+	 * @param follower  Follower of the file.
+	 * @throws IOException if the output fails, usually because the client is gone
+	 */
+	public void writeEvents(Follower follower) throws IOException
+	{
+		try
+		{
+			while (true)
+			{
+				FollowEvent event = follower.take(0, TimeUnit.SECONDS);
+
+				if (event == null)
+				{
+					writer.flush();
+					event = follower.take(HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+				}
+				if (event == null)
+				{
+					writer.write(": keep-alive\n\n");
+					continue;
+				}
+				switch (event.getType())
+				{
+				case LINE:
+					writer.write("id: " + event.getPos() + "\n");
+					writeLine(event.getLine());
+					break;
+				case SKIPPED:
+					writer.write("event: skipped\n");
+					writer.write("id: " + event.getPos() + "\n");
+					writeLine(String.valueOf(event.getNumSkipped()));
+					break;
+				case CLOSED:
+					writeEvent(event);
+					writer.flush();
+					return;
+				default:
+					writeEvent(event);
+					break;
+				}
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Following interrupted");
+		}
+	}
+
+	/**
+	 * Write a named event with the position where the reading continues.
+	 * @param event  Event.
+	 * @throws IOException if the output fails
+	 */
+	private void writeEvent(FollowEvent event) throws IOException
+	{
+		writer.write("event: " + event.getType().name().toLowerCase(Locale.ROOT) + "\n");
+		writer.write("id: " + event.getPos() + "\n");
+		writeLine(String.valueOf(event.getPos()));
+	}
+
+	/**
+	 * Write the data of an event. A CR would finish the data on the client, then the line
+	 * is split on it.
+	 * @param data  Data.
+	 * @throws IOException if the output fails
+	 */
+	private void writeData(String data) throws IOException
+	{
+		if (data.indexOf('\r') < 0)
+		{
+			writer.write("data: ");
+			writer.write(data);
+			writer.write('\n');
+			return;
+		}
+		for (String part : data.split("\r", -1))
+		{
+			writer.write("data: ");
+			writer.write(part);
+			writer.write('\n');
+		}
+	}
+}
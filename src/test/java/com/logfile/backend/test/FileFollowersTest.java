@@ -0,0 +1,175 @@
+package com.logfile.backend.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.logfiles.backend.FileFollowers;
+import com.logfiles.backend.FilterKeyword;
+import com.logfiles.backend.FollowEvent;
+import com.logfiles.backend.Follower;
+
+public class FileFollowersTest {
+
+	@TempDir
+	File genPath;
+
+	private ScheduledExecutorService scheduler;
+
+	@BeforeEach
+	public void setUp()
+	{
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+	}
+
+	@AfterEach
+	public void tearDown()
+	{
+		scheduler.shutdownNow();
+	}
+
+	private void write(File file, String text, boolean append) throws IOException
+	{
+		try (FileOutputStream out = new FileOutputStream(file, append))
+		{
+			out.write(text.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private FollowEvent take(Follower follower) throws InterruptedException
+	{
+		FollowEvent event = follower.take(5, TimeUnit.SECONDS);
+
+		assertNotNull(event, "event not received");
+		return event;
+	}
+
+	private void assertLine(Follower follower, String line, long pos) throws InterruptedException
+	{
+		FollowEvent event = take(follower);
+
+		assertEquals(FollowEvent.Type.LINE, event.getType());
+		assertEquals(line, event.getLine());
+		assertEquals(pos, event.getPos());
+	}
+
+	@Test
+	@DisplayName("Testing followers sharing the watcher of a file ...")
+	public void followTest() throws IOException, InterruptedException
+	{
+		File          file      = new File(genPath, "gen_follow.log");
+		FileFollowers followers = new FileFollowers(scheduler, 10, 100);
+
+		/* The last line is being written */
+		write(file, "alpha\r\nbeta\npart", false);
+		Follower all    = followers.follow(file, new FilterKeyword(""));
+		Follower errors = followers.follow(file, new FilterKeyword("error"));
+		assertEquals(12, all.getStartPos());
+		assertEquals(12, errors.getStartPos());
+		assertEquals(1, followers.getNumFiles());
+		assertEquals(2, followers.getNumFollowers());
+
+		write(file, "ial error\r\ngamma\n\u00e9 error\n", true);
+		assertLine(all, "partial error", 27);
+		assertLine(all, "gamma", 33);
+		assertLine(all, "\u00e9 error", 42);
+		assertLine(errors, "partial error", 27);
+		assertLine(errors, "\u00e9 error", 42);
+
+		all.close();
+		assertEquals(1, followers.getNumFiles());
+		errors.close();
+		errors.close();
+		assertEquals(0, followers.getNumFiles());
+		assertEquals(0, followers.getNumFollowers());
+	}
+
+	@Test
+	@DisplayName("Testing followers of files truncated and rotated ...")
+	public void truncateRotateTest() throws IOException, InterruptedException
+	{
+		File          file      = new File(genPath, "gen_rotate.log");
+		File          rotated   = new File(genPath, "gen_rotate.log.1");
+		FileFollowers followers = new FileFollowers(scheduler, 10, 100);
+
+		write(file, "aaaa\nbbbb\n", false);
+		try (Follower follower = followers.follow(file, new FilterKeyword("")))
+		{
+			write(file, "cccc\n", true);
+			assertLine(follower, "cccc", 15);
+
+			write(file, "x\n", false);
+			assertEquals(FollowEvent.Type.TRUNCATED, take(follower).getType());
+			assertLine(follower, "x", 2);
+
+			/* The rest of the previous file is read before the new one */
+			assertEquals(true, file.renameTo(rotated));
+			write(rotated, "y\n", true);
+			write(file, "new\n", false);
+			assertLine(follower, "y", 4);
+			FollowEvent event = take(follower);
+			assertEquals(FollowEvent.Type.ROTATED, event.getType());
+			assertEquals(0, event.getPos());
+			assertLine(follower, "new", 4);
+		}
+		followers.close();
+	}
+
+	@Test
+	@DisplayName("Testing followers too slow and followers starting on the ring ...")
+	public void ringTest() throws IOException, InterruptedException
+	{
+		File          file      = new File(genPath, "gen_slow.log");
+		FileFollowers followers = new FileFollowers(scheduler, 10, 3);
+
+		write(file, "0\n", false);
+		Follower slow  = followers.follow(file, new FilterKeyword(""));
+		Follower probe = followers.follow(file, new FilterKeyword("5"));
+		assertEquals(2, slow.getStartPos());
+		write(file, "1\n2\n3\n4\n5\n", true);
+		assertEquals(FollowEvent.Type.SKIPPED, take(probe).getType());
+		assertLine(probe, "5", 12);
+
+		/* The slow follower skips ahead to the oldest line kept */
+		FollowEvent event = take(slow);
+		assertEquals(FollowEvent.Type.SKIPPED, event.getType());
+		assertEquals(2, event.getNumSkipped());
+		assertEquals(2, event.getPos());
+		assertLine(slow, "3", 8);
+		assertLine(slow, "4", 10);
+		assertLine(slow, "5", 12);
+		slow.close();
+		slow.close();
+		assertEquals(1, followers.getNumFollowers());
+
+		/* A position on the ring starts on it, any other one after the last line */
+		Follower resumed = followers.follow(file, new FilterKeyword(""), 8);
+		assertEquals(8, resumed.getStartPos());
+		assertLine(resumed, "4", 10);
+		Follower late = followers.follow(file, new FilterKeyword(""), 4);
+		assertEquals(12, late.getStartPos());
+
+		/* The followers left are closed on shutdown, after the lines left */
+		followers.close();
+		assertLine(resumed, "5", 12);
+		event = take(resumed);
+		assertEquals(FollowEvent.Type.CLOSED, event.getType());
+		assertEquals(12, event.getPos());
+		assertEquals(FollowEvent.Type.CLOSED, take(probe).getType());
+		assertEquals(0, followers.getNumFiles());
+		assertEquals(0, followers.getNumFollowers());
+	}
+}
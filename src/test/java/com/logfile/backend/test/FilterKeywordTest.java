@@ -0,0 +1,81 @@
+package com.logfile.backend.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.logfiles.backend.ByteSlice;
+import com.logfiles.backend.FilterKeyword;
+import com.logfiles.backend.FilterKeywords;
+import com.logfiles.backend.MatchMode;
+
+public class FilterKeywordTest {
+
+	/* Small alphabet to have many partial matches */
+	private static final String ALPHABET = "abcd \u00e9\u00f1-:";
+
+	private String randomString(Random random, int size)
+	{
+		StringBuilder str = new StringBuilder();
+		for (int i = 0; i < size; i++)
+		{
+			str.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		}
+		return str.toString();
+	}
+
+	@Test
+	@DisplayName("Testing keyword filter over raw bytes ...")
+	public void keywordBytesTest()
+	{
+		Random random = new Random(1);
+
+		for (int i = 0; i < 20000; i++)
+		{
+			String keyword = randomString(random, random.nextInt(5));
+			String line    = randomString(random, random.nextInt(40));
+			byte   bytes[] = ("#" + line + "#").getBytes(StandardCharsets.UTF_8);
+			/* Slice without the padding bytes */
+			ByteSlice slice = new ByteSlice(bytes, 1, bytes.length - 2);
+
+			FilterKeyword filterKeyword = new FilterKeyword(keyword);
+
+			assertEquals(filterKeyword.test(line), filterKeyword.test(slice),
+					     "keyword '" + keyword + "' line '" + line + "'");
+		}
+	}
+
+	@Test
+	@DisplayName("Testing several keywords filter over raw bytes ...")
+	public void keywordsBytesTest()
+	{
+		Random random = new Random(2);
+
+		for (int i = 0; i < 20000; i++)
+		{
+			List<String> keywords = new ArrayList<>();
+			int numKeywords = 1 + random.nextInt(6);
+			for (int k = 0; k < numKeywords; k++)
+			{
+				keywords.add(randomString(random, random.nextInt(4)));
+			}
+			String line    = randomString(random, random.nextInt(40));
+			byte   bytes[] = ("#" + line + "#").getBytes(StandardCharsets.UTF_8);
+			ByteSlice slice = new ByteSlice(bytes, 1, bytes.length - 2);
+
+			for (MatchMode mode : MatchMode.values())
+			{
+				FilterKeywords filterKeywords = new FilterKeywords(keywords, mode);
+
+				assertEquals(filterKeywords.test(line), filterKeywords.test(slice),
+						     mode + " keywords " + keywords + " line '" + line + "'");
+			}
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package com.logfile.backend.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.logfiles.api.LogFile;
+import com.logfiles.backend.BlockSkipper;
+import com.logfiles.backend.BloomBlockIndex;
+import com.logfiles.backend.FilterKeyword;
+import com.logfiles.backend.FilterKeywords;
+import com.logfiles.backend.KeywordIndex;
+import com.logfiles.backend.LineFilter;
+import com.logfiles.backend.LineIndex;
+import com.logfiles.backend.LogFileReader;
+import com.logfiles.backend.MatchMode;
+import com.logfiles.backend.ReadOrder;
+
+public class KeywordIndexTest {
+
+	private static final String WORDS[] = {"INFO", "WARN", "DEBUG", "request", "user", "login",
+			                               "timeout", "db", "cache", "GET", "POST", "200", "404"};
+
+	@TempDir
+	File genPath;
+
+	/* Generate a log file, rare keywords only on a few lines. Positions where lines start are kept */
+	private File generateFile(Random random, List<Long> starts) throws IOException
+	{
+		File file = new File(genPath, "gen_keyword.log");
+		long pos  = 0;
+
+		try (FileOutputStream out = new FileOutputStream(file))
+		{
+			for (int i = 0; i < 3000; i++)
+			{
+				StringBuilder line = new StringBuilder();
+				int numWords = random.nextInt(12);
+				for (int j = 0; j < numWords; j++)
+				{
+					line.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+				}
+				if (random.nextInt(500) == 0)
+				{
+					line.append("req-7f3a9 ");
+				}
+				if (random.nextInt(300) == 0)
+				{
+					line.append("ERROR-42");
+				}
+				/* Last line without LF */
+				byte bytes[] = (line + (i < 2999 ? "\r\n" : "")).getBytes(StandardCharsets.UTF_8);
+				starts.add(pos);
+				out.write(bytes);
+				pos += bytes.length;
+			}
+		}
+		return file;
+	}
+
+	/* Truncate the file and write it again in place, bigger and with the keyword on every line */
+	private void rewriteFile(File file, String keyword) throws IOException
+	{
+		long size = file.length();
+
+		try (FileOutputStream out = new FileOutputStream(file))
+		{
+			for (int i = 0; file.length() <= size; i++)
+			{
+				out.write(("line " + i + " " + keyword + " padding padding\r\n").getBytes(StandardCharsets.UTF_8));
+			}
+		}
+	}
+
+	private void assertSameReading(LogFile expected, LogFile actual, String msg)
+	{
+		assertEquals(expected.getFileBuffered().getLines(), actual.getFileBuffered().getLines(), msg);
+		assertEquals(expected.getFileBuffered().getLastPosRead(), actual.getFileBuffered().getLastPosRead(), msg);
+	}
+
+	private List<LineFilter> getFilters()
+	{
+		return Arrays.asList(
+				new FilterKeyword("req-7f3a9"),
+				new FilterKeyword("ERROR-42"),
+				new FilterKeyword("not-in-file"),
+				new FilterKeyword("timeout"),
+				new FilterKeywords(Arrays.asList("req-7f3a9", "ERROR-42"), MatchMode.ANY),
+				new FilterKeywords(Arrays.asList("req-7f3a9", "login"), MatchMode.ALL));
+	}
+
+	private long randomStartPos(Random random, ReadOrder order, File file, List<Long> starts)
+	{
+		if (order == ReadOrder.ASC)
+		{
+			return random.nextBoolean() ? 0 : starts.get(random.nextInt(starts.size()));
+		}
+		return random.nextBoolean() ? file.length() : starts.get(random.nextInt(starts.size()));
+	}
+
+	@Test
+	@DisplayName("Testing filtered readings skipping indexed blocks ...")
+	public void skipBlocksTest() throws IOException
+	{
+		Random       random = new Random(1);
+		List<Long>   starts = new ArrayList<>();
+		File         file   = generateFile(random, starts);
+		KeywordIndex keywordIndex = new KeywordIndex(null, 512, 0);
+		List<LineFilter> filters = getFilters();
+
+		assertTrue(keywordIndex.indexFile(file));
+		assertNotNull(BlockSkipper.create(keywordIndex.getBlocks(file), filters.get(0), ReadOrder.ASC));
+
+		for (int i = 0; i < 400; i++)
+		{
+			/* Memory mapped and random access input streams */
+			long           mmapThreshold = random.nextBoolean() ? 0 : LogFileReader.DEFAULT_MMAP_THRESHOLD;
+			LogFileReader  plainReader   = new LogFileReader(mmapThreshold, new LineIndex(), null);
+			LogFileReader  indexReader   = new LogFileReader(mmapThreshold, new LineIndex(), keywordIndex);
+			ReadOrder      order    = random.nextBoolean() ? ReadOrder.ASC : ReadOrder.DESC;
+			LineFilter     filter   = filters.get(random.nextInt(filters.size()));
+			long           numLines = random.nextBoolean() ? file.length() : 1 + random.nextInt(800);
+			long           startPos = randomStartPos(random, order, file, starts);
+
+			String msg = order + " from " + startPos + " lines " + numLines + " mmap " + mmapThreshold;
+			assertSameReading(plainReader.readLines(file, startPos, numLines, order, filter),
+					          indexReader.readLines(file, startPos, numLines, order, filter), msg);
+		}
+
+		/* A file truncated and written again up to a bigger size does not use its index */
+		LineFilter filter = new FilterKeyword("not-in-file");
+		assertNotNull(BlockSkipper.create(keywordIndex.getBlocks(file), filter, ReadOrder.ASC));
+		rewriteFile(file, "not-in-file");
+		assertTrue(keywordIndex.getBlocks(file).isEmpty());
+		LogFile rewritten = new LogFileReader(0, new LineIndex(), keywordIndex).readLines(file, 0, file.length(),
+				                                                                         ReadOrder.ASC, filter);
+		assertSameReading(new LogFileReader(0, new LineIndex(), null).readLines(file, 0, file.length(),
+				                                                               ReadOrder.ASC, filter),
+				          rewritten, "rewritten");
+	}
+
+	@Test
+	@DisplayName("Testing filtered readings skipping blocks learned with Bloom filters ...")
+	public void bloomBlocksTest() throws IOException
+	{
+		Random           random = new Random(2);
+		List<Long>       starts = new ArrayList<>();
+		File             file   = generateFile(random, starts);
+		BloomBlockIndex  bloomIndex = new BloomBlockIndex(512, 10000);
+		List<LineFilter> filters = getFilters();
+
+		for (int i = 0; i < 600; i++)
+		{
+			/* Memory mapped and random access input streams, the blocks learned are shared */
+			long           mmapThreshold = random.nextBoolean() ? 0 : LogFileReader.DEFAULT_MMAP_THRESHOLD;
+			LogFileReader  plainReader   = new LogFileReader(mmapThreshold, new LineIndex(), null);
+			LogFileReader  bloomReader   = new LogFileReader(mmapThreshold, new LineIndex(), null, bloomIndex);
+			ReadOrder      order    = random.nextBoolean() ? ReadOrder.ASC : ReadOrder.DESC;
+			LineFilter     filter   = filters.get(random.nextInt(filters.size()));
+			long           numLines = random.nextBoolean() ? file.length() : 1 + random.nextInt(800);
+			long           startPos = randomStartPos(random, order, file, starts);
+
+			String msg = order + " from " + startPos + " lines " + numLines + " mmap " + mmapThreshold;
+			assertSameReading(plainReader.readLines(file, startPos, numLines, order, filter),
+					          bloomReader.readLines(file, startPos, numLines, order, filter), msg);
+		}
+
+		assertNotNull(BlockSkipper.create(bloomIndex.getBlocks(file), filters.get(0), ReadOrder.DESC));
+
+		/* A file truncated and written again up to a bigger size does not use the blocks learned */
+		LineFilter filter = new FilterKeyword("not-in-file");
+		LogFileReader bloomReader = new LogFileReader(0, new LineIndex(), null, bloomIndex);
+		bloomReader.readLines(file, 0, file.length(), ReadOrder.ASC, filter);
+		assertNotNull(BlockSkipper.create(bloomIndex.getBlocks(file), filter, ReadOrder.ASC));
+		rewriteFile(file, "not-in-file");
+		LogFile rewritten = bloomReader.readLines(file, 0, file.length(), ReadOrder.ASC, filter);
+		assertSameReading(new LogFileReader(0, new LineIndex(), null).readLines(file, 0, file.length(),
+				                                                               ReadOrder.ASC, filter),
+				          rewritten, "rewritten");
+		assertTrue(rewritten.getFileBuffered().getLines().size() > 0);
+
+		/* The readings without filter do not learn */
+		BloomBlockIndex unfiltered = new BloomBlockIndex(512, 10000);
+		new LogFileReader(0, new LineIndex(), null, unfiltered)
+			.readLines(file, 0, file.length(), ReadOrder.ASC, new FilterKeyword(""));
+		assertTrue(unfiltered.getBlocks(file).isEmpty());
+	}
+
+	@Test
+	@DisplayName("Testing indexes bounded and dropped with their files ...")
+	public void boundedIndexesTest() throws IOException
+	{
+		File logDir   = new File(genPath, "logs");
+		File indexDir = new File(genPath, "index");
+		logDir.mkdirs();
+
+		/* On memory and saved on the index directory, only the most recently used on memory */
+		for (KeywordIndex keywordIndex : Arrays.asList(new KeywordIndex(null, 512, 0),
+				                                       new KeywordIndex(indexDir, 512, 0)))
+		{
+			for (int i = 0; i < 30; i++)
+			{
+				try (FileOutputStream out = new FileOutputStream(new File(logDir, "gen_" + i + ".log")))
+				{
+					out.write(("line " + i + " timeout\r\n").getBytes(StandardCharsets.UTF_8));
+				}
+			}
+			keywordIndex.indexColdFiles(logDir);
+			assertTrue(keywordIndex.size() > 0 && keywordIndex.size() < 30, "indexes " + keywordIndex.size());
+
+			for (File file : logDir.listFiles())
+			{
+				assertTrue(file.delete());
+			}
+			keywordIndex.indexColdFiles(logDir);
+			assertEquals(0, keywordIndex.size());
+		}
+		assertEquals(0, indexDir.listFiles().length);
+	}
+}
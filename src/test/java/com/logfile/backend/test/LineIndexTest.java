@@ -0,0 +1,154 @@
+package com.logfile.backend.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.logfiles.api.LogFile;
+import com.logfiles.backend.FilterKeyword;
+import com.logfiles.backend.LineIndex;
+import com.logfiles.backend.LogFileReader;
+import com.logfiles.backend.ReadOrder;
+
+public class LineIndexTest {
+
+	/* Small interval to have many positions indexed */
+	private static final int INTERVAL = 7;
+
+	@TempDir
+	File genPath;
+
+	/* Append lines to the file and keep where every line starts */
+	private void appendLines(File file, List<Long> starts, int numLines, Random random)
+			throws IOException
+	{
+		try (FileOutputStream out = new FileOutputStream(file, true))
+		{
+			long pos = file.length();
+			for (int i = 0; i < numLines; i++)
+			{
+				StringBuilder line = new StringBuilder("line " + starts.size());
+				int size = random.nextInt(50);
+				for (int j = 0; j < size; j++)
+				{
+					line.append((char)('a' + j % 26));
+				}
+				byte bytes[] = (line + "\r\n").getBytes(StandardCharsets.UTF_8);
+				starts.add(pos);
+				out.write(bytes);
+				pos += bytes.length;
+			}
+		}
+	}
+
+	private void checkOffsets(LineIndex lineIndex, File file, List<Long> starts)
+			throws IOException
+	{
+		for (int line = 1; line <= starts.size(); line++)
+		{
+			assertEquals((long)starts.get(line - 1), lineIndex.getLineOffset(file, line),
+					     "line " + line);
+		}
+		assertEquals(file.length(), lineIndex.getLineOffset(file, starts.size() + 1));
+		assertEquals(-1, lineIndex.getLineOffset(file, starts.size() + 2));
+	}
+
+	@Test
+	@DisplayName("Testing line index built, extended and rebuilt ...")
+	public void lineIndexTest() throws IOException
+	{
+		Random     random = new Random(1);
+		File       file   = new File(genPath, "gen_index.log");
+		File       idxDir = new File(genPath, "index");
+		List<Long> starts = new ArrayList<>();
+		LineIndex  lineIndex = new LineIndex(idxDir, INTERVAL);
+
+		/* Built on first use */
+		appendLines(file, starts, 500, random);
+		checkOffsets(lineIndex, file, starts);
+		assertTrue(idxDir.list().length > 0);
+
+		/* Extended when the file grows */
+		appendLines(file, starts, 123, random);
+		checkOffsets(lineIndex, file, starts);
+
+		/* Loaded from the index directory */
+		checkOffsets(new LineIndex(idxDir, INTERVAL), file, starts);
+
+		/* Rebuilt when the file is truncated */
+		new FileOutputStream(file).close();
+		starts.clear();
+		appendLines(file, starts, 40, random);
+		checkOffsets(lineIndex, file, starts);
+	}
+
+	@Test
+	@DisplayName("Testing reading from a line number ...")
+	public void readFromLineTest() throws IOException
+	{
+		Random        random = new Random(2);
+		File          file   = new File(genPath, "gen_from_line.log");
+		List<Long>    starts = new ArrayList<>();
+		LogFileReader logFileReader = new LogFileReader(LogFileReader.DEFAULT_MMAP_THRESHOLD,
+				                                        new LineIndex(null, INTERVAL));
+		FilterKeyword keywordFilter = new FilterKeyword("");
+		LogFile       logFile;
+
+		appendLines(file, starts, 100, random);
+
+		logFile = logFileReader.readLinesFromLine(file, 50, 3, ReadOrder.ASC, keywordFilter);
+		assertTrue(logFile.getFileBuffered().getLines().get(0).startsWith("line 49"));
+		assertTrue(logFile.getFileBuffered().getLines().get(2).startsWith("line 51"));
+
+		logFile = logFileReader.readLinesFromLine(file, 50, 3, ReadOrder.DESC, keywordFilter);
+		assertTrue(logFile.getFileBuffered().getLines().get(0).startsWith("line 49"));
+		assertTrue(logFile.getFileBuffered().getLines().get(2).startsWith("line 47"));
+
+		/* After the last line */
+		logFile = logFileReader.readLinesFromLine(file, 500, 3, ReadOrder.ASC, keywordFilter);
+		assertEquals(0, logFile.getFileBuffered().getLines().size());
+	}
+
+	@Test
+	@DisplayName("Testing only the indexes of the files recently used are kept ...")
+	public void boundedIndexesTest() throws IOException
+	{
+		Random     random    = new Random(3);
+		File       idxDir    = new File(genPath, "index");
+		LineIndex  lineIndex = new LineIndex(idxDir, INTERVAL);
+		List<File> files     = new ArrayList<>();
+
+		/* Every file looked by line number is indexed, only the most recently used stay */
+		for (int i = 0; i < 150; i++)
+		{
+			File       file   = new File(genPath, "gen_rot_" + i + ".log");
+			List<Long> starts = new ArrayList<>();
+			appendLines(file, starts, 20, random);
+			assertEquals((long)starts.get(10), lineIndex.getLineOffset(file, 11));
+			files.add(file);
+		}
+		assertTrue(lineIndex.size() < files.size(), "indexes " + lineIndex.size());
+
+		/* The indexes of the files removed are dropped */
+		for (File file : files)
+		{
+			assertTrue(file.delete());
+		}
+		File       file   = new File(genPath, "gen_new.log");
+		List<Long> starts = new ArrayList<>();
+		appendLines(file, starts, 20, random);
+		assertEquals((long)starts.get(10), lineIndex.getLineOffset(file, 11));
+		assertEquals(1, lineIndex.size());
+	}
+}
@@ -0,0 +1,71 @@
+package com.logfile.backend.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.logfiles.api.LogFile;
+import com.logfiles.api.LogFileBuffer;
+import com.logfiles.backend.LineMerger;
+import com.logfiles.backend.ReadOrder;
+import com.logfiles.backend.TimestampSearch;
+
+public class LineMergerTest {
+
+	private static LogFile newFile(String host, String path, String... lines)
+	{
+		LogFile logFile = new LogFile(host, path, 0L);
+
+		logFile.setFileBuffered(new LogFileBuffer(Arrays.asList(lines), 0));
+		return logFile;
+	}
+
+	private static List<String> merge(List<LogFile> files, ReadOrder order, long limit) throws IOException
+	{
+		List<String> merged = new ArrayList<>();
+
+		new LineMerger(new TimestampSearch(), order)
+			.merge(files, limit, (file, line) -> merged.add(file.getHost() + " " + line));
+		return merged;
+	}
+
+	@Test
+	@DisplayName("Testing the lines of several hosts and files merged in time order ...")
+	public void mergeTest() throws IOException
+	{
+		/* Oldest first, with a stack trace after an entry */
+		List<LogFile> asc = Arrays.asList(
+				newFile("a", "a.log", "2021-05-01 10:00:01 a1", "2021-05-01 10:00:04 a4", "\tat a.A(A.java)",
+						              "2021-05-01 10:00:06 a6"),
+				null,
+				newFile("b", "b.log", "2021-05-01 10:00:02 b2", "2021-05-01 10:00:04 b4", "2021-05-01 10:00:05 b5"),
+				newFile("c", "c.log"));
+
+		assertEquals(Arrays.asList("a 2021-05-01 10:00:01 a1", "b 2021-05-01 10:00:02 b2",
+				                   "a 2021-05-01 10:00:04 a4", "a \tat a.A(A.java)",
+				                   "b 2021-05-01 10:00:04 b4", "b 2021-05-01 10:00:05 b5",
+				                   "a 2021-05-01 10:00:06 a6"),
+				     merge(asc, ReadOrder.ASC, -1));
+
+		/* Newest first, the merge stops at the limit. A stack trace is read before its entry,
+		 * it goes with it */
+		List<LogFile> desc = Arrays.asList(
+				newFile("a", "a.log", "continuation without timestamp", "2021-05-01 10:00:07 a7",
+						              "2021-05-01 10:00:01 a1"),
+				newFile("b", "b.log", "2021-05-01 10:00:09 b9", "\tat b.B(B.java)", "2021-05-01 10:00:05 b5",
+						              "2021-05-01 10:00:02 b2", "2021-05-01 10:00:01 b1"));
+
+		assertEquals(Arrays.asList("b 2021-05-01 10:00:09 b9", "a continuation without timestamp",
+				                   "a 2021-05-01 10:00:07 a7", "b \tat b.B(B.java)",
+				                   "b 2021-05-01 10:00:05 b5", "b 2021-05-01 10:00:02 b2"),
+				     merge(desc, ReadOrder.DESC, 6));
+		assertEquals(Collections.emptyList(), merge(Collections.emptyList(), ReadOrder.DESC, 10));
+	}
+}
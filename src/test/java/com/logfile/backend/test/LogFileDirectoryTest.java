@@ -0,0 +1,147 @@
+package com.logfile.backend.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.logfiles.api.LogFile;
+import com.logfiles.backend.LogFileDirectory;
+import com.logfiles.backend.LogFileReader;
+import com.logfiles.backend.LogQuery;
+import com.logfiles.backend.MatchMode;
+import com.logfiles.backend.ReadOrder;
+
+public class LogFileDirectoryTest {
+
+	@TempDir
+	File genPath;
+
+	private void write(String name, String text) throws IOException
+	{
+		try (FileOutputStream out = new FileOutputStream(new File(genPath, name)))
+		{
+			out.write(text.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	@DisplayName("Testing the files of a directory read on a bounded executor ...")
+	public void boundedExecutorTest() throws IOException, InterruptedException
+	{
+		LogQuery query = new LogQuery(-1, -1, null, null, 1, ReadOrder.DESC,
+				                      Collections.singletonList("error"), MatchMode.ANY, "");
+
+		for (int i = 0; i < 6; i++)
+		{
+			write("gen_dir_" + i + ".log", "info " + i + "\nerror " + i + "\n");
+		}
+
+		/* A single thread with a queue of 2: the reads beyond it run on the caller */
+		ThreadPoolExecutor callerRuns = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+				                                               new ArrayBlockingQueue<>(2),
+				                                               new ThreadPoolExecutor.CallerRunsPolicy());
+		try
+		{
+			LogFileDirectory directory = new LogFileDirectory(new LogFileReader(), callerRuns);
+			List<LogFile>    logFiles  = directory.getAllFiles(genPath, query);
+			List<File>       files     = directory.listFiles(genPath);
+
+			assertEquals(6, logFiles.size());
+			for (int i = 0; i < files.size(); i++)
+			{
+				/* Same order than the files listed */
+				String name = files.get(i).getName();
+				assertEquals(files.get(i).getPath(), logFiles.get(i).getPath());
+				assertEquals(Arrays.asList("error " + name.charAt(8)),
+						     logFiles.get(i).getFileBuffered().getLines());
+			}
+		}
+		finally
+		{
+			callerRuns.shutdownNow();
+		}
+
+		/* The thread and the queue are busy: the reads are rejected */
+		CountDownLatch     busy  = new CountDownLatch(1);
+		ThreadPoolExecutor abort = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+				                                          new ArrayBlockingQueue<>(1),
+				                                          new ThreadPoolExecutor.AbortPolicy());
+		try
+		{
+			abort.execute(() -> {
+				try
+				{
+					busy.await();
+				}
+				catch (InterruptedException ie)
+				{
+					Thread.currentThread().interrupt();
+				}
+			});
+			LogFileDirectory directory = new LogFileDirectory(new LogFileReader(), abort);
+			assertThrows(RejectedExecutionException.class, () -> directory.getAllFiles(genPath, query));
+		}
+		finally
+		{
+			busy.countDown();
+			abort.shutdownNow();
+		}
+	}
+
+	@Test
+	@DisplayName("Testing the files of a directory read newest first up to a global limit ...")
+	public void globalLimitTest() throws IOException
+	{
+		LogFileDirectory directory = new LogFileDirectory(new LogFileReader());
+		long             now       = System.currentTimeMillis() / 1000 * 1000;
+
+		/* Rotated files, the lower the number the newer */
+		for (int i = 0; i < 4; i++)
+		{
+			write("gen_rot_" + i + ".log", "info " + i + "a\nerror " + i + "b\ninfo " + i + "c\n");
+			new File(genPath, "gen_rot_" + i + ".log").setLastModified(now - i * 60000L);
+		}
+
+		/* The last 4 lines: the newest file and the last line of the next one */
+		LogQuery      query    = new LogQuery(-1, -1, null, null, -1, ReadOrder.DESC,
+				                              Collections.emptyList(), MatchMode.ANY, "");
+		List<LogFile> logFiles = directory.getAllFiles(genPath, query, 4);
+
+		assertEquals(4, logFiles.size());
+		assertEquals(Arrays.asList("info 0c", "error 0b", "info 0a"), logFiles.get(0).getFileBuffered().getLines());
+		assertEquals(Arrays.asList("info 1c"), logFiles.get(1).getFileBuffered().getLines());
+		/* The rest are not read, only their details */
+		assertEquals(new File(genPath, "gen_rot_2.log").getAbsolutePath(), logFiles.get(2).getPath());
+		assertNull(logFiles.get(2).getFileBuffered());
+		assertNull(logFiles.get(3).getFileBuffered());
+
+		/* With a filter the lines passing it are counted, oldest first on ASC */
+		query    = new LogQuery(-1, -1, null, null, -1, ReadOrder.ASC,
+				                Collections.singletonList("error"), MatchMode.ANY, "");
+		logFiles = directory.getAllFiles(genPath, query, 2);
+
+		assertEquals(Arrays.asList("error 3b"), logFiles.get(0).getFileBuffered().getLines());
+		assertEquals(Arrays.asList("error 2b"), logFiles.get(1).getFileBuffered().getLines());
+		/* The reading of the last file read stops on the last line passing the filter */
+		assertEquals("info 2a\nerror 2b\n".length(), logFiles.get(1).getFileBuffered().getLastPosRead());
+		assertNull(logFiles.get(2).getFileBuffered());
+		assertEquals(new File(genPath, "gen_rot_0.log").getAbsolutePath(), logFiles.get(3).getPath());
+	}
+}
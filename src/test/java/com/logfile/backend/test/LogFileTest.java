@@ -114,7 +114,7 @@ public class LogFileTest {
 			writeToFile(bufWrf, lines);
 			
 			/* From last execution, get 3 more lines in descendant way */
-			lastPos = logFileReader.getLastPos();			
+			lastPos = logFile.getFileBuffered().getLastPosRead();			
 			logFile = logFileReader.readLines(testLogFile, lastPos, 3, ReadOrder.DESC, keywordFilter);
 			lines      = logFile.getFileBuffered().getLines();
 			writeToFile(bufWrf, lines);							
@@ -155,7 +155,7 @@ public class LogFileTest {
 			writeToFile(bufWrf, lines);
 			
 			/* From last execution, read 3 more lines in ascendant way */
-			lastPos = logFileReader.getLastPos();			
+			lastPos = logFile.getFileBuffered().getLastPosRead();			
 			logFile = logFileReader.readLines(testLogFile, lastPos, 3, ReadOrder.ASC, keywordFilter);
 			lines      = logFile.getFileBuffered().getLines();
 			writeToFile(bufWrf, lines);							
@@ -200,13 +200,13 @@ public class LogFileTest {
 			writeToFile(bufWrf, lines);
 			
 			/* After last execution, read after 3 lines in ascendant way */
-			lastPos = logFileReader.getLastPos();			
+			lastPos = logFile.getFileBuffered().getLastPosRead();			
 			logFile = logFileReader.readLines(testLogFile, lastPos, 3, ReadOrder.ASC, keywordFilter);
 			lines      = logFile.getFileBuffered().getLines();
 			writeToFile(bufWrf, lines);		
 			
 			/* After last execution, read before 2 lines in descendant way */
-			lastPos = logFileReader.getLastPos();
+			lastPos = logFile.getFileBuffered().getLastPosRead();
 			logFile = logFileReader.readLines(testLogFile, lastPos, 2, ReadOrder.DESC, keywordFilter);
 			lines      = logFile.getFileBuffered().getLines();
 			writeToFile(bufWrf, lines);					
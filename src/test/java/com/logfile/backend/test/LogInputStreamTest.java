@@ -0,0 +1,178 @@
+package com.logfile.backend.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.logfiles.backend.ByteSlice;
+import com.logfiles.backend.LogAscRandInputStream;
+import com.logfiles.backend.LogDescRandInputStream;
+import com.logfiles.backend.LogInputStream;
+import com.logfiles.backend.LogMappedInputStream;
+import com.logfiles.backend.ReadOrder;
+
+public class LogInputStreamTest {
+
+	/* Generated log file test */
+	@TempDir
+	File                 genPath;
+	private File         genFile;
+	/* Lines written on generated log file */
+	private List<String> genLines;
+
+	@BeforeEach
+	public void setUpBeforeEachTest() throws IOException
+	{
+		/* Lines with different sizes, some of them bigger than a block
+		 * to force lines crossing block boundaries.
+		 */
+		genFile  = new File(genPath, "gen_stream.log");
+		genLines = new ArrayList<>();
+
+		try (FileOutputStream out = new FileOutputStream(genFile))
+		{
+			for (int i = 0; i < 2000; i++)
+			{
+				StringBuilder line = new StringBuilder("line " + i + " ");
+				int size = (i % 500 == 0) ? 3 * LogDescRandInputStream.BLOCK_SIZE : i % 97;
+
+				for (int j = 0; j < size; j++)
+				{
+					line.append((char)('a' + j % 26));
+				}
+				genLines.add(line.toString());
+				out.write((line + "\r\n").getBytes(StandardCharsets.UTF_8));
+			}
+		}
+	}
+
+	private List<String> readAll(LogInputStream inputStream) throws IOException
+	{
+		List<String> lines = new ArrayList<>();
+
+		try (BufferedReader br = new BufferedReader(
+				new InputStreamReader(inputStream, StandardCharsets.UTF_8)))
+		{
+			String line = br.readLine();
+			while (line != null)
+			{
+				lines.add(line);
+				line = br.readLine();
+			}
+		}
+		return lines;
+	}
+
+	@Test
+	@DisplayName("Testing descendant input stream over block boundaries ...")
+	public void descBlocksTest() throws IOException
+	{
+		List<String> expected = new ArrayList<>(genLines);
+		Collections.reverse(expected);
+
+		/* Read complete file from the end */
+		LogInputStream inputStream = new LogDescRandInputStream(genFile, genFile.length(),
+				                                                 genFile.length());
+		assertEquals(expected, readAll(inputStream));
+		assertEquals(-1, inputStream.getLastPos());
+
+		/* Read 700 lines from the end, after 300 more lines from last position */
+		inputStream = new LogDescRandInputStream(genFile, genFile.length(), 700);
+		assertEquals(expected.subList(0, 700), readAll(inputStream));
+
+		inputStream = new LogDescRandInputStream(genFile, inputStream.getLastPos(), 300);
+		assertEquals(expected.subList(700, 1000), readAll(inputStream));
+	}
+
+	@Test
+	@DisplayName("Testing ascendant input stream over window boundaries ...")
+	public void ascWindowTest() throws IOException
+	{
+		/* Read 700 lines from the start, after 300 more lines from last position */
+		LogInputStream inputStream = new LogAscRandInputStream(genFile, 0, 700);
+		assertEquals(genLines.subList(0, 700), readAll(inputStream));
+
+		inputStream = new LogAscRandInputStream(genFile, inputStream.getLastPos(), 300);
+		assertEquals(genLines.subList(700, 1000), readAll(inputStream));
+
+		/* Read the rest of the file until EOF */
+		inputStream = new LogAscRandInputStream(genFile, inputStream.getLastPos(), 1000);
+		assertEquals(genLines.subList(1000, 2000), readAll(inputStream));
+		assertEquals(genFile.length(), inputStream.getLastPos());
+
+		/* Nothing else to read from EOF */
+		inputStream = new LogAscRandInputStream(genFile, genFile.length(), 1);
+		assertEquals(Collections.emptyList(), readAll(inputStream));
+		assertEquals(-1, inputStream.getLastPos());
+	}
+
+	@Test
+	@DisplayName("Testing memory mapped input stream in both ways ...")
+	public void mappedTest() throws IOException
+	{
+		List<String> expected = new ArrayList<>(genLines);
+		Collections.reverse(expected);
+
+		/* Read complete file from the end */
+		LogInputStream inputStream = new LogMappedInputStream(genFile, genFile.length(),
+				                                               genFile.length(), ReadOrder.DESC);
+		assertEquals(expected, readAll(inputStream));
+		assertEquals(-1, inputStream.getLastPos());
+
+		/* Read 700 lines from the start, after 300 more lines from last position */
+		inputStream = new LogMappedInputStream(genFile, 0, 700, ReadOrder.ASC);
+		assertEquals(genLines.subList(0, 700), readAll(inputStream));
+
+		long lastPos = inputStream.getLastPos();
+		inputStream = new LogMappedInputStream(genFile, lastPos, 300, ReadOrder.ASC);
+		assertEquals(genLines.subList(700, 1000), readAll(inputStream));
+
+		/* Same position than the stream reading with RandomAccessFile */
+		LogInputStream randStream = new LogAscRandInputStream(genFile, lastPos, 300);
+		readAll(randStream);
+		assertEquals(randStream.getLastPos(), inputStream.getLastPos());
+	}
+
+	@Test
+	@DisplayName("Testing reading line by line without decoding ...")
+	public void nextLineTest() throws IOException
+	{
+		List<String> expected = new ArrayList<>(genLines);
+		Collections.reverse(expected);
+
+		LogInputStream streams[] = {
+				new LogAscRandInputStream(genFile, 0, genFile.length()),
+				new LogDescRandInputStream(genFile, genFile.length(), genFile.length()),
+				new LogMappedInputStream(genFile, 0, genFile.length(), ReadOrder.ASC),
+				new LogMappedInputStream(genFile, genFile.length(), genFile.length(), ReadOrder.DESC)
+		};
+
+		for (int i = 0; i < streams.length; i++)
+		{
+			List<String> lines = new ArrayList<>();
+			ByteSlice    line  = new ByteSlice();
+
+			try (LogInputStream inputStream = streams[i])
+			{
+				while (inputStream.nextLine(line))
+				{
+					lines.add(line.toString(StandardCharsets.UTF_8));
+				}
+			}
+			assertEquals(i % 2 == 0 ? genLines : expected, lines);
+		}
+	}
+}
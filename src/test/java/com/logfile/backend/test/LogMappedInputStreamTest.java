@@ -0,0 +1,145 @@
+package com.logfile.backend.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.logfiles.backend.ByteSlice;
+import com.logfiles.backend.LogAscRandInputStream;
+import com.logfiles.backend.LogDescRandInputStream;
+import com.logfiles.backend.LogInputStream;
+import com.logfiles.backend.LogMappedInputStream;
+import com.logfiles.backend.ReadOrder;
+
+public class LogMappedInputStreamTest {
+
+	/* Small regions, the file is read rolling over many of them */
+	private static final int REGION_SIZE = 1000;
+
+	/* Generated log file test */
+	@TempDir
+	File                 genPath;
+	private File         genFile;
+	/* Lines written on generated log file */
+	private List<String> genLines;
+
+	@BeforeEach
+	public void setUpBeforeEachTest() throws IOException
+	{
+		/* Lines with different sizes, shorter than a region but not aligned with them,
+		 * then lines cross the region boundaries.
+		 */
+		genFile  = new File(genPath, "gen_mapped.log");
+		genLines = new ArrayList<>();
+
+		try (FileOutputStream out = new FileOutputStream(genFile))
+		{
+			for (int i = 0; i < 2000; i++)
+			{
+				StringBuilder line = new StringBuilder("line " + i + " ");
+
+				for (int j = 0; j < i % 97; j++)
+				{
+					line.append((char)('a' + j % 26));
+				}
+				genLines.add(line.toString());
+				out.write((line + "\r\n").getBytes(StandardCharsets.UTF_8));
+			}
+		}
+	}
+
+	private List<String> readLines(LogInputStream inputStream) throws IOException
+	{
+		List<String> lines = new ArrayList<>();
+		ByteSlice    line  = new ByteSlice();
+
+		try (LogInputStream in = inputStream)
+		{
+			while (in.nextLine(line))
+			{
+				lines.add(line.toString(StandardCharsets.UTF_8));
+			}
+		}
+		return lines;
+	}
+
+	@Test
+	@DisplayName("Testing memory mapped input stream rolling over regions ascendant ...")
+	public void ascRegionsTest() throws IOException
+	{
+		assertEquals(genLines, readLines(new LogMappedInputStream(genFile, 0, genFile.length(),
+				                                                   ReadOrder.ASC, REGION_SIZE)));
+
+		/* Read 700 lines from the start, after 300 more lines from last position, at the
+		 * same positions than the stream reading with RandomAccessFile.
+		 */
+		LogInputStream mapped = new LogMappedInputStream(genFile, 0, 700, ReadOrder.ASC, REGION_SIZE);
+		LogInputStream rand   = new LogAscRandInputStream(genFile, 0, 700);
+		assertEquals(genLines.subList(0, 700), readLines(mapped));
+		assertEquals(readLines(rand), genLines.subList(0, 700));
+		assertEquals(rand.getLastPos(), mapped.getLastPos());
+
+		mapped = new LogMappedInputStream(genFile, mapped.getLastPos(), 300, ReadOrder.ASC, REGION_SIZE);
+		rand   = new LogAscRandInputStream(genFile, rand.getLastPos(), 300);
+		assertEquals(readLines(rand), readLines(mapped));
+		assertEquals(rand.getLastPos(), mapped.getLastPos());
+	}
+
+	@Test
+	@DisplayName("Testing memory mapped input stream rolling over regions descendant ...")
+	public void descRegionsTest() throws IOException
+	{
+		List<String> expected = new ArrayList<>(genLines);
+		Collections.reverse(expected);
+
+		LogInputStream mapped = new LogMappedInputStream(genFile, genFile.length(), genFile.length(),
+				                                          ReadOrder.DESC, REGION_SIZE);
+		assertEquals(expected, readLines(mapped));
+		assertEquals(-1, mapped.getLastPos());
+
+		/* Read 700 lines from the end, after 300 more lines from last position, at the
+		 * same positions than the stream reading with RandomAccessFile.
+		 */
+		mapped = new LogMappedInputStream(genFile, genFile.length(), 700, ReadOrder.DESC, REGION_SIZE);
+		LogInputStream rand = new LogDescRandInputStream(genFile, genFile.length(), 700);
+		assertEquals(expected.subList(0, 700), readLines(mapped));
+		assertEquals(readLines(rand), expected.subList(0, 700));
+		assertEquals(rand.getLastPos(), mapped.getLastPos());
+
+		mapped = new LogMappedInputStream(genFile, mapped.getLastPos(), 300, ReadOrder.DESC, REGION_SIZE);
+		rand   = new LogDescRandInputStream(genFile, rand.getLastPos(), 300);
+		assertEquals(expected.subList(700, 1000), readLines(mapped));
+		assertEquals(readLines(rand), expected.subList(700, 1000));
+		assertEquals(rand.getLastPos(), mapped.getLastPos());
+	}
+
+	@Test
+	@DisplayName("Testing memory mapped input stream with a line longer than a region ...")
+	public void lineTooLongTest() throws IOException
+	{
+		try (FileOutputStream out = new FileOutputStream(genFile, true))
+		{
+			StringBuilder line = new StringBuilder();
+			for (int j = 0; j < 2 * REGION_SIZE; j++)
+			{
+				line.append('x');
+			}
+			out.write((line + "\r\n").getBytes(StandardCharsets.UTF_8));
+		}
+
+		assertThrows(IOException.class, () -> readLines(new LogMappedInputStream(genFile, 0, genFile.length(),
+				                                                                  ReadOrder.ASC, REGION_SIZE)));
+	}
+}
@@ -0,0 +1,125 @@
+package com.logfile.backend.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.logfiles.api.LogFile;
+import com.logfiles.backend.BloomBlockIndex;
+import com.logfiles.backend.FilterAllOf;
+import com.logfiles.backend.FilterKeyword;
+import com.logfiles.backend.FilterKeywords;
+import com.logfiles.backend.FilterRegex;
+import com.logfiles.backend.LineFilter;
+import com.logfiles.backend.LineIndex;
+import com.logfiles.backend.LogFileReader;
+import com.logfiles.backend.MatchMode;
+import com.logfiles.backend.ReadOrder;
+import com.logfiles.backend.ResultCache;
+import com.logfiles.backend.TailCache;
+import com.logfiles.backend.TimestampSearch;
+
+public class ResultCacheTest {
+
+	private static final String LEVELS[] = {"INFO", "INFO", "INFO", "WARN", "ERROR"};
+
+	@TempDir
+	File genPath;
+
+	/* Append log lines with LF or CRLF and multi-byte characters */
+	private void appendLines(File file, Random random, int numLines, boolean append) throws IOException
+	{
+		try (FileOutputStream out = new FileOutputStream(file, append))
+		{
+			for (int i = 0; i < numLines; i++)
+			{
+				StringBuilder line = new StringBuilder(LEVELS[random.nextInt(LEVELS.length)]);
+				line.append(" entry ").append(random.nextInt(1000)).append(random.nextInt(10) == 0 ? " \u00e9" : "");
+				line.append(random.nextBoolean() ? "\r\n" : "\n");
+				out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+			}
+		}
+	}
+
+	/* Few filters, then the queries are repeated */
+	private LineFilter randomFilter(Random random)
+	{
+		switch (random.nextInt(4))
+		{
+			case 0:
+				return new FilterKeyword("ERROR");
+			case 1:
+				return new FilterKeywords(Arrays.asList("WARN", "ERROR"), MatchMode.ANY);
+			case 2:
+				return new FilterRegex("entry \\d*7$");
+			default:
+				return new FilterAllOf(Arrays.asList(new FilterKeyword("\u00e9"), new FilterRegex("^INFO")));
+		}
+	}
+
+	private void assertSameReadings(LogFileReader plainReader, LogFileReader cacheReader, File file,
+			                        Random random) throws IOException
+	{
+		for (int i = 0; i < 60; i++)
+		{
+			long       numLines = random.nextInt(4) == 0 ? file.length() : 1 + random.nextInt(4) * 50;
+			ReadOrder  order    = random.nextInt(3) == 0 ? ReadOrder.ASC : ReadOrder.DESC;
+			LineFilter filter   = randomFilter(random);
+			LogFile    expected = plainReader.readLines(file, numLines, order, filter);
+			LogFile    actual   = cacheReader.readLines(file, numLines, order, filter);
+
+			assertEquals(expected.getFileBuffered().getLines(), actual.getFileBuffered().getLines(),
+					     order + " " + filter.getFingerprint() + " lines " + numLines);
+			assertEquals(expected.getFileBuffered().getLastPosRead(), actual.getFileBuffered().getLastPosRead(),
+					     order + " " + filter.getFingerprint() + " lines " + numLines);
+		}
+	}
+
+	@Test
+	@DisplayName("Testing filtered readings from the result cache while the file grows ...")
+	public void resultCacheTest() throws IOException
+	{
+		Random        random      = new Random(6);
+		File          file        = new File(genPath, "gen_result.log");
+		LogFileReader plainReader = new LogFileReader(LogFileReader.DEFAULT_MMAP_THRESHOLD, new LineIndex(),
+				                                      null, null, new TimestampSearch(), null, null);
+		/* The blocks skipped count as lines read on the results cached */
+		LogFileReader cacheReader = new LogFileReader(LogFileReader.DEFAULT_MMAP_THRESHOLD, new LineIndex(),
+				                                      null, new BloomBlockIndex(512, 10000), new TimestampSearch(),
+				                                      new TailCache(), new ResultCache());
+
+		appendLines(file, random, 20, false);
+		for (int i = 0; i < 30; i++)
+		{
+			appendLines(file, random, random.nextInt(i < 10 ? 5 : 60), true);
+			/* Last line written in two parts */
+			if (random.nextBoolean())
+			{
+				try (FileOutputStream out = new FileOutputStream(file, true))
+				{
+					out.write("ERROR partial".getBytes(StandardCharsets.UTF_8));
+				}
+				assertSameReadings(plainReader, cacheReader, file, random);
+				try (FileOutputStream out = new FileOutputStream(file, true))
+				{
+					out.write(" entry 7\n".getBytes(StandardCharsets.UTF_8));
+				}
+			}
+			assertSameReadings(plainReader, cacheReader, file, random);
+		}
+
+		/* Rotated file with the same name */
+		file.delete();
+		appendLines(file, random, 100, false);
+		assertSameReadings(plainReader, cacheReader, file, random);
+	}
+}
@@ -0,0 +1,224 @@
+package com.logfile.backend.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.logfiles.api.LogFile;
+import com.logfiles.backend.ByteSlice;
+import com.logfiles.backend.FilterKeyword;
+import com.logfiles.backend.LineIndex;
+import com.logfiles.backend.LineStore;
+import com.logfiles.backend.LogFileReader;
+import com.logfiles.backend.ReadOrder;
+import com.logfiles.backend.TailCache;
+import com.logfiles.backend.TimestampSearch;
+
+public class TailCacheTest {
+
+	@TempDir
+	File genPath;
+
+	/* Append lines with LF or CRLF and multi-byte characters */
+	private void appendLines(File file, Random random, int numLines, boolean append) throws IOException
+	{
+		try (FileOutputStream out = new FileOutputStream(file, append))
+		{
+			for (int i = 0; i < numLines; i++)
+			{
+				StringBuilder line = new StringBuilder("line " + i);
+				int size = random.nextInt(30);
+				for (int j = 0; j < size; j++)
+				{
+					line.append(random.nextInt(10) == 0 ? "\u00e9" : "x");
+				}
+				line.append(random.nextBoolean() ? "\r\n" : "\n");
+				out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+			}
+		}
+	}
+
+	private LogFileReader newReader(TailCache tailCache)
+	{
+		return new LogFileReader(LogFileReader.DEFAULT_MMAP_THRESHOLD, new LineIndex(), null, null,
+				                 new TimestampSearch(), tailCache);
+	}
+
+	private void assertSameReadings(LogFileReader plainReader, LogFileReader cacheReader, File file,
+			                        Random random) throws IOException
+	{
+		for (int i = 0; i < 100; i++)
+		{
+			long numLines = random.nextInt(5) == 0 ? file.length() : 1 + random.nextInt(400);
+			FilterKeyword filter = new FilterKeyword(random.nextInt(4) == 0 ? "\u00e9" : "");
+			LogFile expected = plainReader.readLines(file, numLines, ReadOrder.DESC, filter);
+			LogFile actual   = cacheReader.readLines(file, numLines, ReadOrder.DESC, filter);
+
+			assertEquals(expected.getFileBuffered().getLines(), actual.getFileBuffered().getLines(),
+					     "lines " + numLines);
+			assertEquals(expected.getFileBuffered().getLastPosRead(), actual.getFileBuffered().getLastPosRead(),
+					     "lines " + numLines);
+		}
+	}
+
+	@Test
+	@DisplayName("Testing descendant readings from the tail cache ...")
+	public void tailCacheTest() throws IOException
+	{
+		Random        random      = new Random(4);
+		File          file        = new File(genPath, "gen_tail.log");
+		LogFileReader plainReader = newReader(null);
+		LogFileReader cacheReader = newReader(new TailCache());
+
+		appendLines(file, random, 500, false);
+		assertSameReadings(plainReader, cacheReader, file, random);
+
+		/* The lines cached belong to the previous version of the file */
+		appendLines(file, random, 50, true);
+		assertSameReadings(plainReader, cacheReader, file, random);
+
+		/* Rotated file with the same name */
+		file.delete();
+		appendLines(file, random, 300, false);
+		assertSameReadings(plainReader, cacheReader, file, random);
+
+		/* Tails bigger than the cache are never kept */
+		assertSameReadings(plainReader, newReader(new TailCache(1024, 1024)), file, random);
+
+		/* Lines kept on the heap */
+		LogFileReader heapReader = newReader(new TailCache(TailCache.DEFAULT_MAX_BYTES,
+				                                           TailCache.DEFAULT_MAX_TAIL_BYTES, false));
+		assertSameReadings(plainReader, heapReader, file, random);
+		assertSameReadings(plainReader, heapReader, file, random);
+	}
+
+	@Test
+	@DisplayName("Testing tail cache extended while the file grows ...")
+	public void growingFileTest() throws IOException
+	{
+		Random        random      = new Random(5);
+		File          file        = new File(genPath, "gen_growing.log");
+		LogFileReader plainReader = newReader(null);
+		LogFileReader cacheReader = newReader(new TailCache(TailCache.DEFAULT_MAX_BYTES, 4096));
+
+		appendLines(file, random, 200, false);
+		for (int i = 0; i < 20; i++)
+		{
+			appendLines(file, random, random.nextInt(10), true);
+			/* Last line written in two parts */
+			if (random.nextBoolean())
+			{
+				try (FileOutputStream out = new FileOutputStream(file, true))
+				{
+					out.write("partial line".getBytes(StandardCharsets.UTF_8));
+				}
+				assertSameReadings(plainReader, cacheReader, file, random);
+				try (FileOutputStream out = new FileOutputStream(file, true))
+				{
+					out.write(" completed\n".getBytes(StandardCharsets.UTF_8));
+				}
+			}
+			assertSameReadings(plainReader, cacheReader, file, random);
+		}
+	}
+
+	private long getDirectMemoryUsed()
+	{
+		return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+				                .filter(pool -> pool.getName().equals("direct"))
+				                .mapToLong(BufferPoolMXBean::getMemoryUsed).sum();
+	}
+
+	@Test
+	@DisplayName("Testing tails evicted while they are read and their buffers freed ...")
+	public void evictedTailsTest() throws Exception
+	{
+		Random        random      = new Random(6);
+		List<File>    files       = new ArrayList<>();
+		LogFileReader plainReader = newReader(null);
+		/* The tails of the files do not fit together, they are evicted all the time */
+		LogFileReader cacheReader = newReader(new TailCache(64 * 1024, 16 * 1024));
+
+		for (int i = 0; i < 8; i++)
+		{
+			File file = new File(genPath, "gen_evicted_" + i + ".log");
+			appendLines(file, random, 1000, false);
+			files.add(file);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<?>> results  = new ArrayList<>();
+
+		try
+		{
+			for (int thread = 0; thread < 4; thread++)
+			{
+				final Random threadRandom = new Random(thread);
+				results.add(executor.submit(() -> {
+					for (int i = 0; i < 200; i++)
+					{
+						File    file     = files.get(threadRandom.nextInt(files.size()));
+						long    numLines = 1 + threadRandom.nextInt(600);
+						LogFile expected = plainReader.readLines(file, numLines, ReadOrder.DESC, new FilterKeyword(""));
+						LogFile actual   = cacheReader.readLines(file, numLines, ReadOrder.DESC, new FilterKeyword(""));
+
+						assertEquals(expected.getFileBuffered().getLines(), actual.getFileBuffered().getLines());
+						assertEquals(expected.getFileBuffered().getLastPosRead(),
+								     actual.getFileBuffered().getLastPosRead());
+					}
+					return null;
+				}));
+			}
+			for (Future<?> result : results)
+			{
+				result.get(60, TimeUnit.SECONDS);
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	@DisplayName("Testing the buffer of a store freed by its last user ...")
+	public void storeReleasedTest()
+	{
+		LineStore.Builder builder = new LineStore.Builder();
+		byte              line[]  = new byte[1024];
+
+		for (int i = 0; i < 1024; i++)
+		{
+			builder.add(new ByteSlice(line, 0, line.length));
+		}
+
+		long      before = getDirectMemoryUsed();
+		LineStore store  = builder.build(builder.size(), true);
+		assertTrue(getDirectMemoryUsed() - before >= 1024 * 1024);
+
+		/* Still referenced, only the release can free it */
+		assertTrue(store.retain());
+		store.release();
+		assertTrue(getDirectMemoryUsed() - before >= 1024 * 1024);
+		store.release();
+		assertTrue(getDirectMemoryUsed() - before < 1024 * 1024);
+		assertTrue(!store.retain());
+	}
+}
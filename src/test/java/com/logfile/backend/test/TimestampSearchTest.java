@@ -0,0 +1,140 @@
+package com.logfile.backend.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.logfiles.api.LogFile;
+import com.logfiles.backend.BloomBlockIndex;
+import com.logfiles.backend.FilterKeyword;
+import com.logfiles.backend.LineFilter;
+import com.logfiles.backend.LineIndex;
+import com.logfiles.backend.LogFileReader;
+import com.logfiles.backend.ReadOrder;
+import com.logfiles.backend.TimestampSearch;
+
+public class TimestampSearchTest {
+
+	private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+	private static final LocalDateTime     FIRST  = LocalDateTime.of(2021, 5, 1, 10, 0, 0);
+
+	@TempDir
+	File genPath;
+
+	/* Generate a log file in time order. Some entries have lines without timestamp and
+	 * several entries can be logged on the same second. The time of every line is kept */
+	private File generateFile(Random random, List<String> lines, List<Instant> times) throws IOException
+	{
+		File          file    = new File(genPath, "gen_time.log");
+		LocalDateTime current = FIRST;
+
+		try (FileOutputStream out = new FileOutputStream(file))
+		{
+			for (int i = 0; i < 2000; i++)
+			{
+				current = current.plusSeconds(random.nextInt(3));
+				Instant time = current.toInstant(ZoneOffset.UTC);
+				List<String> entry = new ArrayList<>();
+				entry.add(current.format(FORMAT) + (random.nextInt(10) == 0 ? " ERROR entry " : " INFO entry ") + i);
+				if (random.nextInt(8) == 0)
+				{
+					entry.add("java.io.IOException: entry " + i);
+					entry.add("\tat com.logfiles.Test.run(Test.java:" + i + ")");
+				}
+				for (int j = 0; j < entry.size(); j++)
+				{
+					boolean last = i == 1999 && j == entry.size() - 1;
+					/* Last line without LF */
+					out.write((entry.get(j) + (last ? "" : (random.nextBoolean() ? "\r\n" : "\n")))
+							  .getBytes(StandardCharsets.UTF_8));
+					lines.add(entry.get(j));
+					times.add(time);
+				}
+			}
+		}
+		return file;
+	}
+
+	@Test
+	@DisplayName("Testing readings by time range ...")
+	public void readByTimeTest() throws IOException
+	{
+		Random        random = new Random(3);
+		List<String>  lines  = new ArrayList<>();
+		List<Instant> times  = new ArrayList<>();
+		File          file   = generateFile(random, lines, times);
+		Instant       first  = times.get(0);
+		long          span   = times.get(times.size() - 1).getEpochSecond() - first.getEpochSecond();
+		/* Blocks learned on a reading can be skipped on the next ones */
+		BloomBlockIndex bloomIndex = new BloomBlockIndex(512, 10000);
+
+		for (int i = 0; i < 300; i++)
+		{
+			long          mmapThreshold = random.nextBoolean() ? 0 : LogFileReader.DEFAULT_MMAP_THRESHOLD;
+			LogFileReader reader = new LogFileReader(mmapThreshold, new LineIndex(), null, bloomIndex);
+			ReadOrder     order  = random.nextBoolean() ? ReadOrder.ASC : ReadOrder.DESC;
+			/* Times before, on and after the file */
+			Instant       since  = random.nextInt(5) == 0 ? null :
+				                   first.plusSeconds(random.nextInt((int)span + 20) - 10);
+			Instant       until  = random.nextInt(5) == 0 ? null :
+				                   first.plusSeconds(random.nextInt((int)span + 20) - 10);
+			LineFilter    filter = new FilterKeyword(random.nextBoolean() ? "" : "ERROR");
+			long          numLines = random.nextBoolean() ? file.length() : 1 + random.nextInt(50);
+
+			List<String> expected = new ArrayList<>();
+			for (int l = 0; l < lines.size(); l++)
+			{
+				if ((since == null || !times.get(l).isBefore(since)) &&
+					(until == null || !times.get(l).isAfter(until)))
+				{
+					expected.add(lines.get(l));
+				}
+			}
+			if (order == ReadOrder.DESC)
+			{
+				Collections.reverse(expected);
+			}
+			/* n_lines are read, and the filter is applied over them */
+			expected = expected.stream().limit(numLines).filter(filter).collect(Collectors.toList());
+
+			LogFile logFile = reader.readLinesByTime(file, since, until, numLines, order, filter);
+			assertEquals(expected, logFile.getFileBuffered().getLines(),
+					     order + " since " + since + " until " + until + " lines " + numLines);
+		}
+	}
+
+	@Test
+	@DisplayName("Testing times given on queries ...")
+	public void parseTimeTest()
+	{
+		TimestampSearch search = new TimestampSearch();
+
+		assertEquals(Instant.parse("2021-05-01T10:00:00Z"), search.parseTime("2021-05-01T10:00:00Z"));
+		assertEquals(Instant.parse("2021-05-01T08:00:00Z"), search.parseTime("2021-05-01T10:00:00+02:00"));
+		assertEquals(Instant.parse("2021-05-01T10:00:00Z"), search.parseTime("2021-05-01T10:00:00"));
+		assertEquals(Instant.parse("2021-05-01T10:00:00Z"), search.parseTime("2021-05-01 10:00:00"));
+		assertTrue(Math.abs(Instant.now().minusSeconds(300).getEpochSecond() -
+				            search.parseTime("PT5M").getEpochSecond()) <= 2);
+		assertThrows(DateTimeException.class, () -> search.parseTime("yesterday"));
+		assertThrows(DateTimeException.class, () -> search.parseTime("-PT5M"));
+	}
+}
@@ -0,0 +1,399 @@
+package com.logfile.entrypoint.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.logfiles.api.Host;
+import com.logfiles.api.LogFile;
+import com.logfiles.backend.FileFollowers;
+import com.logfiles.backend.KeywordsMatcher;
+import com.logfiles.backend.LineIndex;
+import com.logfiles.backend.LogFileDirectory;
+import com.logfiles.backend.LogFileReader;
+import com.logfiles.backend.LogQuery;
+import com.logfiles.backend.MatchMode;
+import com.logfiles.backend.ReadOrder;
+import com.logfiles.backend.ResultCache;
+import com.logfiles.backend.TailCache;
+import com.logfiles.backend.TimestampSearch;
+import com.logfiles.entrypoint.LogFileResource;
+import com.logfiles.entrypoint.NdjsonLinesWriter;
+import com.logfiles.entrypoint.RemoteHosts;
+
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.jersey.jackson.JacksonMessageBodyProvider;
+
+public class LogFileResourceTest {
+
+	private static final int NUM_QUERIES = 12;
+	private static final int NUM_THREADS = 8;
+	private static final int NUM_ROUNDS  = 25;
+	/* A host refusing the connections */
+	private static final String REMOTE_HOST = "127.0.0.1:1";
+
+	private final ObjectMapper mapper = Jackson.newObjectMapper();
+
+	@TempDir
+	File genPath;
+
+	private FileFollowers   fileFollowers;
+	private LogFileResource resource;
+
+	@BeforeEach
+	public void setUp() throws IOException
+	{
+		StringBuilder text = new StringBuilder();
+
+		/* Lines of different lengths with 4 keywords */
+		for (int i = 1; i <= 300; i++)
+		{
+			text.append("line ").append(i).append(" key").append(i % 4);
+			for (int j = 0; j < i % 7; j++)
+			{
+				text.append(" padding");
+			}
+			text.append(i % 5 == 0 ? "\r\n" : "\n");
+		}
+		try (FileOutputStream out = new FileOutputStream(new File(genPath, "gen_stress.log")))
+		{
+			out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+		}
+
+		fileFollowers = new FileFollowers();
+		/* The caches are shared by the requests too */
+		LogFileReader reader = new LogFileReader(LogFileReader.DEFAULT_MMAP_THRESHOLD, new LineIndex(),
+				                                 null, null, new TimestampSearch(),
+				                                 new TailCache(), new ResultCache());
+		resource = new LogFileResource(null, reader, fileFollowers, genPath.getPath() + File.separator,
+				                       -1L, -1, 1, "localhost");
+	}
+
+	@AfterEach
+	public void tearDown()
+	{
+		fileFollowers.close();
+	}
+
+	/* Every query mixes its own keyword, number of lines, order, start and response */
+	private String request(int query) throws IOException
+	{
+		List<String>      keywords = query % 3 == 0 ? Collections.emptyList() :
+			                                          Collections.singletonList("key" + (query % 4));
+		Optional<Integer> nLines   = query % 5 == 0 ? Optional.absent() : Optional.of(query + 1);
+		Optional<Long>    fromLine = query % 4 == 3 ? Optional.of(1L + query * 7) : Optional.absent();
+		Optional<Integer> orderBy  = Optional.of(query % 2);
+		Response          response;
+
+		if (query % 3 == 2)
+		{
+			response = resource.getLogFileLines("gen_stress.log", Optional.absent(), Optional.absent(), fromLine,
+					                            Optional.absent(), Optional.absent(), nLines, keywords,
+					                            Optional.absent(), Optional.absent(), orderBy, Optional.absent());
+		}
+		else
+		{
+			response = resource.getLogFile("gen_stress.log", Optional.absent(), Optional.absent(), fromLine,
+					                       Optional.absent(), Optional.absent(), nLines, keywords,
+					                       Optional.absent(), Optional.absent(), orderBy, Optional.absent());
+		}
+
+		return write(response);
+	}
+
+	private String write(Response response) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		((StreamingOutput)response.getEntity()).write(out);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/* The local host with its files, as the list of hosts was serialized before the streaming */
+	private Host newLocalHost(List<LogFile> files) throws IOException
+	{
+		Host host = new Host();
+
+		host.setHost(InetAddress.getLocalHost().getHostAddress());
+		host.setCode(200);
+		host.setMessage("OK");
+		host.setLogfiles(files);
+		return host;
+	}
+
+	/* Same JSON, the fields of an object in any order */
+	private void assertSameJson(List<Host> expected, String actual) throws IOException
+	{
+		assertEquals(mapper.readTree(mapper.writeValueAsString(expected)), mapper.readTree(actual), actual);
+	}
+
+	@Test
+	@DisplayName("Testing concurrent requests with different parameters on the same resource ...")
+	public void concurrentRequestsTest() throws Exception
+	{
+		List<String> expected = new ArrayList<>();
+
+		/* Every query served alone */
+		for (int query = 0; query < NUM_QUERIES; query++)
+		{
+			expected.add(request(query));
+		}
+		/* The first 5 lines filtered by key0 */
+		assertTrue(expected.get(4).contains("line 4 key0"));
+		assertTrue(!expected.get(4).contains("key2"));
+
+		/* The same queries served at the same time must give the same responses */
+		ExecutorService      executor = Executors.newFixedThreadPool(NUM_THREADS);
+		CountDownLatch       start    = new CountDownLatch(1);
+		List<Future<String>> results  = new ArrayList<>();
+		List<Integer>        queries  = new ArrayList<>();
+
+		try
+		{
+			for (int thread = 0; thread < NUM_THREADS; thread++)
+			{
+				for (int round = 0; round < NUM_ROUNDS; round++)
+				{
+					final int query = (thread * 7 + round) % NUM_QUERIES;
+					queries.add(query);
+					results.add(executor.submit(() -> {
+						start.await();
+						return request(query);
+					}));
+				}
+			}
+			start.countDown();
+			for (int i = 0; i < results.size(); i++)
+			{
+				assertEquals(expected.get(queries.get(i)), results.get(i).get(30, TimeUnit.SECONDS),
+						     "query " + queries.get(i));
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	@DisplayName("Testing the streamed hosts with the shape of the list of hosts serialized ...")
+	public void streamedHostsTest() throws IOException
+	{
+		File          file   = new File(genPath, "gen_stress.log");
+		LogFileReader reader = new LogFileReader();
+		LogQuery      query  = new LogQuery(-1, -1, null, null, 10, ReadOrder.DESC,
+				                            Collections.singletonList("key1"), MatchMode.ANY, "");
+
+		try (FileOutputStream out = new FileOutputStream(new File(genPath, "gen_other.log")))
+		{
+			out.write("other key1\nother key2\n".getBytes(StandardCharsets.UTF_8));
+		}
+
+		/* One file */
+		Response response = resource.getLogFile("gen_stress.log", Optional.absent(), Optional.absent(),
+				                                Optional.absent(), Optional.absent(), Optional.absent(),
+				                                Optional.of(10), Collections.singletonList("key1"),
+				                                Optional.absent(), Optional.absent(), Optional.absent(),
+				                                Optional.absent());
+		assertSameJson(Arrays.asList(newLocalHost(Arrays.asList(reader.read(file, query)))), write(response));
+
+		/* All the files of the directory */
+		response = resource.getAllLogFiles(Optional.absent(), Optional.absent(), Optional.of(10),
+				                           Collections.singletonList("key1"), Optional.absent(), Optional.absent(),
+				                           Optional.absent(), Optional.absent(), Optional.absent(), Optional.absent());
+		assertSameJson(Arrays.asList(newLocalHost(new LogFileDirectory(reader).getAllFiles(genPath, query))),
+				       write(response));
+
+		/* A file missing is answered before the response starts */
+		WebApplicationException wae = assertThrows(WebApplicationException.class, () ->
+			resource.getLogFile("gen_missing.log", Optional.absent(), Optional.absent(), Optional.absent(),
+					            Optional.absent(), Optional.absent(), Optional.absent(), Collections.emptyList(),
+					            Optional.absent(), Optional.absent(), Optional.absent(), Optional.absent()));
+		assertEquals(Response.Status.NOT_FOUND.getStatusCode(), wae.getResponse().getStatus());
+	}
+
+	@Test
+	@DisplayName("Testing the streamed hosts with a remote host failing ...")
+	public void streamedRemoteErrorTest() throws IOException
+	{
+		Client   client = ClientBuilder.newClient().register(new JacksonMessageBodyProvider(mapper));
+		File     file   = new File(genPath, "gen_stress.log");
+		LogQuery query  = new LogQuery(-1, -1, null, null, 5, ReadOrder.DESC, Collections.emptyList(),
+				                       MatchMode.ANY, "");
+
+		try
+		{
+			LogFileResource remoteResource = new LogFileResource(client, new LogFileReader(), fileFollowers,
+					                                             genPath.getPath() + File.separator,
+					                                             -1L, -1, 1, "localhost");
+			/* The host failing is answered with its error, before the local host */
+			List<Host> expected = new ArrayList<>(new RemoteHosts(client, null, RemoteHosts.DEFAULT_HOST_TIMEOUT_MILLIS,
+					                                              RemoteHosts.DEFAULT_REQUEST_TIMEOUT_MILLIS)
+					.request(Collections.singletonList(REMOTE_HOST), "gen_stress.log", query).join());
+			expected.add(newLocalHost(Arrays.asList(new LogFileReader().read(file, query))));
+			assertTrue(expected.get(0).getCode() >= 500, "code " + expected.get(0).getCode());
+
+			Response response = remoteResource.getLogFile("gen_stress.log", Optional.absent(), Optional.absent(),
+					                                      Optional.absent(), Optional.absent(), Optional.absent(),
+					                                      Optional.of(5), Collections.emptyList(),
+					                                      Optional.absent(), Optional.absent(), Optional.absent(),
+					                                      Optional.of(REMOTE_HOST + ",localhost"));
+			assertSameJson(expected, write(response));
+		}
+		finally
+		{
+			client.close();
+		}
+	}
+
+	@Test
+	@DisplayName("Testing the lines streamed as newline delimited JSON with their trailer ...")
+	public void ndjsonLinesTest() throws IOException
+	{
+		File          file   = new File(genPath, "gen_stress.log");
+		LogFileReader reader = new LogFileReader();
+
+		/* Without and with keyword */
+		for (List<String> keywords : Arrays.asList(Collections.<String>emptyList(), Collections.singletonList("key2")))
+		{
+			LogQuery query    = new LogQuery(-1, -1, null, null, 50, ReadOrder.DESC, keywords, MatchMode.ANY, "");
+			LogFile  expected = reader.read(file, query);
+			Response response = resource.getLogFileLines("gen_stress.log", Optional.absent(), Optional.absent(),
+					                                     Optional.absent(), Optional.absent(), Optional.absent(),
+					                                     Optional.of(50), keywords, Optional.absent(),
+					                                     Optional.absent(), Optional.absent(), Optional.absent());
+			String   body     = write(response);
+			String   records[] = body.split("\n");
+
+			/* One record per line, every one on its own line, and the trailer at the end */
+			assertTrue(body.endsWith("\n"));
+			assertEquals(expected.getFileBuffered().getLines().size() + 1, records.length);
+
+			List<String> lines = new ArrayList<>();
+			for (int i = 0; i < records.length - 1; i++)
+			{
+				lines.add(mapper.readTree(records[i]).get("line").asText());
+			}
+			assertEquals(expected.getFileBuffered().getLines(), lines, "keywords " + keywords);
+
+			JsonNode trailer = mapper.readTree(records[records.length - 1]);
+			assertEquals(expected.getPath(), trailer.get("path").asText());
+			assertEquals(expected.getSize(), trailer.get("size").asLong());
+			assertEquals(expected.getFileBuffered().getLastPosRead(), trailer.get("lastPosRead").asLong());
+		}
+	}
+
+	@Test
+	@DisplayName("Testing every newline delimited JSON record is sent as soon as it is read ...")
+	public void ndjsonFlushTest() throws IOException
+	{
+		File                  file     = new File(genPath, "gen_stress.log");
+		LogQuery              query    = new LogQuery(-1, -1, null, null, 20, ReadOrder.ASC,
+				                                      Collections.singletonList("key2"), MatchMode.ANY, "");
+		ByteArrayOutputStream out      = new ByteArrayOutputStream();
+		List<String>          received = new ArrayList<>();
+
+		/* The output got by the client after every line is read, before the reading finishes */
+		new NdjsonLinesWriter(mapper, out).writeFile(sink -> new LogFileReader().read(file, query, line -> {
+			sink.write(line);
+			received.add(new String(out.toByteArray(), StandardCharsets.UTF_8));
+		}));
+
+		assertEquals(5, received.size());
+		assertEquals("{\"line\":\"line 2 key2 padding padding\"}\n", received.get(0));
+		for (int i = 1; i < received.size(); i++)
+		{
+			assertEquals(i + 1, received.get(i).split("\n").length);
+		}
+	}
+
+	@Test
+	@DisplayName("Testing the files with a global limit stop reading once the lines pass the filter ...")
+	public void limitedFilesTest() throws IOException
+	{
+		File     file  = new File(genPath, "gen_stress.log");
+		LogQuery query = new LogQuery(-1, -1, null, null, -1, ReadOrder.ASC,
+				                      Collections.singletonList("key1"), MatchMode.ANY, "");
+
+		Response response = resource.getAllLogFiles(Optional.absent(), Optional.of(3), Optional.absent(),
+				                                    Collections.singletonList("key1"), Optional.absent(),
+				                                    Optional.absent(), Optional.absent(), Optional.absent(),
+				                                    Optional.of(0), Optional.absent());
+		List<LogFile> expected = new LogFileDirectory(new LogFileReader()).getAllFiles(genPath, query, 3);
+		assertSameJson(Arrays.asList(newLocalHost(expected)), write(response));
+
+		/* The lines 1, 5 and 9 pass the filter, the reading stops after the line 9 */
+		String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		assertEquals(Arrays.asList("line 1 key1 padding", "line 5 key1 padding padding padding padding padding",
+				                   "line 9 key1 padding padding"),
+				     expected.get(0).getFileBuffered().getLines());
+		assertEquals(text.indexOf("line 10 "), expected.get(0).getFileBuffered().getLastPosRead());
+	}
+
+	@Test
+	@DisplayName("Testing the merge without a bound of lines is rejected ...")
+	public void unboundedMergeTest()
+	{
+		WebApplicationException wae = assertThrows(WebApplicationException.class, () ->
+			resource.getAllLogFiles(Optional.of(true), Optional.absent(), Optional.absent(), Collections.emptyList(),
+					                Optional.absent(), Optional.absent(), Optional.absent(), Optional.absent(),
+					                Optional.absent(), Optional.absent()));
+		assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), wae.getResponse().getStatus());
+
+		/* With limit or n_lines it is served */
+		assertEquals(200, resource.getAllLogFiles(Optional.of(true), Optional.of(10), Optional.absent(),
+				                                  Collections.emptyList(), Optional.absent(), Optional.absent(),
+				                                  Optional.absent(), Optional.absent(), Optional.absent(),
+				                                  Optional.absent()).getStatus());
+	}
+
+	@Test
+	@DisplayName("Testing keywords over the bytes allowed are rejected ...")
+	public void keywordBytesTest()
+	{
+		StringBuilder keyword = new StringBuilder();
+		for (int i = 0; i < KeywordsMatcher.MAX_KEYWORD_BYTES / 2; i++)
+		{
+			keyword.append('k');
+		}
+		/* Three keywords of half the bytes allowed, 1.5 times the allowed together */
+		List<String> keywords = Collections.nCopies(3, keyword.toString());
+
+		WebApplicationException wae = assertThrows(WebApplicationException.class, () ->
+			resource.getLogFile("gen_stress.log", Optional.absent(), Optional.absent(), Optional.absent(),
+					            Optional.absent(), Optional.absent(), Optional.absent(), keywords,
+					            Optional.absent(), Optional.absent(), Optional.absent(), Optional.absent()));
+		assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), wae.getResponse().getStatus());
+	}
+}
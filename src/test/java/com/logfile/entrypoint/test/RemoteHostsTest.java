@@ -0,0 +1,217 @@
+package com.logfile.entrypoint.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.logfiles.api.Host;
+import com.logfiles.backend.LogQuery;
+import com.logfiles.backend.MatchMode;
+import com.logfiles.backend.ReadOrder;
+import com.logfiles.entrypoint.HostHealth;
+import com.logfiles.entrypoint.RemoteHosts;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.jersey.jackson.JacksonMessageBodyProvider;
+
+public class RemoteHostsTest {
+
+	private static final String FILE_PATH = "/logfiles/api/v1/files/gen_remote.log";
+	private static final int    SAMPLES   = 20;
+
+	private HttpServer               server;
+	private Client                   client;
+	private ScheduledExecutorService timer;
+	private CountDownLatch           release;
+	private String                   hostName;
+	private AtomicInteger            degraded;
+	private AtomicInteger            broken;
+
+	@BeforeEach
+	public void setUp() throws IOException
+	{
+		release  = new CountDownLatch(1);
+		degraded = new AtomicInteger();
+		broken   = new AtomicInteger();
+		server  = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		/* The file asked, only at its own path */
+		server.createContext("/fast", exchange -> {
+			if (exchange.getRequestURI().getPath().equals("/fast" + FILE_PATH))
+			{
+				send(exchange, 200, "[{\"host\":\"fast\",\"code\":200,\"message\":\"OK\",\"logfiles\":[" +
+						            "{\"host\":\"fast\",\"path\":\"gen_remote.log\",\"size\":12," +
+						            "\"fileBuffered\":{\"lastPosRead\":12,\"lines\":[\"error 1\"]}}]}]");
+			}
+			else
+			{
+				send(exchange, 404, "{\"code\":404,\"message\":\"Wrong path\"}");
+			}
+		});
+		/* A host answering after the deadline */
+		server.createContext("/slow", exchange -> {
+			try
+			{
+				release.await(10, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+			}
+			send(exchange, 200, "[]");
+		});
+		/* A host fast on its first requests, then answering after the deadline */
+		server.createContext("/degraded", exchange -> {
+			if (degraded.incrementAndGet() > SAMPLES)
+			{
+				try
+				{
+					release.await(10, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException ie)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+			send(exchange, 404, "{\"code\":404,\"message\":\"File gen_remote.log not found\"}");
+		});
+		/* A host failing */
+		server.createContext("/broken", exchange -> {
+			broken.incrementAndGet();
+			send(exchange, 500, "{\"code\":500,\"message\":\"Broken\"}");
+		});
+		/* A host without the file */
+		server.createContext("/missing", exchange -> {
+			send(exchange, 404, "{\"code\":404,\"message\":\"File gen_remote.log not found\"}");
+		});
+		server.start();
+
+		hostName = "127.0.0.1:" + server.getAddress().getPort();
+		client   = ClientBuilder.newClient().register(new JacksonMessageBodyProvider(Jackson.newObjectMapper()));
+		timer    = Executors.newSingleThreadScheduledExecutor();
+	}
+
+	@AfterEach
+	public void tearDown()
+	{
+		release.countDown();
+		client.close();
+		timer.shutdownNow();
+		server.stop(0);
+	}
+
+	private static void send(HttpExchange exchange, int code, String body) throws IOException
+	{
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(code, bytes.length);
+		try (OutputStream out = exchange.getResponseBody())
+		{
+			out.write(bytes);
+		}
+	}
+
+	@Test
+	@DisplayName("Testing the other hosts requested at once with their deadlines ...")
+	public void deadlinesTest()
+	{
+		RemoteHosts remoteHosts = new RemoteHosts(client, timer, 1000, 2000);
+		LogQuery    query       = new LogQuery(-1, -1, null, null, 10, ReadOrder.DESC,
+				                               Collections.singletonList("error"), MatchMode.ANY, "");
+		List<String> hostNames  = Arrays.asList(hostName + "/fast", hostName + "/slow", hostName + "/missing");
+
+		/* The first request of the client loads its providers, out of the time taken */
+		remoteHosts.request(Arrays.asList(hostName + "/missing"), "gen_remote.log", query).join();
+
+		long       start = System.nanoTime();
+		List<Host> hosts = remoteHosts.request(hostNames, "gen_remote.log", query).join();
+		long       took  = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		/* The slow host delays the response only until its deadline */
+		assertTrue(took < 2000, "took " + took + " ms");
+		assertEquals(3, hosts.size());
+
+		/* Same order than the hosts asked, the file read at its own path */
+		assertEquals(200, hosts.get(0).getCode());
+		assertEquals("gen_remote.log", hosts.get(0).getLogfiles().get(0).getPath());
+		assertEquals(Arrays.asList("error 1"), hosts.get(0).getLogfiles().get(0).getFileBuffered().getLines());
+
+		assertEquals(hostNames.get(1), hosts.get(1).getHost());
+		assertEquals(504, hosts.get(1).getCode());
+		assertTrue(hosts.get(1).getLogfiles().isEmpty());
+
+		/* The error of the host is kept */
+		assertEquals(404, hosts.get(2).getCode());
+		assertEquals("File gen_remote.log not found", hosts.get(2).getMessage());
+	}
+
+	@Test
+	@DisplayName("Testing the slow hosts hedged and the failing ones skipped ...")
+	public void healthTest()
+	{
+		String              degradedHost = hostName + "/degraded";
+		String              brokenHost   = hostName + "/broken";
+		Map<String, String> replicas     = new HashMap<>();
+		HostHealth          health       = new HostHealth(2, 60000, 50);
+		LogQuery            query        = new LogQuery(-1, -1, null, null, 10, ReadOrder.DESC,
+				                                        Collections.emptyList(), MatchMode.ANY, "");
+
+		replicas.put(degradedHost, hostName + "/fast");
+		RemoteHosts remoteHosts = new RemoteHosts(client, timer, 1000, 2000, health, replicas);
+
+		/* The latency of the host is learned, then it turns slow: its replica answers */
+		for (int i = 0; i < SAMPLES; i++)
+		{
+			assertEquals(404, remoteHosts.request(Arrays.asList(degradedHost), "gen_remote.log", query)
+					                     .join().get(0).getCode());
+		}
+		assertTrue(health.getHedgeDelayMillis(degradedHost) >= 50);
+
+		long start = System.nanoTime();
+		Host host  = remoteHosts.request(Arrays.asList(degradedHost), "gen_remote.log", query).join().get(0);
+		long took  = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		assertEquals(200, host.getCode());
+		assertEquals("fast", host.getHost());
+		assertTrue(took < 1000, "took " + took + " ms");
+
+		/* Two failures in a row open the circuit, the host is not requested anymore */
+		for (int i = 0; i < 2; i++)
+		{
+			assertEquals(500, remoteHosts.request(Arrays.asList(brokenHost), "gen_remote.log", query)
+					                     .join().get(0).getCode());
+		}
+		assertEquals(HostHealth.Circuit.OPEN, health.getCircuit(brokenHost));
+
+		host = remoteHosts.request(Arrays.asList(brokenHost), "gen_remote.log", query).join().get(0);
+		assertEquals(503, host.getCode());
+		assertEquals("Circuit open", host.getMessage());
+		assertEquals(2, broken.get());
+		assertEquals(Arrays.asList(brokenHost), health.getOpenHosts());
+	}
+}